@@ -0,0 +1,80 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Rotates the database password through the secrets directory and checks that new connections use
+ * it.
+ *
+ * <p>Runs on the JVM and, through {@code nativeTest}, in a native image.
+ */
+@SpringBootTest(
+    classes = DemoRotatingSecretsApplication.class,
+    properties = {"spring.cloud.vault.enabled=false", "k8s.secrets.refreshInterval=200"})
+class FileSecretRotationTests {
+
+  private static final Path SECRETS = createSecrets();
+
+  @Autowired private DataSource dataSource;
+
+  @Autowired private CredentialsProviderService credentialsProvider;
+
+  @DynamicPropertySource
+  static void secrets(DynamicPropertyRegistry registry) {
+    registry.add("k8s.secrets.path", SECRETS::toString);
+    registry.add(
+        "spring.datasource.url",
+        () -> "jdbc:h2:mem:filerotation;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+  }
+
+  @Test
+  void passwordFileChange_reachesNewConnections() throws Exception {
+    assertEquals("", credentialsProvider.getCurrentSnapshot().secret());
+    try (Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement()) {
+      stmt.execute("ALTER USER SA SET PASSWORD 'rotated'");
+    }
+
+    Files.writeString(SECRETS.resolve("password"), "rotated");
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!"rotated".equals(credentialsProvider.getCurrentSnapshot().secret())) {
+      assertTrue(System.currentTimeMillis() < deadline, "rotation was not picked up");
+      Thread.sleep(50);
+    }
+    try (Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT CURRENT_USER")) {
+      assertTrue(rs.next());
+      assertEquals("SA", rs.getString(1));
+    } catch (SQLException e) {
+      fail("Connection after rotation failed", e);
+    }
+  }
+
+  private static Path createSecrets() {
+    try {
+      Path dir = Files.createTempDirectory("demo-secrets");
+      Files.writeString(dir.resolve("username"), "sa");
+      Files.writeString(dir.resolve("password"), "");
+      return dir;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
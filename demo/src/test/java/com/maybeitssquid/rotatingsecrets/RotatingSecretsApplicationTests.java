@@ -2,6 +2,10 @@ package com.maybeitssquid.rotatingsecrets;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -11,6 +15,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
 /** Integration tests using H2 in-memory database. */
 @SpringBootTest(
@@ -19,10 +25,18 @@ import org.springframework.boot.test.context.SpringBootTest;
 @EnableAutoConfiguration
 class RotatingSecretsApplicationTests {
 
+  private static final Path SECRETS = createSecrets();
+
   @Autowired private DataSource dataSource;
 
   @Autowired private DemoDatabasePollingService pollingService;
 
+  @DynamicPropertySource
+  static void secrets(DynamicPropertyRegistry registry) {
+    // The auto-configured credentials provider needs a readable secrets directory
+    registry.add("k8s.secrets.path", SECRETS::toString);
+  }
+
   @Test
   void contextLoads() {
     assertNotNull(dataSource);
@@ -53,4 +67,15 @@ class RotatingSecretsApplicationTests {
     assertDoesNotThrow(() -> pollingService.pollSlow());
     assertDoesNotThrow(() -> pollingService.pollFast());
   }
+
+  private static Path createSecrets() {
+    try {
+      Path dir = Files.createTempDirectory("demo-secrets");
+      Files.writeString(dir.resolve("username"), "sa");
+      Files.writeString(dir.resolve("password"), "");
+      return dir;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 }
@@ -0,0 +1,95 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A throwaway secrets directory for benchmarks.
+ *
+ * <p>The directory is created under {@code /dev/shm} where that tmpfs is available, so that the
+ * measurements cover the rotation code rather than disk latency, and under {@code java.io.tmpdir}
+ * otherwise. The {@code benchmark.secrets.root} system property selects another parent directory.
+ *
+ * <p>Files are replaced atomically, as the kubelet and Vault Agent do, so that a watch event can
+ * never observe a half-written file and publish a rotation the benchmark did not make.
+ */
+final class BenchmarkSecrets implements AutoCloseable {
+
+  private final Path directory;
+
+  private BenchmarkSecrets(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Creates a secrets directory holding the given credentials.
+   *
+   * @param username the initial {@code username} file content
+   * @param password the initial {@code password} file content
+   * @return the directory
+   * @throws IOException if the directory or files cannot be created
+   */
+  static BenchmarkSecrets create(String username, String password) throws IOException {
+    BenchmarkSecrets secrets =
+        new BenchmarkSecrets(Files.createTempDirectory(root(), "rotating-secrets-bench"));
+    secrets.write(username, password);
+    return secrets;
+  }
+
+  private static Path root() {
+    String configured = System.getProperty("benchmark.secrets.root");
+    if (configured != null) {
+      return Path.of(configured);
+    }
+    Path shm = Path.of("/dev/shm");
+    return Files.isDirectory(shm) && Files.isWritable(shm)
+        ? shm
+        : Path.of(System.getProperty("java.io.tmpdir"));
+  }
+
+  Path directory() {
+    return directory;
+  }
+
+  void write(String username, String password) throws IOException {
+    writeUsername(username);
+    writePassword(password);
+  }
+
+  void writeUsername(String username) throws IOException {
+    replace("username", username);
+  }
+
+  void writePassword(String password) throws IOException {
+    replace("password", password);
+  }
+
+  private void replace(String name, String content) throws IOException {
+    Path staged = Files.writeString(directory.resolve("." + name + ".tmp"), content);
+    PosixFileAttributeView view = Files.getFileAttributeView(staged, PosixFileAttributeView.class);
+    if (view != null) {
+      // Keep the service's world-readable warning out of the benchmark output
+      view.setPermissions(PosixFilePermissions.fromString("rw-------"));
+    }
+    Files.move(
+        staged,
+        directory.resolve(name),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import com.maybeitssquid.rotatingsecrets.hikari.HikariCredentialsUpdater;
+import com.zaxxer.hikari.util.Credentials;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link HikariCredentialsUpdater#getCredentials()}, which HikariCP calls for every
+ * new connection, with and without a thread publishing rotations at full speed.
+ *
+ * <p>The {@code readers} group only reads; in the {@code rotating} group one thread replaces the
+ * credentials continuously while the others read, which is far more often than any real rotation
+ * and bounds the cost of the volatile publication seen by readers.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CredentialsProviderBenchmark {
+
+  private HikariCredentialsUpdater updater;
+
+  /** Creates the benchmark state. */
+  public CredentialsProviderBenchmark() {
+    // Instantiated by JMH
+  }
+
+  /** Creates an updater holding its first generation. */
+  @Setup
+  public void setUp() {
+    updater = new HikariCredentialsUpdater("app", "initial");
+    updater.setCredential(new CredentialSnapshot<>("app", "first", 1, Instant.now()));
+  }
+
+  /**
+   * Reads the credentials without concurrent rotations.
+   *
+   * @return the credentials
+   */
+  @Benchmark
+  @Group("readers")
+  @GroupThreads(8)
+  public Credentials uncontended() {
+    return updater.getCredentials();
+  }
+
+  /**
+   * Reads the credentials while another thread rotates them.
+   *
+   * @return the credentials
+   */
+  @Benchmark
+  @Group("rotating")
+  @GroupThreads(7)
+  public Credentials read() {
+    return updater.getCredentials();
+  }
+
+  /**
+   * Publishes the next generation.
+   *
+   * @param rotations the rotating thread's generation counter
+   */
+  @Benchmark
+  @Group("rotating")
+  @GroupThreads(1)
+  public void rotate(Rotations rotations) {
+    updater.setCredential(rotations.next());
+  }
+
+  /** The generations published by the rotating thread. */
+  @State(Scope.Thread)
+  public static class Rotations {
+
+    private CredentialSnapshot<String> current =
+        new CredentialSnapshot<>("app", "first", 1, Instant.now());
+
+    /** Creates the counter. */
+    public Rotations() {
+      // Instantiated by JMH
+    }
+
+    CredentialSnapshot<String> next() {
+      current =
+          current.next("app", (current.generation() & 1) == 0 ? "even" : "odd", Instant.now());
+      return current;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import com.maybeitssquid.rotatingsecrets.registry.CredentialsRegistry;
+import com.maybeitssquid.rotatingsecrets.registry.DataSourceRegistrar;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Definition;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Pool;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+/**
+ * Latency distribution of borrowing and returning a connection from an H2-backed HikariCP or UCP
+ * pool while credentials rotate at a fixed rate.
+ *
+ * <p>The pool is created through {@link DataSourceRegistrar}, as for a {@code
+ * rotating-secrets.datasources.<name>} entry. Rotations alternate the {@code username} file between
+ * two H2 users with the same password, so every rotation is a real credential change that the pool
+ * has to move its connections onto. A rate of {@code 0} measures the pool without rotations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class PoolConnectionBenchmark {
+
+  private static final String[] USERS = {"BENCH_A", "BENCH_B"};
+  private static final String PASSWORD = "bench";
+
+  /** The pool implementation. */
+  @Param({"HIKARI", "UCP"})
+  public Pool pool;
+
+  /** Credential rotations per second; {@code 0} disables rotation. */
+  @Param({"0", "10"})
+  public int rotationsPerSecond;
+
+  private Connection admin;
+  private BenchmarkSecrets secrets;
+  private CredentialsRegistry registry;
+  private DataSource dataSource;
+  private ScheduledExecutorService rotator;
+  private long rotations;
+
+  /** Creates the benchmark state. */
+  public PoolConnectionBenchmark() {
+    // Instantiated by JMH
+  }
+
+  /**
+   * Creates the database users, the secrets directory and the pool, and starts rotating.
+   *
+   * @throws IOException if the secrets cannot be written
+   * @throws SQLException if the database or pool cannot be set up
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, SQLException {
+    String url = "jdbc:h2:mem:bench-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+    admin = DriverManager.getConnection(url, "sa", "");
+    try (Statement stmt = admin.createStatement()) {
+      for (String user : USERS) {
+        stmt.execute("CREATE USER " + user + " PASSWORD '" + PASSWORD + "' ADMIN");
+      }
+    }
+    secrets = BenchmarkSecrets.create(USERS[0], PASSWORD);
+
+    registry = new CredentialsRegistry();
+    DataSourceRegistrar registrar =
+        new DataSourceRegistrar(
+            registry, new RotatingDataSourceProperties(), new StaticListableBeanFactory());
+    Definition definition = new Definition();
+    definition.setSecretsPath(secrets.directory().toString());
+    definition.setPool(pool);
+    definition.setUrl(url);
+    definition.setDriverClassName(
+        pool == Pool.UCP ? "org.h2.jdbcx.JdbcDataSource" : "org.h2.Driver");
+    definition.setMaximumPoolSize(8);
+    definition.setMinimumIdle(2);
+    dataSource = registrar.bind("bench-" + pool, definition);
+
+    if (rotationsPerSecond > 0) {
+      rotator =
+          Executors.newSingleThreadScheduledExecutor(
+              task -> {
+                Thread thread = new Thread(task, "benchmark-rotator");
+                thread.setDaemon(true);
+                return thread;
+              });
+      long periodMicros = TimeUnit.SECONDS.toMicros(1) / rotationsPerSecond;
+      rotator.scheduleAtFixedRate(this::rotate, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+  }
+
+  private void rotate() {
+    try {
+      secrets.writeUsername(USERS[(int) (++rotations % USERS.length)]);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Stops rotating and closes the pool and database.
+   *
+   * @throws IOException if the secrets directory cannot be deleted
+   * @throws SQLException if the database cannot be closed
+   * @throws InterruptedException if interrupted while waiting for the last rotation
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, SQLException, InterruptedException {
+    if (rotator != null) {
+      rotator.shutdownNow();
+      rotator.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    registry.close();
+    admin.close();
+    secrets.close();
+  }
+
+  /**
+   * Borrows a connection and returns it to the pool.
+   *
+   * @param blackhole consumes the connection
+   * @throws SQLException if no connection can be obtained
+   */
+  @Benchmark
+  public void getConnection(Blackhole blackhole) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      blackhole.consume(connection);
+    }
+  }
+}
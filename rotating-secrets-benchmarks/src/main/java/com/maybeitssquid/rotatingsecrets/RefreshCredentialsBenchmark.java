@@ -0,0 +1,144 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one {@link CredentialsProviderService#refreshCredentials()} call, the work done on every
+ * watch event and fallback check.
+ *
+ * <p>{@code unchanged} measures the fingerprint fast path that skips reading the files. {@code
+ * changed} rewrites the password before each call, so every call reads both files, publishes a new
+ * generation and fans it out to one no-op component. The rewrite runs in an invocation-level setup
+ * and is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefreshCredentialsBenchmark {
+
+  /** Creates the benchmark. */
+  public RefreshCredentialsBenchmark() {
+    // Instantiated by JMH
+  }
+
+  /**
+   * Refreshes after the password file was rewritten.
+   *
+   * @param changed state whose password is rewritten before each call
+   * @return whether the pair was published
+   */
+  @Benchmark
+  public boolean changed(Changed changed) {
+    return changed.service.refreshCredentials();
+  }
+
+  /**
+   * Refreshes with the files unchanged since the last read.
+   *
+   * @param unchanged state whose files are never rewritten
+   * @return whether the pair was published
+   */
+  @Benchmark
+  public boolean unchanged(Unchanged unchanged) {
+    return unchanged.service.refreshCredentials();
+  }
+
+  /** A service reading its own secrets directory, without a watch. */
+  public abstract static class Source {
+
+    BenchmarkSecrets secrets;
+    CredentialsProviderService service;
+
+    /** Creates the state. */
+    protected Source() {
+      // Instantiated by JMH
+    }
+
+    /**
+     * Creates the secrets directory and reads it once.
+     *
+     * @throws IOException if the secrets cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      secrets = BenchmarkSecrets.create("app", "initial");
+      service = new CredentialsProviderService(secrets.directory().toString(), 600_000);
+      service.addUpdatable((username, credential) -> {});
+      service.initialize();
+    }
+
+    /**
+     * Removes the secrets directory.
+     *
+     * @throws IOException if the directory cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      service.stop();
+      secrets.close();
+    }
+  }
+
+  /** A source whose password is rewritten before every call. */
+  @State(Scope.Thread)
+  public static class Changed extends Source {
+
+    private long writes;
+
+    /** Creates the state. */
+    public Changed() {
+      // Instantiated by JMH
+    }
+
+    /**
+     * Writes a new password, alternating its length so that the file's fingerprint always moves.
+     *
+     * @throws IOException if the password cannot be written
+     */
+    @Setup(Level.Invocation)
+    public void rotatePassword() throws IOException {
+      writes++;
+      secrets.writePassword((writes & 1) == 0 ? "password-" + writes : "pw-" + writes);
+    }
+  }
+
+  /** A source whose files are never rewritten. */
+  @State(Scope.Thread)
+  public static class Unchanged extends Source {
+
+    /** Longer than the window in which a fingerprint is considered racily clean. */
+    private static final long SETTLE_MS = SecretFingerprint.RACY_WINDOW_MS + 500;
+
+    /** Creates the state. */
+    public Unchanged() {
+      // Instantiated by JMH
+    }
+
+    /**
+     * Reads the files again once they are old enough that their fingerprints can be trusted, so
+     * that every measured call takes the fast path.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Setup(Level.Trial)
+    public void settle() throws InterruptedException {
+      Thread.sleep(SETTLE_MS);
+      service.refreshCredentials();
+    }
+  }
+}
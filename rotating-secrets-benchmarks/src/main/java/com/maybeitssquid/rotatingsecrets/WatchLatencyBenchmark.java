@@ -0,0 +1,100 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end latency from replacing a secret file to {@link UpdatableCredential#setCredential}
+ * being called with the new value, through the {@link SecretsWatcher} watch thread, the change
+ * detection and the rotation fan-out.
+ *
+ * <p>Each call swaps the {@code username} file and waits for the component to receive it. The
+ * secrets live on tmpfs where available (see {@link BenchmarkSecrets}); on file systems where the
+ * JDK polls for changes instead of receiving native events, the result is dominated by the polling
+ * interval.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WatchLatencyBenchmark {
+
+  /** Milliseconds the watcher waits for further events before checking; 0 checks at once. */
+  @Param({"0"})
+  public long quietPeriodMs;
+
+  private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+  private BenchmarkSecrets secrets;
+  private CredentialsProviderService service;
+  private long rotations;
+
+  /** Creates the benchmark state. */
+  public WatchLatencyBenchmark() {
+    // Instantiated by JMH
+  }
+
+  /**
+   * Creates the secrets directory and starts a service watching it.
+   *
+   * @throws IOException if the secrets cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    secrets = BenchmarkSecrets.create("app-0", "secret");
+    service = new CredentialsProviderService(secrets.directory().toString(), 600_000);
+    service.setQuietPeriodMs(quietPeriodMs);
+    service.addUpdatable((username, credential) -> received.add(username));
+    service.start();
+    received.clear();
+  }
+
+  /**
+   * Stops the service and removes the secrets directory.
+   *
+   * @throws IOException if the directory cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    service.stop();
+    secrets.close();
+  }
+
+  /**
+   * Replaces the username file and waits until the component has received it.
+   *
+   * @return the username received
+   * @throws IOException if the file cannot be replaced
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Benchmark
+  public String fileChangeToSetCredential() throws IOException, InterruptedException {
+    String username = "app-" + ++rotations;
+    secrets.writeUsername(username);
+    while (true) {
+      String next = received.poll(10, TimeUnit.SECONDS);
+      if (next == null) {
+        throw new IllegalStateException("Rotation to " + username + " was not delivered");
+      }
+      if (next.equals(username)) {
+        return next;
+      }
+    }
+  }
+}
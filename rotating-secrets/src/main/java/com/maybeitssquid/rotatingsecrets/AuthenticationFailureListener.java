@@ -0,0 +1,36 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.SQLException;
+
+/**
+ * Receives reports of new connections that the database refused to authenticate.
+ *
+ * <p>{@link CredentialsProviderService} hands itself to every registered {@link
+ * SnapshotAwareCredential} as a listener. Components that can observe their pool's connection
+ * attempts report each authentication failure together with the generation of the credentials that
+ * were rejected. The service re-reads the secret files in case newer credentials are already there,
+ * and otherwise counts the failure towards rolling the rotation back.
+ *
+ * @see SnapshotAwareCredential#setAuthenticationFailureListener(AuthenticationFailureListener)
+ * @see AuthenticationFailures
+ */
+@FunctionalInterface
+public interface AuthenticationFailureListener {
+
+  /**
+   * Reports that a new connection was refused because its credentials were rejected.
+   *
+   * <p>Called from the pool's connection-creation threads. Implementations must be thread-safe;
+   * they may block while the credentials are re-read and applied, but no longer than {@code
+   * timeoutMs}.
+   *
+   * @param generation the {@linkplain CredentialSnapshot#generation() generation} of the rejected
+   *     credentials
+   * @param failure the exception raised by the driver
+   * @param timeoutMs how long the caller can wait, in milliseconds; normally the time the pool lets
+   *     a connection request take
+   * @return {@code true} if newer credentials have been published, so that the attempt should be
+   *     retried once with them
+   */
+  boolean authenticationFailed(long generation, SQLException failure, long timeoutMs);
+}
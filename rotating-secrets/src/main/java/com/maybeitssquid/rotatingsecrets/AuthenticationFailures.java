@@ -0,0 +1,64 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.SQLException;
+import java.sql.SQLInvalidAuthorizationSpecException;
+
+/**
+ * Classifies JDBC exceptions raised when a database rejects a login.
+ *
+ * <p>A failure counts as an authentication failure if any exception in its cause chain, or in the
+ * chain of {@linkplain SQLException#getNextException() next exceptions}, is one of:
+ *
+ * <ul>
+ *   <li>a {@link SQLInvalidAuthorizationSpecException};
+ *   <li>an exception with an SQLState in class {@code 28} (invalid authorization specification),
+ *       such as {@code 28000}, or PostgreSQL's {@code 28P01}; or
+ *   <li>Oracle's {@code ORA-01017} (invalid username/password), which the thin driver reports with
+ *       vendor code {@code 1017} and SQLState {@code 72000}.
+ * </ul>
+ */
+public final class AuthenticationFailures {
+
+  /** Oracle's vendor code for "invalid username/password; logon denied". */
+  private static final int ORA_INVALID_CREDENTIALS = 1017;
+
+  /** Bounds the walk over cause and next-exception chains, which may be cyclic. */
+  private static final int MAX_DEPTH = 32;
+
+  private AuthenticationFailures() {}
+
+  /**
+   * Returns whether a failure means the database rejected the credentials.
+   *
+   * @param failure the exception to classify; may be {@code null}
+   * @return {@code true} if the failure is an authentication failure
+   */
+  public static boolean isAuthenticationFailure(Throwable failure) {
+    Throwable current = failure;
+    for (int depth = 0; current != null && depth < MAX_DEPTH; depth++) {
+      if (current instanceof SQLException sql) {
+        if (isAuthenticationFailure(sql)) {
+          return true;
+        }
+        final SQLException next = sql.getNextException();
+        if (next != null && next != sql.getCause() && isAuthenticationFailure(next)) {
+          return true;
+        }
+      }
+      current = current.getCause() != current ? current.getCause() : null;
+    }
+    return false;
+  }
+
+  private static boolean isAuthenticationFailure(SQLException failure) {
+    if (failure instanceof SQLInvalidAuthorizationSpecException) {
+      return true;
+    }
+    final String state = failure.getSQLState();
+    if (state != null && state.startsWith("28")) {
+      return true;
+    }
+    return failure.getErrorCode() == ORA_INVALID_CREDENTIALS
+        && ("72000".equals(state) || String.valueOf(failure.getMessage()).contains("ORA-01017"));
+  }
+}
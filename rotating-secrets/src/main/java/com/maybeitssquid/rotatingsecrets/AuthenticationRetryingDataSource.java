@@ -0,0 +1,109 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import oracle.ucp.jdbc.PoolDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Data source that recovers from connection requests rejected with stale credentials.
+ *
+ * <p>Wraps the application-facing data source of a rotating pool. When a connection request fails
+ * with an {@linkplain AuthenticationFailures#isAuthenticationFailure(Throwable) authentication
+ * failure}, the wrapper asks the {@link CredentialsProviderService} to re-read the secret files
+ * immediately (see {@link CredentialsProviderService#refreshAfterAuthenticationFailure(long,
+ * long)}). If that publishes a newer credential generation, the request is retried once; otherwise
+ * the original failure is rethrown. Concurrent failures share one re-read. The request waits for
+ * the re-read no longer than the pool's connection timeout: HikariCP's {@code connectionTimeout},
+ * UCP's connection wait duration, or 30 seconds for other pools unless a timeout is given.
+ *
+ * <p>This is most useful in front of pools that fail connection requests as soon as a login is
+ * rejected, such as Oracle UCP. HikariCP pools set up with {@link
+ * com.maybeitssquid.rotatingsecrets.hikari.HikariCredentialsUpdater#configure(com.zaxxer.hikari.HikariConfig)}
+ * already take the same fast path when the pool itself opens a connection.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe.
+ */
+public class AuthenticationRetryingDataSource extends DelegatingDataSource {
+
+  private static final Logger log = LoggerFactory.getLogger(AuthenticationRetryingDataSource.class);
+
+  private static final long DEFAULT_REFRESH_TIMEOUT_MS = 30_000;
+
+  private final CredentialsProviderService credentialsProvider;
+
+  /** How long a request waits for the re-read, or {@code -1} to use the pool's timeout. */
+  private final long refreshTimeoutMs;
+
+  /**
+   * Creates a data source that retries rejected connection requests once after a credential
+   * refresh, waiting for the refresh no longer than the pool's connection timeout.
+   *
+   * @param target the pool's data source
+   * @param credentialsProvider the service that supplies the pool's credentials
+   */
+  public AuthenticationRetryingDataSource(
+      DataSource target, CredentialsProviderService credentialsProvider) {
+    this(target, credentialsProvider, -1);
+  }
+
+  /**
+   * Creates a data source that retries rejected connection requests once after a credential
+   * refresh.
+   *
+   * @param target the pool's data source
+   * @param credentialsProvider the service that supplies the pool's credentials
+   * @param refreshTimeoutMs how long a rejected request waits for the refresh, in milliseconds
+   */
+  public AuthenticationRetryingDataSource(
+      DataSource target, CredentialsProviderService credentialsProvider, long refreshTimeoutMs) {
+    super(target);
+    this.credentialsProvider = credentialsProvider;
+    this.refreshTimeoutMs = refreshTimeoutMs;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    final CredentialSnapshot<String> before = credentialsProvider.getCurrentSnapshot();
+    try {
+      return super.getConnection();
+    } catch (SQLException e) {
+      if (before == null
+          || !AuthenticationFailures.isAuthenticationFailure(e)
+          || !credentialsProvider.refreshAfterAuthenticationFailure(
+              before.generation(), refreshTimeoutMs())) {
+        throw e;
+      }
+      log.info(
+          "Connection rejected with credentials generation {}; retrying with generation {}",
+          before.generation(),
+          credentialsProvider.getCurrentSnapshot().generation());
+      try {
+        return super.getConnection();
+      } catch (SQLException retryFailure) {
+        retryFailure.addSuppressed(e);
+        throw retryFailure;
+      }
+    }
+  }
+
+  private long refreshTimeoutMs() throws SQLException {
+    if (refreshTimeoutMs >= 0) {
+      return refreshTimeoutMs;
+    }
+    final DataSource target = obtainTargetDataSource();
+    if (target.isWrapperFor(HikariConfigMXBean.class)) {
+      return target.unwrap(HikariConfigMXBean.class).getConnectionTimeout();
+    }
+    if (target.isWrapperFor(PoolDataSource.class)) {
+      return target.unwrap(PoolDataSource.class).getConnectionWaitDuration().toMillis();
+    }
+    return DEFAULT_REFRESH_TIMEOUT_MS;
+  }
+}
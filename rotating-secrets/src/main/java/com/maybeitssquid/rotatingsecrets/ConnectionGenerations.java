@@ -0,0 +1,102 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers which credential generation each physical connection was opened with, so that a {@link
+ * RollingEvictor} retires exactly the connections a rotation superseded.
+ *
+ * <p>The HikariCP and Oracle UCP updaters record connections where their pools open them: the data
+ * source installed by {@code HikariCredentialsUpdater.configure} and the {@code
+ * RotatingConnectionFactory}. Pools hand out wrappers around those connections, so lookups unwrap a
+ * borrowed connection to the physical one first. Connections are held weakly and dropped once the
+ * pool discards them.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe.
+ */
+public final class ConnectionGenerations {
+
+  private final Map<Connection, Long> generations =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /** Creates an empty registry. */
+  public ConnectionGenerations() {
+    // Connections are recorded as pools open them
+  }
+
+  /**
+   * Records the generation of the credentials a physical connection was opened with.
+   *
+   * @param connection the connection returned by the driver
+   * @param generation the {@linkplain CredentialSnapshot#generation() generation} of its
+   *     credentials
+   */
+  public void opened(Connection connection, long generation) {
+    generations.put(connection, generation);
+  }
+
+  /**
+   * Returns the generation a connection was opened with.
+   *
+   * @param connection a physical connection, or a pool's wrapper around one
+   * @return the generation, or {@code -1} if the connection was not recorded
+   */
+  public long generationOf(Connection connection) {
+    final Long generation = generations.get(physical(connection));
+    return generation != null ? generation : -1;
+  }
+
+  /**
+   * Forgets a connection, for example once it has been evicted.
+   *
+   * @param connection a physical connection, or a pool's wrapper around one
+   */
+  public void forget(Connection connection) {
+    generations.remove(physical(connection));
+  }
+
+  /**
+   * Counts the open connections that were opened with credentials older than a generation.
+   *
+   * @param generation the current generation
+   * @return the count of superseded connections still open, or {@code -1} if no connection has been
+   *     recorded, in which case the pool cannot tell its connections apart
+   */
+  public int countOlderThan(long generation) {
+    synchronized (generations) {
+      if (generations.isEmpty()) {
+        return -1;
+      }
+      int count = 0;
+      for (Map.Entry<Connection, Long> entry : generations.entrySet()) {
+        if (entry.getValue() < generation && !isClosed(entry.getKey())) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  private static Connection physical(Connection connection) {
+    try {
+      final Connection unwrapped = connection.unwrap(Connection.class);
+      return unwrapped != null ? unwrapped : connection;
+    } catch (SQLException e) {
+      return connection;
+    }
+  }
+
+  private static boolean isClosed(Connection connection) {
+    try {
+      return connection.isClosed();
+    } catch (SQLException e) {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Immutable view of one credential rotation: the username and secret that were read together, the
+ * rotation's generation number and when it was loaded.
+ *
+ * <p>A snapshot is published through a single atomic reference, so a reader always sees a username
+ * and secret from the same rotation and never a torn pair. Generations start at {@code 1} and
+ * increase by one with every rotation published by a {@link CredentialsProviderService}, letting
+ * pools, logs and metrics correlate connections with the rotation whose credentials created them.
+ *
+ * <p>{@link #toString()} never includes the secret.
+ *
+ * @param <T> the type of the secret (typically {@link String} for passwords)
+ * @param username the username
+ * @param secret the secret (password) read together with the username
+ * @param generation the rotation number, increasing by one with every published rotation
+ * @param loadedAt when the pair was read from the secret files
+ * @see CredentialsProviderService#getCurrentSnapshot()
+ * @see SnapshotAwareCredential
+ */
+public record CredentialSnapshot<T>(String username, T secret, long generation, Instant loadedAt) {
+
+  /**
+   * Creates a snapshot, requiring every component to be present.
+   *
+   * @throws NullPointerException if any component is {@code null}
+   */
+  public CredentialSnapshot {
+    Objects.requireNonNull(username, "username");
+    Objects.requireNonNull(secret, "secret");
+    Objects.requireNonNull(loadedAt, "loadedAt");
+  }
+
+  /**
+   * Returns the snapshot that follows this one, with the next generation number.
+   *
+   * @param username the new username
+   * @param secret the new secret
+   * @param loadedAt when the new pair was read
+   * @return a snapshot whose generation is one greater than this one's
+   */
+  public CredentialSnapshot<T> next(String username, T secret, Instant loadedAt) {
+    return new CredentialSnapshot<>(username, secret, generation + 1, loadedAt);
+  }
+
+  @Override
+  public String toString() {
+    return "CredentialSnapshot[username="
+        + username
+        + ", generation="
+        + generation
+        + ", loadedAt="
+        + loadedAt
+        + ']';
+  }
+}
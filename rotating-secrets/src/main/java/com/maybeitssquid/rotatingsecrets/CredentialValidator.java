@@ -0,0 +1,30 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.SQLException;
+
+/**
+ * Checks that candidate credentials are accepted by the database before they are committed to the
+ * connection pools.
+ *
+ * <p>When a validator is configured, {@link CredentialsProviderService} probes every newly read
+ * credential pair with it and only notifies the registered {@link UpdatableCredential} components
+ * once the probe succeeds. Until then the current generation stays in service, so credentials that
+ * the database does not accept yet, for example because of replication lag, delay the rotation
+ * instead of evicting every pool.
+ *
+ * @see JdbcCredentialValidator
+ */
+@FunctionalInterface
+public interface CredentialValidator {
+
+  /**
+   * Verifies that the database accepts the given credentials.
+   *
+   * <p>Implementations should bound the time they take, typically with a login timeout.
+   *
+   * @param username the candidate username
+   * @param credential the candidate password
+   * @throws SQLException if the credentials are rejected or the database cannot be reached
+   */
+  void validate(String username, String credential) throws SQLException;
+}
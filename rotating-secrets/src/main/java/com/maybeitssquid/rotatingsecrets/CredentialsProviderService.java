@@ -1,24 +1,47 @@
 package com.maybeitssquid.rotatingsecrets;
 
+import com.maybeitssquid.rotatingsecrets.jfr.ChangeDetectionEvent;
+import com.maybeitssquid.rotatingsecrets.jfr.CredentialUpdateEvent;
+import com.maybeitssquid.rotatingsecrets.jfr.SecretsCheckEvent;
+import com.maybeitssquid.rotatingsecrets.jfr.SecretsReadEvent;
 import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
+import java.nio.file.WatchEvent;
 import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Service;
 
 /**
@@ -26,9 +49,11 @@ import org.springframework.stereotype.Service;
  * registered {@link UpdatableCredential} components when credentials change.
  *
  * <p>This service implements the credential rotation pattern for Kubernetes environments. It
- * watches the secrets directory for changes using {@link WatchService} (typically mounted by a
- * secrets manager like HashiCorp Vault, OpenBao, or the External Secrets Operator). When
+ * watches the secrets directory for changes through a {@link SecretsWatcher} (typically mounted by
+ * a secrets manager like HashiCorp Vault, OpenBao, or the External Secrets Operator). When
  * credentials change, all registered connection pools are notified to update their credentials.
+ * Several services, one per secrets directory, can share a watcher through a {@link
+ * com.maybeitssquid.rotatingsecrets.registry.CredentialsRegistry}.
  *
  * <h2>File Structure</h2>
  *
@@ -55,20 +80,38 @@ import org.springframework.stereotype.Service;
  *       re-check is forced after this interval even if no watch event fires (default: 30000)
  * </ul>
  *
+ * <p>The remaining {@code k8s.secrets.*} settings are described on their setters.
+ *
  * <h2>Thread Safety</h2>
  *
- * <p>This service is thread-safe. Credential reads and updates are performed atomically, and the
- * list of updatable components is safely managed.
+ * <p>This service is thread-safe. Each rotation is published as one immutable {@link
+ * CredentialSnapshot}, so readers never observe a username from one rotation paired with a password
+ * from another, and the list of updatable components is safely managed.
  *
  * @see UpdatableCredential
  * @see com.maybeitssquid.rotatingsecrets.hikari.HikariCredentialsUpdater
  * @see com.maybeitssquid.rotatingsecrets.ucp.UcpCredentialsUpdater
  */
 @Service("credentialsProvider")
-public class CredentialsProviderService {
+public class CredentialsProviderService implements SmartLifecycle {
 
   private static final Logger log = LoggerFactory.getLogger(CredentialsProviderService.class);
 
+  /**
+   * Name of the symlink the kubelet atomically swaps to publish a new secret version.
+   *
+   * <p>When the secrets directory contains this link, it points at a timestamped {@code
+   * ..<timestamp>} directory holding the real files, and only create/delete events on the link
+   * trigger a re-read. Without it, any directory event triggers a re-read.
+   */
+  static final String DATA_LINK = "..data";
+
+  /** Delay before re-checking an inconsistent pair when no quiet period is configured. */
+  private static final long INCONSISTENT_RETRY_MS = 250;
+
+  /** How long a caller waits for an urgent refresh by default: HikariCP's connection timeout. */
+  private static final long DEFAULT_URGENT_REFRESH_WAIT_MS = 30_000;
+
   /** Path to the file containing the database username. */
   protected final Path usernamePath;
 
@@ -77,14 +120,103 @@ public class CredentialsProviderService {
 
   private final long refreshIntervalMs;
 
-  private volatile String username;
-  private volatile String password;
+  /** Adaptive fallback schedule; replaced, never mutated in place, by the ceiling setter. */
+  private volatile RefreshSchedule schedule;
+
+  private volatile long quietPeriodMs = 0;
+  private volatile SecretConsistency consistency = SecretConsistency.NONE;
+  private volatile long mtimeToleranceMs = 1000;
+  private volatile String versionFileName = "version";
+
+  /** The most recently published rotation, or {@code null} before the first successful read. */
+  private final AtomicReference<CredentialSnapshot<String>> snapshot = new AtomicReference<>();
+
   private volatile boolean warnedFilesUnavailable = false;
+  private volatile long inconsistentSinceNanos = -1;
+  private volatile boolean contentHash = false;
+
+  /**
+   * Fingerprints of the username and password files at the last read, compared on the watch thread
+   * without taking the service lock. Written under {@code this}.
+   */
+  private volatile LastRead lastRead;
+
+  private byte[] contentDigest;
+  private MessageDigest contentDigester;
+
+  /** Lease of the current generation, and of the superseded one until it is retired. */
+  private SecretLease currentLease;
+
+  private SecretLease retiringLease;
+  private SecretFingerprint leaseFingerprint;
+  private volatile String leaseFileName = "lease_expiry";
+  private volatile long leaseMarginMs = 60000;
+
+  private volatile CredentialValidator validator;
+  private volatile int validationAttempts = 5;
+  private volatile long validationBackoffMs = 1000;
+  private volatile long validationTimeoutMs = 10000;
+
+  private volatile long rotationJitterMs = 0;
+  private volatile String jitterSeed = "";
+  private volatile RotationJitter jitter = RotationJitter.NONE;
+
+  /** When the pending rotation may be applied, or {@code -1} if none is pending. */
+  private long pendingApplyAtMillis = -1;
+
+  private final GracePeriod gracePeriod = new GracePeriod();
+  private final UrgentRefresh urgentRefresh;
+
+  /** Consecutive failed validation probes. Guarded by {@code this}. */
+  private int validationFailures;
+
+  /** Reusable read buffers for each file, so that re-reading them does not allocate. */
+  private final SecretFileReader usernameReader = new SecretFileReader();
+
+  private final SecretFileReader passwordReader = new SecretFileReader();
+
+  /**
+   * The current password, zeroed when a rotation supersedes it. Because HikariCP and Oracle UCP
+   * only accept {@code String} passwords, each rotation creates exactly one password {@code
+   * String}, shared by every pool through the {@link CredentialSnapshot}. Guarded by {@code this}.
+   */
+  private Secret password;
+
+  private final LongAdder skippedReads = new LongAdder();
+  private final LongAdder performedReads = new LongAdder();
 
   private final List<UpdatableCredential<String>> updatables = new CopyOnWriteArrayList<>();
 
-  private Thread watchThread;
-  private WatchService watchService;
+  private volatile Executor rotationExecutor;
+
+  /**
+   * A refresh handed from the watch thread to the rotation executor that has not been collected.
+   */
+  private volatile CompletableFuture<Long> pendingCheck;
+
+  /** Serializes the fan-out so that components receive generations in order. */
+  private final Object fanOutLock = new Object();
+
+  /** The newest generation handed to the components. Guarded by {@link #fanOutLock}. */
+  private long deliveredGeneration;
+
+  private volatile long updaterTimeoutMs = 30000;
+  private volatile RotationResult lastRotationResult;
+
+  private SecretsWatcher watcher;
+  private boolean ownsWatcher;
+  private volatile SecretsWatcher.Registration registration;
+  private volatile boolean initialized;
+  private volatile boolean suspended;
+
+  private final String source;
+  private volatile RotationMetrics metrics = RotationMetrics.NONE;
+
+  /** Set when a relevant watch event arrives; consumed by the next check. */
+  private volatile boolean eventPending;
+
+  /** Set when a check is requested explicitly; consumed by the next check. */
+  private volatile boolean checkRequested;
 
   /**
    * Creates a new credentials provider reading from the specified secrets path.
@@ -101,52 +233,391 @@ public class CredentialsProviderService {
       @Value("${k8s.secrets.path:/var/run/secrets/database}") String secretsPath,
       @Value("${k8s.secrets.refreshInterval:30000}") long refreshIntervalMs) {
     Path basePath = Path.of(secretsPath);
+    this.source = basePath.toString();
     this.usernamePath = basePath.resolve("username");
     this.passwordPath = basePath.resolve("password");
     this.refreshIntervalMs = refreshIntervalMs;
+    this.schedule = new RefreshSchedule(refreshIntervalMs, refreshIntervalMs);
+    this.urgentRefresh =
+        new UrgentRefresh(
+            source,
+            rejected -> refreshCredentials(true, RotationMetrics.Trigger.REQUEST),
+            this::rotationExecutor);
+  }
+
+  /**
+   * Sets the ceiling for backing the fallback interval off while the secrets are stable.
+   *
+   * <p>The fallback interval starts at {@code k8s.secrets.refreshInterval}, doubles after every
+   * check that finds the secrets unchanged up to this ceiling, and returns to the base interval
+   * after a rotation, a watch anomaly, or when the observed rotation cadence predicts a rotation
+   * soon. A value at or below the base interval keeps the fixed interval.
+   *
+   * @param maxRefreshIntervalMs the longest fallback interval in milliseconds; {@code 0} disables
+   *     backoff
+   */
+  @Value("${k8s.secrets.maxRefreshInterval:0}")
+  public void setMaxRefreshIntervalMs(long maxRefreshIntervalMs) {
+    this.schedule = new RefreshSchedule(refreshIntervalMs, maxRefreshIntervalMs);
+  }
+
+  /**
+   * Sets the quiet period used to coalesce bursts of directory events into a single read.
+   *
+   * @param quietPeriodMs milliseconds without further events to wait before reading; {@code 0}
+   *     reads immediately after the first event
+   */
+  @Value("${k8s.secrets.quietPeriod:0}")
+  public void setQuietPeriodMs(long quietPeriodMs) {
+    this.quietPeriodMs = quietPeriodMs;
+  }
+
+  /**
+   * Sets the check used to decide whether the secret files form a complete pair.
+   *
+   * <p>Writers such as Vault Agent templates render the two files separately. A pair that fails the
+   * check is re-checked shortly afterwards; if it is still inconsistent after the fallback interval
+   * it is accepted with a warning, so a writer that never satisfies the check cannot stall
+   * rotation.
+   *
+   * @param consistency the consistency check to apply before credentials are published
+   */
+  @Value("${k8s.secrets.consistency:NONE}")
+  public void setConsistency(SecretConsistency consistency) {
+    this.consistency = consistency;
+  }
+
+  /**
+   * Sets the tolerance for {@link SecretConsistency#MATCHING_MTIME}.
+   *
+   * @param mtimeToleranceMs maximum difference in milliseconds between the modification times of
+   *     the two secret files
+   */
+  @Value("${k8s.secrets.mtimeTolerance:1000}")
+  public void setMtimeToleranceMs(long mtimeToleranceMs) {
+    this.mtimeToleranceMs = mtimeToleranceMs;
+  }
+
+  /**
+   * Sets the name of the version file for {@link SecretConsistency#VERSION_FILE}.
+   *
+   * @param versionFileName name of the file, relative to the secrets directory, that the writer
+   *     updates after both secrets
+   */
+  @Value("${k8s.secrets.versionFile:version}")
+  public void setVersionFileName(String versionFileName) {
+    this.versionFileName = versionFileName;
+  }
+
+  /**
+   * Sets the validator that probes new credentials before they are committed to the pools.
+   *
+   * <p>If none is set, new credentials are committed as soon as they are read. A rejected pair
+   * leaves the current generation in service and is re-probed with exponential backoff; after
+   * {@code k8s.secrets.validationAttempts} rejections it is committed with a warning.
+   *
+   * @param validator the validator, typically a {@link JdbcCredentialValidator}
+   */
+  @Autowired(required = false)
+  @Qualifier("credentialValidator")
+  public void setCredentialValidator(CredentialValidator validator) {
+    this.validator = validator;
+  }
+
+  /**
+   * Sets how many validation probes a new pair may fail before it is committed regardless.
+   *
+   * @param validationAttempts the probe budget per candidate pair
+   */
+  @Value("${k8s.secrets.validationAttempts:5}")
+  public void setValidationAttempts(int validationAttempts) {
+    this.validationAttempts = validationAttempts;
+  }
+
+  /**
+   * Sets the delay before re-probing a rejected pair; it doubles with each further rejection.
+   *
+   * @param validationBackoffMs the initial backoff in milliseconds
+   */
+  @Value("${k8s.secrets.validationBackoff:1000}")
+  public void setValidationBackoffMs(long validationBackoffMs) {
+    this.validationBackoffMs = validationBackoffMs;
+  }
+
+  /**
+   * Sets how long a single validation probe may take before it counts as rejected.
+   *
+   * @param validationTimeoutMs the probe timeout in milliseconds
+   */
+  @Value("${k8s.secrets.validationTimeout:10000}")
+  public void setValidationTimeoutMs(long validationTimeoutMs) {
+    this.validationTimeoutMs = validationTimeoutMs;
+  }
+
+  /**
+   * Sets the name of the lease metadata file published alongside the secrets.
+   *
+   * <p>Dynamic database credentials are revoked when their lease expires. With a lease file, checks
+   * run at a focused interval around the current generation's expiry, and {@code
+   * k8s.secrets.leaseMargin} before the superseded generation's lease expires every component is
+   * asked to {@linkplain UpdatableCredential#retireGeneration(long) retire} its connections.
+   *
+   * @param leaseFileName name of the file, relative to the secrets directory, holding the lease
+   *     expiry in one of the formats accepted by {@link SecretLease}; empty to disable
+   */
+  @Value("${k8s.secrets.leaseFile:lease_expiry}")
+  public void setLeaseFileName(String leaseFileName) {
+    this.leaseFileName = leaseFileName;
+  }
+
+  /**
+   * Sets how long before a lease expires to start focused checks and to drain superseded
+   * connections.
+   *
+   * @param leaseMarginMs the margin in milliseconds
+   */
+  @Value("${k8s.secrets.leaseMargin:60000}")
+  public void setLeaseMarginMs(long leaseMarginMs) {
+    this.leaseMarginMs = leaseMarginMs;
+  }
+
+  /**
+   * Sets the window over which replicas spread applying a new credential generation.
+   *
+   * <p>Each instance waits a fixed, seed-derived offset within the window (see {@link
+   * RotationJitter}) before validating and applying a new generation, but never past {@code
+   * k8s.secrets.leaseMargin} before the current lease expires. The first credentials loaded at
+   * startup are applied immediately.
+   *
+   * @param rotationJitterMs the window width in milliseconds; {@code 0} applies rotations
+   *     immediately
+   */
+  @Value("${k8s.secrets.rotationJitter:0}")
+  public void setRotationJitterMs(long rotationJitterMs) {
+    this.rotationJitterMs = rotationJitterMs;
+    this.jitter = RotationJitter.of(jitterSeed, rotationJitterMs);
+  }
+
+  /**
+   * Sets the seed that places this instance within the jitter window.
+   *
+   * @param jitterSeed a stable, instance-unique value such as the pod name; empty selects the
+   *     {@code HOSTNAME} environment variable or the local host name
+   */
+  @Value("${k8s.secrets.jitterSeed:}")
+  public void setJitterSeed(String jitterSeed) {
+    this.jitterSeed = jitterSeed;
+    this.jitter = RotationJitter.of(jitterSeed, rotationJitterMs);
+  }
+
+  /**
+   * Sets how long the pair replaced by a rotation is kept so that the rotation can be rolled back.
+   *
+   * @param gracePeriodMs the grace period in milliseconds; {@code 0} disables rollback
+   * @see GracePeriod
+   */
+  @Value("${k8s.secrets.gracePeriod:0}")
+  public void setGracePeriodMs(long gracePeriodMs) {
+    gracePeriod.setPeriodMs(gracePeriodMs);
+  }
+
+  /**
+   * Sets how many authentication failures of the new generation within the grace period roll a
+   * rotation back.
+   *
+   * @param rollbackThreshold the number of reported failures
+   */
+  @Value("${k8s.secrets.rollbackThreshold:3}")
+  public void setRollbackThreshold(int rollbackThreshold) {
+    gracePeriod.setThreshold(rollbackThreshold);
+  }
+
+  /**
+   * Enables hashing the raw file contents as a tie-breaker when a fingerprint moves.
+   *
+   * @param contentHash {@code true} to skip comparing secrets whose contents hash to the current
+   *     credentials' digest
+   */
+  @Value("${k8s.secrets.contentHash:false}")
+  public void setContentHash(boolean contentHash) {
+    this.contentHash = contentHash;
+  }
+
+  /**
+   * Sets the shared watcher that multiplexes this service's directory watch with other sources.
+   *
+   * <p>If no watcher is set before {@link #start()}, the service creates and owns a private one.
+   *
+   * @param watcher the shared watcher to register the secrets directory with
+   */
+  @Autowired(required = false)
+  public void setSecretsWatcher(SecretsWatcher watcher) {
+    this.watcher = watcher;
   }
 
   /**
-   * Validates file permissions on startup and starts the directory watch thread.
+   * Sets where checks, reads and rotations of this service are recorded, and binds the service's
+   * current generation to it.
    *
-   * <p>Checks if secret files are world-readable and logs a security warning if they are. On
-   * non-POSIX filesystems, the permission check is skipped.
+   * <p>Each check is recorded with its trigger and outcome, together with the time spent reading
+   * the files, the time from the files' modification to the last component applying a rotation, and
+   * each component's apply time. The same steps are always emitted as JDK Flight Recorder events
+   * from {@link com.maybeitssquid.rotatingsecrets.jfr}.
    *
-   * @throws IOException if the {@link WatchService} cannot be created or the directory cannot be
-   *     registered
+   * @param metrics the metrics to record to, or {@code null} to record nothing
+   */
+  @Autowired(required = false)
+  public void setRotationMetrics(RotationMetrics metrics) {
+    this.metrics = metrics != null ? metrics : RotationMetrics.NONE;
+    this.metrics.bind(this);
+  }
+
+  /**
+   * Returns the directory holding the secret files.
+   *
+   * @return the secrets directory
+   */
+  public Path getSecretsDirectory() {
+    return usernamePath.getParent();
+  }
+
+  /**
+   * Validates file permissions and reads the initial credentials.
+   *
+   * <p>Runs when the bean is created, before the watch thread is started, so that pools created
+   * later during startup already receive the credentials from the secret files. Checks if secret
+   * files are world-readable and logs a security warning if they are. On non-POSIX filesystems, the
+   * permission check is skipped. Calling it again has no effect.
    */
   @PostConstruct
-  public void start() throws IOException {
+  public void initialize() {
+    if (initialized) {
+      return;
+    }
+    initialized = true;
     checkPermissions(usernamePath);
     checkPermissions(passwordPath);
+    refreshCredentials();
+    refreshLease();
+  }
 
-    watchService = FileSystems.getDefault().newWatchService();
-    Path watchDir = usernamePath.getParent();
-    watchDir.register(
-        watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+  /**
+   * Registers the secrets directory for watching, reading the initial credentials first if {@link
+   * #initialize()} has not run.
+   *
+   * <p>The container calls this once every singleton has been created, so that no watch thread runs
+   * while the context is still being built, or while it is being processed ahead of time for a
+   * native image. The directory is checked once more on registration in case the secrets changed
+   * during startup. After a {@link #stop()}, the secret files are re-read on the calling thread and
+   * the suspended components are resumed before this method returns. Calling it while running has
+   * no effect.
+   *
+   * @throws UncheckedIOException if the {@link java.nio.file.WatchService} cannot be created or the
+   *     directory cannot be registered
+   */
+  @Override
+  public void start() {
+    if (registration != null) {
+      return;
+    }
+    if (watcher == null) {
+      watcher = new SecretsWatcher();
+      ownsWatcher = true;
+    }
+    try {
+      registration =
+          watcher.register(
+              usernamePath.getParent(),
+              refreshIntervalMs,
+              quietPeriodMs,
+              new SecretsWatcher.Listener() {
+                @Override
+                public boolean isRelevant(List<WatchEvent<?>> events) {
+                  final boolean relevant = CredentialsProviderService.this.isRelevant(events);
+                  if (relevant) {
+                    eventPending = true;
+                  }
+                  return relevant;
+                }
 
-    refreshCredentials();
+                @Override
+                public long check() {
+                  return CredentialsProviderService.this.check();
+                }
+              });
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot watch " + usernamePath.getParent(), e);
+    }
 
-    watchThread = new Thread(this::watchLoop, "credentials-watch");
-    watchThread.setDaemon(true);
-    watchThread.start();
+    if (!initialized) {
+      initialize();
+    } else if (suspended) {
+      resume();
+    } else {
+      checkRequested = true;
+      registration.requestCheck();
+    }
   }
 
-  /** Stops the directory watch thread and closes the {@link WatchService}. */
-  @PreDestroy
+  /**
+   * Unregisters the secrets directory, closing the watcher as well if this service created it, and
+   * suspends the registered components.
+   *
+   * <p>Spring stops every {@link SmartLifecycle} bean before a Coordinated Restore at Checkpoint
+   * (CRaC) snapshot. Suspended components drain their pools, so that no connection authenticated
+   * with credentials that may be stale by restore time ends up in the snapshot; the following
+   * {@link #start()} re-reads the secret files and resumes them.
+   */
+  @Override
   public void stop() {
-    if (watchThread != null) {
-      watchThread.interrupt();
+    if (registration != null) {
+      registration.close();
+      registration = null;
+      suspended = true;
+      for (UpdatableCredential<String> updatable : updatables) {
+        try {
+          updatable.suspend();
+        } catch (RuntimeException e) {
+          log.warn("Could not suspend {}", updatable.getName(), e);
+        }
+      }
+    }
+    if (ownsWatcher) {
+      watcher.close();
+      watcher = null;
+      ownsWatcher = false;
     }
-    if (watchService != null) {
+  }
+
+  /**
+   * Re-reads the secret files after a stop and resumes the suspended components.
+   *
+   * <p>A changed pair is applied at once, bypassing rotation jitter, since the suspended pools hold
+   * no connections that a staggered rotation would protect.
+   */
+  private void resume() {
+    suspended = false;
+    refreshCredentials(true, RotationMetrics.Trigger.REQUEST);
+    refreshLease();
+    for (UpdatableCredential<String> updatable : updatables) {
       try {
-        watchService.close();
-      } catch (IOException e) {
-        log.debug("Error closing WatchService: {}", e.getMessage());
+        updatable.resume();
+      } catch (RuntimeException e) {
+        log.warn("Could not resume {}", updatable.getName(), e);
       }
     }
   }
 
+  /**
+   * Returns whether the secrets directory is being watched.
+   *
+   * @return {@code true} between {@link #start()} and {@link #stop()}
+   */
+  @Override
+  public boolean isRunning() {
+    return registration != null;
+  }
+
   /**
    * Checks if a file is world-readable and logs a security warning if so.
    *
@@ -169,101 +640,1256 @@ public class CredentialsProviderService {
   }
 
   /**
-   * Blocks on the {@link WatchService}, calling {@link #refreshCredentials()} whenever a directory
-   * event fires or the fallback timeout elapses.
+   * Decides whether a batch of directory events warrants re-reading the credentials.
+   *
+   * <p>In the atomic writer layout the kubelet also creates and removes timestamped directories and
+   * a temporary {@code ..data_tmp} link; only the rename of {@code ..data} itself publishes a new
+   * version. Outside that layout every event is relevant. An overflow always forces a re-read,
+   * because events may have been lost.
+   *
+   * @param events the events drained from the directory's signalled watch key
+   * @return {@code true} if the credentials should be re-read
    */
-  private void watchLoop() {
-    while (!Thread.currentThread().isInterrupted()) {
-      try {
-        WatchKey key = watchService.poll(refreshIntervalMs, TimeUnit.MILLISECONDS);
-        if (key != null) {
-          key.pollEvents();
-          key.reset();
-        }
-        refreshCredentials();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      } catch (Exception e) {
-        log.warn("Unexpected error in credential watch loop", e);
+  private boolean isRelevant(List<WatchEvent<?>> events) {
+    for (WatchEvent<?> event : events) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        log.debug("Watch events overflowed for {}", usernamePath.getParent());
+        schedule.anomaly();
+        return true;
       }
     }
+    if (!Files.isSymbolicLink(usernamePath.resolveSibling(DATA_LINK))) {
+      return true;
+    }
+    for (WatchEvent<?> event : events) {
+      if (DATA_LINK.equals(String.valueOf(event.context()))) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
-   * Reads the current credentials from the mounted secret files and notifies registered {@link
-   * UpdatableCredential} components if they have changed.
+   * Refreshes the credentials and returns the delay before the next fallback check.
+   *
+   * <p>This runs on the watcher's thread, which every watched directory shares, so only the secret
+   * files' fingerprints are taken here. Reading, validating and publishing a changed pair, a
+   * rollback and the retirement of a superseded generation are handed to the rotation executor.
+   * Once that work finishes another check is requested, which returns the delay it computed; checks
+   * falling due meanwhile leave it running and keep their watch events for the next check.
+   *
+   * @return the retry delay if the pair failed the consistency check or its validation probe,
+   *     otherwise the adaptive schedule's next delay
    */
-  void refreshCredentials() {
-    if (!Files.exists(usernamePath) || !Files.exists(passwordPath)) {
-      if (!warnedFilesUnavailable) {
-        log.warn("Credential files no longer available at {}", usernamePath.getParent());
-        warnedFilesUnavailable = true;
+  long check() {
+    final CompletableFuture<Long> pending = this.pendingCheck;
+    if (pending != null) {
+      if (!pending.isDone()) {
+        return refreshIntervalMs;
+      }
+      pendingCheck = null;
+      if (!checkRequested && !eventPending) {
+        return delayOf(pending);
       }
-      return;
     }
-    warnedFilesUnavailable = false;
+    final RotationMetrics.Trigger trigger;
+    if (checkRequested) {
+      trigger = RotationMetrics.Trigger.REQUEST;
+    } else if (eventPending) {
+      trigger = RotationMetrics.Trigger.EVENT;
+    } else {
+      trigger = RotationMetrics.Trigger.POLL;
+    }
+    checkRequested = false;
+    eventPending = false;
+    if (gracePeriod.isRollbackRequested()) {
+      return handOff(
+          () -> {
+            if (rollBackIfRequested(trigger) || !refreshCredentials(false, trigger)) {
+              return retryDelayMs();
+            }
+            return scheduleNext();
+          });
+    }
+    final SecretsCheckEvent event = new SecretsCheckEvent();
+    event.begin();
+    final Detection detection = detectChange();
+    if (detection.changed()) {
+      return handOff(
+          () ->
+              recordCheck(event, trigger, readPair(detection, false))
+                  ? scheduleNext()
+                  : retryDelayMs());
+    }
+    recordCheck(event, trigger, detection.outcome());
+    return isRetirementDue(System.currentTimeMillis())
+        ? handOff(this::scheduleNext)
+        : scheduleNext();
+  }
 
-    final String newUsername = readSecret(usernamePath, "username");
-    final String newPassword = readSecret(passwordPath, "password");
+  /**
+   * Runs the rest of a check on the rotation executor and requests another check once it is done.
+   *
+   * @param refresh the work to hand off, returning the delay before the next check
+   * @return the delay the work returned if it finished at once, otherwise the fallback interval
+   */
+  private long handOff(Supplier<Long> refresh) {
+    final CompletableFuture<Long> future;
+    try {
+      future = CompletableFuture.supplyAsync(refresh, rotationExecutor());
+    } catch (RejectedExecutionException e) {
+      log.warn("Rotation executor rejected the refresh of {}", usernamePath.getParent(), e);
+      return retryDelayMs();
+    }
+    pendingCheck = future;
+    if (future.isDone()) {
+      pendingCheck = null;
+      return delayOf(future);
+    }
+    future.whenComplete(
+        (delay, failure) -> {
+          final SecretsWatcher.Registration registration = this.registration;
+          if (registration != null) {
+            registration.requestCheck();
+          }
+        });
+    return refreshIntervalMs;
+  }
 
-    synchronized (this) {
-      boolean changed = !newUsername.equals(this.username) || !newPassword.equals(this.password);
-      if (changed) {
-        this.username = newUsername;
-        this.password = newPassword;
-        updateCredentials();
+  /**
+   * Returns the delay computed by a finished refresh, rethrowing what it failed with.
+   *
+   * @param refresh a completed refresh
+   * @return the delay before the next check
+   */
+  private static long delayOf(CompletableFuture<Long> refresh) {
+    try {
+      return refresh.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
       }
+      throw e;
     }
   }
 
   /**
-   * Registers the HikariCP credentials updater to receive credential change notifications.
+   * Re-reads the lease, retires a superseded generation that is due and computes the next delay.
    *
-   * @param updatable the HikariCP credentials updater bean
+   * @return the delay in milliseconds before the next check
    */
-  @Autowired
-  @Qualifier("hikariUpdater")
-  public void setHikariUpdatable(UpdatableCredential<String> updatable) {
-    this.updatables.add(updatable);
+  private long scheduleNext() {
+    refreshLease();
+    final long now = System.currentTimeMillis();
+    retireExpiringGeneration(now);
+    return nextDelayMs(now);
   }
 
   /**
-   * Registers the Oracle UCP credentials updater to receive credential change notifications.
+   * Returns the delay before re-checking a pair that could not be published yet.
    *
-   * @param updatable the Oracle UCP credentials updater bean
+   * @return the time left before a jittered rotation may be applied, the validation backoff,
+   *     doubling with each failed probe and bounded by the fallback interval, or the
+   *     inconsistent-pair retry delay
    */
-  @Autowired
-  @Qualifier("ucpUpdater")
-  public void setUcpUpdatable(UpdatableCredential<String> updatable) {
-    this.updatables.add(updatable);
+  private synchronized long retryDelayMs() {
+    if (pendingApplyAtMillis >= 0) {
+      final long wait = pendingApplyAtMillis - System.currentTimeMillis();
+      if (wait > 0) {
+        return wait;
+      }
+    }
+    if (validationFailures > 0) {
+      final int doublings = Math.min(validationFailures - 1, 30);
+      return Math.min(refreshIntervalMs, validationBackoffMs << doublings);
+    }
+    return Math.max(quietPeriodMs, INCONSISTENT_RETRY_MS);
   }
 
   /**
-   * Notifies all registered {@link UpdatableCredential} components of the current credentials.
+   * Handles a connection refused with a generation's credentials.
+   *
+   * <p>First re-reads the secret files through {@link #refreshAfterAuthenticationFailure(long,
+   * long)}, in case the database has already moved to credentials that have not been picked up yet.
+   * If that does not yield a newer generation in time, the failure is counted towards rolling the
+   * rotation back.
    *
-   * <p>This method iterates through all registered updatable components and calls {@link
-   * UpdatableCredential#setCredential(String, Object)} with the current username and password. Each
-   * component is responsible for its own thread-safe credential update logic.
+   * @param generation the generation whose credentials were rejected
+   * @param failure the driver's exception
+   * @param timeoutMs how long to wait for the re-read
+   * @return {@code true} if newer credentials are now published and the attempt should be retried
    */
-  void updateCredentials() {
-    for (UpdatableCredential<String> updatable : updatables) {
-      updatable.setCredential(this.username, this.password);
+  boolean authenticationFailed(long generation, SQLException failure, long timeoutMs) {
+    if (refreshAfterAuthenticationFailure(generation, timeoutMs)) {
+      return true;
+    }
+    if (gracePeriod.countRejection(generation, failure.getMessage())) {
+      final SecretsWatcher.Registration registration = this.registration;
+      if (registration != null) {
+        checkRequested = true;
+        registration.requestCheck();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Re-reads the secret files immediately after the database rejected a generation's credentials,
+   * waiting up to HikariCP's default connection timeout of 30 seconds.
+   *
+   * @param rejectedGeneration the generation whose credentials were rejected
+   * @return {@code true} if a generation newer than {@code rejectedGeneration} is now published
+   * @see #refreshAfterAuthenticationFailure(long, long)
+   */
+  public boolean refreshAfterAuthenticationFailure(long rejectedGeneration) {
+    return refreshAfterAuthenticationFailure(rejectedGeneration, DEFAULT_URGENT_REFRESH_WAIT_MS);
+  }
+
+  /**
+   * Re-reads the secret files immediately after the database rejected a generation's credentials.
+   *
+   * <p>This is the fast path for a database that has moved to new credentials before the watch
+   * event or the fallback check picked them up. The refresh runs on the rotation executor, and
+   * concurrent callers share it: every caller waits for the same refresh, but no longer than its
+   * timeout, which should not exceed the time its pool lets a connection request take. A caller
+   * that gives up leaves the refresh running and sees {@code false}. A refresh triggered this way
+   * applies new credentials at once, without waiting for a jitter slot or a retry after rollback,
+   * because the current ones no longer work. It still runs the configured consistency check and
+   * validation probe.
+   *
+   * @param rejectedGeneration the generation whose credentials were rejected
+   * @param timeoutMs how long to wait for the refresh, in milliseconds
+   * @return {@code true} if a generation newer than {@code rejectedGeneration} is now published
+   */
+  public boolean refreshAfterAuthenticationFailure(long rejectedGeneration, long timeoutMs) {
+    if (isNewer(rejectedGeneration)) {
+      return true;
+    }
+    urgentRefresh.await(rejectedGeneration, timeoutMs);
+    return isNewer(rejectedGeneration);
+  }
+
+  private boolean isNewer(long generation) {
+    final CredentialSnapshot<String> current = this.snapshot.get();
+    return current != null && current.generation() > generation;
+  }
+
+  /**
+   * Publishes the previous pair again if a rollback has been requested.
+   *
+   * <p>The restored pair becomes a new generation and keeps the lease of the generation it came
+   * from. Promotion of the rejected pair is held off for another grace period.
+   *
+   * @param trigger what caused the check that performs the rollback
+   * @return {@code true} if the rotation was rolled back
+   */
+  private boolean rollBackIfRequested(RotationMetrics.Trigger trigger) {
+    if (!gracePeriod.isRollbackRequested()) {
+      return false;
+    }
+    final SecretsCheckEvent event = new SecretsCheckEvent();
+    event.begin();
+    if (!rollBack()) {
+      return false;
+    }
+    updateCredentials();
+    metrics.checked(source, trigger, RotationMetrics.CheckOutcome.APPLIED);
+    event.commit(source, trigger, RotationMetrics.CheckOutcome.APPLIED, currentGeneration());
+    return true;
+  }
+
+  /**
+   * Restores the previous pair if a rollback has been requested.
+   *
+   * @return {@code true} if the rotation was rolled back
+   */
+  private synchronized boolean rollBack() {
+    final GracePeriod.Rollback rollback = gracePeriod.takeRollback();
+    final CredentialSnapshot<String> rejected = this.snapshot.get();
+    if (rollback == null || rejected == null) {
+      return false;
+    }
+    final CredentialSnapshot<String> previous = rollback.previous();
+    final SecretLease previousLease = this.retiringLease;
+    final long now = System.currentTimeMillis();
+    log.warn(
+        "Credentials generation {} rejected by {} new connections; restoring the credentials of"
+            + " generation {}",
+        rejected.generation(),
+        rollback.failures(),
+        previous.generation());
+    final CredentialSnapshot<String> restored =
+        publish(rejected, previous.username(), Secret.copyOf(previous.secret()), now);
+    gracePeriod.rolledBack();
+    retiringLease = null;
+    if (previousLease != null) {
+      currentLease = new SecretLease(restored.generation(), previousLease.expiresAt());
     }
+    // Files still hold the rejected pair: force a re-read, held off until promotion is retried.
+    lastRead = null;
+    contentDigest = null;
+    final long deadline =
+        currentLease != null
+            ? currentLease.expiresAt().toEpochMilli() - leaseMarginMs
+            : Long.MAX_VALUE;
+    pendingApplyAtMillis = Math.max(now, Math.min(now + gracePeriod.periodMs(), deadline));
+    return true;
+  }
+
+  /**
+   * Returns how many rotations have been rolled back after their credentials were rejected.
+   *
+   * @return the count of rollbacks since the service was created
+   */
+  public long getRollbacks() {
+    return gracePeriod.getRollbacks();
+  }
+
+  /**
+   * Decides whether a new generation must wait for this instance's slot in the jitter window, or
+   * for promotion to be retried after a rollback.
+   *
+   * <p>The slot is fixed when the generation is first observed, and is brought forward to {@code
+   * k8s.secrets.leaseMargin} before the current lease expires so that the rotation completes before
+   * the current credentials are revoked.
+   *
+   * @param current the snapshot that would be replaced
+   * @param now the current wall-clock time in epoch milliseconds
+   * @return {@code true} if the new generation must not be applied yet
+   */
+  private boolean deferRotation(CredentialSnapshot<String> current, long now) {
+    final RotationJitter jitter = this.jitter;
+    if (pendingApplyAtMillis < 0) {
+      if (!jitter.isEnabled()) {
+        return false;
+      }
+      final long deadline =
+          currentLease != null
+              ? currentLease.expiresAt().toEpochMilli() - leaseMarginMs
+              : Long.MAX_VALUE;
+      pendingApplyAtMillis = jitter.applyAt(now, deadline);
+      if (pendingApplyAtMillis > now) {
+        log.info(
+            "Deferring credentials generation {} by {} ms to spread reconnects across replicas",
+            current.generation() + 1,
+            pendingApplyAtMillis - now);
+      }
+    }
+    return now < pendingApplyAtMillis;
+  }
+
+  /**
+   * Probes candidate credentials with the configured {@link CredentialValidator}.
+   *
+   * <p>The probe runs on the rotation executor, bounded by the validation timeout. It is called
+   * without the service lock, so that a slow database holds up neither other refreshes nor the
+   * watch thread.
+   *
+   * @param username the candidate username
+   * @param password the candidate password
+   * @return {@code null} if the candidate passed or no validator is configured, otherwise why it
+   *     failed; an {@link InterruptedException} if the caller was interrupted
+   */
+  private Throwable probe(String username, Secret password) {
+    final CredentialValidator validator = this.validator;
+    if (validator == null) {
+      return null;
+    }
+    final String credential = password.asString();
+    try {
+      CompletableFuture.runAsync(
+              () -> {
+                try {
+                  validator.validate(username, credential);
+                } catch (SQLException e) {
+                  throw new CompletionException(e);
+                }
+              },
+              rotationExecutor())
+          .get(validationTimeoutMs, TimeUnit.MILLISECONDS);
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+    } catch (TimeoutException | RejectedExecutionException e) {
+      return e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return e;
+    }
+  }
+
+  /**
+   * Decides on a candidate from the outcome of its probe.
+   *
+   * <p>A rejected pair is retried with exponential backoff; once the attempt budget is spent it is
+   * committed with a warning, on the assumption that the secrets manager is authoritative and the
+   * current credentials are about to be revoked.
+   *
+   * @param username the candidate username
+   * @param failure why the probe failed, or {@code null} if it passed
+   * @return {@code true} if the candidate may be published
+   */
+  private synchronized boolean acceptProbe(String username, Throwable failure) {
+    if (failure == null) {
+      validationFailures = 0;
+      return true;
+    }
+    if (failure instanceof InterruptedException) {
+      return false;
+    }
+    validationFailures++;
+    if (validationFailures >= validationAttempts) {
+      log.warn(
+          "Credentials for {} still rejected after {} probes, committing them anyway: {}",
+          username,
+          validationFailures,
+          String.valueOf(failure));
+      validationFailures = 0;
+      return true;
+    }
+    log.warn(
+        "Credentials for {} rejected by validation probe (attempt {} of {}), keeping the current"
+            + " generation: {}",
+        username,
+        validationFailures,
+        validationAttempts,
+        String.valueOf(failure));
+    return false;
+  }
+
+  /**
+   * Combines the adaptive schedule with the lease deadlines into the next fallback delay.
+   *
+   * <p>From {@code k8s.secrets.leaseMargin} before the current lease expires until the same margin
+   * after, checks run at a focused interval so that replacement credentials are picked up promptly.
+   * A retiring lease brings the next check forward to the time its connections must be drained.
+   *
+   * @param now the current wall-clock time in epoch milliseconds
+   * @return the delay in milliseconds before the next check
+   */
+  private synchronized long nextDelayMs(long now) {
+    long delay = schedule.nextDelayMs(now);
+    if (currentLease != null) {
+      final long expiresAt = currentLease.expiresAt().toEpochMilli();
+      final long focusAt = expiresAt - leaseMarginMs;
+      if (now < focusAt) {
+        delay = Math.min(delay, focusAt - now);
+      } else if (now <= expiresAt + leaseMarginMs) {
+        delay = Math.min(delay, focusedIntervalMs());
+      }
+    }
+    if (retiringLease != null) {
+      final long drainAt = retiringLease.expiresAt().toEpochMilli() - leaseMarginMs;
+      delay = Math.min(delay, Math.max(drainAt - now, INCONSISTENT_RETRY_MS));
+    }
+    return delay;
+  }
+
+  /**
+   * Returns the interval between checks while a lease is close to expiry.
+   *
+   * @return a tenth of the lease margin, bounded by the retry delay and the base interval
+   */
+  private long focusedIntervalMs() {
+    return Math.min(refreshIntervalMs, Math.max(INCONSISTENT_RETRY_MS, leaseMarginMs / 10));
+  }
+
+  /**
+   * Re-reads the lease metadata for the current generation if its file has changed.
+   *
+   * <p>A lease file that is missing leaves the generation without a known expiry; one that cannot
+   * be parsed is ignored with a warning.
+   */
+  private void refreshLease() {
+    final CredentialSnapshot<String> current = this.snapshot.get();
+    final String fileName = this.leaseFileName;
+    if (current == null || fileName == null || fileName.isEmpty()) {
+      return;
+    }
+    final Path leasePath = resolveSecretsDirectory().resolve(fileName);
+    final SecretFingerprint fingerprint;
+    try {
+      fingerprint = SecretFingerprint.of(leasePath);
+    } catch (IOException e) {
+      return;
+    }
+    synchronized (this) {
+      if (fingerprint.equals(leaseFingerprint)) {
+        return;
+      }
+      try {
+        currentLease = SecretLease.read(leasePath, current.generation());
+        log.debug(
+            "Credentials generation {} lease expires at {}",
+            current.generation(),
+            currentLease.expiresAt());
+      } catch (IOException | IllegalArgumentException e) {
+        log.warn("Ignoring unreadable lease metadata in {}: {}", leasePath, e.getMessage());
+      }
+      leaseFingerprint = fingerprint;
+    }
+  }
+
+  /**
+   * Asks every registered component to drain the superseded generation once its lease is within the
+   * margin of expiring.
+   *
+   * @param now the current wall-clock time in epoch milliseconds
+   */
+  private void retireExpiringGeneration(long now) {
+    final SecretLease retiring;
+    synchronized (this) {
+      if (!isRetirementDue(now)) {
+        return;
+      }
+      retiring = retiringLease;
+      retiringLease = null;
+    }
+    log.info(
+        "Retiring credentials generation {} before its lease expires at {}",
+        retiring.generation(),
+        retiring.expiresAt());
+    for (UpdatableCredential<String> updatable : updatables) {
+      try {
+        updatable.retireGeneration(retiring.generation());
+      } catch (RuntimeException e) {
+        log.warn(
+            "Failed to retire generation {} for {}",
+            retiring.generation(),
+            RotationResult.nameOf(updatable),
+            e);
+      }
+    }
+  }
+
+  private synchronized boolean isRetirementDue(long now) {
+    return retiringLease != null && now >= retiringLease.expiresAt().toEpochMilli() - leaseMarginMs;
+  }
+
+  /**
+   * Returns when the lease of the current credentials expires.
+   *
+   * @return the expiry read from the lease file, or {@code null} if none is known
+   */
+  public synchronized Instant getLeaseExpiry() {
+    return currentLease != null ? currentLease.expiresAt() : null;
+  }
+
+  /**
+   * Resolves the directory the secret files should be read from.
+   *
+   * <p>In the atomic writer layout the {@code ..data} link is resolved once to the timestamped
+   * directory it currently points at, so that both files are read from the same secret version even
+   * if the link is swapped mid-refresh. Otherwise the configured secrets directory is returned.
+   *
+   * @return the directory containing the current {@code username} and {@code password} files
+   */
+  private Path resolveSecretsDirectory() {
+    Path secretsDir = usernamePath.getParent();
+    Path dataLink = secretsDir.resolve(DATA_LINK);
+    if (Files.isSymbolicLink(dataLink)) {
+      try {
+        return dataLink.toRealPath();
+      } catch (IOException e) {
+        log.debug("Could not resolve {}: {}", dataLink, e.getMessage());
+      }
+    }
+    return secretsDir;
+  }
+
+  /**
+   * Reads the current credentials from the mounted secret files and notifies registered {@link
+   * UpdatableCredential} components if they have changed.
+   *
+   * <p>Both files are fingerprinted first with a single attribute read each. If neither fingerprint
+   * has moved since the last read, and the last read was not racily clean, the contents are not
+   * re-read at all. When content hashing is enabled, a moved fingerprint whose contents hash to the
+   * same digest as the current credentials is also treated as unchanged without comparing the
+   * secrets.
+   *
+   * <p>The files are read into reusable buffers, compared in place against the current credentials
+   * and wiped afterwards; a new {@link Secret} is only allocated when the password has changed.
+   *
+   * @return {@code false} if the pair failed the consistency check and should be re-checked soon,
+   *     otherwise {@code true}
+   */
+  boolean refreshCredentials() {
+    return refreshCredentials(false, RotationMetrics.Trigger.REQUEST);
+  }
+
+  /**
+   * Reads the current credentials, optionally applying a new pair without deferring it, and records
+   * the check.
+   *
+   * @param urgent {@code true} to apply a new pair immediately rather than waiting for a jitter
+   *     slot or a retry after rollback
+   * @param trigger what caused the check
+   * @return {@code false} if the pair could not be published yet and should be re-checked soon
+   */
+  private boolean refreshCredentials(boolean urgent, RotationMetrics.Trigger trigger) {
+    final SecretsCheckEvent event = new SecretsCheckEvent();
+    event.begin();
+    final Detection detection = detectChange();
+    return recordCheck(
+        event, trigger, detection.changed() ? readPair(detection, urgent) : detection.outcome());
+  }
+
+  /**
+   * Records a check and reports whether its pair could be published.
+   *
+   * @param event the check's flight recorder event, begun when the check started
+   * @param trigger what caused the check
+   * @param outcome what the check did
+   * @return {@code false} if the pair could not be published yet and should be re-checked soon
+   */
+  private boolean recordCheck(
+      SecretsCheckEvent event,
+      RotationMetrics.Trigger trigger,
+      RotationMetrics.CheckOutcome outcome) {
+    metrics.checked(source, trigger, outcome);
+    event.commit(source, trigger, outcome, currentGeneration());
+    return switch (outcome) {
+      case DEFERRED, INCONSISTENT, REJECTED -> false;
+      case APPLIED, UNCHANGED, UNAVAILABLE -> true;
+    };
+  }
+
+  /**
+   * The fingerprints of the secret files, and the outcome of a check they settle on their own.
+   *
+   * @param secretsDir the directory the files were fingerprinted in
+   * @param before fingerprints of the username and password files, or {@code null} if missing
+   * @param outcome {@code UNAVAILABLE} or {@code UNCHANGED}, or {@code null} if the pair must be
+   *     read
+   */
+  private record Detection(
+      Path secretsDir, SecretFingerprint[] before, RotationMetrics.CheckOutcome outcome) {
+
+    boolean changed() {
+      return outcome == null;
+    }
+  }
+
+  /**
+   * Fingerprints the secret files and compares them with those of the last read.
+   *
+   * <p>This takes one attribute read per file and no lock, so it is cheap enough for the watch
+   * thread.
+   *
+   * @return the fingerprints, settling the check unless the pair must be read
+   */
+  private Detection detectChange() {
+    final Path secretsDir = resolveSecretsDirectory();
+    final ChangeDetectionEvent detection = new ChangeDetectionEvent();
+    detection.begin();
+    final SecretFingerprint[] before =
+        fingerprints(
+            secretsDir.resolve(usernamePath.getFileName()),
+            secretsDir.resolve(passwordPath.getFileName()));
+    if (before == null) {
+      detection.commit(source, currentGeneration(), false, false);
+      if (!warnedFilesUnavailable) {
+        log.warn("Credential files no longer available at {}", usernamePath.getParent());
+        warnedFilesUnavailable = true;
+      }
+      schedule.anomaly();
+      return new Detection(secretsDir, null, RotationMetrics.CheckOutcome.UNAVAILABLE);
+    }
+    warnedFilesUnavailable = false;
+
+    final boolean unchanged = isUnchanged(before);
+    detection.commit(source, currentGeneration(), true, !unchanged);
+    if (unchanged) {
+      skippedReads.increment();
+      schedule.unchanged();
+      return new Detection(secretsDir, before, RotationMetrics.CheckOutcome.UNCHANGED);
+    }
+    return new Detection(secretsDir, before, null);
+  }
+
+  /**
+   * Reads a pair whose fingerprints have moved, publishing it unless it is deferred or refused.
+   *
+   * <p>The files are read and compared under the service lock, which is then released while the
+   * validation probe runs. The pair is published only if no other refresh or rollback published in
+   * the meantime; otherwise the next check compares the files against what was published. The
+   * components are notified once the lock is released again, so that checks and authentication
+   * failure refreshes wait neither for a slow probe nor for a slow pool.
+   *
+   * @param detection the fingerprints taken before the read
+   * @param urgent {@code true} to apply a new pair immediately rather than waiting for a jitter
+   *     slot or a retry after rollback
+   * @return what the read did
+   */
+  private RotationMetrics.CheckOutcome readPair(Detection detection, boolean urgent) {
+    final Path secretsDir = detection.secretsDir();
+    final Path currentUsernamePath = secretsDir.resolve(usernamePath.getFileName());
+    final Path currentPasswordPath = secretsDir.resolve(passwordPath.getFileName());
+    final SecretFingerprint[] before = detection.before();
+    final long sampledAtMillis = System.currentTimeMillis();
+    performedReads.increment();
+    final CredentialSnapshot<String> current;
+    final String candidateUsername;
+    final Secret candidatePassword;
+    final byte[] digest;
+    synchronized (this) {
+      try {
+        final SecretsReadEvent read = new SecretsReadEvent();
+        read.begin();
+        final long readStarted = System.nanoTime();
+        loadSecret(usernameReader, currentUsernamePath, "username");
+        loadSecret(passwordReader, currentPasswordPath, "password");
+        metrics.secretsRead(source, Duration.ofNanos(System.nanoTime() - readStarted));
+        read.commit(source, currentGeneration());
+        if (consistency != SecretConsistency.NONE
+            && secretsDir.equals(usernamePath.getParent())
+            && !acceptPair(
+                secretsDir, before, fingerprints(currentUsernamePath, currentPasswordPath))) {
+          return RotationMetrics.CheckOutcome.INCONSISTENT;
+        }
+        // With content hashing, an unchanged digest skips decoding as well as comparing
+        digest = contentHash ? digest() : null;
+        if (digest != null && Arrays.equals(digest, this.contentDigest)) {
+          unchanged(before, sampledAtMillis);
+          return RotationMetrics.CheckOutcome.UNCHANGED;
+        }
+        final CharSequence newUsername = usernameReader.contents();
+        final CharSequence newPassword = passwordReader.contents();
+        current = this.snapshot.get();
+        if (current != null
+            && current.username().contentEquals(newUsername)
+            && this.password.contentEquals(newPassword)) {
+          this.contentDigest = digest;
+          unchanged(before, sampledAtMillis);
+          return RotationMetrics.CheckOutcome.UNCHANGED;
+        }
+        if (current != null && !urgent && deferRotation(current, sampledAtMillis)) {
+          return RotationMetrics.CheckOutcome.DEFERRED;
+        }
+        candidateUsername = newUsername.toString();
+        candidatePassword = Secret.copyOf(newPassword);
+      } finally {
+        usernameReader.wipe();
+        passwordReader.wipe();
+      }
+    }
+
+    final Throwable failure = probe(candidateUsername, candidatePassword);
+    synchronized (this) {
+      if (!acceptProbe(candidateUsername, failure)) {
+        candidatePassword.destroy();
+        return RotationMetrics.CheckOutcome.REJECTED;
+      }
+      if (this.snapshot.get() != current) {
+        // Published or rolled back while the probe ran: compare against that on the next check
+        candidatePassword.destroy();
+        log.debug("Credentials changed while probing a new pair; re-checking");
+        return RotationMetrics.CheckOutcome.DEFERRED;
+      }
+      publish(current, candidateUsername, candidatePassword, sampledAtMillis);
+      schedule.rotated(rotatedAtMillis(before));
+      this.contentDigest = digest;
+      this.lastRead = new LastRead(before, sampledAtMillis);
+    }
+    updateCredentials();
+    metrics.propagated(
+        source,
+        Duration.ofMillis(Math.max(0, System.currentTimeMillis() - rotatedAtMillis(before))));
+    return RotationMetrics.CheckOutcome.APPLIED;
+  }
+
+  /**
+   * Records a read that found the current credentials. Called under the service lock.
+   *
+   * @param before fingerprints of the username and password files taken before the read
+   * @param sampledAtMillis when the read started
+   */
+  private void unchanged(SecretFingerprint[] before, long sampledAtMillis) {
+    pendingApplyAtMillis = -1;
+    schedule.unchanged();
+    this.lastRead = new LastRead(before, sampledAtMillis);
+  }
+
+  /**
+   * Publishes a new rotation and destroys the password it supersedes. The caller notifies the
+   * registered components through {@link #updateCredentials()} once it has released the lock.
+   *
+   * @param current the snapshot being replaced, or {@code null} for the first rotation
+   * @param newUsername the new username
+   * @param newPassword the new password; the service takes ownership of it
+   * @param sampledAtMillis when the pair was read
+   * @return the published snapshot
+   */
+  private CredentialSnapshot<String> publish(
+      CredentialSnapshot<String> current,
+      String newUsername,
+      Secret newPassword,
+      long sampledAtMillis) {
+    final Secret previous = this.password;
+    final Instant loadedAt = Instant.ofEpochMilli(sampledAtMillis);
+    final String sharedPassword = newPassword.asString();
+    this.password = newPassword;
+    final CredentialSnapshot<String> published =
+        current == null
+            ? new CredentialSnapshot<>(newUsername, sharedPassword, 1, loadedAt)
+            : current.next(newUsername, sharedPassword, loadedAt);
+    this.snapshot.set(published);
+    if (previous != null) {
+      previous.destroy();
+    }
+    if (currentLease != null) {
+      retiringLease = currentLease;
+    }
+    currentLease = null;
+    leaseFingerprint = null;
+    pendingApplyAtMillis = -1;
+    gracePeriod.started(current, published.generation(), sampledAtMillis);
+    return published;
+  }
+
+  /**
+   * Returns when a pair was written, as the later of the two files' modification times.
+   *
+   * @param fingerprints fingerprints of the username and password files
+   * @return the write time in epoch milliseconds
+   */
+  private static long rotatedAtMillis(SecretFingerprint[] fingerprints) {
+    long latest = Long.MIN_VALUE;
+    for (SecretFingerprint fingerprint : fingerprints) {
+      latest = Math.max(latest, fingerprint.lastModified().toMillis());
+    }
+    return latest;
+  }
+
+  /**
+   * Reports whether the fingerprints match those recorded at the last read and can be trusted.
+   *
+   * @param current fingerprints of the username and password files just taken
+   * @return {@code true} if the files can be assumed unchanged without reading them
+   */
+  private boolean isUnchanged(SecretFingerprint[] current) {
+    final LastRead last = this.lastRead;
+    if (last == null || !Arrays.equals(current, last.fingerprints())) {
+      return false;
+    }
+    for (SecretFingerprint fingerprint : current) {
+      if (fingerprint.isRacy(last.sampledAtMillis())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Fingerprints of the username and password files at a read, and when they were taken.
+   *
+   * @param fingerprints fingerprints of the username and password files
+   * @param sampledAtMillis when the read started, in epoch milliseconds
+   */
+  private record LastRead(SecretFingerprint[] fingerprints, long sampledAtMillis) {}
+
+  /**
+   * Applies the configured {@link SecretConsistency} check to a pair that has just been read.
+   *
+   * <p>A pair that keeps failing the check for longer than the fallback interval is accepted with a
+   * warning, on the assumption that the writer does not follow the expected protocol.
+   *
+   * @param secretsDir the directory the pair was read from
+   * @param before fingerprints of the username and password files taken before the read
+   * @param after fingerprints of the username and password files taken after the read
+   * @return {@code true} if the pair may be published
+   */
+  private boolean acceptPair(
+      Path secretsDir, SecretFingerprint[] before, SecretFingerprint[] after) {
+    boolean consistent;
+    if (after == null || !Arrays.equals(before, after)) {
+      consistent = false;
+    } else if (consistency == SecretConsistency.MATCHING_MTIME) {
+      consistent =
+          Math.abs(after[0].lastModified().toMillis() - after[1].lastModified().toMillis())
+              <= mtimeToleranceMs;
+    } else {
+      SecretFingerprint[] version = fingerprints(secretsDir.resolve(versionFileName));
+      consistent =
+          version != null
+              && version[0].lastModified().compareTo(after[0].lastModified()) >= 0
+              && version[0].lastModified().compareTo(after[1].lastModified()) >= 0;
+    }
+
+    if (consistent) {
+      inconsistentSinceNanos = -1;
+      return true;
+    }
+    final long now = System.nanoTime();
+    if (inconsistentSinceNanos < 0) {
+      inconsistentSinceNanos = now;
+    }
+    if (now - inconsistentSinceNanos < TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs)) {
+      log.debug("Credential files at {} are not a consistent pair yet", secretsDir);
+      return false;
+    }
+    log.warn(
+        "Credential files at {} still fail the {} check after {} ms; accepting them",
+        secretsDir,
+        consistency,
+        refreshIntervalMs);
+    inconsistentSinceNanos = -1;
+    return true;
+  }
+
+  /**
+   * Fingerprints the given files.
+   *
+   * @param paths the files to inspect
+   * @return the fingerprints in argument order, or {@code null} if any file cannot be inspected
+   */
+  private static SecretFingerprint[] fingerprints(Path... paths) {
+    SecretFingerprint[] result = new SecretFingerprint[paths.length];
+    try {
+      for (int i = 0; i < paths.length; i++) {
+        result[i] = SecretFingerprint.of(paths[i]);
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * Computes the SHA-256 digest of the raw username and password contents just loaded, before they
+   * are decoded. The digester is created once and reused; callers must hold {@code this}.
+   *
+   * @return the digest of both contents, length-prefixed so that the split point is unambiguous
+   */
+  private byte[] digest() {
+    try {
+      if (contentDigester == null) {
+        contentDigester = MessageDigest.getInstance("SHA-256");
+      }
+      final MessageDigest md = contentDigester;
+      md.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, usernameReader.size()));
+      usernameReader.digest(md);
+      passwordReader.digest(md);
+      return md.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Returns the number of refreshes that found both fingerprints unchanged and skipped reading the
+   * secret files.
+   *
+   * @return the count of skipped reads since the service was created
+   */
+  public long getSkippedReads() {
+    return skippedReads.sum();
+  }
+
+  /**
+   * Returns the number of refreshes that read the contents of the secret files.
+   *
+   * @return the count of performed reads since the service was created
+   */
+  public long getPerformedReads() {
+    return performedReads.sum();
+  }
+
+  /**
+   * Registers the HikariCP credentials updater to receive credential change notifications.
+   *
+   * @param updatable the HikariCP credentials updater bean
+   */
+  @Autowired(required = false)
+  @Qualifier("hikariUpdater")
+  public void setHikariUpdatable(UpdatableCredential<String> updatable) {
+    register(updatable);
+  }
+
+  /**
+   * Registers the Oracle UCP credentials updater to receive credential change notifications.
+   *
+   * @param updatable the Oracle UCP credentials updater bean
+   */
+  @Autowired(required = false)
+  @Qualifier("ucpUpdater")
+  public void setUcpUpdatable(UpdatableCredential<String> updatable) {
+    register(updatable);
+  }
+
+  /**
+   * Adds a component to receive credential change notifications from this service.
+   *
+   * <p>Components may be added while the service is running; one added after credentials have been
+   * read receives them from the next rotation on, so it should be created with {@link
+   * #getCurrentSnapshot()}.
+   *
+   * @param updatable the component to add
+   */
+  public void addUpdatable(UpdatableCredential<String> updatable) {
+    register(updatable);
+  }
+
+  /**
+   * Stops notifying a component of credential changes and of its authentication failures.
+   *
+   * @param updatable the component to remove
+   * @return {@code true} if the component was registered
+   */
+  public boolean removeUpdatable(UpdatableCredential<String> updatable) {
+    if (!this.updatables.remove(updatable)) {
+      return false;
+    }
+    if (updatable instanceof SnapshotAwareCredential<String> aware) {
+      aware.setAuthenticationFailureListener(null);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the components this service applies credentials to.
+   *
+   * @return an unmodifiable view of the registered components
+   */
+  public List<UpdatableCredential<String>> getUpdatables() {
+    return Collections.unmodifiableList(updatables);
+  }
+
+  /**
+   * Adds a component to the rotation fan-out and, if it can report rejected connections, listens
+   * for its authentication failures.
+   *
+   * @param updatable the component to register
+   */
+  private void register(UpdatableCredential<String> updatable) {
+    if (updatable instanceof SnapshotAwareCredential<String> aware) {
+      aware.setAuthenticationFailureListener(this::authenticationFailed);
+    }
+    this.updatables.add(updatable);
+  }
+
+  /**
+   * Notifies all registered {@link UpdatableCredential} components of the current credentials.
+   *
+   * <p>Each component's {@link UpdatableCredential#setCredential(String, Object)} is dispatched to
+   * the rotation executor so that all pools rotate in parallel. A component that throws is recorded
+   * as failed without affecting the others, and one that does not finish within the updater timeout
+   * is recorded as timed out and left to complete in the background. The call returns once every
+   * component has finished or timed out, so its duration is bounded by the slowest pool rather than
+   * the sum of all pools.
+   *
+   * <p>Rotations are published under the service lock but fanned out after it is released, so
+   * fan-outs are serialized separately: each delivers the newest snapshot, and one finding that
+   * snapshot already delivered returns the previous result without notifying anyone again.
+   *
+   * @return the per-component outcomes of this rotation
+   */
+  RotationResult updateCredentials() {
+    synchronized (fanOutLock) {
+      final CredentialSnapshot<String> published = this.snapshot.get();
+      if (published == null || published.generation() <= deliveredGeneration) {
+        return lastRotationResult;
+      }
+      deliveredGeneration = published.generation();
+      return fanOut(published);
+    }
+  }
+
+  private RotationResult fanOut(CredentialSnapshot<String> published) {
+    final long started = System.nanoTime();
+    final Executor executor = rotationExecutor();
+    final List<CompletableFuture<RotationResult.Outcome>> pending = new ArrayList<>();
+    for (UpdatableCredential<String> updatable : updatables) {
+      CompletableFuture<RotationResult.Outcome> outcome;
+      try {
+        outcome =
+            CompletableFuture.supplyAsync(
+                () -> applyCredential(source, updatable, published), executor);
+      } catch (RejectedExecutionException e) {
+        outcome = CompletableFuture.completedFuture(failed(updatable, Duration.ZERO, e));
+      }
+      pending.add(
+          outcome
+              .orTimeout(updaterTimeoutMs, TimeUnit.MILLISECONDS)
+              .exceptionally(e -> unfinished(updatable, e)));
+    }
+
+    final List<RotationResult.Outcome> outcomes = new ArrayList<>(pending.size());
+    for (CompletableFuture<RotationResult.Outcome> outcome : pending) {
+      outcomes.add(outcome.join());
+    }
+    final RotationResult result =
+        new RotationResult(outcomes, Duration.ofNanos(System.nanoTime() - started));
+    for (RotationResult.Outcome outcome : outcomes) {
+      metrics.credentialApplied(source, outcome);
+    }
+    if (result.isSuccessful()) {
+      log.debug("Rotated credentials: {}", result);
+    } else {
+      log.warn("Credential rotation incomplete: {}", result);
+    }
+    this.lastRotationResult = result;
+    return result;
+  }
+
+  /**
+   * Applies the credentials to one component, capturing its duration and any failure.
+   *
+   * @param source the secrets directory, for the flight recorder event
+   * @param updatable the component to update
+   * @param published the rotation to apply
+   * @return the component's outcome
+   */
+  private static RotationResult.Outcome applyCredential(
+      String source, UpdatableCredential<String> updatable, CredentialSnapshot<String> published) {
+    final CredentialUpdateEvent event = new CredentialUpdateEvent();
+    event.begin();
+    final long started = System.nanoTime();
+    try {
+      if (updatable instanceof SnapshotAwareCredential<String> aware) {
+        aware.setCredential(published);
+      } else {
+        updatable.setCredential(published.username(), published.secret());
+      }
+      commitUpdate(event, source, updatable, published, RotationResult.Status.SUCCEEDED);
+      return new RotationResult.Outcome(
+          updatable,
+          RotationResult.Status.SUCCEEDED,
+          Duration.ofNanos(System.nanoTime() - started),
+          null);
+    } catch (RuntimeException e) {
+      commitUpdate(event, source, updatable, published, RotationResult.Status.FAILED);
+      log.warn("Failed to rotate credentials for {}", RotationResult.nameOf(updatable), e);
+      return failed(updatable, Duration.ofNanos(System.nanoTime() - started), e);
+    }
+  }
+
+  /** Commits a credential update event, asking the component its name only if it is recorded. */
+  private static void commitUpdate(
+      CredentialUpdateEvent event,
+      String source,
+      UpdatableCredential<String> updatable,
+      CredentialSnapshot<String> published,
+      RotationResult.Status status) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.commit(source, RotationResult.nameOf(updatable), published.generation(), status);
+    }
+  }
+
+  /**
+   * Maps an exceptionally completed fan-out future to an outcome.
+   *
+   * @param updatable the component whose future completed exceptionally
+   * @param e the exception, a {@link TimeoutException} if the updater timeout elapsed
+   * @return a timed-out or failed outcome
+   */
+  private RotationResult.Outcome unfinished(UpdatableCredential<String> updatable, Throwable e) {
+    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    if (cause instanceof TimeoutException) {
+      log.warn(
+          "{} did not apply new credentials within {} ms",
+          RotationResult.nameOf(updatable),
+          updaterTimeoutMs);
+      return new RotationResult.Outcome(
+          updatable, RotationResult.Status.TIMED_OUT, Duration.ofMillis(updaterTimeoutMs), null);
+    }
+    return failed(updatable, Duration.ZERO, cause);
+  }
+
+  private static RotationResult.Outcome failed(
+      UpdatableCredential<String> updatable, Duration duration, Throwable failure) {
+    return new RotationResult.Outcome(updatable, RotationResult.Status.FAILED, duration, failure);
+  }
+
+  private Executor rotationExecutor() {
+    Executor executor = this.rotationExecutor;
+    return executor != null ? executor : DefaultRotationExecutor.INSTANCE;
+  }
+
+  /**
+   * Returns the most recently published credentials.
+   *
+   * <p>The username and secret are read together from one immutable snapshot, so they always belong
+   * to the same rotation. This is a single volatile read and does not lock or allocate.
+   *
+   * @return the current snapshot, or {@code null} if no credentials have been read yet
+   */
+  public CredentialSnapshot<String> getCurrentSnapshot() {
+    return snapshot.get();
+  }
+
+  private long currentGeneration() {
+    final CredentialSnapshot<String> current = snapshot.get();
+    return current != null ? current.generation() : 0;
+  }
+
+  /**
+   * Returns the outcome of the most recent rotation.
+   *
+   * @return the last rotation's result, or {@code null} if no rotation has happened yet
+   */
+  public RotationResult getLastRotationResult() {
+    return lastRotationResult;
+  }
+
+  /**
+   * Sets the executor that applies credentials to the registered components in parallel.
+   *
+   * <p>The same executor reads and publishes the pairs the watch thread hands off or an
+   * authentication failure asks for, and runs the validation probe, each of which waits for work
+   * submitted after it. A bounded executor therefore needs at least two threads more than the
+   * number of components, or probes and components time out. If none is set, a shared pool of
+   * daemon threads named {@code credentials-rotate} is used.
+   *
+   * @param rotationExecutor the executor to fan rotations out on
+   */
+  @Autowired(required = false)
+  @Qualifier("credentialsRotationExecutor")
+  public void setRotationExecutor(Executor rotationExecutor) {
+    this.rotationExecutor = rotationExecutor;
+  }
+
+  /**
+   * Sets how long a single component may take to apply new credentials before it is reported as
+   * timed out.
+   *
+   * @param updaterTimeoutMs per-component timeout in milliseconds
+   */
+  @Value("${k8s.secrets.updaterTimeout:30000}")
+  public void setUpdaterTimeoutMs(long updaterTimeoutMs) {
+    this.updaterTimeoutMs = updaterTimeoutMs;
+  }
+
+  /** Lazily created shared pool used when no rotation executor is injected. */
+  private static final class DefaultRotationExecutor {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    static final Executor INSTANCE =
+        Executors.newCachedThreadPool(
+            task -> {
+              Thread thread =
+                  new Thread(task, "credentials-rotate-" + THREAD_COUNT.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    private DefaultRotationExecutor() {}
   }
 
   /**
-   * Reads and trims a secret value from a file.
+   * Reads the raw bytes of a secret file into a reusable buffer; {@link
+   * SecretFileReader#contents()} decodes and trims them.
    *
+   * @param reader the reader whose buffers receive the contents
    * @param path the path to the secret file
    * @param name a descriptive name for logging purposes
-   * @return the trimmed content of the secret file
    * @throws RuntimeException if the file cannot be read
    */
-  private String readSecret(Path path, String name) {
+  private static void loadSecret(SecretFileReader reader, Path path, String name) {
     try {
-      String value = Files.readString(path).trim();
+      reader.load(path);
       log.debug("Read {} from Kubernetes secrets", name);
-      return value;
     } catch (IOException e) {
       throw new RuntimeException("Failed to read " + name + " from " + path, e);
     }
@@ -0,0 +1,83 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A connection pool that a {@link RollingEvictor} can retire connections from one at a time.
+ *
+ * <p>Implemented by the HikariCP and Oracle UCP updaters on top of their pools' public APIs.
+ */
+public interface EvictablePool {
+
+  /**
+   * Returns a name identifying the pool for logs.
+   *
+   * @return the pool name
+   */
+  String getName();
+
+  /**
+   * Returns the number of idle connections.
+   *
+   * @return the idle connection count, or {@code -1} if the pool is not running
+   */
+  int getIdleConnections();
+
+  /**
+   * Returns the number of open connections, idle or in use.
+   *
+   * @return the total connection count, or {@code -1} if the pool is not running
+   */
+  int getTotalConnections();
+
+  /**
+   * Returns the number of open connections, idle or in use, that were opened with credentials the
+   * latest rotation superseded.
+   *
+   * @return the superseded connection count, or {@code -1} if the pool cannot tell its connections
+   *     apart, in which case every connection open at rotation time is assumed to be superseded
+   */
+  default int getSupersededConnections() {
+    return -1;
+  }
+
+  /**
+   * Reports whether a borrowed connection was opened with credentials the latest rotation
+   * superseded.
+   *
+   * @param connection a connection obtained from {@link #borrow()}
+   * @return {@code true} if the connection should be evicted; pools that cannot tell return {@code
+   *     true}
+   */
+  default boolean isSuperseded(Connection connection) {
+    return true;
+  }
+
+  /**
+   * Borrows an idle connection so that it can be evicted.
+   *
+   * @return a connection from the pool
+   * @throws SQLException if no connection can be borrowed
+   */
+  Connection borrow() throws SQLException;
+
+  /**
+   * Closes a borrowed connection and removes it from the pool.
+   *
+   * @param connection a connection obtained from {@link #borrow()}
+   * @throws SQLException if the connection cannot be evicted
+   */
+  void evict(Connection connection) throws SQLException;
+
+  /** Marks every remaining connection for eviction at once. */
+  void evictAll();
+
+  /**
+   * Called when a rolling run ends with the connections it evicted one by one, for example to
+   * record them. Connections marked by {@link #evictAll()} are not included.
+   *
+   * @param count the connections the run evicted
+   */
+  default void evicted(int count) {}
+}
@@ -0,0 +1,21 @@
+package com.maybeitssquid.rotatingsecrets;
+
+/**
+ * How a connection pool moves its connections onto rotated credentials.
+ *
+ * @see EvictionPolicy
+ */
+public enum EvictionMode {
+
+  /**
+   * Mark every existing connection for eviction at once. Idle connections close immediately and
+   * busy ones on return, so all replacements are opened together.
+   */
+  SOFT,
+
+  /**
+   * Evict existing connections in rate-limited waves with a {@link RollingEvictor}, letting the
+   * pool refill between waves so that it keeps a floor of warm connections.
+   */
+  ROLLING
+}
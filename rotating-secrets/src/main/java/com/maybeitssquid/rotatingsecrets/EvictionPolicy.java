@@ -0,0 +1,146 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings that control how connection pools retire connections after a credential rotation.
+ *
+ * <p>The default {@link EvictionMode#SOFT} mode marks every connection at once. In {@link
+ * EvictionMode#ROLLING} mode a {@link RollingEvictor} retires the connections that existed at
+ * rotation time in waves of {@code k8s.secrets.evictionWaveSize} connections, or {@code
+ * k8s.secrets.evictionWavePercent} percent of the pool if no size is given, one wave every {@code
+ * k8s.secrets.evictionInterval} milliseconds. A wave never leaves fewer than {@code
+ * k8s.secrets.evictionFloor} idle connections, so the pool refills before evicting further.
+ * Whatever is left after {@code k8s.secrets.evictionTimeout} milliseconds is soft-evicted at once.
+ *
+ * <p>The HikariCP and Oracle UCP updaters pick up this bean automatically; without it they use
+ * {@link EvictionMode#SOFT}.
+ *
+ * @see RollingEvictor
+ */
+@Component
+public class EvictionPolicy {
+
+  private volatile EvictionMode mode = EvictionMode.SOFT;
+  private volatile int waveSize = 0;
+  private volatile int wavePercent = 25;
+  private volatile long intervalMs = 1000;
+  private volatile int floor = 1;
+  private volatile long timeoutMs = 60000;
+
+  /** Creates a policy with the default, all-at-once {@link EvictionMode#SOFT} mode. */
+  public EvictionPolicy() {
+    // Settings are applied through the setters
+  }
+
+  /**
+   * Returns the eviction mode.
+   *
+   * @return the mode
+   */
+  public EvictionMode getMode() {
+    return mode;
+  }
+
+  /**
+   * Sets the eviction mode.
+   *
+   * @param mode {@link EvictionMode#SOFT} to evict everything at once, or {@link
+   *     EvictionMode#ROLLING} to evict in waves
+   */
+  @Value("${k8s.secrets.evictionMode:SOFT}")
+  public void setMode(EvictionMode mode) {
+    this.mode = mode;
+  }
+
+  /**
+   * Sets the number of connections to evict per wave.
+   *
+   * @param waveSize connections per wave; {@code 0} uses the wave percentage instead
+   */
+  @Value("${k8s.secrets.evictionWaveSize:0}")
+  public void setWaveSize(int waveSize) {
+    this.waveSize = waveSize;
+  }
+
+  /**
+   * Sets the share of the pool to evict per wave when no wave size is given.
+   *
+   * @param wavePercent percentage of the connections open at rotation time, rounded up
+   */
+  @Value("${k8s.secrets.evictionWavePercent:25}")
+  public void setWavePercent(int wavePercent) {
+    this.wavePercent = wavePercent;
+  }
+
+  /**
+   * Returns the delay between waves.
+   *
+   * @return the interval in milliseconds
+   */
+  public long getIntervalMs() {
+    return intervalMs;
+  }
+
+  /**
+   * Sets the delay between waves.
+   *
+   * @param intervalMs the interval in milliseconds
+   */
+  @Value("${k8s.secrets.evictionInterval:1000}")
+  public void setIntervalMs(long intervalMs) {
+    this.intervalMs = intervalMs;
+  }
+
+  /**
+   * Returns the number of idle connections a wave must leave in the pool.
+   *
+   * @return the floor of warm connections
+   */
+  public int getFloor() {
+    return floor;
+  }
+
+  /**
+   * Sets the number of idle connections a wave must leave in the pool.
+   *
+   * @param floor the floor of warm connections
+   */
+  @Value("${k8s.secrets.evictionFloor:1}")
+  public void setFloor(int floor) {
+    this.floor = floor;
+  }
+
+  /**
+   * Returns how long rolling eviction may take before the remainder is soft-evicted.
+   *
+   * @return the timeout in milliseconds
+   */
+  public long getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  /**
+   * Sets how long rolling eviction may take before the remainder is soft-evicted.
+   *
+   * @param timeoutMs the timeout in milliseconds
+   */
+  @Value("${k8s.secrets.evictionTimeout:60000}")
+  public void setTimeoutMs(long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Returns the number of connections to evict per wave for a pool of the given size.
+   *
+   * @param total the number of connections open at rotation time
+   * @return the wave size, at least {@code 1}
+   */
+  public int waveSize(int total) {
+    if (waveSize > 0) {
+      return waveSize;
+    }
+    return Math.max(1, (int) Math.ceil(total * Math.max(0, wavePercent) / 100.0));
+  }
+}
@@ -0,0 +1,153 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the pair a rotation replaced for a grace period, so that the rotation can be rolled back if
+ * the database keeps refusing the new one.
+ *
+ * <p>With a {@code k8s.secrets.gracePeriod}, each rotation {@linkplain #started starts} a grace
+ * period. Authentication failures reported for the new generation within it are {@linkplain
+ * #countRejection counted}, and once {@code k8s.secrets.rollbackThreshold} of them have been seen a
+ * rollback is requested. The {@link CredentialsProviderService} then {@linkplain #takeRollback
+ * takes} the previous pair, publishes it again as a new generation and retries promotion of the
+ * pair in the secret files once another grace period has passed.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe. Its lock is never held while acquiring the service's, so that
+ * connection threads reporting failures do not wait for a rotation in progress.
+ */
+final class GracePeriod {
+
+  private static final Logger log = LoggerFactory.getLogger(GracePeriod.class);
+
+  /**
+   * The pair restored by a rollback.
+   *
+   * @param previous the pair the rejected rotation replaced
+   * @param failures the authentication failures that requested the rollback
+   */
+  record Rollback(CredentialSnapshot<String> previous, int failures) {}
+
+  private volatile long periodMs = 0;
+  private volatile int threshold = 3;
+
+  /** The pair the last rotation replaced, kept until the grace period ends. */
+  private CredentialSnapshot<String> previous;
+
+  /** The generation the last rotation published. */
+  private long generation;
+
+  private long untilMillis;
+  private int failures;
+  private boolean rollbackRequested;
+  private final LongAdder rollbacks = new LongAdder();
+
+  /**
+   * Returns how long the pair replaced by a rotation is kept.
+   *
+   * @return the grace period in milliseconds; {@code 0} disables rollback
+   */
+  long periodMs() {
+    return periodMs;
+  }
+
+  /**
+   * Sets how long the pair replaced by a rotation is kept.
+   *
+   * @param periodMs the grace period in milliseconds; {@code 0} disables rollback
+   */
+  void setPeriodMs(long periodMs) {
+    this.periodMs = periodMs;
+  }
+
+  /**
+   * Sets how many authentication failures within the grace period request a rollback.
+   *
+   * @param threshold the number of reported failures, at least {@code 1}
+   */
+  void setThreshold(int threshold) {
+    this.threshold = Math.max(1, threshold);
+  }
+
+  /**
+   * Starts the grace period of a newly published generation, discarding any earlier one.
+   *
+   * @param replaced the pair the rotation replaced, or {@code null} for the first credentials
+   * @param published the generation the rotation published
+   * @param atMillis when the new pair was read
+   */
+  synchronized void started(CredentialSnapshot<String> replaced, long published, long atMillis) {
+    failures = 0;
+    rollbackRequested = false;
+    previous = replaced != null && periodMs > 0 ? replaced : null;
+    generation = published;
+    untilMillis = atMillis + periodMs;
+  }
+
+  /**
+   * Counts a new connection refused with a generation's credentials.
+   *
+   * <p>Only failures of the last published generation within its grace period count.
+   *
+   * @param rejected the generation whose credentials were rejected
+   * @param reason the driver's message, for the log
+   * @return {@code true} if this failure reached the threshold and requested a rollback
+   */
+  synchronized boolean countRejection(long rejected, String reason) {
+    if (previous == null
+        || rollbackRequested
+        || rejected != generation
+        || System.currentTimeMillis() > untilMillis) {
+      return false;
+    }
+    failures++;
+    log.debug(
+        "Credentials generation {} rejected ({} of {}): {}", rejected, failures, threshold, reason);
+    if (failures < threshold) {
+      return false;
+    }
+    rollbackRequested = true;
+    return true;
+  }
+
+  /**
+   * Returns whether a rollback has been requested and not yet taken.
+   *
+   * @return {@code true} if the next check should roll the rotation back
+   */
+  synchronized boolean isRollbackRequested() {
+    return rollbackRequested;
+  }
+
+  /**
+   * Consumes a requested rollback.
+   *
+   * @return the pair to restore, or {@code null} if no rollback was requested
+   */
+  synchronized Rollback takeRollback() {
+    if (!rollbackRequested) {
+      return null;
+    }
+    rollbackRequested = false;
+    return previous != null ? new Rollback(previous, failures) : null;
+  }
+
+  /** Records a completed rollback; the restored generation cannot itself be rolled back. */
+  synchronized void rolledBack() {
+    previous = null;
+    rollbacks.increment();
+  }
+
+  /**
+   * Returns how many rotations have been rolled back.
+   *
+   * @return the count of rollbacks
+   */
+  long getRollbacks() {
+    return rollbacks.sum();
+  }
+}
@@ -0,0 +1,61 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * {@link CredentialValidator} that opens a short-lived probe connection through {@link
+ * DriverManager}.
+ *
+ * <p>The probe connects to the same JDBC URL as the pool, outside of the pool, so a failed probe
+ * leaves the pool untouched. The connection is checked with {@link Connection#isValid(int)} and
+ * closed immediately. {@link CredentialsProviderService} bounds each probe with {@code
+ * k8s.secrets.validationTimeout}; a driver-level connect timeout in the URL keeps an unreachable
+ * database from tying up a rotation thread beyond that.
+ *
+ * <h2>Example</h2>
+ *
+ * <pre>{@code
+ * @Bean("credentialValidator")
+ * CredentialValidator credentialValidator(@Value("${spring.datasource.url}") String url) {
+ *   return new JdbcCredentialValidator(url, 5);
+ * }
+ * }</pre>
+ */
+public class JdbcCredentialValidator implements CredentialValidator {
+
+  private final String url;
+  private final int timeoutSeconds;
+
+  /**
+   * Creates a validator for the given database.
+   *
+   * @param url the JDBC URL of the database the pools connect to
+   * @param timeoutSeconds the timeout passed to {@link Connection#isValid(int)}, in seconds
+   */
+  public JdbcCredentialValidator(String url, int timeoutSeconds) {
+    this.url = url;
+    this.timeoutSeconds = timeoutSeconds;
+  }
+
+  /**
+   * Opens a probe connection with the candidate credentials and checks that it is usable.
+   *
+   * @param username the candidate username
+   * @param credential the candidate password
+   * @throws SQLException if the connection cannot be opened or is not valid
+   */
+  @Override
+  public void validate(String username, String credential) throws SQLException {
+    Properties props = new Properties();
+    props.setProperty("user", username);
+    props.setProperty("password", credential);
+    try (Connection connection = DriverManager.getConnection(url, props)) {
+      if (!connection.isValid(timeoutSeconds)) {
+        throw new SQLException("Probe connection to " + url + " is not valid");
+      }
+    }
+  }
+}
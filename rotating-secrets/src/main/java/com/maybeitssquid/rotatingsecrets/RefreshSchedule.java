@@ -0,0 +1,113 @@
+package com.maybeitssquid.rotatingsecrets;
+
+/**
+ * Adaptive fallback schedule for re-checking a secrets directory when no watch event arrives.
+ *
+ * <p>The schedule starts at the base interval and doubles it after every check that finds the
+ * secrets unchanged, up to a ceiling, so stable secrets cost progressively fewer wake-ups. It snaps
+ * back to the base interval when:
+ *
+ * <ul>
+ *   <li>a rotation is observed;
+ *   <li>a watch anomaly is reported, such as an overflowed event queue or secret files that
+ *       disappeared; or
+ *   <li>the next rotation is expected soon. The cadence is estimated from the modification times of
+ *       the rotated files, smoothed over successive rotations, and checks run at the base interval
+ *       from shortly before until shortly after the expected time.
+ * </ul>
+ *
+ * <p>A ceiling equal to the base interval disables backoff and yields the fixed interval.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe.
+ */
+final class RefreshSchedule {
+
+  /** Fraction of the estimated cadence on either side of the expected rotation to check closely. */
+  private static final double WINDOW_FRACTION = 0.1;
+
+  private final long baseMs;
+  private final long maxMs;
+
+  private long currentMs;
+  private long lastRotationAtMillis = -1;
+  private long cadenceMs = -1;
+
+  /**
+   * Creates a schedule.
+   *
+   * @param baseMs the shortest interval, used after rotations and anomalies
+   * @param maxMs the ceiling for backoff; values below {@code baseMs} disable backoff
+   */
+  RefreshSchedule(long baseMs, long maxMs) {
+    this.baseMs = baseMs;
+    this.maxMs = Math.max(baseMs, maxMs);
+    this.currentMs = baseMs;
+  }
+
+  /** Records a check that found the secrets unchanged, backing the interval off. */
+  synchronized void unchanged() {
+    currentMs = currentMs >= maxMs / 2 ? maxMs : currentMs * 2;
+  }
+
+  /**
+   * Records a rotation and updates the cadence estimate.
+   *
+   * @param rotatedAtMillis when the new secrets were written, taken from the files' modification
+   *     times
+   */
+  synchronized void rotated(long rotatedAtMillis) {
+    if (lastRotationAtMillis >= 0 && rotatedAtMillis > lastRotationAtMillis) {
+      long interval = rotatedAtMillis - lastRotationAtMillis;
+      cadenceMs = cadenceMs < 0 ? interval : (3 * cadenceMs + interval) / 4;
+    }
+    lastRotationAtMillis = Math.max(lastRotationAtMillis, rotatedAtMillis);
+    currentMs = baseMs;
+  }
+
+  /** Records a watch anomaly, returning to the base interval. */
+  synchronized void anomaly() {
+    currentMs = baseMs;
+  }
+
+  /**
+   * Returns how long to wait before the next fallback check.
+   *
+   * @param nowMillis the current wall-clock time
+   * @return the delay in milliseconds, between the base interval and the ceiling
+   */
+  synchronized long nextDelayMs(long nowMillis) {
+    long expectedAt = expectedRotationAtMillis();
+    if (expectedAt < 0) {
+      return currentMs;
+    }
+    long window = Math.max(baseMs, (long) (cadenceMs * WINDOW_FRACTION));
+    long windowStart = expectedAt - window;
+    if (nowMillis >= windowStart && nowMillis <= expectedAt + window) {
+      return baseMs;
+    }
+    if (nowMillis < windowStart) {
+      return Math.max(baseMs, Math.min(currentMs, windowStart - nowMillis));
+    }
+    return currentMs;
+  }
+
+  /**
+   * Returns when the next rotation is expected.
+   *
+   * @return the expected time in epoch milliseconds, or {@code -1} until a cadence is known
+   */
+  synchronized long expectedRotationAtMillis() {
+    return cadenceMs > 0 ? lastRotationAtMillis + cadenceMs : -1;
+  }
+
+  /**
+   * Returns the current backoff interval, ignoring any expected rotation.
+   *
+   * @return the interval in milliseconds
+   */
+  synchronized long currentIntervalMs() {
+    return currentMs;
+  }
+}
@@ -0,0 +1,263 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retires a pool's connections in rate-limited waves after a credential rotation.
+ *
+ * <p>Soft-evicting a whole pool at once makes every replacement connection handshake at the same
+ * time, so TLS, authentication and session setup pile up and connection acquisition latency spikes.
+ * A rolling evictor instead retires the connections the rotation superseded a wave at a time, by
+ * borrowing idle connections and evicting the {@linkplain EvictablePool#isSuperseded(Connection)
+ * superseded} ones. Connections a wave borrows stay out of the pool until the wave ends, so each
+ * borrow yields a different connection whatever order the pool hands them out in; fresh ones are
+ * returned untouched. A wave borrows no more than the idle connections above the {@linkplain
+ * EvictionPolicy#getFloor() floor}, fresh ones included, so the application can always borrow the
+ * floor's connections while a wave runs. Between waves the pool refills with connections that use
+ * the new credentials. Connections that are busy are reached in later waves once they are returned;
+ * so are those the floor keeps out of a wave's reach, unless the pool keeps handing out its fresh
+ * connections first. Whatever is left when the {@linkplain EvictionPolicy#getTimeoutMs() timeout}
+ * elapses is soft-evicted at once.
+ *
+ * <p>A run ends once the pool {@linkplain EvictablePool#getSupersededConnections() reports} no
+ * superseded connections. Pools that cannot tell their connections apart have every connection open
+ * when {@link #start()} was called retired, by count.
+ *
+ * <p>Each evictor runs its waves on its own daemon thread, named {@code credentials-evict-} and the
+ * pool name, so a borrow that waits on one pool does not hold up another pool's waves. The thread
+ * exits when the evictor has been idle for a minute. Every run {@linkplain
+ * EvictablePool#evicted(int) reports} the connections it evicted exactly once, when it ends.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe. Starting a new run cancels the previous one.
+ *
+ * @see EvictionPolicy
+ */
+public final class RollingEvictor {
+
+  private static final Logger log = LoggerFactory.getLogger(RollingEvictor.class);
+
+  private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+  private final EvictablePool pool;
+  private final EvictionPolicy policy;
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  /** The active run, or {@code null}. Guarded by {@code this}. */
+  private Run current;
+
+  private volatile int lastEvicted;
+
+  /**
+   * Creates an evictor for a pool.
+   *
+   * @param pool the pool to retire connections from
+   * @param policy the wave size, interval, floor and timeout to apply
+   */
+  public RollingEvictor(EvictablePool pool, EvictionPolicy policy) {
+    this.pool = pool;
+    this.policy = policy;
+    this.scheduler =
+        new ScheduledThreadPoolExecutor(
+            1,
+            task -> {
+              Thread thread = new Thread(task, "credentials-evict-" + pool.getName());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.scheduler.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    this.scheduler.allowCoreThreadTimeOut(true);
+    this.scheduler.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Starts retiring the connections that are currently open, cancelling any run in progress.
+   *
+   * <p>The first wave runs immediately on the eviction thread.
+   */
+  public synchronized void start() {
+    final int superseded = pool.getSupersededConnections();
+    final int total = superseded >= 0 ? superseded : pool.getTotalConnections();
+    if (total <= 0) {
+      current = null;
+      return;
+    }
+    final Run run =
+        new Run(
+            total,
+            policy.waveSize(total),
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getTimeoutMs()));
+    current = run;
+    log.debug("Rolling eviction of {} connections from {} started", total, pool.getName());
+    scheduler.execute(run);
+  }
+
+  /**
+   * Ends the run in progress, if any, by retiring the connections it has not reached yet at once,
+   * as its timeout would. Used when the superseded credentials are about to stop working.
+   */
+  public void complete() {
+    synchronized (this) {
+      if (current == null) {
+        return;
+      }
+      current = null;
+    }
+    log.info("Rolling eviction of {} cut short; evicting the rest at once", pool.getName());
+    pool.evictAll();
+  }
+
+  /** Stops the run in progress, if any, leaving the remaining connections in place. */
+  public synchronized void cancel() {
+    current = null;
+  }
+
+  /**
+   * Reports whether a run is in progress.
+   *
+   * @return {@code true} until the current run has retired its connections, timed out or been
+   *     cancelled
+   */
+  public synchronized boolean isRunning() {
+    return current != null;
+  }
+
+  /**
+   * Returns the number of connections retired one by one by the most recent run so far.
+   *
+   * @return the count of individually evicted connections
+   */
+  public int getLastEvicted() {
+    return lastEvicted;
+  }
+
+  private synchronized boolean isCurrent(Run run) {
+    return current == run;
+  }
+
+  private synchronized boolean finish(Run run) {
+    if (current != run) {
+      return false;
+    }
+    current = null;
+    return true;
+  }
+
+  /**
+   * One rolling eviction, rescheduling itself after each wave until done. Runs only on the eviction
+   * thread; a run that was completed, cancelled or replaced reports its evictions the next time it
+   * runs.
+   */
+  private final class Run implements Runnable {
+
+    private final int waveSize;
+    private final long deadlineNanos;
+    private int remaining;
+    private int evicted;
+    private boolean reported;
+
+    Run(int remaining, int waveSize, long deadlineNanos) {
+      this.remaining = remaining;
+      this.waveSize = waveSize;
+      this.deadlineNanos = deadlineNanos;
+      lastEvicted = 0;
+    }
+
+    @Override
+    public void run() {
+      if (!isCurrent(this)) {
+        report();
+        return;
+      }
+      if (System.nanoTime() - deadlineNanos >= 0) {
+        log.warn(
+            "Rolling eviction of {} timed out with {} connections left; evicting the rest at once",
+            pool.getName(),
+            remaining);
+        if (finish(this)) {
+          pool.evictAll();
+        }
+        report();
+        return;
+      }
+      final int idle = pool.getIdleConnections();
+      if (idle < 0) {
+        finish(this);
+        report();
+        return;
+      }
+      final int superseded = pool.getSupersededConnections();
+      if (superseded >= 0) {
+        remaining = superseded;
+      }
+      if (remaining > 0) {
+        wave(Math.min(waveSize, remaining), idle - policy.getFloor());
+      }
+      if (remaining <= 0) {
+        if (finish(this)) {
+          log.debug("Rolling eviction of {} finished", pool.getName());
+        }
+        report();
+      } else if (isCurrent(this)) {
+        scheduler.schedule(this, policy.getIntervalMs(), TimeUnit.MILLISECONDS);
+      } else {
+        report();
+      }
+    }
+
+    private void report() {
+      if (!reported) {
+        reported = true;
+        pool.evicted(evicted);
+      }
+    }
+
+    /**
+     * Evicts up to {@code target} superseded connections, borrowing no more than {@code limit}
+     * connections: the idle ones above the floor. Borrowed connections that are not superseded are
+     * held until the wave ends, so that the pool hands out a different one on each borrow, and then
+     * returned; they count against the limit, since the application cannot borrow them meanwhile.
+     */
+    private void wave(int target, int limit) {
+      final List<Connection> fresh = new ArrayList<>();
+      int waveEvicted = 0;
+      try {
+        for (int borrowed = 0; borrowed < limit && waveEvicted < target; borrowed++) {
+          if (!isCurrent(this)) {
+            break;
+          }
+          final Connection connection = pool.borrow();
+          if (!pool.isSuperseded(connection)) {
+            fresh.add(connection);
+            continue;
+          }
+          pool.evict(connection);
+          waveEvicted++;
+          remaining--;
+          evicted++;
+          if (isCurrent(this)) {
+            lastEvicted = evicted;
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        log.warn("Rolling eviction from {} failed to evict a connection", pool.getName(), e);
+      } finally {
+        for (Connection connection : fresh) {
+          try {
+            connection.close();
+          } catch (SQLException e) {
+            log.debug("Returning a current connection to {} failed", pool.getName(), e);
+          }
+        }
+      }
+    }
+  }
+}
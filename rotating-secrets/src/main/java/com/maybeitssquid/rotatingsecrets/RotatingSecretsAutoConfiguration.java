@@ -0,0 +1,75 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import com.maybeitssquid.rotatingsecrets.hikari.HikariDataSourceConfig;
+import com.maybeitssquid.rotatingsecrets.registry.CredentialsRegistry;
+import com.maybeitssquid.rotatingsecrets.registry.DataSourceRegistrar;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpDataSourceConfig;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Spring Boot auto-configuration for the pool-independent parts of credential rotation.
+ *
+ * <p>Registers the shared {@link SecretsWatcher}, the {@link EvictionPolicy}, and the {@link
+ * CredentialsRegistry} with its {@link DataSourceRegistrar}. The pools themselves are configured by
+ * the separate, conditional {@link HikariDataSourceConfig} and {@link UcpDataSourceConfig}
+ * auto-configurations, so an application that uses one pool never builds the other.
+ *
+ * <p>The default {@code credentialsProvider} {@link CredentialsProviderService} refuses to start
+ * without its secrets directory, so it is only registered when {@code k8s.secrets.path} is set or a
+ * {@code hikariUpdater} or {@code ucpUpdater} bean needs it. An application that only declares data
+ * sources under {@code rotating-secrets.datasources.*} starts without it.
+ *
+ * <p>An application that component-scans this package gets the same beans from the scan; the
+ * imported definitions are then skipped.
+ *
+ * <p>For native images, {@link RotatingSecretsRuntimeHints} adds the reflection and resource hints
+ * that ahead-of-time processing cannot derive from the bean definitions.
+ */
+@AutoConfiguration(after = {HikariDataSourceConfig.class, UcpDataSourceConfig.class})
+@ImportRuntimeHints(RotatingSecretsRuntimeHints.class)
+@Import({
+  SecretsWatcher.class,
+  EvictionPolicy.class,
+  CredentialsRegistry.class,
+  DataSourceRegistrar.class
+})
+public class RotatingSecretsAutoConfiguration {
+
+  /** Default constructor. */
+  public RotatingSecretsAutoConfiguration() {
+    // Auto-configuration entry point
+  }
+
+  /** Imports the default {@code credentialsProvider} when there is a secret for it to serve. */
+  @Configuration(proxyBeanMethods = false)
+  @Conditional(DefaultCredentialsProvider.OnDefaultSecret.class)
+  @ConditionalOnMissingBean(name = "credentialsProvider")
+  @Import(CredentialsProviderService.class)
+  static class DefaultCredentialsProvider {
+
+    /** Matches when the secrets path is configured or a default pool's updater exists. */
+    static final class OnDefaultSecret extends AnyNestedCondition {
+
+      OnDefaultSecret() {
+        super(ConfigurationPhase.REGISTER_BEAN);
+      }
+
+      @ConditionalOnProperty("k8s.secrets.path")
+      static class SecretsPath {}
+
+      @ConditionalOnBean(name = "hikariUpdater")
+      static class HikariUpdater {}
+
+      @ConditionalOnBean(name = "ucpUpdater")
+      static class UcpUpdater {}
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties;
+import com.maybeitssquid.rotatingsecrets.ucp.RotatingConnectionFactory;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpRotationStrategy;
+import java.util.List;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Native-image hints for the parts of credential rotation that Spring's ahead-of-time processing
+ * cannot infer from bean definitions.
+ *
+ * <ul>
+ *   <li>Oracle UCP creates its connection factory from a class name and configures it through
+ *       reflective setter calls, so {@link RotatingConnectionFactory} and the Oracle factories it
+ *       delegates to by name must keep their public constructors and methods.
+ *   <li>UCP loads its error messages from the {@code oracle.ucp.util.UCPMessages} resource bundle.
+ *   <li>Enum-valued settings are converted from strings by name.
+ * </ul>
+ *
+ * <p>UCP's and HikariCP's own internals are covered by the GraalVM reachability metadata
+ * repository, and {@code ojdbc} ships its metadata in its jar. The UCP hints are only registered
+ * when UCP is on the classpath.
+ *
+ * @see RotatingSecretsAutoConfiguration
+ */
+public class RotatingSecretsRuntimeHints implements RuntimeHintsRegistrar {
+
+  /** Connection factories and drivers a UCP pool or {@link RotatingConnectionFactory} may name. */
+  static final List<String> ORACLE_FACTORIES =
+      List.of("oracle.jdbc.pool.OracleDataSource", "oracle.jdbc.OracleDriver");
+
+  /** Creates the registrar. */
+  public RotatingSecretsRuntimeHints() {
+    // Instantiated by Spring's AOT processing
+  }
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    for (Class<?> type :
+        List.of(
+            SecretConsistency.class,
+            EvictionMode.class,
+            UcpRotationStrategy.class,
+            RotatingDataSourceProperties.Pool.class)) {
+      hints.reflection().registerType(type, MemberCategory.INVOKE_PUBLIC_METHODS);
+    }
+
+    if (!ClassUtils.isPresent("oracle.ucp.jdbc.PoolDataSource", classLoader)) {
+      return;
+    }
+    hints
+        .reflection()
+        .registerType(
+            RotatingConnectionFactory.class,
+            MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+            MemberCategory.INVOKE_PUBLIC_METHODS);
+    for (String factory : ORACLE_FACTORIES) {
+      if (ClassUtils.isPresent(factory, classLoader)) {
+        hints
+            .reflection()
+            .registerType(
+                TypeReference.of(factory),
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+      }
+    }
+    hints.resources().registerResourceBundle("oracle.ucp.util.UCPMessages");
+  }
+}
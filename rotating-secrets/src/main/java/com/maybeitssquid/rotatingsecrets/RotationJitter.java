@@ -0,0 +1,135 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Deterministic delay before an instance applies a new credential generation.
+ *
+ * <p>Replicas that mount the same secret observe a rotation within moments of each other. If each
+ * then reconnects its whole pool immediately, the database sees a burst of logins from every
+ * replica at once. This class spreads the replicas across a jitter window: each instance derives a
+ * fixed offset within the window from a seed, normally its pod name or hostname, so the spread is
+ * stable across rotations and restarts and, because the seed is hashed with SHA-256, uniform even
+ * for seeds that differ only in a short suffix, as generated pod names do.
+ *
+ * <p>The offset is only a target: {@link #applyAt(long, long)} brings it forward to a deadline,
+ * such as the margin before the current lease expires, so that a rotation still completes in time.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+final class RotationJitter {
+
+  /** Jitter that applies every rotation immediately. */
+  static final RotationJitter NONE = new RotationJitter("", 0, 0);
+
+  private final String seed;
+  private final long windowMs;
+  private final long offsetMs;
+
+  private RotationJitter(String seed, long windowMs, long offsetMs) {
+    this.seed = seed;
+    this.windowMs = windowMs;
+    this.offsetMs = offsetMs;
+  }
+
+  /**
+   * Creates the jitter for one instance.
+   *
+   * @param seed identifies the instance, e.g. the pod name; {@code null} or empty selects {@link
+   *     #defaultSeed()}
+   * @param windowMs the width of the window in milliseconds; {@code 0} or less disables jitter
+   * @return the jitter, with an offset in {@code [0, windowMs)}
+   */
+  static RotationJitter of(String seed, long windowMs) {
+    if (windowMs <= 0) {
+      return NONE;
+    }
+    final String effectiveSeed = seed == null || seed.isEmpty() ? defaultSeed() : seed;
+    return new RotationJitter(effectiveSeed, windowMs, offset(effectiveSeed, windowMs));
+  }
+
+  /**
+   * Returns the seed used when none is configured.
+   *
+   * @return the {@code HOSTNAME} environment variable, which Kubernetes sets to the pod name, or
+   *     the local host name, or an empty string if neither is available
+   */
+  static String defaultSeed() {
+    final String hostname = System.getenv("HOSTNAME");
+    if (hostname != null && !hostname.isEmpty()) {
+      return hostname;
+    }
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "";
+    }
+  }
+
+  /**
+   * Maps a seed uniformly onto the window.
+   *
+   * @param seed the instance seed
+   * @param windowMs the width of the window in milliseconds
+   * @return the offset in {@code [0, windowMs)}
+   */
+  private static long offset(String seed, long windowMs) {
+    try {
+      final byte[] hash =
+          MessageDigest.getInstance("SHA-256").digest(seed.getBytes(StandardCharsets.UTF_8));
+      final long bits = ByteBuffer.wrap(hash).getLong() >>> 11;
+      return (long) (bits * 0x1.0p-53 * windowMs);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * Returns when a rotation first observed at {@code observedAtMillis} should be applied.
+   *
+   * @param observedAtMillis when this instance first saw the new generation, in epoch milliseconds
+   * @param deadlineMillis the latest acceptable time in epoch milliseconds, or {@link
+   *     Long#MAX_VALUE} if there is none
+   * @return the earlier of the offset time and the deadline, but not before {@code
+   *     observedAtMillis}
+   */
+  long applyAt(long observedAtMillis, long deadlineMillis) {
+    return Math.max(observedAtMillis, Math.min(observedAtMillis + offsetMs, deadlineMillis));
+  }
+
+  /**
+   * Returns whether this jitter delays rotations at all.
+   *
+   * @return {@code true} if the window is non-empty
+   */
+  boolean isEnabled() {
+    return windowMs > 0;
+  }
+
+  /**
+   * Returns this instance's offset within the window.
+   *
+   * @return the offset in milliseconds
+   */
+  long offsetMs() {
+    return offsetMs;
+  }
+
+  @Override
+  public String toString() {
+    return "RotationJitter[seed="
+        + seed
+        + ", window="
+        + windowMs
+        + "ms, offset="
+        + offsetMs
+        + "ms]";
+  }
+}
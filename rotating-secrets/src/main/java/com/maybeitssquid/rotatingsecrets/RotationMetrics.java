@@ -0,0 +1,111 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.time.Duration;
+
+/**
+ * Receives measurements from the credential rotation pipeline.
+ *
+ * <p>{@link CredentialsProviderService} reports every check of its secrets directory, the cost of
+ * reading the files, and for each rotation how long it took to reach every registered component;
+ * the HikariCP and Oracle UCP updaters report how many connections each rotation retired. Sources
+ * are identified by their secrets directory, components by their {@linkplain
+ * UpdatableCredential#getName() name}.
+ *
+ * <p>Every method does nothing by default, and {@link #NONE} is used until metrics are configured,
+ * so the library has no hard dependency on a metrics library. {@link
+ * com.maybeitssquid.rotatingsecrets.micrometer.MicrometerRotationMetrics} records them with
+ * Micrometer and is configured automatically when a {@code MeterRegistry} is available.
+ *
+ * <p>Methods are called from the watch thread, the rotation executor and pool threads, and must be
+ * thread-safe and cheap.
+ *
+ * @see CredentialsProviderService#setRotationMetrics(RotationMetrics)
+ */
+public interface RotationMetrics {
+
+  /** Metrics that record nothing. */
+  RotationMetrics NONE = new RotationMetrics() {};
+
+  /** What caused a check of a secrets directory. */
+  enum Trigger {
+    /** A relevant watch event. */
+    EVENT,
+
+    /** The fallback interval elapsed without an event. */
+    POLL,
+
+    /** An explicit request, such as a rejected login or a restart. */
+    REQUEST
+  }
+
+  /** What a check of a secrets directory did. */
+  enum CheckOutcome {
+    /** A new credential pair was published to the components. */
+    APPLIED,
+
+    /** The files, or the pair they hold, had not changed. */
+    UNCHANGED,
+
+    /** A new pair is waiting for its rotation jitter slot. */
+    DEFERRED,
+
+    /** The pair failed the {@link SecretConsistency} check. */
+    INCONSISTENT,
+
+    /** The pair was refused by the {@link CredentialValidator}. */
+    REJECTED,
+
+    /** The secret files could not be found. */
+    UNAVAILABLE
+  }
+
+  /**
+   * Starts observing the state of a service, such as its current generation and its age.
+   *
+   * @param service the service to observe
+   */
+  default void bind(CredentialsProviderService service) {}
+
+  /**
+   * Records a check of a secrets directory and its outcome.
+   *
+   * @param source the secrets directory
+   * @param trigger what caused the check
+   * @param outcome what the check did
+   */
+  default void checked(String source, Trigger trigger, CheckOutcome outcome) {}
+
+  /**
+   * Records reading the contents of both secret files.
+   *
+   * @param source the secrets directory
+   * @param duration how long the reads took
+   */
+  default void secretsRead(String source, Duration duration) {}
+
+  /**
+   * Records how long a rotation took to reach every component, from when the secret files were
+   * written until the last component finished applying it.
+   *
+   * @param source the secrets directory
+   * @param latency the propagation latency
+   */
+  default void propagated(String source, Duration latency) {}
+
+  /**
+   * Records one component applying a rotation.
+   *
+   * @param source the secrets directory
+   * @param outcome the component's status and duration
+   */
+  default void credentialApplied(String source, RotationResult.Outcome outcome) {}
+
+  /**
+   * Records the connections a pool retired because of a rotation.
+   *
+   * @param pool the name of the pool's updater
+   * @param count the connections marked for eviction at once, or evicted one by one by a rolling
+   *     run
+   */
+  default void connectionsEvicted(String pool, int count) {}
+}
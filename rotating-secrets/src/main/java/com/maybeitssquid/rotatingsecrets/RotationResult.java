@@ -0,0 +1,129 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of fanning one credential rotation out to every registered {@link UpdatableCredential}.
+ *
+ * <p>Each updater is applied independently, so one failing or slow pool does not prevent or delay
+ * the others. The result records, per updater, whether it succeeded, failed or exceeded its
+ * timeout, and how long it took; the overall duration is bounded by the slowest updater rather than
+ * the sum of all of them.
+ *
+ * @see CredentialsProviderService#updateCredentials()
+ */
+public final class RotationResult {
+
+  /** Final state of a single updater's rotation. */
+  public enum Status {
+    /** {@link UpdatableCredential#setCredential(String, Object)} returned normally. */
+    SUCCEEDED,
+    /** {@link UpdatableCredential#setCredential(String, Object)} threw an exception. */
+    FAILED,
+    /**
+     * The updater did not finish within the configured timeout. It keeps running in the background
+     * and may still complete later.
+     */
+    TIMED_OUT
+  }
+
+  /**
+   * Rotation outcome for one updater.
+   *
+   * @param updatable the updater
+   * @param status whether the updater succeeded, failed or timed out
+   * @param duration time spent in the updater, or the timeout if it timed out
+   * @param failure the exception thrown by the updater, or {@code null}
+   */
+  public record Outcome(
+      UpdatableCredential<?> updatable, Status status, Duration duration, Throwable failure) {
+
+    /**
+     * Returns the updater's {@linkplain UpdatableCredential#getName() name}, resolved on demand so
+     * that building a result never calls back into the updater.
+     *
+     * @return the updater's name, or its class name if it does not report one
+     */
+    public String name() {
+      return nameOf(updatable);
+    }
+  }
+
+  private final List<Outcome> outcomes;
+  private final Duration duration;
+
+  /**
+   * Creates a result from the per-updater outcomes.
+   *
+   * @param outcomes the outcome of each updater, in registration order
+   * @param duration wall-clock time of the whole fan-out
+   */
+  RotationResult(List<Outcome> outcomes, Duration duration) {
+    this.outcomes = List.copyOf(outcomes);
+    this.duration = duration;
+  }
+
+  /**
+   * Returns the outcome of each updater, in registration order.
+   *
+   * @return an unmodifiable list of outcomes
+   */
+  public List<Outcome> getOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * Returns the outcomes of updaters that failed or timed out.
+   *
+   * @return an unmodifiable list of unsuccessful outcomes
+   */
+  public List<Outcome> getFailures() {
+    return outcomes.stream().filter(o -> o.status() != Status.SUCCEEDED).toList();
+  }
+
+  /**
+   * Reports whether every updater succeeded.
+   *
+   * @return {@code true} if no updater failed or timed out
+   */
+  public boolean isSuccessful() {
+    return outcomes.stream().allMatch(o -> o.status() == Status.SUCCEEDED);
+  }
+
+  /**
+   * Returns the wall-clock time of the whole fan-out.
+   *
+   * @return the time from dispatching the first updater until the last one finished or timed out
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /**
+   * Returns a display name for an updater, for log messages and outcomes.
+   *
+   * @param updatable the updater
+   * @return the updater's name, or its class name if it does not report one
+   */
+  static String nameOf(UpdatableCredential<?> updatable) {
+    String name = updatable.getName();
+    return name != null ? name : updatable.getClass().getSimpleName();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb =
+        new StringBuilder("RotationResult[").append(duration.toMillis()).append("ms");
+    for (Outcome outcome : outcomes) {
+      sb.append(", ")
+          .append(outcome.name())
+          .append('=')
+          .append(outcome.status())
+          .append('/')
+          .append(outcome.duration().toMillis())
+          .append("ms");
+    }
+    return sb.append(']').toString();
+  }
+}
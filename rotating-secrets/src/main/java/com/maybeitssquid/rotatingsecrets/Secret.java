@@ -0,0 +1,127 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.util.Arrays;
+import javax.security.auth.Destroyable;
+
+/**
+ * A secret value held in a {@code char[]} that can be zeroed once it is no longer needed.
+ *
+ * <p>Unlike a {@link String}, the characters of a {@code Secret} can be wiped with {@link
+ * #destroy()} as soon as the secret is superseded, instead of lingering on the heap until the
+ * garbage collector reclaims them. {@link #contentEquals(CharSequence)} compares the secret against
+ * a candidate value in place, without allocating.
+ *
+ * <p>Connection pools such as HikariCP and Oracle UCP only accept passwords as {@code String}s.
+ * {@link #asString()} materialises that {@code String} once and returns the same instance on every
+ * call, so all pools share a single copy per rotation. That copy cannot be wiped and is released
+ * when the last pool drops it.
+ *
+ * <p>{@link #toString()} never reveals the secret. Equality is identity-based, so secrets are never
+ * compared implicitly by collections.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe. A destroyed secret rejects further access with an {@link
+ * IllegalStateException}.
+ */
+public final class Secret implements Destroyable {
+
+  private final char[] value;
+  private String string;
+  private boolean destroyed;
+
+  private Secret(char[] value) {
+    this.value = value;
+  }
+
+  /**
+   * Creates a secret holding a copy of the given characters.
+   *
+   * <p>The source is only read, so a caller that owns a reusable buffer can wipe it afterwards.
+   *
+   * @param chars the secret characters
+   * @return a new secret
+   */
+  public static Secret copyOf(CharSequence chars) {
+    char[] value = new char[chars.length()];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = chars.charAt(i);
+    }
+    return new Secret(value);
+  }
+
+  /**
+   * Returns the number of characters in the secret.
+   *
+   * @return the secret's length
+   * @throws IllegalStateException if the secret has been destroyed
+   */
+  public synchronized int length() {
+    checkNotDestroyed();
+    return value.length;
+  }
+
+  /**
+   * Compares the secret with a candidate value without copying either.
+   *
+   * @param chars the candidate value
+   * @return {@code true} if the candidate has exactly the secret's characters
+   * @throws IllegalStateException if the secret has been destroyed
+   */
+  public synchronized boolean contentEquals(CharSequence chars) {
+    checkNotDestroyed();
+    if (chars.length() != value.length) {
+      return false;
+    }
+    for (int i = 0; i < value.length; i++) {
+      if (chars.charAt(i) != value[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the secret as a {@link String} for APIs that accept nothing else.
+   *
+   * <p>The {@code String} is created on the first call and the same instance is returned
+   * afterwards, so every caller shares one copy.
+   *
+   * @return the secret's value
+   * @throws IllegalStateException if the secret has been destroyed
+   */
+  public synchronized String asString() {
+    checkNotDestroyed();
+    if (string == null) {
+      string = new String(value);
+    }
+    return string;
+  }
+
+  /**
+   * Zeroes the secret's characters and drops its reference to the shared {@code String}. Further
+   * access fails; destroying an already destroyed secret has no effect.
+   */
+  @Override
+  public synchronized void destroy() {
+    Arrays.fill(value, '\0');
+    string = null;
+    destroyed = true;
+  }
+
+  @Override
+  public synchronized boolean isDestroyed() {
+    return destroyed;
+  }
+
+  private void checkNotDestroyed() {
+    if (destroyed) {
+      throw new IllegalStateException("Secret has been destroyed");
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return destroyed ? "Secret[destroyed]" : "Secret[****]";
+  }
+}
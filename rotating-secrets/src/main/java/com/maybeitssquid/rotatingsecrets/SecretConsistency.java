@@ -0,0 +1,31 @@
+package com.maybeitssquid.rotatingsecrets;
+
+/**
+ * Strategy for deciding whether the {@code username} and {@code password} files form a complete
+ * pair before they are handed to the registered {@link UpdatableCredential} components.
+ *
+ * <p>Writers such as Vault Agent templates render each secret to its own file, so a reader can wake
+ * up between the two writes and see a new username with the old password. The check is applied only
+ * to plain directories; the kubelet's atomic {@code ..data} layout is consistent by construction.
+ * In every mode the file timestamps are sampled before and after the read, and a pair that changed
+ * while it was being read is rejected.
+ *
+ * @see CredentialsProviderService
+ */
+public enum SecretConsistency {
+
+  /** Accept whatever pair is read. */
+  NONE,
+
+  /**
+   * Accept the pair only if the last-modified times of both files are within the configured
+   * tolerance of each other ({@code k8s.secrets.mtimeTolerance}).
+   */
+  MATCHING_MTIME,
+
+  /**
+   * Accept the pair only if a version file ({@code k8s.secrets.versionFile}), which the writer
+   * updates after both secrets, was modified no earlier than either secret file.
+   */
+  VERSION_FILE
+}
@@ -0,0 +1,170 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Reads a secret file into reusable buffers so that re-reading it does not allocate.
+ *
+ * <p>The raw bytes are read through a {@link FileChannel} into a direct buffer and decoded as UTF-8
+ * into a heap {@link CharBuffer}, both kept between reads and grown only when a file is larger than
+ * any seen before. {@link #read(Path)} returns a view of the decoded, trimmed contents that stays
+ * valid until the next read or {@link #wipe()}; callers compare it in place and copy it into a
+ * {@link Secret} only when it has changed, then wipe the buffers. {@link #load(Path)} and {@link
+ * #contents()} split the read so that callers can {@linkplain #digest(MessageDigest) digest} the
+ * raw bytes and skip decoding a file whose contents have not changed.
+ *
+ * <p>Not thread-safe; each instance must be confined to one reader at a time.
+ */
+final class SecretFileReader {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final CharsetDecoder decoder =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  private ByteBuffer bytes = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+  private CharBuffer chars = CharBuffer.allocate(INITIAL_CAPACITY);
+
+  /**
+   * Reads and decodes a secret file, trimming leading and trailing whitespace as {@link
+   * String#trim()} does.
+   *
+   * @param path the file to read
+   * @return a view of the trimmed contents, valid until the next call or {@link #wipe()}
+   * @throws IOException if the file cannot be read
+   */
+  CharSequence read(Path path) throws IOException {
+    load(path);
+    return contents();
+  }
+
+  /**
+   * Reads the raw bytes of a secret file without decoding them.
+   *
+   * @param path the file to read
+   * @throws IOException if the file cannot be read
+   */
+  void load(Path path) throws IOException {
+    bytes.clear();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= bytes.capacity()) {
+        grow(size + 1);
+      }
+      while (channel.read(bytes) >= 0) {
+        if (!bytes.hasRemaining()) {
+          grow(bytes.capacity() * 2L);
+        }
+      }
+    }
+    bytes.flip();
+  }
+
+  /**
+   * Decodes the bytes of the last load, trimming leading and trailing whitespace as {@link
+   * String#trim()} does.
+   *
+   * @return a view of the trimmed contents, valid until the next call or {@link #wipe()}
+   */
+  CharSequence contents() {
+    decode();
+
+    int start = 0;
+    int end = chars.limit();
+    while (start < end && chars.get(start) <= ' ') {
+      start++;
+    }
+    while (end > start && chars.get(end - 1) <= ' ') {
+      end--;
+    }
+    chars.limit(end).position(start);
+    return chars;
+  }
+
+  /**
+   * Feeds the raw bytes of the last read into a digest.
+   *
+   * @param md the digest to update
+   */
+  void digest(MessageDigest md) {
+    int position = bytes.position();
+    md.update(bytes);
+    bytes.position(position);
+  }
+
+  /**
+   * Returns the number of raw bytes read by the last read.
+   *
+   * @return the size of the last file read
+   */
+  int size() {
+    return bytes.remaining();
+  }
+
+  /** Zeroes both buffers so that no secret material outlives the read. */
+  void wipe() {
+    wipeBytes();
+    wipeChars();
+  }
+
+  private void decode() {
+    int position = bytes.position();
+    while (true) {
+      chars.clear();
+      decoder.reset();
+      CoderResult result = decoder.decode(bytes, chars, true);
+      if (!result.isOverflow()) {
+        result = decoder.flush(chars);
+      }
+      if (!result.isOverflow()) {
+        break;
+      }
+      bytes.position(position);
+      wipeChars();
+      chars = CharBuffer.allocate(chars.capacity() * 2);
+    }
+    bytes.position(position);
+    chars.flip();
+  }
+
+  private void grow(long capacity) {
+    if (capacity > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Secret file too large");
+    }
+    ByteBuffer larger = ByteBuffer.allocateDirect((int) capacity);
+    bytes.flip();
+    larger.put(bytes);
+
+    wipeBytes();
+    bytes = larger;
+  }
+
+  private void wipeBytes() {
+    bytes.clear();
+    while (bytes.hasRemaining()) {
+      bytes.put((byte) 0);
+    }
+    bytes.clear();
+  }
+
+  private void wipeChars() {
+    chars.clear();
+    while (chars.hasRemaining()) {
+      chars.put('\0');
+    }
+    chars.clear();
+  }
+}
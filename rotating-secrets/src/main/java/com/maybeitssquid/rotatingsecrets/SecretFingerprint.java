@@ -0,0 +1,53 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Cheap identity of a secret file's current contents, taken from a single {@code stat}.
+ *
+ * <p>A file whose key (device and inode on POSIX systems), size and modification time are unchanged
+ * is assumed to hold the same contents, so {@link CredentialsProviderService} can skip re-reading
+ * it. Like Git's index, the assumption is only trusted once the modification time is safely older
+ * than the moment the fingerprint was sampled; a file modified within the filesystem's timestamp
+ * granularity of the sample is "racily clean" and is re-read regardless.
+ *
+ * @param fileKey the filesystem's unique file key, or {@code null} if not supported
+ * @param size the file size in bytes
+ * @param lastModified the last-modified time
+ */
+record SecretFingerprint(Object fileKey, long size, FileTime lastModified) {
+
+  /**
+   * Window, in milliseconds, within which a modification time is too close to the sampling time to
+   * be trusted. Covers the coarsest common timestamp granularity (2s on FAT, 1s on ext3 and some
+   * network filesystems).
+   */
+  static final long RACY_WINDOW_MS = 2000;
+
+  /**
+   * Takes the fingerprint of a file, following symbolic links.
+   *
+   * @param path the file to inspect
+   * @return the file's fingerprint
+   * @throws IOException if the file's attributes cannot be read
+   */
+  static SecretFingerprint of(Path path) throws IOException {
+    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    return new SecretFingerprint(attrs.fileKey(), attrs.size(), attrs.lastModifiedTime());
+  }
+
+  /**
+   * Reports whether this fingerprint cannot be trusted to detect a later write because the file was
+   * modified too close to the time it was sampled.
+   *
+   * @param sampledAtMillis epoch milliseconds at which the fingerprint was taken
+   * @return {@code true} if the file must be re-read even when the fingerprint matches
+   */
+  boolean isRacy(long sampledAtMillis) {
+    return lastModified.toMillis() + RACY_WINDOW_MS >= sampledAtMillis;
+  }
+}
@@ -0,0 +1,92 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Expiry of the lease behind a credential generation, read from metadata published next to the
+ * secret files.
+ *
+ * <p>Secret managers that issue dynamic database credentials, such as Vault or OpenBao, revoke the
+ * database user when its lease expires. An agent template can publish the lease alongside the
+ * secrets, either as a plain file holding the expiry or as a JSON sidecar. The following formats
+ * are accepted:
+ *
+ * <ul>
+ *   <li>an ISO-8601 timestamp, such as {@code 2025-01-31T12:00:00Z}
+ *   <li>epoch seconds, such as {@code 1738324800}
+ *   <li>a JSON object with an {@code expires_at}, {@code lease_expiry} or {@code expiry} field
+ *       holding either of the above, or a {@code lease_duration} or {@code ttl} field holding
+ *       seconds counted from the file's modification time
+ * </ul>
+ *
+ * @param generation the {@linkplain CredentialSnapshot#generation() generation} the lease belongs
+ *     to
+ * @param expiresAt when the lease expires and the credentials are revoked
+ */
+record SecretLease(long generation, Instant expiresAt) {
+
+  private static final Pattern ABSOLUTE_FIELD =
+      Pattern.compile("\"(?:expires_at|lease_expiry|expiry)\"\\s*:\\s*(\"([^\"]*)\"|(\\d+))");
+
+  private static final Pattern RELATIVE_FIELD =
+      Pattern.compile("\"(?:lease_duration|ttl)\"\\s*:\\s*(\\d+)");
+
+  /**
+   * Reads lease metadata from a file.
+   *
+   * @param path the lease file
+   * @param generation the generation the lease belongs to
+   * @return the lease
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file does not hold a recognised expiry
+   */
+  static SecretLease read(Path path, long generation) throws IOException {
+    String content = Files.readString(path, StandardCharsets.UTF_8);
+    Instant writtenAt = Files.getLastModifiedTime(path).toInstant();
+    return new SecretLease(generation, parseExpiry(content, writtenAt));
+  }
+
+  /**
+   * Parses an expiry in any of the accepted formats.
+   *
+   * @param content the metadata
+   * @param writtenAt when the metadata was written, the origin for relative durations
+   * @return the expiry
+   * @throws IllegalArgumentException if the content does not hold a recognised expiry
+   */
+  static Instant parseExpiry(String content, Instant writtenAt) {
+    String trimmed = content.trim();
+    if (!trimmed.startsWith("{")) {
+      return parseTimestamp(trimmed);
+    }
+    Matcher absolute = ABSOLUTE_FIELD.matcher(trimmed);
+    if (absolute.find()) {
+      return parseTimestamp(absolute.group(2) != null ? absolute.group(2) : absolute.group(3));
+    }
+    Matcher relative = RELATIVE_FIELD.matcher(trimmed);
+    if (relative.find()) {
+      return writtenAt.plus(Duration.ofSeconds(Long.parseLong(relative.group(1))));
+    }
+    throw new IllegalArgumentException("No lease expiry field found");
+  }
+
+  private static Instant parseTimestamp(String value) {
+    try {
+      if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+        return Instant.ofEpochSecond(Long.parseLong(value));
+      }
+      return OffsetDateTime.parse(value).toInstant();
+    } catch (NumberFormatException | DateTimeParseException e) {
+      throw new IllegalArgumentException("Unrecognised lease expiry: " + value, e);
+    }
+  }
+}
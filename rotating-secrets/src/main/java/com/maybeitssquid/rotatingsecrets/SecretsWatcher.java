@@ -0,0 +1,628 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import jakarta.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches any number of secret directories from a single {@link WatchService} and a single thread.
+ *
+ * <p>Each secret source (typically a {@link CredentialsProviderService}) registers its directory
+ * together with a {@link Listener}. Signalled {@link WatchKey}s are dispatched to the listeners
+ * registered for that directory, and every registration's fallback poll is driven from one shared
+ * timer: the watch thread always blocks until the earliest pending deadline across all
+ * registrations, so thread count and the number of {@code inotify} instances stay flat no matter
+ * how many sources are registered. Sources that share a directory also share its watch.
+ *
+ * <h2>Scheduling</h2>
+ *
+ * <p>A registration's listener is checked when its deadline passes. The first deadline is given at
+ * registration time; afterwards the delay returned by {@link Listener#check()} sets the next one. A
+ * relevant directory event moves the deadline to the end of the registration's quiet period, and
+ * every further event in the same burst pushes it back again, bounded by the listener's last
+ * requested delay so that continuous churn cannot postpone a check indefinitely.
+ *
+ * <p>Listeners run on the watch thread and should return promptly; a slow listener delays every
+ * other registration.
+ *
+ * <h2>Execution Model</h2>
+ *
+ * <p>The watch loop needs one thread that blocks on the {@link WatchService}. By default it is a
+ * dedicated platform daemon thread named {@code credentials-watch}. It can instead be a virtual
+ * thread on JDK 21+ ({@code k8s.secrets.virtualThreads}), falling back to a platform thread with a
+ * warning on older runtimes, or a long-running task on an injected {@link Executor} (a bean named
+ * {@code secretsWatcherExecutor}, such as the application's task executor or a {@code
+ * ThreadPoolTaskScheduler}) so that the watcher shares the application's threads.
+ *
+ * <p>{@link #close()} and {@link Registration#close()} wait for an in-flight check to finish,
+ * bounded by {@code k8s.secrets.shutdownTimeout} (default: 10000 ms). If the loop has not stopped
+ * within that time, a watch thread owned by this watcher is interrupted.
+ *
+ * <h2>Lifecycle</h2>
+ *
+ * <p>As a {@link SmartLifecycle}, the watcher is stopped after, and started before, the services
+ * registered with it. Stopping it, for example before a Coordinated Restore at Checkpoint snapshot,
+ * ends the watch loop and closes the {@link WatchService} like {@link #close()}, but the watcher
+ * can be used again: the next registration opens a new watch service and starts a new loop. Only
+ * {@link #close()} is permanent.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe. Registrations may be added and closed from any thread while the
+ * watch thread is running; a new registration wakes the watch thread so its deadline is honoured.
+ *
+ * @see CredentialsProviderService
+ */
+@Component
+public class SecretsWatcher implements Closeable, SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(SecretsWatcher.class);
+
+  /**
+   * Callback for a secret source registered with a {@link SecretsWatcher}.
+   *
+   * <p>Both methods are invoked on the watch thread.
+   */
+  public interface Listener {
+
+    /**
+     * Decides whether a batch of events for the registered directory warrants a check.
+     *
+     * @param events the events drained from the directory's signalled {@link WatchKey}
+     * @return {@code true} to schedule a check at the end of the quiet period
+     */
+    boolean isRelevant(List<WatchEvent<?>> events);
+
+    /**
+     * Re-reads the source and reports when it should next be checked if no event arrives first.
+     *
+     * @return milliseconds until the next check
+     */
+    long check();
+  }
+
+  /** A directory registration, closed to stop receiving checks. */
+  public final class Registration implements Closeable {
+
+    private final Path directory;
+    private final WatchKey key;
+    private final Listener listener;
+    private final long quietPeriodNanos;
+
+    /** Held while the listener is being checked, so that closing can wait for it. */
+    private final ReentrantLock checkLock = new ReentrantLock();
+
+    // Written at registration under the lock, then only by the watch thread.
+    private long checkAt;
+    private long intervalNanos;
+    private long burstStartedAt;
+    private boolean inBurst;
+    private volatile boolean checkRequested;
+    private volatile boolean closed;
+
+    private Registration(
+        Path directory, WatchKey key, Listener listener, long initialDelayMs, long quietPeriodMs) {
+      this.directory = directory;
+      this.key = key;
+      this.listener = listener;
+      this.quietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, quietPeriodMs));
+      this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, initialDelayMs));
+      this.checkAt = System.nanoTime() + intervalNanos;
+    }
+
+    /**
+     * Returns the watched directory.
+     *
+     * @return the directory this registration watches
+     */
+    public Path getDirectory() {
+      return directory;
+    }
+
+    /**
+     * Stops checks for this registration and releases its watch if no one else shares it.
+     *
+     * <p>If the listener is being checked, waits for the check to finish, bounded by the shutdown
+     * timeout.
+     */
+    @Override
+    public void close() {
+      closed = true;
+      unregister(this);
+      try {
+        if (checkLock.tryLock(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+          checkLock.unlock();
+        } else {
+          log.warn("Check of {} still running after {} ms", directory, shutdownTimeoutMs);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Asks the watch thread to check this registration as soon as possible, without waiting for a
+     * watch event or the fallback interval.
+     *
+     * <p>May be called from any thread; requests made while a check is pending are coalesced.
+     */
+    public void requestCheck() {
+      if (closed) {
+        return;
+      }
+      checkRequested = true;
+      synchronized (lock) {
+        wakeup();
+      }
+    }
+
+    private boolean isDue(long now) {
+      return checkRequested || checkAt - now <= 0;
+    }
+
+    private void onEvent(long now) {
+      if (!inBurst) {
+        inBurst = true;
+        burstStartedAt = now;
+      }
+      long quietEnd = now + quietPeriodNanos;
+      long burstLimit = burstStartedAt + Math.max(quietPeriodNanos, intervalNanos);
+      checkAt = quietEnd - burstLimit < 0 ? quietEnd : burstLimit;
+    }
+
+    private void runCheck() {
+      checkRequested = false;
+      long delayMs;
+      checkLock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        delayMs = listener.check();
+      } catch (RuntimeException e) {
+        log.warn("Unexpected error checking secrets in {}", directory, e);
+        delayMs = TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+      } finally {
+        checkLock.unlock();
+      }
+      inBurst = false;
+      intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+      checkAt = System.nanoTime() + intervalNanos;
+    }
+  }
+
+  private final Object lock = new Object();
+
+  /** Registrations grouped by the watch key of their directory. Guarded by {@link #lock}. */
+  private final Map<WatchKey, List<Registration>> byKey = new HashMap<>();
+
+  /** All live registrations, including those whose watch key became invalid. Guarded by lock. */
+  private final List<Registration> registrations = new ArrayList<>();
+
+  /** Stops after, and starts before, the services that register with this watcher. */
+  static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 1;
+
+  /**
+   * One run of the watch loop over one {@link WatchService}. A loop that has been replaced after a
+   * stop sees no registrations and exits, so it never runs checks alongside its successor.
+   */
+  private static final class Loop {
+
+    private final WatchService service;
+
+    /** Counted down when the loop exits. */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Thread thread;
+
+    /** Whether the loop is blocked polling its watch service. Guarded by {@link #lock}. */
+    private boolean polling;
+
+    /** Whether a wakeup arrived while the loop was not polling. Guarded by {@link #lock}. */
+    private boolean wakeupPending;
+
+    Loop(WatchService service) {
+      this.service = service;
+    }
+  }
+
+  private WatchService watchService;
+
+  /** The running loop, or {@code null} until the next registration. Guarded by {@link #lock}. */
+  private Loop loop;
+
+  private volatile boolean closed;
+  private volatile boolean stopped;
+
+  private volatile boolean virtualThreads = false;
+  private volatile Executor executor;
+  private volatile long shutdownTimeoutMs = 10000;
+
+  /** Creates a watcher; the watch service and thread are created on the first registration. */
+  public SecretsWatcher() {
+    // WatchService and thread are created lazily
+  }
+
+  /**
+   * Selects a virtual thread for the watch loop when no executor is set.
+   *
+   * @param virtualThreads {@code true} to run the loop on a virtual thread (JDK 21+)
+   */
+  @Value("${k8s.secrets.virtualThreads:false}")
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Runs the watch loop as a long-running task on the given executor instead of a dedicated thread.
+   *
+   * <p>The loop occupies one of the executor's threads for the lifetime of the watcher, so the
+   * executor must not be bounded to a single thread that other tasks also rely on.
+   *
+   * @param executor the executor to run the watch loop on
+   */
+  @Autowired(required = false)
+  @Qualifier("secretsWatcherExecutor")
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Sets how long closing waits for an in-flight check to finish.
+   *
+   * @param shutdownTimeoutMs maximum milliseconds to wait on close
+   */
+  @Value("${k8s.secrets.shutdownTimeout:10000}")
+  public void setShutdownTimeoutMs(long shutdownTimeoutMs) {
+    this.shutdownTimeoutMs = shutdownTimeoutMs;
+  }
+
+  /**
+   * Registers a directory and starts the watch thread if it is not yet running.
+   *
+   * @param directory the directory to watch for create, modify and delete events
+   * @param initialDelayMs milliseconds until the first fallback check
+   * @param quietPeriodMs milliseconds without further relevant events to wait before checking after
+   *     an event; {@code 0} checks immediately
+   * @param listener the callback to notify
+   * @return the registration, to be closed when the source is no longer needed
+   * @throws IOException if the {@link WatchService} cannot be created or the directory cannot be
+   *     registered
+   * @throws IllegalStateException if this watcher has been closed
+   */
+  public Registration register(
+      Path directory, long initialDelayMs, long quietPeriodMs, Listener listener)
+      throws IOException {
+    synchronized (lock) {
+      if (closed) {
+        throw new IllegalStateException("SecretsWatcher is closed");
+      }
+      stopped = false;
+      if (watchService == null) {
+        watchService = FileSystems.getDefault().newWatchService();
+      }
+      WatchKey key =
+          directory.register(
+              watchService,
+              StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY,
+              StandardWatchEventKinds.ENTRY_DELETE);
+      Registration registration =
+          new Registration(directory, key, listener, initialDelayMs, quietPeriodMs);
+      byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(registration);
+      registrations.add(registration);
+      if (loop == null) {
+        startLoop();
+      } else {
+        wakeup();
+      }
+      return registration;
+    }
+  }
+
+  /**
+   * Returns the number of live registrations.
+   *
+   * @return the number of registered sources
+   */
+  public int getRegistrationCount() {
+    synchronized (lock) {
+      return registrations.size();
+    }
+  }
+
+  /**
+   * Returns the number of distinct directories currently watched.
+   *
+   * @return the number of directory watches held on the {@link WatchService}
+   */
+  public int getWatchedDirectoryCount() {
+    synchronized (lock) {
+      return byKey.size();
+    }
+  }
+
+  /**
+   * Stops the watch loop and closes the {@link WatchService}.
+   *
+   * <p>Waits for an in-flight check to finish, bounded by the shutdown timeout; a watch thread
+   * owned by this watcher that is still running afterwards is interrupted.
+   */
+  @PreDestroy
+  @Override
+  public void close() {
+    shutDown(true);
+  }
+
+  /** Does nothing: the watch service and loop are started by the first registration. */
+  @Override
+  public void start() {
+    stopped = false;
+  }
+
+  /**
+   * Stops the watch loop and closes the {@link WatchService} until the next registration.
+   *
+   * <p>Registrations still open are dropped and receive no further checks; their owners are
+   * expected to have stopped first and to register again when they restart.
+   */
+  @Override
+  public void stop() {
+    shutDown(false);
+  }
+
+  /**
+   * Returns whether the watcher accepts registrations and has not been stopped.
+   *
+   * @return {@code false} after {@link #stop()} until the next registration, and after {@link
+   *     #close()}
+   */
+  @Override
+  public boolean isRunning() {
+    return !closed && !stopped;
+  }
+
+  /**
+   * Returns the lifecycle phase, just below that of the services using this watcher.
+   *
+   * @return the phase
+   */
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  private void shutDown(boolean permanently) {
+    final Loop stopping;
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = permanently;
+      stopped = true;
+      if (!permanently && !registrations.isEmpty()) {
+        log.warn("Stopping with {} open registrations", registrations.size());
+      }
+      stopping = loop;
+      loop = null;
+      // Dropped registrations ignore late check requests, such as those of finishing rotations
+      for (Registration registration : registrations) {
+        registration.closed = true;
+      }
+      registrations.clear();
+      byKey.clear();
+      if (watchService != null) {
+        try {
+          watchService.close();
+        } catch (IOException e) {
+          log.debug("Error closing WatchService: {}", e.getMessage());
+        }
+        watchService = null;
+      }
+    }
+    if (stopping == null || Thread.currentThread() == stopping.thread) {
+      return;
+    }
+    try {
+      if (!stopping.done.await(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+        log.warn("Credential watch loop did not stop within {} ms", shutdownTimeoutMs);
+        final Thread thread = stopping.thread;
+        if (executor == null && thread != null) {
+          thread.interrupt();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Starts the watch loop on the configured executor, a virtual thread or a platform thread. Caller
+   * holds the lock.
+   */
+  private void startLoop() {
+    final Loop started = new Loop(watchService);
+    loop = started;
+    final Runnable task = () -> watchLoop(started);
+    if (executor != null) {
+      executor.execute(task);
+    } else {
+      VirtualThreads.newThread("credentials-watch", virtualThreads, task).start();
+    }
+  }
+
+  private void unregister(Registration registration) {
+    synchronized (lock) {
+      registrations.remove(registration);
+      List<Registration> shared = byKey.get(registration.key);
+      if (shared != null && shared.remove(registration) && shared.isEmpty()) {
+        byKey.remove(registration.key);
+        registration.key.cancel();
+      }
+    }
+  }
+
+  /**
+   * Wakes the watch thread so that it recomputes its next deadline. Caller holds the lock. Does
+   * nothing once the watcher has stopped.
+   */
+  private void wakeup() {
+    if (loop == null) {
+      return;
+    }
+    if (loop.polling) {
+      loop.thread.interrupt();
+    } else {
+      loop.wakeupPending = true;
+    }
+  }
+
+  /**
+   * Dispatches signalled watch keys and runs due checks until the watcher is closed or stopped.
+   *
+   * <p>The thread only blocks in {@link WatchService#poll(long, TimeUnit)}, bounded by the earliest
+   * deadline across all registrations.
+   *
+   * <p>The loop ends once it has been replaced or its watch service closed. A loop that is still
+   * running a check when the watcher is stopped and registered with again finds itself replaced and
+   * exits without touching the new registrations.
+   *
+   * @param self this loop
+   */
+  private void watchLoop(Loop self) {
+    self.thread = Thread.currentThread();
+    try {
+      while (isCurrent(self)) {
+        try {
+          WatchKey key = awaitKey(self, nanosUntilNextCheck(self));
+          if (key != null) {
+            dispatch(key);
+          }
+          runDueChecks(self);
+        } catch (ClosedWatchServiceException e) {
+          return;
+        } catch (Exception e) {
+          log.warn("Unexpected error in credential watch loop", e);
+        }
+      }
+    } finally {
+      self.thread = null;
+      self.done.countDown();
+    }
+  }
+
+  private boolean isCurrent(Loop self) {
+    synchronized (lock) {
+      return loop == self && !closed;
+    }
+  }
+
+  /**
+   * Blocks until a watch key is signalled, the timeout elapses or a wakeup is requested.
+   *
+   * @param self the calling loop
+   * @param timeoutNanos the maximum time to wait, or a negative value to wait indefinitely
+   * @return the signalled key, or {@code null} on timeout, wakeup or once the loop is replaced
+   */
+  private WatchKey awaitKey(Loop self, long timeoutNanos) {
+    final WatchService service = self.service;
+    synchronized (lock) {
+      if (loop != self) {
+        return null;
+      }
+      if (self.wakeupPending) {
+        self.wakeupPending = false;
+        return service.poll();
+      }
+      self.polling = true;
+    }
+    try {
+      return timeoutNanos < 0 ? service.take() : service.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      return null;
+    } finally {
+      synchronized (lock) {
+        self.polling = false;
+        // Clear an interrupt delivered by wakeup() so it cannot disturb a listener's file I/O.
+        Thread.interrupted();
+      }
+    }
+  }
+
+  private void dispatch(WatchKey key) {
+    List<WatchEvent<?>> events = key.pollEvents();
+    final List<Registration> listeners;
+    synchronized (lock) {
+      List<Registration> shared = byKey.get(key);
+      listeners = shared == null ? List.of() : List.copyOf(shared);
+      if (!key.reset()) {
+        byKey.remove(key);
+        if (!listeners.isEmpty()) {
+          log.warn(
+              "Watch on {} is no longer valid; falling back to polling",
+              listeners.get(0).directory);
+        }
+      }
+    }
+    final long now = System.nanoTime();
+    for (Registration registration : listeners) {
+      if (!registration.closed && registration.listener.isRelevant(events)) {
+        registration.onEvent(now);
+      }
+    }
+  }
+
+  private void runDueChecks(Loop self) {
+    for (Registration registration : snapshot(self)) {
+      if (!isCurrent(self)) {
+        // Stopped during an earlier check: the rest of the snapshot has been dropped
+        return;
+      }
+      if (!registration.closed && registration.isDue(System.nanoTime())) {
+        registration.runCheck();
+      }
+    }
+  }
+
+  private long nanosUntilNextCheck(Loop self) {
+    List<Registration> current = snapshot(self);
+    if (current.isEmpty()) {
+      return -1;
+    }
+    final long now = System.nanoTime();
+    long earliest = Long.MAX_VALUE;
+    for (Registration registration : current) {
+      earliest = Math.min(earliest, registration.isDue(now) ? 0 : registration.checkAt - now);
+    }
+    return Math.max(0, earliest);
+  }
+
+  /** Returns the live registrations, or none once the calling loop has been replaced. */
+  private List<Registration> snapshot(Loop self) {
+    synchronized (lock) {
+      return loop == self ? List.copyOf(registrations) : List.of();
+    }
+  }
+}
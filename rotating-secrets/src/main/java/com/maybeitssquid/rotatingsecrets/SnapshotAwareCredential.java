@@ -0,0 +1,38 @@
+package com.maybeitssquid.rotatingsecrets;
+
+/**
+ * An {@link UpdatableCredential} that receives the whole {@link CredentialSnapshot} of a rotation
+ * instead of a bare username and secret.
+ *
+ * <p>{@link CredentialsProviderService} calls {@link #setCredential(CredentialSnapshot)} on
+ * components implementing this interface, and {@link #setCredential(String, Object)} on all others.
+ * Implementations that keep the snapshot can expose its {@linkplain CredentialSnapshot#generation()
+ * generation} to correlate connections with the rotation that created them.
+ *
+ * @param <T> the type of the credential (typically {@link String} for passwords)
+ * @see CredentialSnapshot
+ */
+public interface SnapshotAwareCredential<T> extends UpdatableCredential<T> {
+
+  /**
+   * Updates the credentials used by this component from a rotation snapshot.
+   *
+   * <p>The same thread-safety and failure rules apply as for {@link #setCredential(String,
+   * Object)}.
+   *
+   * @param snapshot the rotation to apply
+   */
+  void setCredential(CredentialSnapshot<T> snapshot);
+
+  /**
+   * Registers the listener to notify when the database rejects this component's credentials.
+   *
+   * <p>{@link CredentialsProviderService} calls this when the component is registered. Components
+   * that can observe their pool's connection attempts should report every attempt that fails with
+   * an {@linkplain AuthenticationFailures#isAuthenticationFailure(Throwable) authentication
+   * failure}. The default ignores the listener.
+   *
+   * @param listener the listener to notify
+   */
+  default void setAuthenticationFailureListener(AuthenticationFailureListener listener) {}
+}
@@ -26,11 +26,55 @@ public interface UpdatableCredential<T> {
    * Updates the credentials used by this component.
    *
    * <p>Implementations should atomically update their stored credentials and trigger any necessary
-   * pool refresh operations. This method may be called from a scheduled background thread, so
-   * implementations must be thread-safe.
+   * pool refresh operations. This method is called from a rotation executor thread, concurrently
+   * with the other registered components, so implementations must be thread-safe. An exception
+   * thrown here is reported as a failed outcome for this component only.
    *
    * @param username the new username to use for connections
    * @param credential the new credential (password) to use for connections
    */
   void setCredential(String username, T credential);
+
+  /**
+   * Moves connections still using an earlier credential generation off this component before that
+   * generation's lease expires.
+   *
+   * <p>Called by {@link CredentialsProviderService} shortly before the lease of a superseded
+   * generation expires, when lease metadata is published alongside the secrets. By then the
+   * component has already received newer credentials; implementations should close or evict any
+   * connections that may still have been opened with the retiring ones. The default does nothing.
+   *
+   * @param generation the {@linkplain CredentialSnapshot#generation() generation} whose lease is
+   *     about to expire
+   */
+  default void retireGeneration(long generation) {}
+
+  /**
+   * Closes this component's connections before the application is stopped, for example for a
+   * Coordinated Restore at Checkpoint snapshot, and keeps it from opening new ones until {@link
+   * #resume()}.
+   *
+   * <p>Called by {@link CredentialsProviderService#stop()} after it has stopped watching for
+   * rotations. Connections in use at that point are closed as they are returned. The default does
+   * nothing.
+   */
+  default void suspend() {}
+
+  /**
+   * Lets this component open connections again after {@link #suspend()}.
+   *
+   * <p>Called by {@link CredentialsProviderService#start()} once it has re-read the secret files,
+   * so the component already holds the current generation. The default does nothing.
+   */
+  default void resume() {}
+
+  /**
+   * Returns a short name identifying this component, such as its pool name, for logs and rotation
+   * results.
+   *
+   * @return the component's name; defaults to the simple class name
+   */
+  default String getName() {
+    return getClass().getSimpleName();
+  }
 }
@@ -0,0 +1,107 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the single-flight re-read of the secret files that follows an authentication failure.
+ *
+ * <p>The first caller starts the refresh on the rotation executor; callers arriving while it runs
+ * wait for the same refresh instead of starting their own. Each caller waits no longer than its own
+ * timeout, and one that gives up leaves the refresh running.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe.
+ */
+final class UrgentRefresh {
+
+  private static final Logger log = LoggerFactory.getLogger(UrgentRefresh.class);
+
+  private final String source;
+  private final LongConsumer refresh;
+  private final Supplier<Executor> executor;
+
+  /** The refresh in flight, shared by concurrent callers. */
+  private final AtomicReference<CompletableFuture<Void>> inFlight = new AtomicReference<>();
+
+  /**
+   * Creates a refresh runner.
+   *
+   * @param source the secrets directory, for the log
+   * @param refresh re-reads the secret files, given the rejected generation
+   * @param executor the executor to run the re-read on
+   */
+  UrgentRefresh(String source, LongConsumer refresh, Supplier<Executor> executor) {
+    this.source = source;
+    this.refresh = refresh;
+    this.executor = executor;
+  }
+
+  /**
+   * Joins the refresh in flight, or starts one, and waits for it to finish.
+   *
+   * @param rejectedGeneration the generation whose credentials were rejected
+   * @param timeoutMs how long to wait, in milliseconds
+   */
+  void await(long rejectedGeneration, long timeoutMs) {
+    CompletableFuture<Void> current = inFlight.get();
+    while (current == null) {
+      final CompletableFuture<Void> mine = new CompletableFuture<>();
+      if (inFlight.compareAndSet(null, mine)) {
+        current = mine;
+        start(mine, rejectedGeneration);
+      } else {
+        current = inFlight.get();
+      }
+    }
+    try {
+      current.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.debug(
+          "Re-reading {} after an authentication failure is taking longer than {} ms",
+          source,
+          timeoutMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Never completed exceptionally
+    }
+  }
+
+  /** Runs a refresh on the executor, completing it however the re-read ends. */
+  private void start(CompletableFuture<Void> future, long rejectedGeneration) {
+    final Runnable task =
+        () -> {
+          try {
+            log.debug(
+                "Credentials generation {} rejected, re-reading {}", rejectedGeneration, source);
+            refresh.accept(rejectedGeneration);
+          } catch (RuntimeException e) {
+            log.warn("Could not re-read credentials after an authentication failure", e);
+          } finally {
+            finish(future);
+          }
+        };
+    try {
+      executor.get().execute(task);
+    } catch (RejectedExecutionException e) {
+      log.warn("Could not re-read credentials after an authentication failure", e);
+      finish(future);
+    }
+  }
+
+  private void finish(CompletableFuture<Void> future) {
+    inFlight.compareAndSet(future, null);
+    future.complete(null);
+  }
+}
@@ -0,0 +1,98 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to JDK 21+ virtual threads from code compiled for Java 17.
+ *
+ * <p>The library is released for Java 17, so {@code Thread.ofVirtual()} is looked up reflectively.
+ * On older runtimes, or where virtual threads are still a preview feature, {@link #factory(String)}
+ * returns {@code null} and callers fall back to platform threads.
+ */
+final class VirtualThreads {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+  private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+  private static final Method NAME = lookup(builder("OfVirtual"), "name", String.class);
+  private static final Method FACTORY = lookup(builder(null), "factory");
+
+  private VirtualThreads() {
+    // Static utility
+  }
+
+  /**
+   * Reports whether virtual threads can be created on this runtime.
+   *
+   * @return {@code true} on a JDK with final (non-preview) virtual threads
+   */
+  static boolean isSupported() {
+    return factory("probe") != null;
+  }
+
+  /**
+   * Creates a factory for virtual threads with the given name.
+   *
+   * @param name the name given to each thread
+   * @return a virtual thread factory, or {@code null} if virtual threads are unavailable
+   */
+  static ThreadFactory factory(String name) {
+    if (OF_VIRTUAL == null || NAME == null || FACTORY == null) {
+      return null;
+    }
+    try {
+      Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+      return (ThreadFactory) FACTORY.invoke(builder);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      // Preview-only virtual threads throw UnsupportedOperationException without --enable-preview
+      log.debug("Virtual threads are not available: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Creates an unstarted thread, virtual if possible and otherwise a platform daemon thread.
+   *
+   * @param name the thread name
+   * @param virtual {@code true} to prefer a virtual thread
+   * @param task the task the thread runs
+   * @return the unstarted thread
+   */
+  static Thread newThread(String name, boolean virtual, Runnable task) {
+    ThreadFactory factory = virtual ? factory(name) : null;
+    if (factory != null) {
+      return factory.newThread(task);
+    }
+    if (virtual) {
+      log.warn(
+          "Virtual threads are not available on this JVM; using a platform thread for {}", name);
+    }
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private static Class<?> builder(String nested) {
+    try {
+      return Class.forName(
+          nested == null ? "java.lang.Thread$Builder" : "java.lang.Thread$Builder$" + nested);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static Method lookup(Class<?> type, String name, Class<?>... parameterTypes) {
+    if (type == null) {
+      return null;
+    }
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
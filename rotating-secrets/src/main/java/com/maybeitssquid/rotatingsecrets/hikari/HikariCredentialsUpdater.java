@@ -1,42 +1,89 @@
 package com.maybeitssquid.rotatingsecrets.hikari;
 
-import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import com.maybeitssquid.rotatingsecrets.AuthenticationFailureListener;
+import com.maybeitssquid.rotatingsecrets.AuthenticationFailures;
+import com.maybeitssquid.rotatingsecrets.ConnectionGenerations;
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.EvictablePool;
+import com.maybeitssquid.rotatingsecrets.EvictionMode;
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import com.maybeitssquid.rotatingsecrets.RollingEvictor;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import com.maybeitssquid.rotatingsecrets.SnapshotAwareCredential;
+import com.maybeitssquid.rotatingsecrets.jfr.PoolEvictionEvent;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
 import com.zaxxer.hikari.HikariCredentialsProvider;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import com.zaxxer.hikari.util.Credentials;
+import com.zaxxer.hikari.util.DriverDataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Objects;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
 
 /**
  * Handles credential updates for HikariCP data sources.
  *
- * <p>This class implements both {@link UpdatableCredential} and {@link HikariCredentialsProvider}
- * interfaces, serving as a bridge between the credential rotation system and HikariCP's built-in
- * credential provider mechanism. It receives credential change notifications from the {@link
- * com.maybeitssquid.rotatingsecrets.CredentialsProviderService} and provides those credentials to
- * HikariCP when new connections are created.
+ * <p>This class implements both {@link SnapshotAwareCredential} and {@link
+ * HikariCredentialsProvider} interfaces, serving as a bridge between the credential rotation system
+ * and HikariCP's built-in credential provider mechanism. It receives credential change
+ * notifications from the {@link com.maybeitssquid.rotatingsecrets.CredentialsProviderService} and
+ * provides those credentials to HikariCP when new connections are created.
  *
  * <h2>How It Works</h2>
  *
  * <ol>
  *   <li>HikariCP is configured to use this class as its {@link HikariCredentialsProvider}
  *   <li>When HikariCP needs credentials for a new connection, it calls {@link #getCredentials()}
- *   <li>When credentials are rotated, {@link #setCredential(String, String)} is called
- *   <li>The updater stores the new credentials and triggers soft eviction of existing connections
- *   <li>Soft eviction marks connections for closure after they are returned to the pool
+ *   <li>When credentials are rotated, {@link #setCredential(CredentialSnapshot)} is called
+ *   <li>The updater stores the new credentials and triggers eviction of existing connections
+ *   <li>Soft eviction marks connections for closure after they are returned to the pool; with an
+ *       {@link EvictionPolicy} in {@link EvictionMode#ROLLING} mode, a {@link RollingEvictor}
+ *       retires them in rate-limited waves instead
  *   <li>New connections use the updated credentials from {@link #getCredentials()}
  * </ol>
  *
+ * <h2>Authentication Failures</h2>
+ *
+ * <p>When the pool is set up with {@link #configure(HikariConfig)}, the updater also sees every
+ * connection attempt HikariCP makes. Attempts that fail with an {@linkplain
+ * AuthenticationFailures#isAuthenticationFailure(Throwable) authentication failure} using the
+ * current credentials are reported to the {@link AuthenticationFailureListener}. The credentials
+ * provider re-reads the secrets at once, and the attempt is retried if that yields newer
+ * credentials; otherwise the failure counts towards rolling the rotation back.
+ *
  * <h2>Thread Safety</h2>
  *
- * <p>This class is thread-safe. The {@link Credentials} object is immutable and is replaced
- * atomically when credentials are updated. The soft eviction operation is thread-safe as
- * implemented by HikariCP.
+ * <p>This class is thread-safe. Each rotation's {@link CredentialSnapshot} and the {@link
+ * Credentials} derived from it are held together in one immutable value behind a single volatile
+ * reference, so HikariCP's connection-creation threads read the latest pair without locking or
+ * allocating, and {@link #getGeneration()} always matches the credentials returned. The soft
+ * eviction operation is thread-safe as implemented by HikariCP.
  *
- * @see UpdatableCredential
+ * @see SnapshotAwareCredential
  * @see HikariCredentialsProvider
  * @see HikariDataSourceConfig
  */
 public class HikariCredentialsUpdater
-    implements UpdatableCredential<String>, HikariCredentialsProvider {
+    implements SnapshotAwareCredential<String>, HikariCredentialsProvider {
+
+  /**
+   * A rotation snapshot together with the HikariCP credentials built from it.
+   *
+   * @param snapshot the rotation
+   * @param credentials the snapshot's username and password as HikariCP credentials
+   */
+  private record Published(CredentialSnapshot<String> snapshot, Credentials credentials) {
+
+    Published(CredentialSnapshot<String> snapshot) {
+      this(snapshot, new Credentials(snapshot.username(), snapshot.secret()));
+    }
+  }
 
   /**
    * Reference to the HikariCP DataSource, used for connection eviction. May be null during
@@ -45,16 +92,34 @@ public class HikariCredentialsUpdater
   private volatile HikariDataSource dataSource;
 
   /** Current credentials to provide to HikariCP. Replaced atomically on credential updates. */
-  private Credentials credentials;
+  private volatile Published current;
+
+  /** How existing connections are retired after a rotation; {@code null} means soft eviction. */
+  private volatile EvictionPolicy evictionPolicy;
+
+  private volatile RollingEvictor rollingEvictor;
+
+  /** Generations of the connections opened through the {@link AuthenticationMonitor}. */
+  private final ConnectionGenerations connections = new ConnectionGenerations();
+
+  private volatile RotationMetrics metrics = RotationMetrics.NONE;
+
+  private volatile AuthenticationFailureListener authenticationFailureListener;
+
+  /** Minimum idle size to restore on {@link #resume()}, or {@code -1} when not suspended. */
+  private int suspendedMinimumIdle = -1;
 
   /**
    * Creates a new credentials updater with the specified initial credentials.
    *
+   * <p>The initial credentials are generation {@code 0}, so the first rotation published by a
+   * {@link com.maybeitssquid.rotatingsecrets.CredentialsProviderService} replaces them.
+   *
    * @param username the initial database username
    * @param password the initial database password
    */
   public HikariCredentialsUpdater(String username, String password) {
-    this.credentials = new Credentials(username, password);
+    this.current = new Published(new CredentialSnapshot<>(username, password, 0, Instant.now()));
   }
 
   /**
@@ -71,25 +136,347 @@ public class HikariCredentialsUpdater
     this.dataSource = dataSource;
   }
 
+  /**
+   * Installs this updater on a HikariCP configuration before the pool is created.
+   *
+   * <p>Sets this updater as the configuration's credentials provider and routes connection attempts
+   * through a data source that reports rejected credentials; see {@link
+   * #setAuthenticationFailureListener(AuthenticationFailureListener)}. A configuration with a
+   * {@code jdbcUrl} is given the same driver-based data source HikariCP would create itself; one
+   * that names a {@code dataSourceClassName} only gets the credentials provider.
+   *
+   * @param config the configuration of the pool this updater manages
+   */
+  public void configure(HikariConfig config) {
+    config.setCredentialsProvider(this);
+    DataSource target = config.getDataSource();
+    if (target == null && config.getDataSourceClassName() == null && config.getJdbcUrl() != null) {
+      target =
+          new DriverDataSource(
+              config.getJdbcUrl(),
+              config.getDriverClassName(),
+              config.getDataSourceProperties(),
+              config.getUsername(),
+              config.getPassword());
+    }
+    if (target != null && !(target instanceof AuthenticationMonitor)) {
+      config.setDataSource(new AuthenticationMonitor(target, config.getConnectionTimeout()));
+    }
+  }
+
+  /**
+   * Sets the listener notified when the database rejects the current credentials.
+   *
+   * <p>Only connection attempts made through a pool set up with {@link #configure(HikariConfig)}
+   * are observed.
+   *
+   * @param listener the listener to notify
+   */
+  @Override
+  public void setAuthenticationFailureListener(AuthenticationFailureListener listener) {
+    this.authenticationFailureListener = listener;
+  }
+
+  /**
+   * Sets how existing connections are retired after a rotation.
+   *
+   * @param evictionPolicy the eviction policy; without one, connections are soft-evicted at once
+   */
+  @Autowired(required = false)
+  public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  /**
+   * Sets where the connections retired by each rotation are recorded.
+   *
+   * @param metrics the metrics to record to, or {@code null} to record nothing
+   */
+  @Autowired(required = false)
+  public void setRotationMetrics(RotationMetrics metrics) {
+    this.metrics = metrics != null ? metrics : RotationMetrics.NONE;
+  }
+
   /**
    * Updates the stored credentials and soft-evicts existing connections.
    *
+   * <p>The new credentials are stamped with the generation following the current one; see {@link
+   * #setCredential(CredentialSnapshot)}.
+   *
+   * @param username the new database username
+   * @param credential the new database password
+   */
+  @Override
+  public void setCredential(final String username, final String credential) {
+    setCredential(this.current.snapshot().next(username, credential, Instant.now()));
+  }
+
+  /**
+   * Updates the stored credentials from a rotation snapshot and soft-evicts existing connections.
+   *
    * <p>This method atomically replaces the stored credentials with new ones, then triggers a soft
    * eviction of all existing connections in the pool. Soft eviction marks connections for closure
    * after they are returned to the pool, allowing in-flight transactions to complete while ensuring
    * new checkouts get fresh connections with the updated credentials.
    *
-   * @param username the new database username
-   * @param credential the new database password
+   * @param snapshot the rotation to apply
    */
   @Override
-  public void setCredential(final String username, final String credential) {
-    this.credentials = new Credentials(username, credential);
-    if (dataSource != null && dataSource.getHikariPoolMXBean() != null) {
-      dataSource.getHikariPoolMXBean().softEvictConnections();
+  public void setCredential(final CredentialSnapshot<String> snapshot) {
+    this.current = new Published(snapshot);
+    evictConnections();
+  }
+
+  /**
+   * Retires existing connections according to the eviction policy: all at once, or in waves when
+   * the policy is {@link EvictionMode#ROLLING}.
+   */
+  private void evictConnections() {
+    final EvictionPolicy policy = this.evictionPolicy;
+    final HikariDataSource ds = this.dataSource;
+    if (policy != null && policy.getMode() == EvictionMode.ROLLING && ds != null) {
+      // The waves run on the evictor's schedule; no eviction event would span them
+      rollingEvictor(ds, policy).start();
+    } else {
+      softEvictConnections();
+    }
+  }
+
+  private synchronized RollingEvictor rollingEvictor(HikariDataSource ds, EvictionPolicy policy) {
+    if (rollingEvictor == null) {
+      rollingEvictor = new RollingEvictor(new HikariEvictablePool(ds), policy);
+    }
+    return rollingEvictor;
+  }
+
+  /**
+   * Returns the rolling evictor once rolling eviction has been used.
+   *
+   * @return the evictor, or {@code null} if no rolling eviction has been started
+   */
+  public RollingEvictor getRollingEvictor() {
+    return rollingEvictor;
+  }
+
+  private void softEvictConnections() {
+    HikariDataSource ds = this.dataSource;
+    final HikariPoolMXBean pool = ds != null ? ds.getHikariPoolMXBean() : null;
+    if (pool != null) {
+      // Soft eviction marks every connection in the pool, idle or in use
+      final int marked = pool.getTotalConnections();
+      final PoolEvictionEvent event = new PoolEvictionEvent();
+      event.begin();
+      pool.softEvictConnections();
+      event.commit(getName(), getGeneration(), "SOFT_EVICT");
+      if (!ds.isClosed()) {
+        metrics.connectionsEvicted(getName(), marked);
+      }
     }
   }
 
+  /**
+   * Exposes a HikariCP pool to the {@link RollingEvictor}.
+   *
+   * <p>When the pool was set up with {@link #configure(HikariConfig)}, every connection it opens is
+   * recorded with the generation of its credentials, so the evictor retires exactly the superseded
+   * ones. Otherwise the pool cannot tell its connections apart and the evictor retires by count.
+   */
+  private final class HikariEvictablePool implements EvictablePool {
+
+    private final HikariDataSource ds;
+
+    HikariEvictablePool(HikariDataSource ds) {
+      this.ds = ds;
+    }
+
+    @Override
+    public String getName() {
+      return HikariCredentialsUpdater.this.getName();
+    }
+
+    @Override
+    public int getIdleConnections() {
+      HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+      return pool != null && !ds.isClosed() ? pool.getIdleConnections() : -1;
+    }
+
+    @Override
+    public int getTotalConnections() {
+      HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+      return pool != null && !ds.isClosed() ? pool.getTotalConnections() : -1;
+    }
+
+    @Override
+    public int getSupersededConnections() {
+      return connections.countOlderThan(getGeneration());
+    }
+
+    @Override
+    public boolean isSuperseded(Connection connection) {
+      final long generation = connections.generationOf(connection);
+      return generation < 0 || generation < getGeneration();
+    }
+
+    @Override
+    public Connection borrow() throws SQLException {
+      return ds.getConnection();
+    }
+
+    @Override
+    public void evict(Connection connection) {
+      connections.forget(connection);
+      ds.evictConnection(connection);
+    }
+
+    @Override
+    public void evictAll() {
+      softEvictConnections();
+    }
+
+    @Override
+    public void evicted(int count) {
+      metrics.connectionsEvicted(getName(), count);
+    }
+  }
+
+  /**
+   * Data source through which HikariCP opens connections, recovering from and reporting attempts
+   * whose credentials are rejected.
+   */
+  private final class AuthenticationMonitor extends DelegatingDataSource {
+
+    /** The configured connection timeout, used until the pool is known. */
+    private final long connectionTimeoutMs;
+
+    AuthenticationMonitor(DataSource target, long connectionTimeoutMs) {
+      super(target);
+      this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * Opens a connection, retrying once with newer credentials if the database rejects the ones
+     * HikariCP passed.
+     *
+     * <p>If the rejected credentials were already superseded, the attempt is retried with the
+     * current ones. If they are current, the failure is reported to the listener, which re-reads
+     * the secrets; the attempt is retried if that publishes a newer generation within the pool's
+     * connection timeout.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+      final Published published = current;
+      final Credentials credentials = published.credentials();
+      final boolean stale =
+          !Objects.equals(credentials.getUsername(), username)
+              || !Objects.equals(credentials.getPassword(), password);
+      try {
+        // Credentials HikariCP read before the latest rotation belong to an earlier generation
+        final long generation = published.snapshot().generation() - (stale ? 1 : 0);
+        return opened(super.getConnection(username, password), generation);
+      } catch (SQLException e) {
+        if (!AuthenticationFailures.isAuthenticationFailure(e)) {
+          throw e;
+        }
+        if (!stale && !reportRejected(published, e)) {
+          throw e;
+        }
+        final Published retry = current;
+        final Credentials retryCredentials = retry.credentials();
+        try {
+          return opened(
+              super.getConnection(retryCredentials.getUsername(), retryCredentials.getPassword()),
+              retry.snapshot().generation());
+        } catch (SQLException retryFailure) {
+          retryFailure.addSuppressed(e);
+          throw retryFailure;
+        }
+      }
+    }
+
+    private Connection opened(Connection connection, long generation) {
+      connections.opened(connection, generation);
+      return connection;
+    }
+
+    private boolean reportRejected(Published published, SQLException failure) {
+      final AuthenticationFailureListener listener = authenticationFailureListener;
+      if (listener == null) {
+        return false;
+      }
+      // The refresh may take no longer than HikariCP gives the connection request
+      final HikariDataSource ds = dataSource;
+      final long timeoutMs = ds != null ? ds.getConnectionTimeout() : connectionTimeoutMs;
+      return listener.authenticationFailed(published.snapshot().generation(), failure, timeoutMs);
+    }
+  }
+
+  /**
+   * Finishes retiring the connections of a generation whose lease is about to expire.
+   *
+   * <p>A soft eviction already marked every connection when the rotation was applied, so there is
+   * nothing left to do. A {@linkplain EvictionMode#ROLLING rolling} eviction that is still in
+   * progress is {@linkplain RollingEvictor#complete() completed} at once, so that the connections
+   * its waves have not reached are retired before the old credentials stop working. Connections
+   * opened with the current credentials are left alone.
+   *
+   * @param generation the generation whose lease is about to expire
+   */
+  @Override
+  public void retireGeneration(final long generation) {
+    final RollingEvictor evictor = this.rollingEvictor;
+    if (generation < getGeneration() && evictor != null) {
+      evictor.complete();
+    }
+  }
+
+  /**
+   * Drains the pool before the application is stopped.
+   *
+   * <p>Sets the pool's minimum idle size to zero, so that HikariCP does not replace the connections
+   * it closes, and soft-evicts every connection: idle ones are closed at once and busy ones when
+   * they are returned.
+   */
+  @Override
+  public synchronized void suspend() {
+    HikariDataSource ds = this.dataSource;
+    if (suspendedMinimumIdle >= 0 || ds == null || ds.getHikariPoolMXBean() == null) {
+      return;
+    }
+    HikariConfigMXBean config = ds.getHikariConfigMXBean();
+    suspendedMinimumIdle = config.getMinimumIdle();
+    config.setMinimumIdle(0);
+    ds.getHikariPoolMXBean().softEvictConnections();
+  }
+
+  /**
+   * Restores the pool's minimum idle size after {@link #suspend()}.
+   *
+   * <p>HikariCP then refills the pool with connections opened with the current credentials; a
+   * connection borrowed before that is opened on demand.
+   */
+  @Override
+  public synchronized void resume() {
+    if (suspendedMinimumIdle < 0) {
+      return;
+    }
+    HikariDataSource ds = this.dataSource;
+    if (ds != null && !ds.isClosed()) {
+      ds.getHikariConfigMXBean().setMinimumIdle(suspendedMinimumIdle);
+    }
+    suspendedMinimumIdle = -1;
+  }
+
+  /**
+   * Returns the HikariCP pool name once the DataSource has been injected.
+   *
+   * @return the pool name, or the simple class name before the DataSource is set
+   */
+  @Override
+  public String getName() {
+    HikariDataSource ds = this.dataSource;
+    return ds != null && ds.getPoolName() != null ? ds.getPoolName() : getClass().getSimpleName();
+  }
+
   /**
    * Provides the current credentials to HikariCP for new connection creation.
    *
@@ -100,6 +487,19 @@ public class HikariCredentialsUpdater
    */
   @Override
   public Credentials getCredentials() {
-    return this.credentials;
+    return this.current.credentials();
+  }
+
+  /**
+   * Returns the generation of the credentials currently provided to HikariCP.
+   *
+   * <p>Connections created after this value was read use credentials from this generation or a
+   * later one.
+   *
+   * @return the current {@linkplain CredentialSnapshot#generation() generation}, {@code 0} for the
+   *     initial credentials
+   */
+  public long getGeneration() {
+    return this.current.snapshot().generation();
   }
 }
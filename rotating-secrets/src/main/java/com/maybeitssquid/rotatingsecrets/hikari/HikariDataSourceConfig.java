@@ -6,12 +6,16 @@ import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceAutoConfiguration;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
 /**
- * Spring configuration for HikariCP DataSource with dynamic credential rotation support.
+ * Spring Boot auto-configuration for HikariCP DataSource with dynamic credential rotation support.
  *
  * <p>This configuration creates a HikariCP {@link HikariDataSource} as the primary application
  * DataSource. HikariCP is a high-performance JDBC connection pool that is the default for Spring
@@ -53,10 +57,19 @@ import org.springframework.context.annotation.Primary;
  *   <li>{@code max-lifetime} - Maximum connection lifetime in milliseconds (default: 1800000)
  * </ul>
  *
+ * <h2>Activation</h2>
+ *
+ * <p>The pool is only created when HikariCP is on the classpath, {@code spring.datasource.url} is
+ * set and {@code k8s.secrets.hikari.enabled} is not false. It runs before Spring Boot's {@code
+ * DataSourceAutoConfiguration}, whose own pool then backs off.
+ *
  * @see HikariDataSource
  * @see HikariCredentialsUpdater
  */
-@Configuration
+@AutoConfiguration(before = DataSourceAutoConfiguration.class)
+@ConditionalOnClass(HikariDataSource.class)
+@ConditionalOnProperty("spring.datasource.url")
+@ConditionalOnBooleanProperty(name = "k8s.secrets.hikari.enabled", matchIfMissing = true)
 public class HikariDataSourceConfig {
 
   /** Default constructor. */
@@ -140,7 +153,8 @@ public class HikariDataSourceConfig {
    * <p>This method wires up the credential rotation infrastructure:
    *
    * <ol>
-   *   <li>Sets the {@link HikariCredentialsUpdater} as the credentials provider on the config
+   *   <li>Installs the {@link HikariCredentialsUpdater} on the config as the credentials provider
+   *       and as the monitor of rejected logins
    *   <li>Creates the {@link HikariDataSource} from the config
    *   <li>Injects the DataSource back into the updater for connection eviction support
    * </ol>
@@ -156,8 +170,8 @@ public class HikariDataSourceConfig {
   @Primary
   public HikariDataSource dataSource(
       HikariConfig hikariConfig, HikariCredentialsUpdater credentialsUpdater) {
-    // Set the credentials provider BEFORE creating the datasource
-    hikariConfig.setCredentialsProvider(credentialsUpdater);
+    // Install the credentials provider and failure monitor BEFORE creating the datasource
+    credentialsUpdater.configure(hikariConfig);
     HikariDataSource dataSource = new HikariDataSource(hikariConfig);
     // Inject datasource back into updater for connection eviction
     credentialsUpdater.setDataSource(dataSource);
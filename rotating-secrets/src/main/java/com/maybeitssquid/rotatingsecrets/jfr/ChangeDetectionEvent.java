@@ -0,0 +1,59 @@
+package com.maybeitssquid.rotatingsecrets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for statting both secret files and comparing their fingerprints with the
+ * last read, which decides whether the files are read at all.
+ */
+@Name("com.maybeitssquid.rotatingsecrets.ChangeDetection")
+@Label("Secrets Change Detection")
+@Category({"Rotating Secrets"})
+@Description("Comparing the secret files' fingerprints with the last read")
+@StackTrace(false)
+public final class ChangeDetectionEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  @Description("The secrets directory")
+  String source;
+
+  @Label("Generation")
+  @Description("The credential generation in service")
+  long generation;
+
+  @Label("Available")
+  @Description("Whether both secret files were found")
+  boolean available;
+
+  @Label("Changed")
+  @Description("Whether a fingerprint moved, so the files are read")
+  boolean changed;
+
+  /** Creates an event; call {@link #begin()} before the files are statted. */
+  public ChangeDetectionEvent() {
+    // Fields are set on commit
+  }
+
+  /**
+   * Ends the event and records it if the recording wants it.
+   *
+   * @param source the secrets directory
+   * @param generation the generation in service
+   * @param available whether both secret files were found
+   * @param changed whether a fingerprint moved
+   */
+  public void commit(String source, long generation, boolean available, boolean changed) {
+    end();
+    if (shouldCommit()) {
+      this.source = source;
+      this.generation = generation;
+      this.available = available;
+      this.changed = changed;
+      commit();
+    }
+  }
+}
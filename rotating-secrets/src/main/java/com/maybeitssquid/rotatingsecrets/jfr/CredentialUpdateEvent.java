@@ -0,0 +1,59 @@
+package com.maybeitssquid.rotatingsecrets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one component applying a rotation through {@code
+ * UpdatableCredential.setCredential}, recorded on the rotation executor thread that ran it.
+ */
+@Name("com.maybeitssquid.rotatingsecrets.CredentialUpdate")
+@Label("Credential Update")
+@Category({"Rotating Secrets"})
+@Description("A component applying new credentials")
+@StackTrace(false)
+public final class CredentialUpdateEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  @Description("The secrets directory")
+  String source;
+
+  @Label("Pool")
+  @Description("The name of the updated component")
+  String pool;
+
+  @Label("Generation")
+  @Description("The credential generation applied")
+  long generation;
+
+  @Label("Status")
+  @Description("SUCCEEDED or FAILED")
+  String status;
+
+  /** Creates an event; call {@link #begin()} before the component is called. */
+  public CredentialUpdateEvent() {
+    // Fields are set on commit
+  }
+
+  /**
+   * Ends the event and records it if the recording wants it.
+   *
+   * @param source the secrets directory
+   * @param pool the name of the updated component
+   * @param generation the generation applied
+   * @param status whether the component succeeded
+   */
+  public void commit(String source, String pool, long generation, Enum<?> status) {
+    end();
+    if (shouldCommit()) {
+      this.source = source;
+      this.pool = pool;
+      this.generation = generation;
+      this.status = status.name();
+      commit();
+    }
+  }
+}
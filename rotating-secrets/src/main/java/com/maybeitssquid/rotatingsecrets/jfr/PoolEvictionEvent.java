@@ -0,0 +1,54 @@
+package com.maybeitssquid.rotatingsecrets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a pool retiring connections that use superseded credentials: a HikariCP
+ * soft eviction or a UCP refresh, recycle or purge. Rolling evictions spread their waves over time
+ * and are not recorded.
+ */
+@Name("com.maybeitssquid.rotatingsecrets.PoolEviction")
+@Label("Pool Eviction")
+@Category({"Rotating Secrets"})
+@Description("A pool retiring connections after a rotation")
+@StackTrace(false)
+public final class PoolEvictionEvent extends jdk.jfr.Event {
+
+  @Label("Pool")
+  @Description("The pool name")
+  String pool;
+
+  @Label("Generation")
+  @Description("The credential generation the pool moved to")
+  long generation;
+
+  @Label("Action")
+  @Description("SOFT_EVICT, REFRESH, RECYCLE or PURGE")
+  String action;
+
+  /** Creates an event; call {@link #begin()} before the pool is asked to evict. */
+  public PoolEvictionEvent() {
+    // Fields are set on commit
+  }
+
+  /**
+   * Ends the event and records it if the recording wants it.
+   *
+   * @param pool the pool name
+   * @param generation the generation the pool moved to
+   * @param action how the connections were retired
+   */
+  public void commit(String pool, long generation, String action) {
+    end();
+    if (shouldCommit()) {
+      this.pool = pool;
+      this.generation = generation;
+      this.action = action;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.maybeitssquid.rotatingsecrets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one wake-up of a credentials service: a watch event, the fallback poll
+ * or an explicit request checking the secrets directory.
+ *
+ * <p>The event spans the whole check, including any rotation it applied, so a recording shows which
+ * {@code getConnection} stalls and GC pauses a rotation overlapped.
+ */
+@Name("com.maybeitssquid.rotatingsecrets.SecretsCheck")
+@Label("Secrets Check")
+@Category({"Rotating Secrets"})
+@Description("A check of a secrets directory, and the rotation it applied")
+@StackTrace(false)
+public final class SecretsCheckEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  @Description("The secrets directory")
+  String source;
+
+  @Label("Trigger")
+  @Description("EVENT, POLL or REQUEST")
+  String trigger;
+
+  @Label("Outcome")
+  @Description("What the check did, such as APPLIED or UNCHANGED")
+  String outcome;
+
+  @Label("Generation")
+  @Description("The credential generation in service after the check")
+  long generation;
+
+  /** Creates an event; call {@link #begin()} when the check starts. */
+  public SecretsCheckEvent() {
+    // Fields are set on commit
+  }
+
+  /**
+   * Ends the event and records it if the recording wants it.
+   *
+   * @param source the secrets directory
+   * @param trigger what caused the check
+   * @param outcome what the check did
+   * @param generation the generation in service after the check
+   */
+  public void commit(String source, Enum<?> trigger, Enum<?> outcome, long generation) {
+    end();
+    if (shouldCommit()) {
+      this.source = source;
+      this.trigger = trigger.name();
+      this.outcome = outcome.name();
+      this.generation = generation;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.maybeitssquid.rotatingsecrets.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading the contents of both secret files, done only when a check has
+ * found their fingerprints moved.
+ */
+@Name("com.maybeitssquid.rotatingsecrets.SecretsRead")
+@Label("Secrets Read")
+@Category({"Rotating Secrets"})
+@Description("Reading the username and password files")
+@StackTrace(false)
+public final class SecretsReadEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  @Description("The secrets directory")
+  String source;
+
+  @Label("Generation")
+  @Description("The credential generation in service when the files were read")
+  long generation;
+
+  /** Creates an event; call {@link #begin()} before the first read. */
+  public SecretsReadEvent() {
+    // Fields are set on commit
+  }
+
+  /**
+   * Ends the event and records it if the recording wants it.
+   *
+   * @param source the secrets directory
+   * @param generation the generation in service when the files were read
+   */
+  public void commit(String source, long generation) {
+    end();
+    if (shouldCommit()) {
+      this.source = source;
+      this.generation = generation;
+      commit();
+    }
+  }
+}
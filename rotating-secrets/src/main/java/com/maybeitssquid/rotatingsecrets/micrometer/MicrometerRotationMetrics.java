@@ -0,0 +1,176 @@
+package com.maybeitssquid.rotatingsecrets.micrometer;
+
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.CredentialsProviderService;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import com.maybeitssquid.rotatingsecrets.RotationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the credential rotation pipeline's measurements with Micrometer.
+ *
+ * <p>Sources are tagged {@code source} with their secrets directory, and pools {@code pool} with
+ * their name:
+ *
+ * <ul>
+ *   <li>{@code rotating.secrets.checks} (counter; {@code source}, {@code trigger}, {@code outcome})
+ *       - Checks of the secret files, triggered by a watch {@code event}, the fallback {@code poll}
+ *       or an explicit {@code request}, that {@code applied} a rotation or found the pair {@code
+ *       unchanged}, {@code deferred}, {@code inconsistent}, {@code rejected} or {@code unavailable}
+ *   <li>{@code rotating.secrets.read} (timer; {@code source}) - Reading both secret files, done
+ *       only when their fingerprints moved
+ *   <li>{@code rotating.secrets.propagation} (timer; {@code source}) - From the files' modification
+ *       time until the last component applied the rotation
+ *   <li>{@code rotating.secrets.updater} (timer; {@code source}, {@code updater}, {@code status}) -
+ *       One component applying a rotation
+ *   <li>{@code rotating.secrets.generation} (gauge; {@code source}) - The current credential
+ *       generation
+ *   <li>{@code rotating.secrets.age} (time gauge; {@code source}) - Time since the current
+ *       credentials were loaded; alert on it to catch secrets that have stopped rotating
+ *   <li>{@code rotating.secrets.connections.evicted} (distribution summary; {@code pool}) -
+ *       Connections a pool retired per rotation
+ * </ul>
+ *
+ * <p>The gauges reference their service weakly, so they do not keep an unregistered source alive.
+ *
+ * @see RotationMetricsConfig
+ */
+public class MicrometerRotationMetrics implements RotationMetrics {
+
+  private final MeterRegistry registry;
+
+  // Meters are built once per tag combination; registering them again on every check would look
+  // each one up in the registry on the rotation path.
+  private final ConcurrentMap<CheckKey, Counter> checks = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> reads = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> propagations = new ConcurrentHashMap<>();
+  private final ConcurrentMap<UpdaterKey, Timer> updaters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, DistributionSummary> evictions = new ConcurrentHashMap<>();
+
+  /**
+   * Creates metrics recording to a registry.
+   *
+   * @param registry the registry to register the meters with
+   */
+  public MicrometerRotationMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public void bind(CredentialsProviderService service) {
+    final String source = service.getSecretsDirectory().toString();
+    Gauge.builder(
+            "rotating.secrets.generation",
+            service,
+            s -> {
+              CredentialSnapshot<String> snapshot = s.getCurrentSnapshot();
+              return snapshot != null ? snapshot.generation() : Double.NaN;
+            })
+        .description("Current credential generation")
+        .tag("source", source)
+        .register(registry);
+    TimeGauge.builder(
+            "rotating.secrets.age",
+            service,
+            TimeUnit.MILLISECONDS,
+            s -> {
+              CredentialSnapshot<String> snapshot = s.getCurrentSnapshot();
+              return snapshot != null
+                  ? Duration.between(snapshot.loadedAt(), Instant.now()).toMillis()
+                  : Double.NaN;
+            })
+        .description("Time since the current credentials were loaded")
+        .tag("source", source)
+        .register(registry);
+  }
+
+  @Override
+  public void checked(String source, Trigger trigger, CheckOutcome outcome) {
+    checks
+        .computeIfAbsent(
+            new CheckKey(source, trigger, outcome),
+            key ->
+                Counter.builder("rotating.secrets.checks")
+                    .description("Checks of the secret files")
+                    .tag("source", key.source())
+                    .tag("trigger", lowerCase(key.trigger()))
+                    .tag("outcome", lowerCase(key.outcome()))
+                    .register(registry))
+        .increment();
+  }
+
+  @Override
+  public void secretsRead(String source, Duration duration) {
+    reads
+        .computeIfAbsent(
+            source,
+            key ->
+                Timer.builder("rotating.secrets.read")
+                    .description("Reading the secret files")
+                    .tag("source", key)
+                    .register(registry))
+        .record(duration);
+  }
+
+  @Override
+  public void propagated(String source, Duration latency) {
+    propagations
+        .computeIfAbsent(
+            source,
+            key ->
+                Timer.builder("rotating.secrets.propagation")
+                    .description(
+                        "Time from writing the secret files to the last component applying them")
+                    .tag("source", key)
+                    .register(registry))
+        .record(latency);
+  }
+
+  @Override
+  public void credentialApplied(String source, RotationResult.Outcome outcome) {
+    updaters
+        .computeIfAbsent(
+            new UpdaterKey(source, outcome.name(), outcome.status()),
+            key ->
+                Timer.builder("rotating.secrets.updater")
+                    .description("A component applying a rotation")
+                    .tag("source", key.source())
+                    .tag("updater", key.updater())
+                    .tag("status", lowerCase(key.status()))
+                    .register(registry))
+        .record(outcome.duration());
+  }
+
+  @Override
+  public void connectionsEvicted(String pool, int count) {
+    evictions
+        .computeIfAbsent(
+            pool,
+            key ->
+                DistributionSummary.builder("rotating.secrets.connections.evicted")
+                    .description("Connections retired by a rotation")
+                    .baseUnit("connections")
+                    .tag("pool", key)
+                    .register(registry))
+        .record(count);
+  }
+
+  private static String lowerCase(Enum<?> value) {
+    return value.name().toLowerCase(Locale.ROOT);
+  }
+
+  private record CheckKey(String source, Trigger trigger, CheckOutcome outcome) {}
+
+  private record UpdaterKey(String source, String updater, RotationResult.Status status) {}
+}
@@ -0,0 +1,48 @@
+package com.maybeitssquid.rotatingsecrets.micrometer;
+
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Spring Boot auto-configuration that records credential rotation metrics with Micrometer.
+ *
+ * <p>Micrometer is an optional dependency of the library: this configuration only applies when it
+ * is on the classpath and {@code k8s.secrets.metrics.enabled} is not false. It provides a {@link
+ * MicrometerRotationMetrics} bound to the application's {@link MeterRegistry}, which the
+ * credentials services, the registry and the pool updaters pick up. Without a registry bean, or
+ * when the application defines its own {@link RotationMetrics} bean, nothing is recorded here.
+ *
+ * @see MicrometerRotationMetrics
+ */
+@AutoConfiguration
+@ConditionalOnClass(MeterRegistry.class)
+@ConditionalOnBooleanProperty(name = "k8s.secrets.metrics.enabled", matchIfMissing = true)
+public class RotationMetricsConfig {
+
+  /** Default constructor. */
+  public RotationMetricsConfig() {
+    // Configuration class for rotation metrics
+  }
+
+  /**
+   * Creates the rotation metrics for the application's meter registry.
+   *
+   * <p>The registry is looked up when the metrics are created rather than required as a bean
+   * condition, so the result does not depend on the order in which auto-configurations run.
+   *
+   * @param meterRegistry the application's meter registry, if any
+   * @return Micrometer-backed metrics, or {@link RotationMetrics#NONE} without a unique registry
+   */
+  @Bean
+  @ConditionalOnMissingBean(RotationMetrics.class)
+  public RotationMetrics rotationMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+    MeterRegistry registry = meterRegistry.getIfUnique();
+    return registry != null ? new MicrometerRotationMetrics(registry) : RotationMetrics.NONE;
+  }
+}
@@ -0,0 +1,431 @@
+package com.maybeitssquid.rotatingsecrets.registry;
+
+import com.maybeitssquid.rotatingsecrets.CredentialsProviderService;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import com.maybeitssquid.rotatingsecrets.SecretConsistency;
+import com.maybeitssquid.rotatingsecrets.SecretsWatcher;
+import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of named secret sources, each a {@link CredentialsProviderService} with its own secrets
+ * directory and its own pools.
+ *
+ * <p>The {@code credentialsProvider} service serves a single secrets directory to the {@code
+ * hikariUpdater} and {@code ucpUpdater} beans. An application with many data sources, each with its
+ * own secret, registers one source per data source here instead, either directly or through {@link
+ * DataSourceRegistrar} from {@code rotating-secrets.datasources.<name>.*} properties.
+ *
+ * <p>Every registered service shares the registry's {@link SecretsWatcher}, so the whole registry
+ * uses one watch thread and one {@link java.nio.file.WatchService} however many sources it holds.
+ * Each service keeps its own change detection, lease tracking and rotation state.
+ *
+ * <h2>Runtime Changes</h2>
+ *
+ * <p>Sources can be registered and unregistered while the application is running. Unregistering a
+ * source closes its watch registration and then every resource attached to it, such as a pool the
+ * {@link DataSourceRegistrar} created, in reverse order of attachment.
+ *
+ * <h2>Checkpoint and Restore</h2>
+ *
+ * <p>The registry is a {@link SmartLifecycle}: stopping it, as Spring does before a Coordinated
+ * Restore at Checkpoint snapshot, stops every registered service, which suspends its pools, and
+ * starting it again restarts them, re-reading each source's secrets. Sources stay registered in
+ * between.
+ *
+ * <h2>Configuration Properties</h2>
+ *
+ * <p>Services created by {@link #register(String, Path)} or {@link #createService(Path)} use the
+ * same {@code k8s.secrets.*} properties as the {@code credentialsProvider} service, described on
+ * {@link CredentialsProviderService}, except {@code k8s.secrets.path}: each source names its own
+ * directory. A service passed to {@link #register(String, CredentialsProviderService)} keeps its
+ * own settings. Outside a Spring context only the refresh interval and quiet period set on the
+ * registry apply.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe. Lookups do not lock; registering and unregistering are serialized.
+ *
+ * @see CredentialsProviderService
+ * @see SecretsWatcher
+ */
+@Component
+public class CredentialsRegistry implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(CredentialsRegistry.class);
+
+  /** A registered source: its service, data source, and the resources closed with it. */
+  private static final class Source {
+    private final CredentialsProviderService service;
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private volatile DataSource dataSource;
+
+    Source(CredentialsProviderService service) {
+      this.service = service;
+    }
+  }
+
+  private final ConcurrentMap<String, Source> sources = new ConcurrentHashMap<>();
+
+  /** Serializes registration and removal, which start and stop services. */
+  private final Object lock = new Object();
+
+  private volatile long refreshIntervalMs = 30000;
+  private volatile long quietPeriodMs = 0;
+  private volatile Executor rotationExecutor;
+  private volatile RotationMetrics metrics;
+  private volatile PropertyResolver settings;
+
+  private SecretsWatcher watcher;
+  private boolean ownsWatcher;
+  private volatile boolean running;
+
+  /** Creates an empty registry. */
+  public CredentialsRegistry() {
+    // Sources are added through register()
+  }
+
+  /**
+   * Sets the fallback poll timeout of the services this registry creates.
+   *
+   * @param refreshIntervalMs fallback poll timeout in milliseconds
+   */
+  @Value("${k8s.secrets.refreshInterval:30000}")
+  public void setRefreshIntervalMs(long refreshIntervalMs) {
+    this.refreshIntervalMs = refreshIntervalMs;
+  }
+
+  /**
+   * Sets the quiet period of the services this registry creates.
+   *
+   * @param quietPeriodMs milliseconds without further directory events to wait before reading
+   */
+  @Value("${k8s.secrets.quietPeriod:0}")
+  public void setQuietPeriodMs(long quietPeriodMs) {
+    this.quietPeriodMs = quietPeriodMs;
+  }
+
+  /**
+   * Sets where the {@code k8s.secrets.*} settings of the services this registry creates are read
+   * from.
+   *
+   * @param environment the application's environment
+   */
+  @Autowired(required = false)
+  public void setEnvironment(Environment environment) {
+    this.settings = environment;
+  }
+
+  /**
+   * Sets the executor every registered service fans rotations out on.
+   *
+   * @param rotationExecutor the executor to apply rotations on
+   */
+  @Autowired(required = false)
+  @Qualifier("credentialsRotationExecutor")
+  public void setRotationExecutor(Executor rotationExecutor) {
+    this.rotationExecutor = rotationExecutor;
+  }
+
+  /**
+   * Sets where every registered service records its checks and rotations.
+   *
+   * @param metrics the shared metrics
+   */
+  @Autowired(required = false)
+  public void setRotationMetrics(RotationMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the watcher shared by every registered service.
+   *
+   * <p>If none is set before the first registration, the registry creates and owns a private one.
+   *
+   * @param watcher the shared watcher
+   */
+  @Autowired(required = false)
+  public void setSecretsWatcher(SecretsWatcher watcher) {
+    synchronized (lock) {
+      this.watcher = watcher;
+    }
+  }
+
+  /**
+   * Registers a source reading the given secrets directory, with no components yet.
+   *
+   * <p>The service reads the directory before this method returns, so components can be created
+   * from its {@link CredentialsProviderService#getCurrentSnapshot() current snapshot} and then
+   * {@linkplain CredentialsProviderService#addUpdatable(UpdatableCredential) added}.
+   *
+   * @param name the unique name of the source
+   * @param secretsPath the directory holding the {@code username} and {@code password} files
+   * @return the started service
+   * @throws IOException if the directory cannot be watched
+   * @throws IllegalStateException if a source with the name is already registered
+   */
+  public CredentialsProviderService register(String name, Path secretsPath) throws IOException {
+    CredentialsProviderService service = createService(secretsPath);
+    register(name, service);
+    return service;
+  }
+
+  /**
+   * Registers a source reading the given secrets directory for a single component.
+   *
+   * @param name the unique name of the source
+   * @param secretsPath the directory holding the {@code username} and {@code password} files
+   * @param updatable the component to notify of credential changes
+   * @return the started service
+   * @throws IOException if the directory cannot be watched
+   * @throws IllegalStateException if a source with the name is already registered
+   */
+  public CredentialsProviderService register(
+      String name, Path secretsPath, UpdatableCredential<String> updatable) throws IOException {
+    CredentialsProviderService service = createService(secretsPath);
+    service.addUpdatable(updatable);
+    register(name, service);
+    return service;
+  }
+
+  /**
+   * Creates a service for a secrets directory with this registry's settings, without registering
+   * it.
+   *
+   * <p>The caller can adjust the service, for example give it a {@link
+   * com.maybeitssquid.rotatingsecrets.CredentialValidator} for its own database, and then {@link
+   * #register(String, CredentialsProviderService) register} it.
+   *
+   * @param secretsPath the directory holding the {@code username} and {@code password} files
+   * @return the configured, not yet started service
+   */
+  public CredentialsProviderService createService(Path secretsPath) {
+    CredentialsProviderService service =
+        new CredentialsProviderService(secretsPath.toString(), refreshIntervalMs);
+    service.setQuietPeriodMs(quietPeriodMs);
+    final PropertyResolver settings = this.settings;
+    if (settings != null) {
+      apply(settings, "maxRefreshInterval", Long.class, service::setMaxRefreshIntervalMs);
+      apply(settings, "consistency", SecretConsistency.class, service::setConsistency);
+      apply(settings, "mtimeTolerance", Long.class, service::setMtimeToleranceMs);
+      apply(settings, "versionFile", String.class, service::setVersionFileName);
+      apply(settings, "updaterTimeout", Long.class, service::setUpdaterTimeoutMs);
+      apply(settings, "leaseFile", String.class, service::setLeaseFileName);
+      apply(settings, "leaseMargin", Long.class, service::setLeaseMarginMs);
+      apply(settings, "validationAttempts", Integer.class, service::setValidationAttempts);
+      apply(settings, "validationBackoff", Long.class, service::setValidationBackoffMs);
+      apply(settings, "validationTimeout", Long.class, service::setValidationTimeoutMs);
+      apply(settings, "jitterSeed", String.class, service::setJitterSeed);
+      apply(settings, "rotationJitter", Long.class, service::setRotationJitterMs);
+      apply(settings, "gracePeriod", Long.class, service::setGracePeriodMs);
+      apply(settings, "rollbackThreshold", Integer.class, service::setRollbackThreshold);
+      apply(settings, "contentHash", Boolean.class, service::setContentHash);
+    }
+    return service;
+  }
+
+  /** Passes a {@code k8s.secrets.*} setting to a service if it is configured. */
+  private static <T> void apply(
+      PropertyResolver settings, String name, Class<T> type, Consumer<T> setter) {
+    final T value = settings.getProperty("k8s.secrets." + name, type);
+    if (value != null) {
+      setter.accept(value);
+    }
+  }
+
+  /**
+   * Registers a configured, not yet started service and starts it on the shared watcher.
+   *
+   * @param name the unique name of the source
+   * @param service the service to start
+   * @throws IOException if the service's directory cannot be watched
+   * @throws IllegalStateException if a source with the name is already registered
+   */
+  public void register(String name, CredentialsProviderService service) throws IOException {
+    synchronized (lock) {
+      if (sources.containsKey(name)) {
+        throw new IllegalStateException("A secret source named " + name + " is already registered");
+      }
+      if (rotationExecutor != null) {
+        service.setRotationExecutor(rotationExecutor);
+      }
+      if (metrics != null) {
+        service.setRotationMetrics(metrics);
+      }
+      service.setSecretsWatcher(watcher());
+      try {
+        service.start();
+      } catch (UncheckedIOException e) {
+        service.stop();
+        throw e.getCause();
+      } catch (RuntimeException e) {
+        service.stop();
+        throw e;
+      }
+      sources.put(name, new Source(service));
+    }
+    log.info("Registered secret source {}", name);
+  }
+
+  /**
+   * Attaches a data source to a registered source, closing the given resource when the source is
+   * unregistered.
+   *
+   * @param name the name of the source
+   * @param dataSource the data source served by the source's credentials
+   * @param onUnregister closed when the source is unregistered, or {@code null}
+   * @throws IllegalArgumentException if no source with the name is registered
+   */
+  public void attach(String name, DataSource dataSource, AutoCloseable onUnregister) {
+    synchronized (lock) {
+      Source source = sources.get(name);
+      if (source == null) {
+        throw new IllegalArgumentException("No secret source named " + name);
+      }
+      source.dataSource = dataSource;
+      if (onUnregister != null) {
+        source.resources.add(onUnregister);
+      }
+    }
+  }
+
+  /**
+   * Stops a source and closes the resources attached to it.
+   *
+   * @param name the name of the source
+   * @return {@code true} if a source with the name was registered
+   */
+  public boolean unregister(String name) {
+    synchronized (lock) {
+      Source source = sources.remove(name);
+      if (source == null) {
+        return false;
+      }
+      source.service.stop();
+      for (int i = source.resources.size() - 1; i >= 0; i--) {
+        try {
+          source.resources.get(i).close();
+        } catch (Exception e) {
+          log.warn("Failed to close a resource of secret source {}", name, e);
+        }
+      }
+    }
+    log.info("Unregistered secret source {}", name);
+    return true;
+  }
+
+  /**
+   * Returns the service of a registered source.
+   *
+   * @param name the name of the source
+   * @return the service, or {@code null} if no source with the name is registered
+   */
+  public CredentialsProviderService getService(String name) {
+    Source source = sources.get(name);
+    return source != null ? source.service : null;
+  }
+
+  /**
+   * Returns the data source attached to a registered source.
+   *
+   * @param name the name of the source
+   * @return the data source, or {@code null} if none is attached or no source has the name
+   */
+  public DataSource getDataSource(String name) {
+    Source source = sources.get(name);
+    return source != null ? source.dataSource : null;
+  }
+
+  /**
+   * Returns the names of the registered sources.
+   *
+   * @return an unmodifiable snapshot of the names
+   */
+  public Set<String> getNames() {
+    return Set.copyOf(sources.keySet());
+  }
+
+  /**
+   * Starts the service of every registered source that is not running, resuming its pools.
+   *
+   * @throws java.io.UncheckedIOException if a source's directory can no longer be watched
+   */
+  @Override
+  public void start() {
+    synchronized (lock) {
+      for (Source source : sources.values()) {
+        source.service.start();
+      }
+      running = true;
+    }
+  }
+
+  /**
+   * Stops the service of every registered source, suspending its pools; sources stay registered.
+   */
+  @Override
+  public void stop() {
+    synchronized (lock) {
+      running = false;
+      for (Source source : sources.values()) {
+        source.service.stop();
+      }
+      if (ownsWatcher) {
+        watcher.stop();
+      }
+    }
+  }
+
+  /**
+   * Returns whether the registry has been started and not stopped since.
+   *
+   * @return {@code true} between {@link #start()} and {@link #stop()}
+   */
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /** Unregisters every source, closing the watcher as well if this registry created it. */
+  @PreDestroy
+  public void close() {
+    synchronized (lock) {
+      for (String name : List.copyOf(sources.keySet())) {
+        unregister(name);
+      }
+      if (ownsWatcher) {
+        watcher.close();
+        watcher = null;
+        ownsWatcher = false;
+      }
+    }
+  }
+
+  private SecretsWatcher watcher() {
+    if (watcher == null) {
+      watcher = new SecretsWatcher();
+      ownsWatcher = true;
+    }
+    return watcher;
+  }
+}
@@ -0,0 +1,368 @@
+package com.maybeitssquid.rotatingsecrets.registry;
+
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.CredentialsProviderService;
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import com.maybeitssquid.rotatingsecrets.JdbcCredentialValidator;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import com.maybeitssquid.rotatingsecrets.SnapshotAwareCredential;
+import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import com.maybeitssquid.rotatingsecrets.hikari.HikariCredentialsUpdater;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Definition;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpCredentialsUpdater;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpRotationStrategy;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.sql.DataSource;
+import oracle.ucp.UniversalConnectionPoolException;
+import oracle.ucp.admin.UniversalConnectionPoolManagerImpl;
+import oracle.ucp.jdbc.PoolDataSource;
+import oracle.ucp.jdbc.PoolDataSourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binds the data sources configured under {@code rotating-secrets.datasources.<name>.*} to a {@link
+ * CredentialsRegistry} once the application context has been created.
+ *
+ * <p>For each configured name:
+ *
+ * <ul>
+ *   <li>If a bean implementing {@link UpdatableCredential} has that name, or is listed in the
+ *       definition's {@code updaters}, it is registered with the configured secrets directory. This
+ *       is how existing pool beans are discovered.
+ *   <li>Otherwise the secrets directory is read first and a HikariCP or Oracle UCP pool is created
+ *       from the definition with those credentials, then attached to the registry, where {@link
+ *       CredentialsRegistry#getDataSource(String)} returns it. The pool is closed when its source
+ *       is unregistered. With {@code validate} set, each new pair is first probed against the data
+ *       source's URL. A UCP pool applies the definition's {@code rotation-strategy}, or else {@code
+ *       k8s.secrets.ucp.rotationStrategy}.
+ * </ul>
+ *
+ * <p>Either way the source's service takes every other {@code k8s.secrets.*} setting from the
+ * registry; see {@link CredentialsRegistry#createService(Path)}.
+ *
+ * <p>Once the definitions are bound, every {@link UpdatableCredential} bean in the context must
+ * receive credentials from some source: a definition, a {@link CredentialsProviderService} bean
+ * such as {@code credentialsProvider}, which serves the {@code hikariUpdater} and {@code
+ * ucpUpdater} beans, or a source registered explicitly before then. Startup fails if any bean is
+ * left unbound, since it would otherwise keep its initial credentials without notice.
+ *
+ * <p>{@link #bind(String, Definition)} registers further data sources the same way while the
+ * application is running; {@link CredentialsRegistry#unregister(String)} removes them.
+ *
+ * @see RotatingDataSourceProperties
+ */
+@Component
+@EnableConfigurationProperties(RotatingDataSourceProperties.class)
+public class DataSourceRegistrar implements SmartInitializingSingleton {
+
+  private static final Logger log = LoggerFactory.getLogger(DataSourceRegistrar.class);
+
+  /** Connection factory for UCP pools that do not configure one. */
+  static final String DEFAULT_UCP_FACTORY = "oracle.jdbc.pool.OracleDataSource";
+
+  /** Seconds a validation probe waits for its connection to prove usable. */
+  static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private final CredentialsRegistry registry;
+  private final RotatingDataSourceProperties properties;
+  private final ListableBeanFactory beanFactory;
+
+  private volatile EvictionPolicy evictionPolicy;
+  private volatile RotationMetrics metrics;
+  private volatile UcpRotationStrategy rotationStrategy;
+
+  /**
+   * Creates a registrar.
+   *
+   * @param registry the registry to bind data sources to
+   * @param properties the configured data sources
+   * @param beanFactory the factory to look up existing updater beans in
+   */
+  public DataSourceRegistrar(
+      CredentialsRegistry registry,
+      RotatingDataSourceProperties properties,
+      ListableBeanFactory beanFactory) {
+    this.registry = registry;
+    this.properties = properties;
+    this.beanFactory = beanFactory;
+  }
+
+  /**
+   * Sets the eviction policy applied by the pools this registrar creates.
+   *
+   * @param evictionPolicy the shared eviction policy
+   */
+  @Autowired(required = false)
+  public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  /**
+   * Sets where the pools this registrar creates record the connections each rotation retires.
+   *
+   * @param metrics the shared metrics
+   */
+  @Autowired(required = false)
+  public void setRotationMetrics(RotationMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the strategy of the UCP pools this registrar creates whose definitions do not name one.
+   *
+   * @param rotationStrategy the strategy, or {@code null} to derive it from the eviction policy
+   */
+  @Value("${k8s.secrets.ucp.rotationStrategy:}")
+  public void setRotationStrategy(UcpRotationStrategy rotationStrategy) {
+    this.rotationStrategy = rotationStrategy;
+  }
+
+  /**
+   * Binds every configured data source, then checks that every updater bean is bound.
+   *
+   * @throws IllegalStateException if an {@link UpdatableCredential} bean receives credentials from
+   *     no source
+   */
+  @Override
+  public void afterSingletonsInstantiated() {
+    for (Map.Entry<String, Definition> entry : properties.getDatasources().entrySet()) {
+      try {
+        bind(entry.getKey(), entry.getValue());
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot watch secrets of data source " + entry.getKey(), e);
+      } catch (SQLException e) {
+        throw new IllegalStateException("Cannot create data source " + entry.getKey(), e);
+      }
+    }
+    List<String> unbound = unboundUpdaterBeans();
+    if (!unbound.isEmpty()) {
+      throw new IllegalStateException(
+          "UpdatableCredential beans "
+              + unbound
+              + " receive credentials from no source; name a rotating-secrets.datasources entry"
+              + " after each, or list it in the entry's updaters");
+    }
+  }
+
+  /** Returns the names of the singleton updater beans that no service applies credentials to. */
+  private List<String> unboundUpdaterBeans() {
+    Set<UpdatableCredential<String>> bound = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (CredentialsProviderService service :
+        beanFactory.getBeansOfType(CredentialsProviderService.class, false, false).values()) {
+      bound.addAll(service.getUpdatables());
+    }
+    for (String name : registry.getNames()) {
+      CredentialsProviderService service = registry.getService(name);
+      if (service != null) {
+        bound.addAll(service.getUpdatables());
+      }
+    }
+    List<String> unbound = new ArrayList<>();
+    for (String name : beanFactory.getBeanNamesForType(UpdatableCredential.class, false, false)) {
+      if (!bound.contains(beanFactory.getBean(name, UpdatableCredential.class))) {
+        unbound.add(name);
+      }
+    }
+    return unbound;
+  }
+
+  /**
+   * Registers one data source with the registry.
+   *
+   * @param name the data source name, unique within the registry
+   * @param definition the data source's secrets directory and pool settings
+   * @return the created pool, or {@code null} if an existing updater bean was bound
+   * @throws IOException if the secrets directory cannot be watched
+   * @throws SQLException if the pool cannot be configured
+   * @throws IllegalArgumentException if the definition is incomplete or lists a bean that is not an
+   *     updater
+   * @throws IllegalStateException if the name is already registered or no credentials can be read
+   */
+  public DataSource bind(String name, Definition definition) throws IOException, SQLException {
+    if (definition.getSecretsPath() == null || definition.getSecretsPath().isBlank()) {
+      throw new IllegalArgumentException(
+          "rotating-secrets.datasources." + name + ".secrets-path is required");
+    }
+    Path secretsPath = Path.of(definition.getSecretsPath());
+    boolean hasUrl = definition.getUrl() != null && !definition.getUrl().isBlank();
+    if (definition.isValidate() && !hasUrl) {
+      throw new IllegalArgumentException(
+          "rotating-secrets.datasources." + name + ".url is required to validate credentials");
+    }
+    List<UpdatableCredential<String>> beans = updaterBeans(name, definition);
+    CredentialsProviderService service = registry.createService(secretsPath);
+    if (definition.isValidate()) {
+      service.setCredentialValidator(
+          new JdbcCredentialValidator(definition.getUrl(), VALIDATION_TIMEOUT_SECONDS));
+    }
+    if (!beans.isEmpty()) {
+      beans.forEach(service::addUpdatable);
+      registry.register(name, service);
+      return null;
+    }
+    if (!hasUrl) {
+      throw new IllegalArgumentException(
+          "rotating-secrets.datasources."
+              + name
+              + ".url is required when no UpdatableCredential bean is named "
+              + name);
+    }
+
+    registry.register(name, service);
+    try {
+      CredentialSnapshot<String> snapshot = service.getCurrentSnapshot();
+      if (snapshot == null) {
+        throw new IllegalStateException(
+            "No credentials could be read from " + secretsPath + " for data source " + name);
+      }
+      DataSource dataSource =
+          switch (definition.getPool()) {
+            case HIKARI -> createHikari(name, definition, service, snapshot);
+            case UCP -> createUcp(name, definition, service, snapshot);
+          };
+      log.info("Created {} data source {} for {}", definition.getPool(), name, secretsPath);
+      return dataSource;
+    } catch (SQLException | RuntimeException e) {
+      registry.unregister(name);
+      throw e;
+    }
+  }
+
+  private DataSource createHikari(
+      String name,
+      Definition definition,
+      CredentialsProviderService service,
+      CredentialSnapshot<String> snapshot) {
+    HikariConfig config = new HikariConfig();
+    config.setPoolName(name);
+    config.setJdbcUrl(definition.getUrl());
+    if (definition.getDriverClassName() != null) {
+      config.setDriverClassName(definition.getDriverClassName());
+    }
+    config.setMaximumPoolSize(definition.getMaximumPoolSize());
+    config.setMinimumIdle(definition.getMinimumIdle());
+
+    HikariCredentialsUpdater updater =
+        new HikariCredentialsUpdater(snapshot.username(), snapshot.secret());
+    // Take on the service's generation before the pool opens any connections
+    updater.setCredential(snapshot);
+    updater.setEvictionPolicy(evictionPolicy);
+    updater.setRotationMetrics(metrics);
+    updater.configure(config);
+    HikariDataSource dataSource = new HikariDataSource(config);
+    updater.setDataSource(dataSource);
+    registry.attach(name, dataSource, dataSource);
+    follow(service, updater, snapshot);
+    return dataSource;
+  }
+
+  private DataSource createUcp(
+      String name,
+      Definition definition,
+      CredentialsProviderService service,
+      CredentialSnapshot<String> snapshot)
+      throws SQLException {
+    PoolDataSource pool = PoolDataSourceFactory.getPoolDataSource();
+    pool.setConnectionPoolName(name);
+    pool.setConnectionFactoryClassName(
+        definition.getDriverClassName() != null
+            ? definition.getDriverClassName()
+            : DEFAULT_UCP_FACTORY);
+    pool.setURL(definition.getUrl());
+    pool.setUser(snapshot.username());
+    pool.setPassword(snapshot.secret());
+    pool.setMaxPoolSize(definition.getMaximumPoolSize());
+    pool.setMinPoolSize(definition.getMinimumIdle());
+    pool.setInitialPoolSize(definition.getMinimumIdle());
+
+    UcpCredentialsUpdater updater = new UcpCredentialsUpdater(pool);
+    updater.setEvictionPolicy(evictionPolicy);
+    updater.setRotationMetrics(metrics);
+    updater.setRotationStrategy(
+        definition.getRotationStrategy() != null
+            ? definition.getRotationStrategy()
+            : rotationStrategy);
+    updater.installConnectionFactory();
+    registry.attach(
+        name,
+        pool,
+        () -> {
+          destroyUcpPool(name);
+          updater.releaseConnectionFactory();
+        });
+    follow(service, updater, snapshot);
+    return pool;
+  }
+
+  /**
+   * Adds a new pool's updater to its service, catching up with a rotation that may have been
+   * published while the pool was being created.
+   */
+  private static void follow(
+      CredentialsProviderService service,
+      SnapshotAwareCredential<String> updater,
+      CredentialSnapshot<String> initial) {
+    service.addUpdatable(updater);
+    CredentialSnapshot<String> latest = service.getCurrentSnapshot();
+    if (latest != null && latest.generation() != initial.generation()) {
+      updater.setCredential(latest);
+    }
+  }
+
+  private static void destroyUcpPool(String name) {
+    try {
+      UniversalConnectionPoolManagerImpl.getUniversalConnectionPoolManager()
+          .destroyConnectionPool(name);
+    } catch (UniversalConnectionPoolException e) {
+      // A pool that never opened a connection was never created in the manager
+      log.debug("UCP pool {} was not destroyed: {}", name, e.getMessage());
+    }
+  }
+
+  /** Returns the updater bean named after a data source, if any, and those its definition lists. */
+  @SuppressWarnings("unchecked")
+  private List<UpdatableCredential<String>> updaterBeans(String name, Definition definition) {
+    List<UpdatableCredential<String>> beans = new ArrayList<>();
+    if (isUpdaterBean(name)) {
+      beans.add(beanFactory.getBean(name, UpdatableCredential.class));
+    }
+    for (String updater : definition.getUpdaters()) {
+      if (!isUpdaterBean(updater)) {
+        throw new IllegalArgumentException(
+            "rotating-secrets.datasources."
+                + name
+                + ".updaters names "
+                + updater
+                + ", which is not an UpdatableCredential bean");
+      }
+      UpdatableCredential<String> bean = beanFactory.getBean(updater, UpdatableCredential.class);
+      if (!beans.contains(bean)) {
+        beans.add(bean);
+      }
+    }
+    return beans;
+  }
+
+  private boolean isUpdaterBean(String name) {
+    return beanFactory.containsBean(name)
+        && beanFactory.isTypeMatch(name, UpdatableCredential.class);
+  }
+}
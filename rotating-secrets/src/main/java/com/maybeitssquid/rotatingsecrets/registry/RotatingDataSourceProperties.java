@@ -0,0 +1,247 @@
+package com.maybeitssquid.rotatingsecrets.registry;
+
+import com.maybeitssquid.rotatingsecrets.ucp.UcpRotationStrategy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Data sources bound from {@code rotating-secrets.datasources.<name>.*} properties.
+ *
+ * <p>Each entry names a data source and the secrets directory its credentials are read from:
+ *
+ * <pre>
+ * rotating-secrets.datasources.orders.secrets-path=/var/run/secrets/orders
+ * rotating-secrets.datasources.orders.url=jdbc:oracle:thin:@//orders-db:1521/ORDERS
+ * rotating-secrets.datasources.orders.validate=true
+ * rotating-secrets.datasources.audit.secrets-path=/var/run/secrets/audit
+ * rotating-secrets.datasources.audit.updaters=auditPool,auditReplicaPool
+ * rotating-secrets.datasources.billing.secrets-path=/var/run/secrets/billing
+ * rotating-secrets.datasources.billing.pool=ucp
+ * rotating-secrets.datasources.billing.url=jdbc:oracle:thin:@//billing-db:1521/BILLING
+ * rotating-secrets.datasources.billing.rotation-strategy=recycle
+ * </pre>
+ *
+ * @see DataSourceRegistrar
+ */
+@ConfigurationProperties("rotating-secrets")
+public class RotatingDataSourceProperties {
+
+  private final Map<String, Definition> datasources = new LinkedHashMap<>();
+
+  /** Creates empty properties. */
+  public RotatingDataSourceProperties() {
+    // Populated by configuration property binding
+  }
+
+  /**
+   * Returns the configured data sources by name.
+   *
+   * @return the mutable map of definitions
+   */
+  public Map<String, Definition> getDatasources() {
+    return datasources;
+  }
+
+  /** The connection pool implementation created for a data source. */
+  public enum Pool {
+    /** A {@link com.zaxxer.hikari.HikariDataSource}. */
+    HIKARI,
+
+    /** An Oracle UCP {@link oracle.ucp.jdbc.PoolDataSource}. */
+    UCP
+  }
+
+  /**
+   * One data source and its secrets directory.
+   *
+   * <p>If a bean implementing {@link com.maybeitssquid.rotatingsecrets.UpdatableCredential} has the
+   * data source's name or is listed in {@code updaters}, only {@code secrets-path}, and {@code url}
+   * with {@code validate}, are used and those beans are bound to it; otherwise a pool is created
+   * from the remaining properties.
+   */
+  public static class Definition {
+
+    private String secretsPath;
+    private Pool pool = Pool.HIKARI;
+    private String url;
+    private String driverClassName;
+    private int maximumPoolSize = 10;
+    private int minimumIdle = 2;
+    private boolean validate;
+    private UcpRotationStrategy rotationStrategy;
+    private List<String> updaters = new ArrayList<>();
+
+    /** Creates a definition with default pool settings. */
+    public Definition() {
+      // Populated by configuration property binding
+    }
+
+    /**
+     * Returns the directory holding the {@code username} and {@code password} files.
+     *
+     * @return the secrets directory (required)
+     */
+    public String getSecretsPath() {
+      return secretsPath;
+    }
+
+    /**
+     * Sets the directory holding the {@code username} and {@code password} files.
+     *
+     * @param secretsPath the secrets directory
+     */
+    public void setSecretsPath(String secretsPath) {
+      this.secretsPath = secretsPath;
+    }
+
+    /**
+     * Returns the pool implementation to create.
+     *
+     * @return the pool (default: {@link Pool#HIKARI})
+     */
+    public Pool getPool() {
+      return pool;
+    }
+
+    /**
+     * Sets the pool implementation to create.
+     *
+     * @param pool the pool
+     */
+    public void setPool(Pool pool) {
+      this.pool = pool;
+    }
+
+    /**
+     * Returns the JDBC URL.
+     *
+     * @return the URL, required to validate credentials or unless an updater bean has the data
+     *     source's name
+     */
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * Sets the JDBC URL.
+     *
+     * @param url the URL
+     */
+    public void setUrl(String url) {
+      this.url = url;
+    }
+
+    /**
+     * Returns the JDBC driver class, or for UCP the connection factory class.
+     *
+     * @return the class name, or {@code null} to use the pool's default
+     */
+    public String getDriverClassName() {
+      return driverClassName;
+    }
+
+    /**
+     * Sets the JDBC driver class, or for UCP the connection factory class.
+     *
+     * @param driverClassName the class name
+     */
+    public void setDriverClassName(String driverClassName) {
+      this.driverClassName = driverClassName;
+    }
+
+    /**
+     * Returns the maximum number of connections in the pool.
+     *
+     * @return the maximum pool size (default: 10)
+     */
+    public int getMaximumPoolSize() {
+      return maximumPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of connections in the pool.
+     *
+     * @param maximumPoolSize the maximum pool size
+     */
+    public void setMaximumPoolSize(int maximumPoolSize) {
+      this.maximumPoolSize = maximumPoolSize;
+    }
+
+    /**
+     * Returns the number of connections the pool keeps open when idle.
+     *
+     * @return the minimum idle connections (default: 2)
+     */
+    public int getMinimumIdle() {
+      return minimumIdle;
+    }
+
+    /**
+     * Sets the number of connections the pool keeps open when idle.
+     *
+     * @param minimumIdle the minimum idle connections
+     */
+    public void setMinimumIdle(int minimumIdle) {
+      this.minimumIdle = minimumIdle;
+    }
+
+    /**
+     * Returns whether new credentials are probed against the URL before the pool receives them.
+     *
+     * @return {@code true} to validate with a {@link
+     *     com.maybeitssquid.rotatingsecrets.JdbcCredentialValidator} (default: {@code false})
+     */
+    public boolean isValidate() {
+      return validate;
+    }
+
+    /**
+     * Sets whether new credentials are probed against the URL before the pool receives them.
+     *
+     * @param validate {@code true} to validate new credentials
+     */
+    public void setValidate(boolean validate) {
+      this.validate = validate;
+    }
+
+    /**
+     * Returns how a UCP pool moves its connections onto rotated credentials.
+     *
+     * @return the strategy, or {@code null} to use {@code k8s.secrets.ucp.rotationStrategy}
+     */
+    public UcpRotationStrategy getRotationStrategy() {
+      return rotationStrategy;
+    }
+
+    /**
+     * Sets how a UCP pool moves its connections onto rotated credentials. Ignored for HikariCP.
+     *
+     * @param rotationStrategy the strategy
+     */
+    public void setRotationStrategy(UcpRotationStrategy rotationStrategy) {
+      this.rotationStrategy = rotationStrategy;
+    }
+
+    /**
+     * Returns the names of further updater beans bound to this data source, besides the one named
+     * after it.
+     *
+     * @return the bean names (default: none)
+     */
+    public List<String> getUpdaters() {
+      return updaters;
+    }
+
+    /**
+     * Sets the names of further updater beans bound to this data source.
+     *
+     * @param updaters the bean names
+     */
+    public void setUpdaters(List<String> updaters) {
+      this.updaters = updaters;
+    }
+  }
+}
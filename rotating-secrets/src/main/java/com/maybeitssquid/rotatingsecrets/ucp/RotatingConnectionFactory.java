@@ -0,0 +1,324 @@
+package com.maybeitssquid.rotatingsecrets.ucp;
+
+import com.maybeitssquid.rotatingsecrets.AuthenticationFailureListener;
+import com.maybeitssquid.rotatingsecrets.AuthenticationFailures;
+import com.maybeitssquid.rotatingsecrets.ConnectionGenerations;
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+/**
+ * Connection factory for Oracle UCP that takes credentials from one atomically published {@link
+ * CredentialSnapshot} instead of the pool's separately set user and password.
+ *
+ * <p>UCP instantiates its connection factory by class name and copies the pool's user and password
+ * onto it with two separate calls, so a connection opened between them can pair a new username with
+ * an old password. Installed through {@link UcpCredentialsUpdater#installConnectionFactory()}, this
+ * factory wraps the configured factory (the <em>delegate</em>, for example {@code
+ * oracle.jdbc.pool.OracleDataSource}) and opens every connection with the username and password of
+ * the latest snapshot published for its pool, read with a single volatile load. UCP's user and
+ * password are only used until the first snapshot is published.
+ *
+ * <p>UCP configures the factory through its connection factory properties:
+ *
+ * <ul>
+ *   <li>{@code delegateClassName} - the {@link DataSource} or {@link Driver} class that actually
+ *       opens connections; it must have a public no-argument constructor, and a {@code DataSource}
+ *       must also have a {@code setURL} or {@code setUrl} setter
+ *   <li>{@code credentialsKey} - the key under which {@link UcpCredentialsUpdater} publishes
+ *       snapshots, a token the updater generates for its pool
+ * </ul>
+ *
+ * <p>A login rejected with the current snapshot is reported to the pool's {@link
+ * AuthenticationFailureListener}, and retried once if that publishes newer credentials within the
+ * pool's connection wait timeout; a login rejected with a snapshot that has since been superseded
+ * is retried with the current one.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe. Published credentials live in a static registry shared by every
+ * factory instance UCP creates for the same key.
+ */
+public class RotatingConnectionFactory implements DataSource {
+
+  /** Credentials published for each pool, keyed by {@code credentialsKey}. */
+  private static final ConcurrentMap<String, Published> REGISTRY = new ConcurrentHashMap<>();
+
+  /**
+   * The latest credentials and failure listener published for one pool, and the generations of the
+   * connections opened for it.
+   */
+  static final class Published {
+
+    private final ConnectionGenerations connections = new ConnectionGenerations();
+    private volatile CredentialSnapshot<String> snapshot;
+    private volatile AuthenticationFailureListener listener;
+    private volatile LongSupplier waitTimeoutMs = () -> 0;
+
+    void publish(CredentialSnapshot<String> snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    CredentialSnapshot<String> snapshot() {
+      return snapshot;
+    }
+
+    void setListener(AuthenticationFailureListener listener) {
+      this.listener = listener;
+    }
+
+    /** Sets how long a rejected login may wait for the listener, read at each rejection. */
+    void setWaitTimeoutMs(LongSupplier waitTimeoutMs) {
+      this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    ConnectionGenerations connections() {
+      return connections;
+    }
+  }
+
+  private volatile String url;
+  private volatile String user;
+  private volatile String password;
+  private volatile String credentialsKey;
+  private volatile String delegateClassName;
+  private volatile int loginTimeout;
+  private volatile PrintWriter logWriter;
+  private volatile DataSource delegate;
+
+  /** Creates a factory; UCP configures it through its setters. */
+  public RotatingConnectionFactory() {
+    // Configured reflectively by UCP
+  }
+
+  /**
+   * Returns the registry entry for a key, creating it if needed.
+   *
+   * @param credentialsKey the key, a token unique to one pool's updater
+   * @return the entry that factories configured with the key read from
+   */
+  static Published register(String credentialsKey) {
+    return REGISTRY.computeIfAbsent(credentialsKey, key -> new Published());
+  }
+
+  /**
+   * Removes the registry entry for a key, so that factories configured with it fall back to the
+   * credentials UCP gives them.
+   *
+   * @param credentialsKey the key, a token unique to one pool's updater
+   */
+  static void unregister(String credentialsKey) {
+    REGISTRY.remove(credentialsKey);
+  }
+
+  /**
+   * Sets the JDBC URL passed on to the delegate.
+   *
+   * @param url the JDBC URL
+   */
+  public void setURL(String url) {
+    this.url = url;
+  }
+
+  /**
+   * Sets the user UCP configured on the pool, used until a snapshot is published.
+   *
+   * @param user the pool's user
+   */
+  public void setUser(String user) {
+    this.user = user;
+  }
+
+  /**
+   * Sets the password UCP configured on the pool, used until a snapshot is published.
+   *
+   * @param password the pool's password
+   */
+  public void setPassword(String password) {
+    this.password = password;
+  }
+
+  /**
+   * Sets the key under which credentials for this pool are published.
+   *
+   * @param credentialsKey the key, a token unique to one pool's updater
+   */
+  public void setCredentialsKey(String credentialsKey) {
+    this.credentialsKey = credentialsKey;
+  }
+
+  /**
+   * Sets the class of the data source that actually opens connections.
+   *
+   * @param delegateClassName the fully qualified class name
+   */
+  public void setDelegateClassName(String delegateClassName) {
+    this.delegateClassName = delegateClassName;
+    this.delegate = null;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return getConnection(user, password);
+  }
+
+  /**
+   * Opens a connection with the latest published credentials, or with the given ones if none have
+   * been published for this pool yet.
+   */
+  @Override
+  public Connection getConnection(String username, String credential) throws SQLException {
+    final String key = this.credentialsKey;
+    final Published published = key != null ? REGISTRY.get(key) : null;
+    final CredentialSnapshot<String> snapshot = published != null ? published.snapshot : null;
+    if (snapshot == null) {
+      final Connection connection = delegate().getConnection(username, credential);
+      if (published != null) {
+        // The pool's own credentials precede the first rotation
+        published.connections.opened(connection, 0);
+      }
+      return connection;
+    }
+    try {
+      return opened(
+          published, delegate().getConnection(snapshot.username(), snapshot.secret()), snapshot);
+    } catch (SQLException e) {
+      if (!AuthenticationFailures.isAuthenticationFailure(e)) {
+        throw e;
+      }
+      if (published.snapshot == snapshot) {
+        final AuthenticationFailureListener listener = published.listener;
+        if (listener == null
+            || !listener.authenticationFailed(
+                snapshot.generation(), e, published.waitTimeoutMs.getAsLong())) {
+          throw e;
+        }
+      }
+      final CredentialSnapshot<String> retry = published.snapshot;
+      try {
+        return opened(published, delegate().getConnection(retry.username(), retry.secret()), retry);
+      } catch (SQLException retryFailure) {
+        retryFailure.addSuppressed(e);
+        throw retryFailure;
+      }
+    }
+  }
+
+  private static Connection opened(
+      Published published, Connection connection, CredentialSnapshot<String> snapshot) {
+    published.connections.opened(connection, snapshot.generation());
+    return connection;
+  }
+
+  /** Creates the delegate on first use, once UCP has set all properties. */
+  private DataSource delegate() throws SQLException {
+    DataSource ds = this.delegate;
+    if (ds == null) {
+      synchronized (this) {
+        ds = this.delegate;
+        if (ds == null) {
+          ds = createDelegate();
+          this.delegate = ds;
+        }
+      }
+    }
+    return ds;
+  }
+
+  private DataSource createDelegate() throws SQLException {
+    final String className = this.delegateClassName;
+    if (className == null || className.isEmpty()) {
+      throw new SQLException("No delegateClassName configured for " + getClass().getSimpleName());
+    }
+    try {
+      final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      final Class<?> type =
+          Class.forName(className, true, loader != null ? loader : getClass().getClassLoader());
+      final Object instance = type.getConstructor().newInstance();
+      if (instance instanceof Driver driver) {
+        // UCP accepts driver class names too; the driver takes the URL on every connect
+        return new SimpleDriverDataSource(driver, url);
+      }
+      final DataSource ds = (DataSource) instance;
+      setUrl(ds, url);
+      ds.setLoginTimeout(loginTimeout);
+      if (logWriter != null) {
+        ds.setLogWriter(logWriter);
+      }
+      return ds;
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new SQLException("Cannot create connection factory " + className, e);
+    }
+  }
+
+  private static void setUrl(DataSource ds, String url)
+      throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    if (url == null) {
+      return;
+    }
+    Method setter;
+    try {
+      setter = ds.getClass().getMethod("setURL", String.class);
+    } catch (NoSuchMethodException e) {
+      setter = ds.getClass().getMethod("setUrl", String.class);
+    }
+    setter.invoke(ds, url);
+  }
+
+  @Override
+  public PrintWriter getLogWriter() {
+    return logWriter;
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    this.logWriter = out;
+    final DataSource ds = this.delegate;
+    if (ds != null && !(ds instanceof SimpleDriverDataSource)) {
+      ds.setLogWriter(out);
+    }
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    this.loginTimeout = seconds;
+    final DataSource ds = this.delegate;
+    if (ds != null && !(ds instanceof SimpleDriverDataSource)) {
+      ds.setLoginTimeout(seconds);
+    }
+  }
+
+  @Override
+  public int getLoginTimeout() {
+    return loginTimeout;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    return delegate().unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || delegate().isWrapperFor(iface);
+  }
+}
@@ -1,45 +1,99 @@
 package com.maybeitssquid.rotatingsecrets.ucp;
 
+import com.maybeitssquid.rotatingsecrets.AuthenticationFailureListener;
 import com.maybeitssquid.rotatingsecrets.CredentialRotationException;
-import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.EvictablePool;
+import com.maybeitssquid.rotatingsecrets.EvictionMode;
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import com.maybeitssquid.rotatingsecrets.RollingEvictor;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import com.maybeitssquid.rotatingsecrets.SnapshotAwareCredential;
+import com.maybeitssquid.rotatingsecrets.jfr.PoolEvictionEvent;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.UUID;
 import oracle.ucp.UniversalConnectionPoolException;
 import oracle.ucp.admin.UniversalConnectionPoolManager;
 import oracle.ucp.admin.UniversalConnectionPoolManagerImpl;
 import oracle.ucp.jdbc.PoolDataSource;
+import oracle.ucp.jdbc.ValidConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 /**
  * Handles credential updates for Oracle Universal Connection Pool (UCP) data sources.
  *
- * <p>This class implements the {@link UpdatableCredential} interface to receive credential change
- * notifications from the {@link com.maybeitssquid.rotatingsecrets.CredentialsProviderService}. When
- * credentials are updated, it atomically updates the pool's username and password, then triggers a
- * pool refresh to ensure new connections use the updated credentials.
+ * <p>This class implements the {@link SnapshotAwareCredential} interface to receive credential
+ * change notifications from the {@link
+ * com.maybeitssquid.rotatingsecrets.CredentialsProviderService}. When credentials are updated, it
+ * publishes the new username and password to the pool, then moves existing connections onto them.
  *
  * <h2>Credential Update Process</h2>
  *
  * <ol>
- *   <li>Acquire a lock on the pool to ensure atomic credential updates
- *   <li>Update the username and password on the {@link PoolDataSource}
- *   <li>Call {@link UniversalConnectionPoolManager#refreshConnectionPool(String)} to gracefully
- *       replace connections with ones using the new credentials
+ *   <li>Publish the new credentials: with the {@link RotatingConnectionFactory} installed (see
+ *       {@link #installConnectionFactory()}), as one snapshot that UCP's connection-creation
+ *       threads read atomically; otherwise by setting the username and password on the {@link
+ *       PoolDataSource} under its monitor
+ *   <li>Move existing connections onto the new credentials according to the {@link
+ *       UcpRotationStrategy}: refresh, recycle or purge the pool through the {@link
+ *       UniversalConnectionPoolManager}, or start a {@link RollingEvictor} that invalidates them in
+ *       rate-limited waves
  * </ol>
  *
+ * <p>Without an explicit strategy, the pool is refreshed, or rolled when the {@link EvictionPolicy}
+ * is in {@link EvictionMode#ROLLING} mode. Before the first borrow UCP has not created the pool
+ * yet, so there are no connections to move and only the credentials are published. The same applies
+ * while the pool is {@linkplain #suspend() suspended}.
+ *
  * <h2>Thread Safety</h2>
  *
- * <p>This class is thread-safe. Credential updates are synchronized on the pool data source to
- * ensure atomic username/password updates. The pool refresh operation is handled asynchronously by
- * UCP.
+ * <p>This class is thread-safe. With the {@link RotatingConnectionFactory} installed, a rotation is
+ * a single volatile write that UCP's connection-creation threads read without locking, so they can
+ * never pair a new username with an old password. Without it, the username and password are set
+ * under the pool data source's monitor, which UCP itself does not take, so a connection opened
+ * between the two calls may see a torn pair. The pool refresh operation is handled asynchronously
+ * by UCP.
  *
- * @see UpdatableCredential
+ * @see SnapshotAwareCredential
+ * @see RotatingConnectionFactory
  * @see UcpDataSourceConfig
  * @see PoolDataSource
  */
-public class UcpCredentialsUpdater implements UpdatableCredential<String> {
+public class UcpCredentialsUpdater implements SnapshotAwareCredential<String> {
 
   /** The Oracle UCP pool data source to manage credentials for. */
   private final PoolDataSource poolDataSource;
 
+  /** How existing connections are retired after a rotation; {@code null} means a pool refresh. */
+  private volatile EvictionPolicy evictionPolicy;
+
+  private volatile RollingEvictor rollingEvictor;
+
+  private volatile RotationMetrics metrics = RotationMetrics.NONE;
+
+  /** The most recent rotation, or {@code null} before the first one. */
+  private volatile CredentialSnapshot<String> current;
+
+  /** Where credentials are published once the rotating connection factory is installed. */
+  private volatile RotatingConnectionFactory.Published published;
+
+  /**
+   * The token this updater publishes credentials under. Unique to the updater, so that pools that
+   * share a name, for example in two application contexts, never share credentials.
+   */
+  private final String credentialsKey = UUID.randomUUID().toString();
+
+  private volatile AuthenticationFailureListener authenticationFailureListener;
+
+  /** Explicitly selected strategy; {@code null} derives it from the eviction policy. */
+  private volatile UcpRotationStrategy rotationStrategy;
+
+  /** Whether {@link #suspend()} stopped the pool. */
+  private volatile boolean suspended;
+
   /**
    * Creates a new credentials updater for the given Oracle UCP pool.
    *
@@ -50,32 +104,432 @@ public class UcpCredentialsUpdater implements UpdatableCredential<String> {
   }
 
   /**
-   * Updates the credentials used by the Oracle UCP pool and refreshes connections.
+   * Installs the {@link RotatingConnectionFactory} on the managed pool so that UCP reads rotated
+   * credentials from one atomically published snapshot.
    *
-   * <p>This method atomically updates the username and password on the pool, then triggers a pool
-   * refresh. The refresh operation gracefully replaces existing connections with new ones using the
-   * updated credentials. Active connections continue to work until they are returned to the pool.
+   * <p>Must be called before the pool opens its first connection. The pool's configured connection
+   * factory becomes the delegate that actually opens connections, and a token unique to this
+   * updater is set as the key credentials are published under. After this, rotations no longer
+   * change the pool's own user and password; those remain the credentials used until the first
+   * rotation.
+   *
+   * @throws SQLException if the pool's connection factory cannot be changed
+   */
+  public void installConnectionFactory() throws SQLException {
+    final String factory = RotatingConnectionFactory.class.getName();
+    if (!factory.equals(poolDataSource.getConnectionFactoryClassName())) {
+      final String delegate = poolDataSource.getConnectionFactoryClassName();
+      poolDataSource.setConnectionFactoryClassName(factory);
+      poolDataSource.setConnectionFactoryProperty("delegateClassName", delegate);
+    }
+    poolDataSource.setConnectionFactoryProperty("credentialsKey", credentialsKey);
+    final RotatingConnectionFactory.Published target =
+        RotatingConnectionFactory.register(credentialsKey);
+    target.setListener(authenticationFailureListener);
+    target.setWaitTimeoutMs(() -> poolDataSource.getConnectionWaitDuration().toMillis());
+    final CredentialSnapshot<String> snapshot = this.current;
+    if (snapshot != null) {
+      target.publish(snapshot);
+    }
+    this.published = target;
+  }
+
+  /**
+   * Removes this pool's published credentials from the {@link RotatingConnectionFactory} registry.
+   * Call it once the pool has been destroyed; it does nothing if the factory was never installed.
+   */
+  public void releaseConnectionFactory() {
+    if (this.published != null) {
+      RotatingConnectionFactory.unregister(credentialsKey);
+      this.published = null;
+    }
+  }
+
+  /**
+   * Returns the generation of the credentials most recently applied to the pool.
+   *
+   * @return the current {@linkplain CredentialSnapshot#generation() generation}, or {@code 0}
+   *     before the first rotation
+   */
+  public long getGeneration() {
+    final CredentialSnapshot<String> snapshot = this.current;
+    return snapshot != null ? snapshot.generation() : 0;
+  }
+
+  /**
+   * Sets the listener notified when the database rejects the current credentials.
+   *
+   * <p>Only logins made through the {@link RotatingConnectionFactory} are observed.
+   *
+   * @param listener the listener to notify
+   */
+  @Override
+  public void setAuthenticationFailureListener(AuthenticationFailureListener listener) {
+    this.authenticationFailureListener = listener;
+    final RotatingConnectionFactory.Published target = this.published;
+    if (target != null) {
+      target.setListener(listener);
+    }
+  }
+
+  /**
+   * Sets how existing connections are retired after a rotation.
+   *
+   * @param evictionPolicy the eviction policy; without one, the pool is refreshed at once
+   */
+  @Autowired(required = false)
+  public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  /**
+   * Sets where the connections retired by each rotation are recorded.
+   *
+   * @param metrics the metrics to record to, or {@code null} to record nothing
+   */
+  @Autowired(required = false)
+  public void setRotationMetrics(RotationMetrics metrics) {
+    this.metrics = metrics != null ? metrics : RotationMetrics.NONE;
+  }
+
+  /**
+   * Selects how existing connections are moved onto rotated credentials.
+   *
+   * @param rotationStrategy the strategy, or {@code null} to refresh the pool, or roll it when the
+   *     eviction policy is in {@link EvictionMode#ROLLING} mode
+   */
+  @Value("${k8s.secrets.ucp.rotationStrategy:}")
+  public void setRotationStrategy(UcpRotationStrategy rotationStrategy) {
+    this.rotationStrategy = rotationStrategy;
+  }
+
+  /**
+   * Returns the strategy applied on the next rotation.
+   *
+   * @return the selected strategy, or the one derived from the eviction policy
+   */
+  public UcpRotationStrategy getRotationStrategy() {
+    final UcpRotationStrategy strategy = this.rotationStrategy;
+    if (strategy != null) {
+      return strategy;
+    }
+    final EvictionPolicy policy = this.evictionPolicy;
+    return policy != null && policy.getMode() == EvictionMode.ROLLING
+        ? UcpRotationStrategy.ROLLING
+        : UcpRotationStrategy.REFRESH;
+  }
+
+  /**
+   * Returns the rolling evictor once rolling eviction has been used.
+   *
+   * @return the evictor, or {@code null} if no rolling eviction has been started
+   */
+  public RollingEvictor getRollingEvictor() {
+    return rollingEvictor;
+  }
+
+  /**
+   * Returns the name of the managed UCP connection pool.
+   *
+   * @return the connection pool name
+   */
+  @Override
+  public String getName() {
+    return this.poolDataSource.getConnectionPoolName();
+  }
+
+  /**
+   * Updates the credentials used by the Oracle UCP pool and moves existing connections onto them.
+   *
+   * <p>The new credentials are stamped with the generation following the current one; see {@link
+   * #setCredential(CredentialSnapshot)}.
    *
    * @param username the new database username
    * @param credential the new database password
-   * @throws RuntimeException if the credentials cannot be updated or the pool cannot be refreshed
+   * @throws RuntimeException if the credentials cannot be updated or the strategy fails
    */
   @Override
   public void setCredential(final String username, final String credential) {
+    final CredentialSnapshot<String> snapshot = this.current;
+    setCredential(
+        snapshot != null
+            ? snapshot.next(username, credential, Instant.now())
+            : new CredentialSnapshot<>(username, credential, 1, Instant.now()));
+  }
+
+  /**
+   * Updates the credentials used by the Oracle UCP pool from a rotation snapshot and moves existing
+   * connections onto them.
+   *
+   * <p>This method publishes the username and password to the pool as one pair, then applies the
+   * {@linkplain #getRotationStrategy() rotation strategy}. With the default refresh, existing
+   * connections are gracefully replaced with new ones using the updated credentials; active
+   * connections continue to work until they are returned to the pool.
+   *
+   * @param snapshot the rotation to apply
+   * @throws RuntimeException if the credentials cannot be updated or the strategy fails
+   */
+  @Override
+  public void setCredential(final CredentialSnapshot<String> snapshot) {
     final String poolName = this.poolDataSource.getConnectionPoolName();
+    final RotatingConnectionFactory.Published target = this.published;
+    if (target != null) {
+      target.publish(snapshot);
+    } else {
+      try {
+        synchronized (this.poolDataSource) {
+          this.poolDataSource.setUser(snapshot.username());
+          this.poolDataSource.setPassword(snapshot.secret());
+        }
+      } catch (final SQLException e) {
+        throw new CredentialRotationException(
+            "Failed to update credentials in poolDataSource " + poolName, e);
+      }
+    }
+    this.current = snapshot;
+    if (!isStarted()) {
+      // UCP creates the pool on first borrow, which will use the credentials just published
+      return;
+    }
+    final UcpRotationStrategy strategy = getRotationStrategy();
+    if (strategy == UcpRotationStrategy.ROLLING) {
+      // The waves run on the evictor's schedule; no eviction event would span them
+      final EvictionPolicy policy = this.evictionPolicy;
+      rollingEvictor(policy != null ? policy : new EvictionPolicy()).start();
+      return;
+    }
+    // Refresh and purge retire every open connection; recycle only those UCP finds invalid
+    final int open = strategy != UcpRotationStrategy.RECYCLE ? openConnections() : -1;
+    final PoolEvictionEvent event = new PoolEvictionEvent();
+    event.begin();
+    switch (strategy) {
+      case RECYCLE -> recycleConnectionPool(poolName);
+      case PURGE -> purgeConnectionPool(poolName);
+      case REFRESH -> refreshConnectionPool(poolName);
+    }
+    event.commit(poolName, snapshot.generation(), strategy.name());
+    if (open >= 0) {
+      metrics.connectionsEvicted(poolName, open);
+    }
+  }
+
+  private int openConnections() {
     try {
-      synchronized (this.poolDataSource) {
-        this.poolDataSource.setUser(username);
-        this.poolDataSource.setPassword(credential);
+      return poolDataSource.getAvailableConnectionsCount()
+          + poolDataSource.getBorrowedConnectionsCount();
+    } catch (SQLException e) {
+      return -1;
+    }
+  }
+
+  private synchronized RollingEvictor rollingEvictor(EvictionPolicy policy) {
+    if (rollingEvictor == null) {
+      rollingEvictor = new RollingEvictor(new UcpEvictablePool(), policy);
+    }
+    return rollingEvictor;
+  }
+
+  /**
+   * Finishes retiring the connections of a generation whose lease is about to expire, according to
+   * the {@linkplain #getRotationStrategy() rotation strategy}.
+   *
+   * <p>{@link UcpRotationStrategy#REFRESH} and {@link UcpRotationStrategy#PURGE} already replaced
+   * every connection when the rotation was applied, so there is nothing left to do. A {@link
+   * UcpRotationStrategy#ROLLING} eviction that is still in progress is {@linkplain
+   * RollingEvictor#complete() completed} at once. {@link UcpRotationStrategy#RECYCLE} leaves valid
+   * connections on the old credentials, so the pool is refreshed; with the {@link
+   * RotatingConnectionFactory} installed, only if superseded connections are still open.
+   *
+   * @param generation the generation whose lease is about to expire
+   * @throws RuntimeException if the pool cannot be refreshed
+   */
+  @Override
+  public void retireGeneration(final long generation) {
+    if (!isStarted() || generation >= getGeneration()) {
+      return;
+    }
+    switch (getRotationStrategy()) {
+      case REFRESH, PURGE -> {
+        // Every connection was replaced when the rotation was applied
+      }
+      case ROLLING -> {
+        final RollingEvictor evictor = this.rollingEvictor;
+        if (evictor != null) {
+          evictor.complete();
+        }
+      }
+      case RECYCLE -> {
+        final RotatingConnectionFactory.Published target = this.published;
+        if (target == null || target.connections().countOlderThan(getGeneration()) != 0) {
+          final String poolName = this.poolDataSource.getConnectionPoolName();
+          final int open = openConnections();
+          final PoolEvictionEvent event = new PoolEvictionEvent();
+          event.begin();
+          refreshConnectionPool(poolName);
+          event.commit(poolName, getGeneration(), UcpRotationStrategy.REFRESH.name());
+          if (open >= 0) {
+            metrics.connectionsEvicted(poolName, open);
+          }
+        }
       }
-      final UniversalConnectionPoolManager mgr =
-          UniversalConnectionPoolManagerImpl.getUniversalConnectionPoolManager();
-      mgr.refreshConnectionPool(poolName);
-    } catch (final SQLException e) {
-      throw new CredentialRotationException(
-          "Failed to update credentials in poolDataSource " + poolName, e);
+    }
+  }
+
+  /**
+   * Stops the pool through the {@link UniversalConnectionPoolManager}, closing its connections,
+   * before the application is stopped.
+   *
+   * <p>Does nothing if UCP has not created the pool yet.
+   *
+   * @throws RuntimeException if the pool cannot be stopped
+   */
+  @Override
+  public synchronized void suspend() {
+    if (!isStarted()) {
+      return;
+    }
+    final String poolName = this.poolDataSource.getConnectionPoolName();
+    try {
+      manager().stopConnectionPool(poolName);
+    } catch (final UniversalConnectionPoolException e) {
+      throw new CredentialRotationException("Failed to stop poolDataSource " + poolName, e);
+    }
+    this.suspended = true;
+  }
+
+  /**
+   * Starts the pool again after {@link #suspend()}, opening its initial connections with the
+   * credentials published while it was stopped.
+   *
+   * @throws RuntimeException if the pool cannot be started
+   */
+  @Override
+  public synchronized void resume() {
+    if (!this.suspended) {
+      return;
+    }
+    this.suspended = false;
+    final String poolName = this.poolDataSource.getConnectionPoolName();
+    try {
+      manager().startConnectionPool(poolName);
+    } catch (final UniversalConnectionPoolException e) {
+      throw new CredentialRotationException("Failed to start poolDataSource " + poolName, e);
+    }
+  }
+
+  /**
+   * Whether UCP has created the pool, which it does on the first borrow, and it is not suspended.
+   */
+  private boolean isStarted() {
+    return !this.suspended && this.poolDataSource.getStatistics() != null;
+  }
+
+  private static void refreshConnectionPool(final String poolName) {
+    try {
+      manager().refreshConnectionPool(poolName);
     } catch (final UniversalConnectionPoolException e) {
       throw new CredentialRotationException("Failed to refresh poolDataSource " + poolName, e);
     }
   }
+
+  private static void recycleConnectionPool(final String poolName) {
+    try {
+      manager().recycleConnectionPool(poolName);
+    } catch (final UniversalConnectionPoolException e) {
+      throw new CredentialRotationException("Failed to recycle poolDataSource " + poolName, e);
+    }
+  }
+
+  private static void purgeConnectionPool(final String poolName) {
+    try {
+      manager().purgeConnectionPool(poolName);
+    } catch (final UniversalConnectionPoolException e) {
+      throw new CredentialRotationException("Failed to purge poolDataSource " + poolName, e);
+    }
+  }
+
+  private static UniversalConnectionPoolManager manager() throws UniversalConnectionPoolException {
+    return UniversalConnectionPoolManagerImpl.getUniversalConnectionPoolManager();
+  }
+
+  /**
+   * Exposes the UCP pool to the {@link RollingEvictor}.
+   *
+   * <p>A borrowed connection is evicted by marking it invalid through {@link ValidConnection} and
+   * closing it, which makes UCP discard it instead of returning it to the pool. With the {@link
+   * RotatingConnectionFactory} installed, every connection is recorded with the generation of its
+   * credentials, so the evictor retires exactly the superseded ones; otherwise it retires by count.
+   */
+  private final class UcpEvictablePool implements EvictablePool {
+
+    @Override
+    public String getName() {
+      return poolDataSource.getConnectionPoolName();
+    }
+
+    @Override
+    public int getIdleConnections() {
+      try {
+        return poolDataSource.getAvailableConnectionsCount();
+      } catch (SQLException e) {
+        return -1;
+      }
+    }
+
+    @Override
+    public int getTotalConnections() {
+      return openConnections();
+    }
+
+    @Override
+    public int getSupersededConnections() {
+      final RotatingConnectionFactory.Published target = published;
+      return target != null ? target.connections().countOlderThan(getGeneration()) : -1;
+    }
+
+    @Override
+    public boolean isSuperseded(Connection connection) {
+      final RotatingConnectionFactory.Published target = published;
+      if (target == null) {
+        return true;
+      }
+      final long generation = target.connections().generationOf(connection);
+      return generation < 0 || generation < getGeneration();
+    }
+
+    @Override
+    public Connection borrow() throws SQLException {
+      return poolDataSource.getConnection();
+    }
+
+    @Override
+    public void evict(Connection connection) throws SQLException {
+      final RotatingConnectionFactory.Published target = published;
+      if (target != null) {
+        target.connections().forget(connection);
+      }
+      try {
+        if (connection instanceof ValidConnection valid) {
+          valid.setInvalid();
+        }
+      } finally {
+        connection.close();
+      }
+    }
+
+    @Override
+    public void evictAll() {
+      final String poolName = poolDataSource.getConnectionPoolName();
+      final int open = openConnections();
+      refreshConnectionPool(poolName);
+      if (open >= 0) {
+        metrics.connectionsEvicted(poolName, open);
+      }
+    }
+
+    @Override
+    public void evicted(int count) {
+      metrics.connectionsEvicted(getName(), count);
+    }
+  }
 }
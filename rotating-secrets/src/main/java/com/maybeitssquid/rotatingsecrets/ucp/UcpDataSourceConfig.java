@@ -4,11 +4,15 @@ import java.sql.SQLException;
 import oracle.ucp.jdbc.PoolDataSource;
 import oracle.ucp.jdbc.PoolDataSourceFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBooleanProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceAutoConfiguration;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
 
 /**
- * Spring configuration for Oracle Universal Connection Pool (UCP) DataSource.
+ * Spring Boot auto-configuration for Oracle Universal Connection Pool (UCP) DataSource.
  *
  * <p>This configuration creates an Oracle UCP {@link PoolDataSource} bean with configurable
  * connection pool settings. Oracle UCP is designed specifically for Oracle databases and provides
@@ -42,10 +46,24 @@ import org.springframework.context.annotation.Configuration;
  *   <li>{@code max-connection-reuse-time} - Maximum seconds to reuse a connection (default: 1800)
  * </ul>
  *
+ * <p>With {@code k8s.secrets.ucp.atomicCredentials} (default: true), the updater installs a {@link
+ * RotatingConnectionFactory} in front of the configured connection factory, so that UCP reads each
+ * rotated username and password as one pair.
+ *
+ * <h2>Activation</h2>
+ *
+ * <p>The pool is only created when Oracle UCP is on the classpath, {@code
+ * spring.datasource.ucp.url} is set and {@code k8s.secrets.ucp.enabled} is not false. It runs
+ * before Spring Boot's {@code DataSourceAutoConfiguration}, which backs off when this is the only
+ * pool. UCP creates the pool and its initial connections on the first borrow, not at startup.
+ *
  * @see PoolDataSource
  * @see UcpCredentialsUpdater
  */
-@Configuration
+@AutoConfiguration(before = DataSourceAutoConfiguration.class)
+@ConditionalOnClass(PoolDataSource.class)
+@ConditionalOnProperty("spring.datasource.ucp.url")
+@ConditionalOnBooleanProperty(name = "k8s.secrets.ucp.enabled", matchIfMissing = true)
 public class UcpDataSourceConfig {
 
   /** Default constructor. */
@@ -97,6 +115,10 @@ public class UcpDataSourceConfig {
   @Value("${spring.datasource.ucp.max-connection-reuse-time:1800}")
   private int maxConnectionReuseTime;
 
+  /** Whether UCP reads rotated credentials through the rotating connection factory. */
+  @Value("${k8s.secrets.ucp.atomicCredentials:true}")
+  private boolean atomicCredentials = true;
+
   /**
    * Creates and configures the Oracle UCP PoolDataSource bean.
    *
@@ -132,12 +154,21 @@ public class UcpDataSourceConfig {
    * database credentials are rotated. It handles updating the pool's credentials and refreshing
    * connections.
    *
+   * <p>Unless {@code k8s.secrets.ucp.atomicCredentials} is false, the updater installs its {@link
+   * RotatingConnectionFactory} on the pool before the pool opens any connections.
+   *
    * @param poolDataSource the Oracle UCP PoolDataSource to manage
    * @return a credentials updater configured for the given pool
+   * @throws SQLException if the rotating connection factory cannot be installed
    * @see UcpCredentialsUpdater
    */
   @Bean("ucpUpdater")
-  public UcpCredentialsUpdater ucpCredentialsUpdater(PoolDataSource poolDataSource) {
-    return new UcpCredentialsUpdater(poolDataSource);
+  public UcpCredentialsUpdater ucpCredentialsUpdater(PoolDataSource poolDataSource)
+      throws SQLException {
+    UcpCredentialsUpdater updater = new UcpCredentialsUpdater(poolDataSource);
+    if (atomicCredentials) {
+      updater.installConnectionFactory();
+    }
+    return updater;
   }
 }
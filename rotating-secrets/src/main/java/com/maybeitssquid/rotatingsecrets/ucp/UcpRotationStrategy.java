@@ -0,0 +1,59 @@
+package com.maybeitssquid.rotatingsecrets.ucp;
+
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import com.maybeitssquid.rotatingsecrets.RollingEvictor;
+import oracle.ucp.admin.UniversalConnectionPoolManager;
+
+/**
+ * How an Oracle UCP pool moves its connections onto rotated credentials.
+ *
+ * <p>Every strategy first sets the new credentials on the pool, so any connection UCP opens
+ * afterwards uses them. The strategies differ in what happens to the connections that already
+ * exist, which trades reconnect load and borrow latency against how long the old credentials stay
+ * in use.
+ *
+ * @see UcpCredentialsUpdater#setRotationStrategy(UcpRotationStrategy)
+ */
+public enum UcpRotationStrategy {
+
+  /**
+   * Refresh the pool with {@link UniversalConnectionPoolManager#refreshConnectionPool(String)}.
+   *
+   * <p>Available connections are closed and replaced at once; borrowed ones are replaced when
+   * returned. The whole pool reconnects together, so borrows just after the rotation may wait for
+   * new logins. The old credentials are out of use as soon as the last borrowed connection is
+   * returned.
+   */
+  REFRESH,
+
+  /**
+   * Recycle the pool with {@link UniversalConnectionPoolManager#recycleConnectionPool(String)}.
+   *
+   * <p>Only connections UCP already considers invalid are replaced; valid connections keep the old
+   * credentials until they reach the pool's maximum reuse time or inactivity timeout, and only
+   * connections opened from then on use the new ones. There is no reconnect burst and borrow
+   * latency is unaffected, but the old credentials must stay valid until the pool has turned over.
+   * Lease retirement still refreshes the pool before a superseded lease expires.
+   */
+  RECYCLE,
+
+  /**
+   * Purge the pool with {@link UniversalConnectionPoolManager#purgeConnectionPool(String)}.
+   *
+   * <p>Every connection is closed immediately, including borrowed ones, so in-flight work on them
+   * fails. The pool then reconnects on demand. This is the fastest cutover, meant for credentials
+   * that have already been revoked.
+   */
+  PURGE,
+
+  /**
+   * Retire existing connections in bounded waves with a {@link RollingEvictor}, sized and paced by
+   * the {@link EvictionPolicy}.
+   *
+   * <p>Each wave borrows idle connections and marks them invalid, so UCP discards them on return;
+   * the pool refills between waves and never drops below the policy's floor of idle connections.
+   * Reconnect load is spread over the rotation, at the cost of the old credentials staying in use
+   * until the last wave, or until the policy's timeout falls back to a refresh.
+   */
+  ROLLING
+}
@@ -0,0 +1,49 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.sql.SQLInvalidAuthorizationSpecException;
+import org.junit.jupiter.api.Test;
+
+class AuthenticationFailuresTest {
+
+  @Test
+  void recognisesInvalidAuthorizationSqlStates() {
+    assertTrue(AuthenticationFailures.isAuthenticationFailure(new SQLException("denied", "28000")));
+    assertTrue(AuthenticationFailures.isAuthenticationFailure(new SQLException("denied", "28P01")));
+    assertTrue(
+        AuthenticationFailures.isAuthenticationFailure(
+            new SQLInvalidAuthorizationSpecException("denied")));
+  }
+
+  @Test
+  void recognisesOracleInvalidCredentials() {
+    assertTrue(
+        AuthenticationFailures.isAuthenticationFailure(
+            new SQLException("ORA-01017: invalid username/password; logon denied", "72000", 1017)));
+  }
+
+  @Test
+  void recognisesWrappedAndChainedFailures() {
+    SQLException chained = new SQLException("batch failed", "08006");
+    chained.setNextException(new SQLException("denied", "28000"));
+
+    assertTrue(
+        AuthenticationFailures.isAuthenticationFailure(
+            new RuntimeException(
+                new SQLException("wrapper", null, new SQLException("x", "28P01")))));
+    assertTrue(AuthenticationFailures.isAuthenticationFailure(chained));
+  }
+
+  @Test
+  void ignoresOtherFailures() {
+    assertFalse(AuthenticationFailures.isAuthenticationFailure(null));
+    assertFalse(
+        AuthenticationFailures.isAuthenticationFailure(new SQLException("refused", "08001")));
+    // MySQL reuses vendor code 1017 for "can't find file".
+    assertFalse(
+        AuthenticationFailures.isAuthenticationFailure(
+            new SQLException("Can't find file", "HY000", 1017)));
+  }
+}
@@ -0,0 +1,103 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AuthenticationRetryingDataSourceTest {
+
+  @TempDir Path tempDir;
+
+  private DataSource target;
+  private CredentialsProviderService provider;
+  private AuthenticationRetryingDataSource dataSource;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Files.writeString(tempDir.resolve("username"), "app");
+    Files.writeString(tempDir.resolve("password"), "old");
+    target = mock(DataSource.class);
+    provider = new CredentialsProviderService(tempDir.toString(), 30000);
+    provider.setRotationExecutor(Runnable::run);
+    provider.check();
+    dataSource = new AuthenticationRetryingDataSource(target, provider);
+  }
+
+  @Test
+  void getConnection_retriesOnceAfterPickingUpNewCredentials() throws Exception {
+    Connection connection = mock(Connection.class);
+    when(target.getConnection())
+        .thenThrow(new SQLException("denied", "28000"))
+        .thenReturn(connection);
+    rotatePassword("new");
+
+    assertSame(connection, dataSource.getConnection());
+
+    verify(target, times(2)).getConnection();
+    assertEquals(2, provider.getCurrentSnapshot().generation());
+    assertEquals("new", provider.getCurrentSnapshot().secret());
+  }
+
+  @Test
+  void getConnection_rethrowsWhenNoNewerCredentialsExist() throws Exception {
+    SQLException denied = new SQLException("denied", "28000");
+    when(target.getConnection()).thenThrow(denied);
+
+    assertSame(denied, assertThrows(SQLException.class, dataSource::getConnection));
+    verify(target, times(1)).getConnection();
+  }
+
+  @Test
+  void getConnection_rethrowsWhenRefreshOutlastsTimeout() throws Exception {
+    SQLException denied = new SQLException("denied", "28000");
+    when(target.getConnection()).thenThrow(denied);
+    rotatePassword("new");
+    provider.setRotationExecutor(task -> {});
+    dataSource = new AuthenticationRetryingDataSource(target, provider, 50);
+
+    assertSame(denied, assertThrows(SQLException.class, dataSource::getConnection));
+    verify(target, times(1)).getConnection();
+    assertEquals(1, provider.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void getConnection_doesNotRetryOtherFailures() throws Exception {
+    SQLException refused = new SQLException("refused", "08001");
+    when(target.getConnection()).thenThrow(refused);
+    rotatePassword("new");
+
+    assertSame(refused, assertThrows(SQLException.class, dataSource::getConnection));
+    verify(target, times(1)).getConnection();
+    assertEquals(1, provider.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void getConnection_attachesOriginalFailureWhenRetryFails() throws Exception {
+    SQLException denied = new SQLException("denied", "28000");
+    SQLException stillDenied = new SQLException("still denied", "28000");
+    when(target.getConnection()).thenThrow(denied).thenThrow(stillDenied);
+    rotatePassword("new");
+
+    SQLException thrown = assertThrows(SQLException.class, dataSource::getConnection);
+
+    assertSame(stillDenied, thrown);
+    assertSame(denied, thrown.getSuppressed()[0]);
+  }
+
+  private void rotatePassword(String password) throws IOException {
+    Path passwordPath = tempDir.resolve("password");
+    Files.writeString(passwordPath, password);
+    Files.setLastModifiedTime(
+        passwordPath, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+  }
+}
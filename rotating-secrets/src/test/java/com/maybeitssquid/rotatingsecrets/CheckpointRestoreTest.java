@@ -0,0 +1,117 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.hikari.HikariCredentialsUpdater;
+import com.maybeitssquid.rotatingsecrets.hikari.HikariDataSourceConfig;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpDataSourceConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.function.BooleanSupplier;
+import oracle.ucp.jdbc.PoolDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+/**
+ * Checkpoint and restore with the application context's stop and start standing in for the CRaC
+ * callbacks, which Spring maps onto the same lifecycle methods.
+ */
+@EnabledOnOs(OS.LINUX)
+class CheckpointRestoreTest {
+
+  private static final String URL = "jdbc:h2:mem:checkpoint;DB_CLOSE_DELAY=-1";
+
+  @TempDir Path tempDir;
+
+  @Test
+  void restore_reReadsSecretsAndReprimesPoolsWithCurrentGeneration() throws Exception {
+    Files.writeString(tempDir.resolve("username"), "sa");
+    Files.writeString(tempDir.resolve("password"), "");
+    new ApplicationContextRunner()
+        .withConfiguration(
+            AutoConfigurations.of(
+                RotatingSecretsAutoConfiguration.class,
+                HikariDataSourceConfig.class,
+                UcpDataSourceConfig.class))
+        .withPropertyValues(
+            "k8s.secrets.path=" + tempDir,
+            "spring.datasource.url=" + URL,
+            "spring.datasource.driver-class-name=org.h2.Driver",
+            "spring.datasource.username=sa",
+            "spring.datasource.password=",
+            "spring.datasource.hikari.minimum-idle=2",
+            "spring.datasource.ucp.url=" + URL,
+            "spring.datasource.ucp.connection-factory-class-name=org.h2.jdbcx.JdbcDataSource",
+            "spring.datasource.ucp.user=sa",
+            "spring.datasource.ucp.password=",
+            "spring.datasource.ucp.pool-name=CheckpointUcp-" + System.nanoTime())
+        .run(
+            context -> {
+              assertNull(context.getStartupFailure());
+              HikariDataSource hikari = context.getBean(HikariDataSource.class);
+              PoolDataSource ucp = context.getBean(PoolDataSource.class);
+              CredentialsProviderService service =
+                  context.getBean(CredentialsProviderService.class);
+              SecretsWatcher watcher = context.getBean(SecretsWatcher.class);
+              assertQueryable(hikari.getConnection());
+              assertQueryable(ucp.getConnection());
+              assertEquals(1, service.getCurrentSnapshot().generation());
+
+              // Before checkpoint: watch closed and both pools drained
+              context.stop();
+
+              assertFalse(service.isRunning());
+              assertFalse(watcher.isRunning());
+              assertEquals(0, watcher.getRegistrationCount());
+              await(() -> hikari.getHikariPoolMXBean().getTotalConnections() == 0);
+              assertEquals(0, ucp.getBorrowedConnectionsCount());
+              assertEquals(0, ucp.getAvailableConnectionsCount());
+
+              // The password rotates while the image is on disk
+              try (Connection admin = DriverManager.getConnection(URL, "sa", "");
+                  Statement stmt = admin.createStatement()) {
+                stmt.execute("ALTER USER SA SET PASSWORD 'restored'");
+              }
+              Files.writeString(tempDir.resolve("password"), "restored");
+
+              // After restore: the new generation is in place before start() returns
+              context.start();
+
+              assertTrue(service.isRunning());
+              assertEquals(1, watcher.getRegistrationCount());
+              assertEquals("restored", service.getCurrentSnapshot().secret());
+              assertEquals(2, service.getCurrentSnapshot().generation());
+              assertEquals(
+                  2,
+                  context.getBean("hikariUpdater", HikariCredentialsUpdater.class).getGeneration());
+              assertEquals(2, hikari.getHikariConfigMXBean().getMinimumIdle());
+              assertQueryable(hikari.getConnection());
+              assertQueryable(ucp.getConnection());
+            });
+  }
+
+  private static void assertQueryable(Connection connection) throws Exception {
+    try (connection;
+        Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT 1")) {
+      assertTrue(rs.next());
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5s");
+      Thread.sleep(20);
+    }
+  }
+}
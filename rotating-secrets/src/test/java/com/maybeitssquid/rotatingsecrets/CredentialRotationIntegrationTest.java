@@ -8,6 +8,7 @@ import com.zaxxer.hikari.HikariDataSource;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -205,4 +206,128 @@ class CredentialRotationIntegrationTest {
       assertTrue(rs.next());
     }
   }
+
+  @Test
+  void rollingEviction_retiresPoolInWavesWhileServingQueries() throws Exception {
+    HikariConfig config = new HikariConfig();
+    config.setJdbcUrl("jdbc:h2:mem:rollingtest;DB_CLOSE_DELAY=-1");
+    config.setMaximumPoolSize(4);
+    config.setMinimumIdle(4);
+    config.setCredentialsProvider(credentialsUpdater);
+    EvictionPolicy policy = new EvictionPolicy();
+    policy.setMode(EvictionMode.ROLLING);
+    policy.setWaveSize(1);
+    policy.setIntervalMs(20);
+    policy.setFloor(1);
+
+    try (HikariDataSource rolling = new HikariDataSource(config)) {
+      HikariCredentialsUpdater updater = new HikariCredentialsUpdater("sa", "");
+      updater.setDataSource(rolling);
+      updater.setEvictionPolicy(policy);
+      for (int i = 0; i < 4; i++) {
+        rolling.getConnection().close();
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (rolling.getHikariPoolMXBean().getIdleConnections() < 4
+          && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+
+      updater.setCredential("sa", "");
+
+      while (updater.getRollingEvictor().isRunning() && System.nanoTime() < deadline) {
+        try (Connection conn = rolling.getConnection();
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT 1")) {
+          assertTrue(rs.next());
+        }
+        Thread.sleep(5);
+      }
+      assertFalse(updater.getRollingEvictor().isRunning(), "Rolling eviction did not finish");
+      assertEquals(4, updater.getRollingEvictor().getLastEvicted());
+    }
+  }
+
+  @Test
+  void rejectedRotation_isRolledBackAndPoolKeepsServing() throws Exception {
+    HikariCredentialsUpdater updater = new HikariCredentialsUpdater("sa", "");
+    HikariConfig config = new HikariConfig();
+    config.setJdbcUrl("jdbc:h2:mem:rollbacktest;DB_CLOSE_DELAY=-1");
+    config.setUsername("sa");
+    config.setPassword("");
+    config.setMaximumPoolSize(2);
+    config.setMinimumIdle(2);
+    updater.configure(config);
+
+    try (HikariDataSource monitored = new HikariDataSource(config)) {
+      updater.setDataSource(monitored);
+      CredentialsProviderService provider =
+          new CredentialsProviderService(tempDir.toString(), 30000);
+      provider.setHikariUpdatable(updater);
+      provider.setRotationExecutor(Runnable::run);
+      provider.setGracePeriodMs(60_000);
+      provider.setRollbackThreshold(1);
+      provider.check();
+
+      Files.writeString(tempDir.resolve("password"), "not-the-password");
+      Files.setLastModifiedTime(
+          tempDir.resolve("password"), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+      provider.check();
+      assertEquals("not-the-password", updater.getCredentials().getPassword());
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (provider.getRollbacks() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+        provider.check();
+      }
+
+      assertEquals(1, provider.getRollbacks());
+      assertEquals("", updater.getCredentials().getPassword());
+      assertEquals(3, updater.getGeneration());
+      try (Connection conn = monitored.getConnection();
+          Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT 1")) {
+        assertTrue(rs.next());
+      }
+    }
+  }
+
+  @Test
+  void databaseMovedAhead_poolPicksUpNewCredentialsOnFirstRejectedLogin() throws Exception {
+    HikariCredentialsUpdater updater = new HikariCredentialsUpdater("sa", "");
+    HikariConfig config = new HikariConfig();
+    config.setJdbcUrl("jdbc:h2:mem:fastpathtest;DB_CLOSE_DELAY=-1");
+    config.setUsername("sa");
+    config.setPassword("");
+    config.setMaximumPoolSize(2);
+    config.setMinimumIdle(1);
+    config.setConnectionTimeout(2000);
+    updater.configure(config);
+
+    try (HikariDataSource monitored = new HikariDataSource(config)) {
+      updater.setDataSource(monitored);
+      CredentialsProviderService provider =
+          new CredentialsProviderService(tempDir.toString(), 30000);
+      provider.setHikariUpdatable(updater);
+      provider.setRotationExecutor(Runnable::run);
+      provider.check();
+
+      try (Connection conn = monitored.getConnection();
+          Statement stmt = conn.createStatement()) {
+        stmt.execute("ALTER USER SA SET PASSWORD 'moved'");
+      }
+      Files.writeString(tempDir.resolve("password"), "moved");
+      Files.setLastModifiedTime(
+          tempDir.resolve("password"), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+      monitored.getHikariPoolMXBean().softEvictConnections();
+
+      try (Connection conn = monitored.getConnection();
+          Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT 1")) {
+        assertTrue(rs.next());
+      }
+      assertEquals("moved", updater.getCredentials().getPassword());
+      assertEquals(2, provider.getCurrentSnapshot().generation());
+    }
+  }
 }
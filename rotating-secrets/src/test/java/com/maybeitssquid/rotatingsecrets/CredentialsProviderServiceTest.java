@@ -6,12 +6,24 @@ import static org.mockito.Mockito.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,6 +36,7 @@ class CredentialsProviderServiceTest {
   private Path usernamePath;
   private Path passwordPath;
   private CredentialsProviderService service;
+  private final ExecutorService rotationPool = Executors.newCachedThreadPool();
 
   @BeforeEach
   void setUp() throws IOException {
@@ -35,11 +48,14 @@ class CredentialsProviderServiceTest {
 
     // start() is NOT called here; tests call refreshCredentials() or start() directly.
     service = new CredentialsProviderService(tempDir.toString(), 30000);
+    // Run what check() hands off on the calling thread, so that it returns the check's outcome.
+    service.setRotationExecutor(Runnable::run);
   }
 
   @AfterEach
   void tearDown() {
     service.stop();
+    rotationPool.shutdownNow();
   }
 
   @Test
@@ -260,4 +276,863 @@ class CredentialsProviderServiceTest {
 
     verify(mockUpdatable, timeout(2000)).setCredential("watcheduser", "watchedpass");
   }
+
+  @Test
+  void refreshCredentials_readsPairFromResolvedDataDirectory() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    publishAtomically("..2024_01_01_00_00_00.1", "atomicuser1", "atomicpass1");
+
+    service.refreshCredentials();
+    verify(mockUpdatable).setCredential("atomicuser1", "atomicpass1");
+
+    publishAtomically("..2024_01_01_00_00_00.2", "atomicuser2", "atomicpass2");
+
+    service.refreshCredentials();
+    verify(mockUpdatable).setCredential("atomicuser2", "atomicpass2");
+  }
+
+  @Test
+  void start_watchThreadReactsToDataLinkSwapWithoutFallbackPoll() throws Exception {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    publishAtomically("..2024_01_01_00_00_00.1", "atomicuser1", "atomicpass1");
+    // Fallback interval far beyond the verification timeout: only the ..data event can wake it.
+    service = new CredentialsProviderService(tempDir.toString(), 600_000);
+    service.setHikariUpdatable(mockUpdatable);
+
+    service.start();
+    verify(mockUpdatable).setCredential("atomicuser1", "atomicpass1");
+
+    publishAtomically("..2024_01_01_00_00_00.2", "atomicuser2", "atomicpass2");
+
+    verify(mockUpdatable, timeout(5000)).setCredential("atomicuser2", "atomicpass2");
+  }
+
+  @Test
+  void start_quietPeriodCoalescesSeparateFileWritesIntoOneRotation() throws Exception {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service = new CredentialsProviderService(tempDir.toString(), 600_000);
+    service.setQuietPeriodMs(500);
+    service.setHikariUpdatable(mockUpdatable);
+
+    service.start();
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+
+    // A non-atomic writer renders the two files one after the other.
+    Files.writeString(usernamePath, "vaultuser");
+    Thread.sleep(50);
+    Files.writeString(passwordPath, "vaultpass");
+
+    verify(mockUpdatable, timeout(5000)).setCredential("vaultuser", "vaultpass");
+    verify(mockUpdatable, never()).setCredential("vaultuser", "testpass");
+  }
+
+  @Test
+  void refreshCredentials_matchingMtimeRejectsHalfWrittenPair() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setConsistency(SecretConsistency.MATCHING_MTIME);
+    service.setHikariUpdatable(mockUpdatable);
+    FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+    Files.setLastModifiedTime(usernamePath, now);
+    Files.setLastModifiedTime(passwordPath, FileTime.fromMillis(now.toMillis() - 60_000));
+
+    assertFalse(service.refreshCredentials());
+    verifyNoInteractions(mockUpdatable);
+
+    Files.setLastModifiedTime(passwordPath, now);
+
+    assertTrue(service.refreshCredentials());
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+  }
+
+  @Test
+  void refreshCredentials_versionFileMustFollowBothSecrets() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setConsistency(SecretConsistency.VERSION_FILE);
+    service.setHikariUpdatable(mockUpdatable);
+    Path versionPath = tempDir.resolve("version");
+    Files.writeString(versionPath, "1");
+    FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+    Files.setLastModifiedTime(usernamePath, now);
+    Files.setLastModifiedTime(passwordPath, now);
+    Files.setLastModifiedTime(versionPath, FileTime.fromMillis(now.toMillis() - 60_000));
+
+    assertFalse(service.refreshCredentials());
+    verifyNoInteractions(mockUpdatable);
+
+    Files.writeString(versionPath, "2");
+    Files.setLastModifiedTime(versionPath, now);
+
+    assertTrue(service.refreshCredentials());
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+  }
+
+  @Test
+  void refreshCredentials_acceptsInconsistentPairAfterFallbackInterval() throws Exception {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service = new CredentialsProviderService(tempDir.toString(), 100);
+    service.setConsistency(SecretConsistency.VERSION_FILE);
+    service.setHikariUpdatable(mockUpdatable);
+
+    // No version file at all: the writer does not follow the protocol.
+    assertFalse(service.refreshCredentials());
+    Thread.sleep(150);
+
+    assertTrue(service.refreshCredentials());
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+  }
+
+  @Test
+  void refreshCredentials_skipsReadWhenFingerprintsUnchanged() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    ageSecretFiles();
+
+    service.refreshCredentials();
+    service.refreshCredentials();
+    service.refreshCredentials();
+
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+    assertEquals(1, service.getPerformedReads());
+    assertEquals(2, service.getSkippedReads());
+  }
+
+  @Test
+  void refreshCredentials_rereadsRacilyCleanFiles() throws IOException {
+    // Freshly written files share the sampling second, so a same-size rewrite could go unseen.
+    service.refreshCredentials();
+    service.refreshCredentials();
+
+    assertEquals(2, service.getPerformedReads());
+    assertEquals(0, service.getSkippedReads());
+  }
+
+  @Test
+  void refreshCredentials_rereadsWhenFingerprintMoves() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    ageSecretFiles();
+    service.refreshCredentials();
+
+    Files.writeString(passwordPath, "rotatedpass");
+    ageSecretFiles();
+    service.refreshCredentials();
+
+    verify(mockUpdatable).setCredential("testuser", "rotatedpass");
+    assertEquals(2, service.getPerformedReads());
+  }
+
+  @Test
+  void refreshCredentials_contentHashTreatsTouchedFilesAsUnchanged() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setContentHash(true);
+    service.setHikariUpdatable(mockUpdatable);
+    ageSecretFiles();
+    service.refreshCredentials();
+
+    // Same contents, new modification time: the fingerprint moves but the digest does not.
+    Files.setLastModifiedTime(
+        usernamePath, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+    service.refreshCredentials();
+    service.refreshCredentials();
+
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+    assertEquals(2, service.getPerformedReads());
+    assertEquals(1, service.getSkippedReads());
+  }
+
+  @Test
+  void refreshCredentials_fansOutToUpdatablesInParallel() {
+    UpdatableCredential<String> slow1 = (username, credential) -> sleep(400);
+    UpdatableCredential<String> slow2 = (username, credential) -> sleep(400);
+    service.setRotationExecutor(rotationPool);
+    service.setHikariUpdatable(slow1);
+    service.setUcpUpdatable(slow2);
+
+    service.refreshCredentials();
+
+    RotationResult result = service.getLastRotationResult();
+    assertTrue(result.isSuccessful());
+    assertEquals(2, result.getOutcomes().size());
+    assertTrue(
+        result.getDuration().toMillis() < 750,
+        "Rotation took " + result.getDuration().toMillis() + " ms; expected the slowest, not sum");
+  }
+
+  @Test
+  void refreshCredentials_isolatesFailingUpdatable() {
+    UpdatableCredential<String> failing =
+        (username, credential) -> {
+          throw new CredentialRotationException("pool down", null);
+        };
+    UpdatableCredential<String> healthy = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(failing);
+    service.setUcpUpdatable(healthy);
+
+    assertDoesNotThrow(() -> service.refreshCredentials());
+
+    verify(healthy).setCredential("testuser", "testpass");
+    RotationResult result = service.getLastRotationResult();
+    assertFalse(result.isSuccessful());
+    assertEquals(RotationResult.Status.FAILED, result.getOutcomes().get(0).status());
+    assertInstanceOf(CredentialRotationException.class, result.getOutcomes().get(0).failure());
+    assertEquals(RotationResult.Status.SUCCEEDED, result.getOutcomes().get(1).status());
+    assertEquals(1, result.getFailures().size());
+  }
+
+  @Test
+  void refreshCredentials_boundsSlowUpdatableByTimeout() {
+    UpdatableCredential<String> stuck = (username, credential) -> sleep(3000);
+    UpdatableCredential<String> healthy = mock(UpdatableCredential.class);
+    service.setRotationExecutor(rotationPool);
+    service.setUpdaterTimeoutMs(100);
+    service.setHikariUpdatable(stuck);
+    service.setUcpUpdatable(healthy);
+
+    long start = System.nanoTime();
+    service.refreshCredentials();
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(elapsedMs < 2000, "Rotation took " + elapsedMs + " ms despite the timeout");
+    verify(healthy).setCredential("testuser", "testpass");
+    RotationResult result = service.getLastRotationResult();
+    assertEquals(RotationResult.Status.TIMED_OUT, result.getOutcomes().get(0).status());
+    assertEquals(RotationResult.Status.SUCCEEDED, result.getOutcomes().get(1).status());
+  }
+
+  @Test
+  void refreshCredentials_usesInjectedRotationExecutor() {
+    AtomicInteger executed = new AtomicInteger();
+    service.setRotationExecutor(
+        task -> {
+          executed.incrementAndGet();
+          task.run();
+        });
+    service.setHikariUpdatable(mock(UpdatableCredential.class));
+    service.setUcpUpdatable(mock(UpdatableCredential.class));
+
+    service.refreshCredentials();
+
+    assertEquals(2, executed.get());
+  }
+
+  @Test
+  void refreshCredentials_publishesGenerationStampedSnapshots() throws IOException {
+    assertNull(service.getCurrentSnapshot());
+
+    service.refreshCredentials();
+    CredentialSnapshot<String> first = service.getCurrentSnapshot();
+    assertEquals("testuser", first.username());
+    assertEquals("testpass", first.secret());
+    assertEquals(1, first.generation());
+
+    service.refreshCredentials();
+    assertSame(first, service.getCurrentSnapshot());
+
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    service.refreshCredentials();
+    CredentialSnapshot<String> second = service.getCurrentSnapshot();
+    assertEquals("testuser", second.username());
+    assertEquals("rotated", second.secret());
+    assertEquals(2, second.generation());
+    assertFalse(second.loadedAt().isBefore(first.loadedAt()));
+    assertFalse(second.toString().contains("rotated"));
+  }
+
+  @Test
+  void refreshCredentials_passesSnapshotToSnapshotAwareUpdatables() {
+    List<CredentialSnapshot<String>> received = new CopyOnWriteArrayList<>();
+    service.setHikariUpdatable(
+        new SnapshotAwareCredential<String>() {
+          @Override
+          public void setCredential(CredentialSnapshot<String> snapshot) {
+            received.add(snapshot);
+          }
+
+          @Override
+          public void setCredential(String username, String credential) {
+            fail("Snapshot-aware updatables should receive the snapshot");
+          }
+        });
+
+    service.refreshCredentials();
+
+    assertEquals(List.of(service.getCurrentSnapshot()), received);
+  }
+
+  @Test
+  void refreshCredentials_sharesOnePasswordStringAcrossUpdatables() throws IOException {
+    List<String> received = new CopyOnWriteArrayList<>();
+    service.setHikariUpdatable((username, credential) -> received.add(credential));
+    service.setUcpUpdatable((username, credential) -> received.add(credential));
+
+    service.refreshCredentials();
+
+    assertEquals(List.of("testpass", "testpass"), received);
+    assertSame(received.get(0), received.get(1));
+    assertSame(received.get(0), service.getCurrentSnapshot().secret());
+  }
+
+  @Test
+  void refreshCredentials_doesNotRepublishIdenticalContents() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.refreshCredentials();
+
+    // Same trimmed contents with a new fingerprint must be compared, not republished.
+    Files.writeString(passwordPath, "  testpass\n");
+    ageSecretFiles();
+    service.refreshCredentials();
+
+    verify(mockUpdatable, times(1)).setCredential(anyString(), anyString());
+    assertEquals(1, service.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void refreshCredentials_recordsChecksReadsAndPropagation() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    when(mockUpdatable.getName()).thenReturn("pool");
+    RotationMetrics metrics = mock(RotationMetrics.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setRotationMetrics(metrics);
+    verify(metrics).bind(service);
+    String source = tempDir.toString();
+
+    service.refreshCredentials();
+    verify(metrics)
+        .checked(source, RotationMetrics.Trigger.REQUEST, RotationMetrics.CheckOutcome.APPLIED);
+    verify(metrics).secretsRead(eq(source), any(Duration.class));
+    verify(metrics).propagated(eq(source), any(Duration.class));
+    verify(metrics)
+        .credentialApplied(
+            eq(source),
+            argThat(
+                outcome ->
+                    outcome.name().equals("pool")
+                        && outcome.status() == RotationResult.Status.SUCCEEDED));
+
+    ageSecretFiles();
+    service.check();
+    verify(metrics)
+        .checked(source, RotationMetrics.Trigger.POLL, RotationMetrics.CheckOutcome.UNCHANGED);
+  }
+
+  @Test
+  void check_recordsUnavailableFiles() throws IOException {
+    RotationMetrics metrics = mock(RotationMetrics.class);
+    service.setRotationMetrics(metrics);
+    Files.delete(passwordPath);
+
+    service.check();
+
+    verify(metrics)
+        .checked(
+            tempDir.toString(),
+            RotationMetrics.Trigger.POLL,
+            RotationMetrics.CheckOutcome.UNAVAILABLE);
+    verify(metrics, never()).secretsRead(anyString(), any());
+  }
+
+  @Test
+  void refreshCredentials_recordsFlightRecorderEvents() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    when(mockUpdatable.getName()).thenReturn("pool");
+    service.setHikariUpdatable(mockUpdatable);
+    Path dump = tempDir.resolve("rotation.jfr");
+
+    try (Recording recording = new Recording()) {
+      for (String name :
+          List.of("SecretsCheck", "ChangeDetection", "SecretsRead", "CredentialUpdate")) {
+        recording.enable("com.maybeitssquid.rotatingsecrets." + name);
+      }
+      recording.start();
+      service.refreshCredentials();
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    RecordedEvent check = event(events, "SecretsCheck");
+    assertEquals(tempDir.toString(), check.getString("source"));
+    assertEquals("REQUEST", check.getString("trigger"));
+    assertEquals("APPLIED", check.getString("outcome"));
+    assertEquals(1, check.getLong("generation"));
+    assertTrue(event(events, "ChangeDetection").getBoolean("changed"));
+    assertEquals(0, event(events, "SecretsRead").getLong("generation"));
+    RecordedEvent update = event(events, "CredentialUpdate");
+    assertEquals("pool", update.getString("pool"));
+    assertEquals(1, update.getLong("generation"));
+    assertEquals("SUCCEEDED", update.getString("status"));
+    assertFalse(update.getDuration().isNegative());
+  }
+
+  @Test
+  void check_backsOffWhileStableAndTightensOnRotation() throws IOException {
+    service.setMaxRefreshIntervalMs(240_000);
+    ageSecretFiles();
+
+    assertEquals(30_000, service.check());
+    assertEquals(60_000, service.check());
+    assertEquals(120_000, service.check());
+    assertEquals(240_000, service.check());
+    assertEquals(240_000, service.check());
+
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    assertEquals(30_000, service.check());
+  }
+
+  @Test
+  void check_tightensWhenFilesDisappear() throws IOException {
+    service.setMaxRefreshIntervalMs(240_000);
+    ageSecretFiles();
+    service.check();
+    assertEquals(60_000, service.check());
+
+    Files.delete(usernamePath);
+    assertEquals(30_000, service.check());
+  }
+
+  @Test
+  void check_keepsFixedIntervalByDefault() throws IOException {
+    ageSecretFiles();
+
+    assertEquals(30_000, service.check());
+    assertEquals(30_000, service.check());
+  }
+
+  @Test
+  void check_readsLeaseAndFocusesChecksNearExpiry() throws IOException {
+    Instant expiry = Instant.now().plusSeconds(30);
+    Files.writeString(tempDir.resolve("lease_expiry"), expiry.toString());
+
+    // Within the 60s margin: checks run at a tenth of the margin.
+    assertEquals(6000, service.check());
+    assertEquals(expiry, service.getLeaseExpiry());
+  }
+
+  @Test
+  void check_wakesAtFocusWindowForDistantLease() throws IOException {
+    Instant expiry = Instant.now().plusSeconds(75);
+    Files.writeString(tempDir.resolve("lease_expiry"), expiry.toString());
+
+    long delay = service.check();
+
+    assertTrue(delay <= 15_000 && delay > 10_000, "Expected wake-up at focus window, got " + delay);
+  }
+
+  @Test
+  void check_retiresSupersededGenerationBeforeItsLeaseExpires() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    Path leaseFile = tempDir.resolve("lease_expiry");
+    Files.writeString(leaseFile, Instant.now().plusSeconds(30).toString());
+    service.check();
+    verify(mockUpdatable, never()).retireGeneration(anyLong());
+
+    Files.writeString(passwordPath, "rotated");
+    Files.writeString(leaseFile, Instant.now().plusSeconds(3600).toString());
+    ageSecretFiles();
+    service.check();
+
+    verify(mockUpdatable).setCredential("testuser", "rotated");
+    verify(mockUpdatable).retireGeneration(1);
+  }
+
+  @Test
+  void check_defersRetirementUntilMarginBeforeExpiry() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    Path leaseFile = tempDir.resolve("lease_expiry");
+    Files.writeString(leaseFile, Instant.now().plusSeconds(80).toString());
+    service.check();
+
+    Files.writeString(passwordPath, "rotated");
+    Files.writeString(leaseFile, Instant.now().plusSeconds(3600).toString());
+    ageSecretFiles();
+    long delay = service.check();
+
+    verify(mockUpdatable, never()).retireGeneration(anyLong());
+    assertTrue(delay <= 20_000, "Expected wake-up at drain time, got " + delay);
+  }
+
+  @Test
+  void check_ignoresUnreadableLease() throws IOException {
+    Files.writeString(tempDir.resolve("lease_expiry"), "not a timestamp");
+
+    assertEquals(30_000, service.check());
+    assertNull(service.getLeaseExpiry());
+  }
+
+  @Test
+  void check_keepsCurrentGenerationUntilValidationSucceeds() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    AtomicInteger probes = new AtomicInteger();
+    service.setCredentialValidator(
+        (username, credential) -> {
+          if (credential.equals("rotated") && probes.incrementAndGet() < 3) {
+            throw new SQLException("not replicated yet");
+          }
+        });
+    service.check();
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+
+    assertEquals(1000, service.check());
+    assertEquals(2000, service.check());
+    verifyNoMoreInteractions(mockUpdatable);
+    assertEquals("testpass", service.getCurrentSnapshot().secret());
+
+    service.check();
+    verify(mockUpdatable).setCredential("testuser", "rotated");
+    assertEquals(3, probes.get());
+    assertEquals(2, service.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void check_commitsAfterValidationBudgetIsSpent() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setValidationAttempts(2);
+    service.setCredentialValidator(
+        (username, credential) -> {
+          throw new SQLException("rejected");
+        });
+
+    service.check();
+    verifyNoInteractions(mockUpdatable);
+    assertNull(service.getCurrentSnapshot());
+
+    service.check();
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+  }
+
+  @Test
+  void refreshCredentials_boundsSlowValidationProbe() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setRotationExecutor(rotationPool);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setValidationTimeoutMs(100);
+    service.setCredentialValidator((username, credential) -> sleep(3000));
+
+    long start = System.nanoTime();
+    service.refreshCredentials();
+
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    verifyNoInteractions(mockUpdatable);
+  }
+
+  @Test
+  void refreshCredentials_probesWithoutHoldingTheServiceLock() throws Exception {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    CountDownLatch probing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger probes = new AtomicInteger();
+    service.setRotationExecutor(rotationPool);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setCredentialValidator(
+        (username, credential) -> {
+          if (probes.incrementAndGet() == 1) {
+            probing.countDown();
+            try {
+              release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+
+    Future<Boolean> slow = rotationPool.submit(() -> service.refreshCredentials());
+    assertTrue(probing.await(5, TimeUnit.SECONDS));
+    // Another refresh reads, probes and publishes while the first probe is still running.
+    assertTrue(rotationPool.submit(() -> service.refreshCredentials()).get(2, TimeUnit.SECONDS));
+    assertEquals(1, service.getCurrentSnapshot().generation());
+
+    release.countDown();
+    // The slow refresh finds the snapshot it read against superseded and does not publish again.
+    assertFalse(slow.get(5, TimeUnit.SECONDS));
+    assertEquals(1, service.getCurrentSnapshot().generation());
+    verify(mockUpdatable, times(1)).setCredential("testuser", "testpass");
+  }
+
+  @Test
+  void check_handsSlowRotationToRotationExecutor() throws IOException {
+    CountDownLatch release = new CountDownLatch(1);
+    UpdatableCredential<String> slow =
+        (username, credential) -> {
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        };
+    service.setRotationExecutor(rotationPool);
+    service.setHikariUpdatable(slow);
+
+    long start = System.nanoTime();
+    assertEquals(30_000, service.check());
+    // A check falling due while the rotation runs leaves it running.
+    assertEquals(30_000, service.check());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+
+    release.countDown();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (service.getLastRotationResult() == null && System.nanoTime() < deadline) {
+      sleep(10);
+    }
+    assertEquals(1, service.getCurrentSnapshot().generation());
+    assertEquals(30_000, service.check());
+    assertEquals(1, service.getPerformedReads());
+  }
+
+  @Test
+  void check_defersRotationToThisInstancesJitterSlot() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    String seed = RotationJitterTest.seedWithOffsetAbove(20_000);
+    long offset = RotationJitter.of(seed, 60_000).offsetMs();
+    service.setJitterSeed(seed);
+    service.setRotationJitterMs(60_000);
+    service.check();
+    verify(mockUpdatable).setCredential("testuser", "testpass");
+
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    long delay = service.check();
+    long retry = service.check();
+
+    verifyNoMoreInteractions(mockUpdatable);
+    assertTrue(delay <= offset && delay > offset - 1000, "Expected " + offset + ", got " + delay);
+    assertTrue(retry <= delay, "Slot moved from " + delay + " to " + retry);
+    assertEquals(1, service.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void check_appliesJitteredRotationBeforeCurrentLeaseExpires() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setJitterSeed(RotationJitterTest.seedWithOffsetAbove(20_000));
+    service.setRotationJitterMs(60_000);
+    service.setLeaseMarginMs(1000);
+    Files.writeString(tempDir.resolve("lease_expiry"), Instant.now().plusMillis(1300).toString());
+    service.check();
+
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    long delay = service.check();
+    assertTrue(delay <= 300, "Expected the lease to cap the wait, got " + delay);
+    verify(mockUpdatable, never()).setCredential("testuser", "rotated");
+
+    sleep(delay + 50);
+    service.check();
+    verify(mockUpdatable).setCredential("testuser", "rotated");
+  }
+
+  @Test
+  void check_rollsBackRotationRejectedWithinGracePeriod() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setGracePeriodMs(60_000);
+    service.setRollbackThreshold(2);
+    service.check();
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    service.check();
+    verify(mockUpdatable).setCredential("testuser", "rotated");
+
+    service.authenticationFailed(2, new SQLException("denied", "28000"), 1000);
+    service.check();
+    verify(mockUpdatable, times(1)).setCredential("testuser", "testpass");
+
+    service.authenticationFailed(2, new SQLException("denied", "28000"), 1000);
+    long delay = service.check();
+
+    verify(mockUpdatable, times(2)).setCredential("testuser", "testpass");
+    assertEquals(1, service.getRollbacks());
+    assertEquals(3, service.getCurrentSnapshot().generation());
+    assertEquals("testpass", service.getCurrentSnapshot().secret());
+    assertTrue(delay > 59_000 && delay <= 60_000, "Expected promotion hold-off, got " + delay);
+
+    service.check();
+    verify(mockUpdatable, times(1)).setCredential("testuser", "rotated");
+  }
+
+  @Test
+  void check_retriesPromotionAfterRollback() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setGracePeriodMs(200);
+    service.setRollbackThreshold(1);
+    service.check();
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    service.check();
+    service.authenticationFailed(2, new SQLException("denied", "28000"), 1000);
+    service.check();
+    assertEquals("testpass", service.getCurrentSnapshot().secret());
+
+    sleep(250);
+    service.check();
+
+    verify(mockUpdatable, times(2)).setCredential("testuser", "rotated");
+    assertEquals(4, service.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void authenticationFailed_ignoresStaleGenerationsAndExpiredGrace() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setGracePeriodMs(100);
+    service.setRollbackThreshold(1);
+    service.check();
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    service.check();
+
+    service.authenticationFailed(1, new SQLException("denied", "28000"), 1000);
+    service.check();
+    sleep(150);
+    service.authenticationFailed(2, new SQLException("denied", "28000"), 1000);
+    service.check();
+
+    assertEquals(0, service.getRollbacks());
+    assertEquals("rotated", service.getCurrentSnapshot().secret());
+  }
+
+  @Test
+  void refreshAfterAuthenticationFailure_sharesOneReadBetweenConcurrentCallers() throws Exception {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    AtomicInteger probes = new AtomicInteger();
+    service.setCredentialValidator(
+        (username, credential) -> {
+          probes.incrementAndGet();
+          sleep(200);
+        });
+    service.check();
+    probes.set(0);
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+
+    int callers = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < callers; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return service.refreshAfterAuthenticationFailure(1);
+              }));
+    }
+    start.countDown();
+    for (Future<Boolean> result : results) {
+      assertTrue(result.get(5, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+
+    assertEquals(1, probes.get());
+    verify(mockUpdatable, times(1)).setCredential("testuser", "rotated");
+    assertEquals(2, service.getCurrentSnapshot().generation());
+  }
+
+  @Test
+  void refreshAfterAuthenticationFailure_runsOnRotationExecutorAndWaitsNoLongerThanTimeout()
+      throws Exception {
+    service.check();
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    List<Runnable> queued = new ArrayList<>();
+    service.setRotationExecutor(queued::add);
+
+    long started = System.nanoTime();
+    assertFalse(service.refreshAfterAuthenticationFailure(1, 50));
+    assertFalse(service.refreshAfterAuthenticationFailure(1, 50));
+
+    assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+    assertEquals(1, queued.size());
+    assertEquals(1, service.getCurrentSnapshot().generation());
+
+    service.setRotationExecutor(Runnable::run);
+    queued.get(0).run();
+
+    assertEquals(2, service.getCurrentSnapshot().generation());
+    assertTrue(service.refreshAfterAuthenticationFailure(1, 0));
+  }
+
+  @Test
+  void refreshAfterAuthenticationFailure_skipsJitterSlot() throws IOException {
+    UpdatableCredential<String> mockUpdatable = mock(UpdatableCredential.class);
+    service.setHikariUpdatable(mockUpdatable);
+    service.setJitterSeed(RotationJitterTest.seedWithOffsetAbove(20_000));
+    service.setRotationJitterMs(60_000);
+    service.check();
+    Files.writeString(passwordPath, "rotated");
+    ageSecretFiles();
+    service.check();
+    verify(mockUpdatable, never()).setCredential("testuser", "rotated");
+
+    assertTrue(service.refreshAfterAuthenticationFailure(1));
+    verify(mockUpdatable).setCredential("testuser", "rotated");
+  }
+
+  @Test
+  void refreshAfterAuthenticationFailure_reportsWhenNothingNewer() throws IOException {
+    service.check();
+
+    assertFalse(service.refreshAfterAuthenticationFailure(1));
+    assertTrue(service.refreshAfterAuthenticationFailure(0));
+  }
+
+  private static RecordedEvent event(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.maybeitssquid.rotatingsecrets." + name))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("No " + name + " event recorded"));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Backdates both secret files so their fingerprints are not racily clean. */
+  private void ageSecretFiles() throws IOException {
+    FileTime aged = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    Files.setLastModifiedTime(usernamePath, aged);
+    Files.setLastModifiedTime(passwordPath, aged);
+  }
+
+  /**
+   * Mimics the kubelet atomic writer: writes the files into a fresh timestamped directory, then
+   * renames a new {@code ..data} link over the old one and points the top-level names through it.
+   */
+  private void publishAtomically(String version, String username, String password)
+      throws IOException {
+    Path versionDir = Files.createDirectory(tempDir.resolve(version));
+    Files.writeString(versionDir.resolve("username"), username);
+    Files.writeString(versionDir.resolve("password"), password);
+
+    Path tmpLink = Files.createSymbolicLink(tempDir.resolve("..data_tmp"), Path.of(version));
+    Files.move(
+        tmpLink,
+        tempDir.resolve(CredentialsProviderService.DATA_LINK),
+        StandardCopyOption.ATOMIC_MOVE);
+
+    for (String name : new String[] {"username", "password"}) {
+      Path link = tempDir.resolve(name);
+      if (!Files.isSymbolicLink(link)) {
+        Files.deleteIfExists(link);
+        Files.createSymbolicLink(link, Path.of(CredentialsProviderService.DATA_LINK, name));
+      }
+    }
+  }
 }
@@ -0,0 +1,67 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class GracePeriodTest {
+
+  private final CredentialSnapshot<String> first =
+      new CredentialSnapshot<>("app", "old-pw", 1, Instant.now());
+
+  @Test
+  void countRejection_requestsRollbackAtThreshold() {
+    GracePeriod grace = new GracePeriod();
+    grace.setPeriodMs(60_000);
+    grace.setThreshold(2);
+    grace.started(first, 2, System.currentTimeMillis());
+
+    assertFalse(grace.countRejection(2, "denied"));
+    assertTrue(grace.countRejection(2, "denied"));
+    assertTrue(grace.isRollbackRequested());
+
+    GracePeriod.Rollback rollback = grace.takeRollback();
+    assertSame(first, rollback.previous());
+    assertEquals(2, rollback.failures());
+    assertFalse(grace.isRollbackRequested());
+  }
+
+  @Test
+  void countRejection_ignoresOtherGenerationsAndExpiredPeriod() {
+    GracePeriod grace = new GracePeriod();
+    grace.setPeriodMs(60_000);
+    grace.setThreshold(1);
+    grace.started(first, 2, System.currentTimeMillis());
+
+    assertFalse(grace.countRejection(1, "denied"));
+
+    grace.started(first, 2, System.currentTimeMillis() - 120_000);
+    assertFalse(grace.countRejection(2, "denied"));
+    assertNull(grace.takeRollback());
+  }
+
+  @Test
+  void rolledBack_keepsRestoredGenerationFromRollingBackAgain() {
+    GracePeriod grace = new GracePeriod();
+    grace.setPeriodMs(60_000);
+    grace.setThreshold(1);
+    grace.started(first, 2, System.currentTimeMillis());
+    assertTrue(grace.countRejection(2, "denied"));
+    assertNotNull(grace.takeRollback());
+
+    grace.rolledBack();
+
+    assertFalse(grace.countRejection(2, "denied"));
+    assertEquals(1, grace.getRollbacks());
+  }
+
+  @Test
+  void started_withoutPeriodKeepsNothing() {
+    GracePeriod grace = new GracePeriod();
+    grace.setThreshold(1);
+    grace.started(first, 2, System.currentTimeMillis());
+
+    assertFalse(grace.countRejection(2, "denied"));
+  }
+}
@@ -0,0 +1,43 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JdbcCredentialValidatorTest {
+
+  private static final String URL = "jdbc:h2:mem:validator;DB_CLOSE_DELAY=-1";
+
+  private Connection admin;
+
+  @BeforeEach
+  void setUp() throws SQLException {
+    // The first connection creates the database with this user as its administrator.
+    admin = DriverManager.getConnection(URL, "probe", "correct");
+  }
+
+  @AfterEach
+  void tearDown() throws SQLException {
+    admin.createStatement().execute("SHUTDOWN");
+    admin.close();
+  }
+
+  @Test
+  void validate_acceptsWorkingCredentials() {
+    JdbcCredentialValidator validator = new JdbcCredentialValidator(URL, 5);
+
+    assertDoesNotThrow(() -> validator.validate("probe", "correct"));
+  }
+
+  @Test
+  void validate_rejectsWrongPassword() {
+    JdbcCredentialValidator validator = new JdbcCredentialValidator(URL, 5);
+
+    assertThrows(SQLException.class, () -> validator.validate("probe", "wrong"));
+  }
+}
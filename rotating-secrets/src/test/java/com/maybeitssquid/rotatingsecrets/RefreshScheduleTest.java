@@ -0,0 +1,92 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class RefreshScheduleTest {
+
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+  @Test
+  void backsOffExponentiallyToCeiling() {
+    RefreshSchedule schedule = new RefreshSchedule(1000, 10_000);
+    long now = System.currentTimeMillis();
+
+    assertEquals(1000, schedule.nextDelayMs(now));
+    schedule.unchanged();
+    assertEquals(2000, schedule.nextDelayMs(now));
+    schedule.unchanged();
+    assertEquals(4000, schedule.nextDelayMs(now));
+    schedule.unchanged();
+    schedule.unchanged();
+    assertEquals(10_000, schedule.nextDelayMs(now));
+    schedule.unchanged();
+    assertEquals(10_000, schedule.nextDelayMs(now));
+  }
+
+  @Test
+  void ceilingAtOrBelowBaseKeepsFixedInterval() {
+    RefreshSchedule schedule = new RefreshSchedule(30_000, 0);
+
+    schedule.unchanged();
+    schedule.unchanged();
+
+    assertEquals(30_000, schedule.nextDelayMs(System.currentTimeMillis()));
+  }
+
+  @Test
+  void rotationAndAnomalyResetToBase() {
+    RefreshSchedule schedule = new RefreshSchedule(1000, 60_000);
+    long now = System.currentTimeMillis();
+
+    schedule.unchanged();
+    schedule.unchanged();
+    schedule.anomaly();
+    assertEquals(1000, schedule.nextDelayMs(now));
+
+    schedule.unchanged();
+    schedule.unchanged();
+    schedule.rotated(now);
+    assertEquals(1000, schedule.nextDelayMs(now));
+  }
+
+  @Test
+  void tightensAroundExpectedRotation() {
+    RefreshSchedule schedule = new RefreshSchedule(30_000, HOUR);
+    long start = 1_700_000_000_000L;
+    schedule.rotated(start);
+    schedule.rotated(start + DAY);
+    assertEquals(start + 2 * DAY, schedule.expectedRotationAtMillis());
+    for (int i = 0; i < 20; i++) {
+      schedule.unchanged();
+    }
+
+    // Far from the expected rotation: fully backed off.
+    assertEquals(HOUR, schedule.nextDelayMs(start + DAY + HOUR));
+    // Approaching the window (10% of the cadence before): wake at the window start.
+    long windowStart = start + 2 * DAY - DAY / 10;
+    assertEquals(20 * 60_000, schedule.nextDelayMs(windowStart - 20 * 60_000));
+    // Inside the window, before or after the expected time: base interval.
+    assertEquals(30_000, schedule.nextDelayMs(windowStart + 1));
+    assertEquals(30_000, schedule.nextDelayMs(start + 2 * DAY + HOUR));
+    // Well past the window: the estimate is stale, back off again.
+    assertEquals(HOUR, schedule.nextDelayMs(start + 3 * DAY));
+  }
+
+  @Test
+  void cadenceIsSmoothedAcrossRotations() {
+    RefreshSchedule schedule = new RefreshSchedule(1000, HOUR);
+    long start = 1_700_000_000_000L;
+
+    schedule.rotated(start);
+    assertEquals(-1, schedule.expectedRotationAtMillis());
+    schedule.rotated(start + DAY);
+    schedule.rotated(start + DAY + 2 * DAY);
+
+    // (3 * 1 day + 2 days) / 4 = 1.25 days
+    assertEquals(start + 3 * DAY + DAY + DAY / 4, schedule.expectedRotationAtMillis());
+  }
+}
@@ -0,0 +1,467 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RollingEvictorTest {
+
+  private FakePool pool;
+  private EvictionPolicy policy;
+
+  @BeforeEach
+  void setUp() {
+    pool = new FakePool(8, 8);
+    policy = new EvictionPolicy();
+    policy.setMode(EvictionMode.ROLLING);
+    policy.setWavePercent(25);
+    policy.setIntervalMs(50);
+    policy.setFloor(1);
+  }
+
+  @Test
+  void waveSize_usesFixedSizeOrPercentageOfPool() {
+    assertEquals(2, policy.waveSize(8));
+    assertEquals(1, policy.waveSize(1));
+    policy.setWaveSize(3);
+    assertEquals(3, policy.waveSize(8));
+  }
+
+  @Test
+  void start_evictsInWavesUntilAllPreRotationConnectionsAreRetired() throws Exception {
+    RollingEvictor evictor = new RollingEvictor(pool, policy);
+
+    evictor.start();
+    awaitTrue(() -> !evictor.isRunning());
+
+    assertEquals(8, evictor.getLastEvicted());
+    assertEquals(8, pool.evicted.get());
+    assertTrue(pool.maxPerWave <= 2, "A wave evicted " + pool.maxPerWave + " connections");
+    assertEquals(0, pool.evictAllCalls.get());
+    assertEquals(8, pool.reported.get());
+  }
+
+  @Test
+  void start_neverEvictsBelowFloorAndWaitsForRefill() throws Exception {
+    pool.refill = false;
+    policy.setFloor(6);
+    RollingEvictor evictor = new RollingEvictor(pool, policy);
+
+    evictor.start();
+    awaitTrue(() -> pool.evicted.get() == 2);
+    Thread.sleep(200);
+
+    assertEquals(2, pool.evicted.get());
+    assertEquals(6, pool.idle);
+    assertTrue(evictor.isRunning());
+
+    pool.refill = true;
+    awaitTrue(() -> !evictor.isRunning());
+    assertEquals(8, pool.evicted.get());
+    evictor.cancel();
+  }
+
+  @Test
+  void start_softEvictsRemainderAfterTimeout() throws Exception {
+    pool.refill = false;
+    policy.setFloor(8);
+    policy.setTimeoutMs(150);
+    RollingEvictor evictor = new RollingEvictor(pool, policy);
+
+    evictor.start();
+    awaitTrue(() -> !evictor.isRunning());
+
+    assertEquals(0, pool.evicted.get());
+    assertEquals(1, pool.evictAllCalls.get());
+    assertEquals(0, pool.reported.get());
+  }
+
+  @Test
+  void start_restartCancelsPreviousRun() throws Exception {
+    pool.refill = false;
+    policy.setFloor(8);
+    RollingEvictor evictor = new RollingEvictor(pool, policy);
+    evictor.start();
+
+    pool.refill = true;
+    policy.setFloor(1);
+    evictor.start();
+    awaitTrue(() -> !evictor.isRunning());
+
+    assertEquals(8, pool.evicted.get());
+  }
+
+  @Test
+  void start_evictsOnlySupersededConnectionsWhateverOrderThePoolUses() throws Exception {
+    NewestFirstPool generations = new NewestFirstPool(4, 4);
+    policy.setWaveSize(2);
+    policy.setFloor(0);
+    RollingEvictor evictor = new RollingEvictor(generations, policy);
+
+    evictor.start();
+    awaitTrue(() -> !evictor.isRunning());
+
+    assertEquals(4, evictor.getLastEvicted());
+    assertEquals(0, generations.getSupersededConnections());
+    assertEquals(4, generations.getIdleConnections());
+    assertEquals(0, generations.evictAllCalls.get());
+  }
+
+  @Test
+  void start_leavesFloorIdleForConcurrentBorrowers() throws Exception {
+    SharedPool shared = new SharedPool(2, 2);
+    policy.setWaveSize(2);
+    policy.setFloor(1);
+    RollingEvictor evictor = new RollingEvictor(shared, policy);
+    try {
+      evictor.start();
+      awaitTrue(() -> !evictor.isRunning());
+
+      assertEquals(0, shared.getSupersededConnections());
+      assertEquals(2, evictor.getLastEvicted());
+      assertEquals(0, shared.applicationWaits.get());
+    } finally {
+      shared.application.shutdownNow();
+    }
+  }
+
+  @Test
+  void complete_duringWaveReportsEvictionsOnce() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    FakePool single = new FakePool(1, 1);
+    single.gate = gate;
+    policy.setFloor(0);
+    RollingEvictor evictor = new RollingEvictor(single, policy);
+
+    evictor.start();
+    assertTrue(single.borrowing.await(5, TimeUnit.SECONDS));
+    evictor.complete();
+    gate.countDown();
+    awaitTrue(() -> single.reports.get() > 0);
+    Thread.sleep(100);
+
+    assertEquals(1, single.reports.get());
+    assertEquals(1, single.reported.get());
+    assertEquals(1, single.evictAllCalls.get());
+    assertFalse(evictor.isRunning());
+  }
+
+  @Test
+  void start_blockedBorrowDoesNotStallAnotherPool() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    FakePool blocked = new FakePool(8, 8);
+    blocked.gate = gate;
+    RollingEvictor stalled = new RollingEvictor(blocked, policy);
+    RollingEvictor evictor = new RollingEvictor(pool, policy);
+    try {
+      stalled.start();
+      evictor.start();
+      awaitTrue(() -> !evictor.isRunning());
+
+      assertEquals(8, pool.evicted.get());
+      assertTrue(stalled.isRunning());
+    } finally {
+      stalled.cancel();
+      gate.countDown();
+    }
+  }
+
+  @Test
+  void start_doesNothingForEmptyPool() {
+    RollingEvictor evictor = new RollingEvictor(new FakePool(0, 0), policy);
+
+    evictor.start();
+
+    assertFalse(evictor.isRunning());
+  }
+
+  private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(condition.getAsBoolean(), "Condition not met within 5s");
+  }
+
+  /** Pool whose evicted connections are replaced by the next wave when refill is enabled. */
+  private static final class FakePool implements EvictablePool {
+
+    final AtomicInteger evicted = new AtomicInteger();
+    final AtomicInteger evictAllCalls = new AtomicInteger();
+    final AtomicInteger reported = new AtomicInteger(-1);
+    final AtomicInteger reports = new AtomicInteger();
+    final CountDownLatch borrowing = new CountDownLatch(1);
+    volatile CountDownLatch gate;
+    volatile boolean refill = true;
+    volatile int idle;
+    final int total;
+    int inWave;
+    int maxPerWave;
+
+    FakePool(int total, int idle) {
+      this.total = total;
+      this.idle = idle;
+    }
+
+    @Override
+    public String getName() {
+      return "fake";
+    }
+
+    @Override
+    public synchronized int getIdleConnections() {
+      if (refill) {
+        idle = total;
+      }
+      inWave = 0;
+      return idle;
+    }
+
+    @Override
+    public int getTotalConnections() {
+      return total;
+    }
+
+    @Override
+    public Connection borrow() {
+      borrowing.countDown();
+      final CountDownLatch gate = this.gate;
+      if (gate != null) {
+        try {
+          gate.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      synchronized (this) {
+        idle--;
+      }
+      return mock(Connection.class);
+    }
+
+    @Override
+    public synchronized void evict(Connection connection) {
+      evicted.incrementAndGet();
+      maxPerWave = Math.max(maxPerWave, ++inWave);
+    }
+
+    @Override
+    public void evictAll() {
+      evictAllCalls.incrementAndGet();
+    }
+
+    @Override
+    public void evicted(int count) {
+      reports.incrementAndGet();
+      reported.set(count);
+    }
+  }
+
+  /**
+   * Pool that knows which connections a rotation superseded and hands out its newest idle
+   * connection first, the worst case for eviction by count.
+   */
+  private static final class NewestFirstPool implements EvictablePool {
+
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private final Set<Connection> superseded = ConcurrentHashMap.newKeySet();
+    final AtomicInteger evictAllCalls = new AtomicInteger();
+
+    NewestFirstPool(int supersededCount, int current) {
+      for (int i = 0; i < supersededCount; i++) {
+        superseded.add(giveBack(connection()));
+      }
+      for (int i = 0; i < current; i++) {
+        giveBack(connection());
+      }
+    }
+
+    private Connection connection() {
+      Connection connection = mock(Connection.class);
+      try {
+        doAnswer(
+                invocation -> {
+                  giveBack(connection);
+                  return null;
+                })
+            .when(connection)
+            .close();
+      } catch (SQLException e) {
+        throw new AssertionError(e);
+      }
+      return connection;
+    }
+
+    private synchronized Connection giveBack(Connection connection) {
+      idle.push(connection);
+      return connection;
+    }
+
+    @Override
+    public String getName() {
+      return "newest-first";
+    }
+
+    @Override
+    public synchronized int getIdleConnections() {
+      return idle.size();
+    }
+
+    @Override
+    public synchronized int getTotalConnections() {
+      return idle.size();
+    }
+
+    @Override
+    public int getSupersededConnections() {
+      return superseded.size();
+    }
+
+    @Override
+    public boolean isSuperseded(Connection connection) {
+      return superseded.contains(connection);
+    }
+
+    @Override
+    public synchronized Connection borrow() {
+      return idle.pop();
+    }
+
+    @Override
+    public void evict(Connection connection) {
+      superseded.remove(connection);
+    }
+
+    @Override
+    public void evictAll() {
+      evictAllCalls.incrementAndGet();
+    }
+  }
+
+  /**
+   * Pool shared with an application thread that hands out its newest idle connection first, blocks
+   * borrowers while it has none, and replaces evicted connections once the next wave looks at it.
+   * Each eviction has the application borrow a connection while the wave is still in progress.
+   */
+  private static final class SharedPool implements EvictablePool {
+
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private final Set<Connection> superseded = ConcurrentHashMap.newKeySet();
+    final ExecutorService application = Executors.newSingleThreadExecutor();
+    final AtomicInteger applicationWaits = new AtomicInteger();
+    private int replacements;
+
+    SharedPool(int supersededCount, int current) {
+      for (int i = 0; i < supersededCount; i++) {
+        superseded.add(giveBack(connection()));
+      }
+      for (int i = 0; i < current; i++) {
+        giveBack(connection());
+      }
+    }
+
+    private Connection connection() {
+      Connection connection = mock(Connection.class);
+      try {
+        doAnswer(
+                invocation -> {
+                  giveBack(connection);
+                  return null;
+                })
+            .when(connection)
+            .close();
+      } catch (SQLException e) {
+        throw new AssertionError(e);
+      }
+      return connection;
+    }
+
+    private synchronized Connection giveBack(Connection connection) {
+      idle.push(connection);
+      notifyAll();
+      return connection;
+    }
+
+    @Override
+    public String getName() {
+      return "shared";
+    }
+
+    @Override
+    public synchronized int getIdleConnections() {
+      for (; replacements > 0; replacements--) {
+        idle.addLast(connection());
+      }
+      return idle.size();
+    }
+
+    @Override
+    public synchronized int getTotalConnections() {
+      return idle.size();
+    }
+
+    @Override
+    public int getSupersededConnections() {
+      return superseded.size();
+    }
+
+    @Override
+    public boolean isSuperseded(Connection connection) {
+      return superseded.contains(connection);
+    }
+
+    @Override
+    public synchronized Connection borrow() throws SQLException {
+      while (idle.isEmpty()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException(e);
+        }
+      }
+      return idle.pop();
+    }
+
+    @Override
+    public void evict(Connection connection) throws SQLException {
+      Future<?> borrower =
+          application.submit(
+              () -> {
+                borrow().close();
+                return null;
+              });
+      try {
+        borrower.get(1, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+        applicationWaits.incrementAndGet();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new SQLException(e);
+      }
+      superseded.remove(connection);
+      synchronized (this) {
+        replacements++;
+      }
+    }
+
+    @Override
+    public void evictAll() {}
+  }
+}
@@ -0,0 +1,141 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.hikari.HikariDataSourceConfig;
+import com.maybeitssquid.rotatingsecrets.registry.CredentialsRegistry;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpDataSourceConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import javax.sql.DataSource;
+import oracle.ucp.jdbc.PoolDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class RotatingSecretsAutoConfigurationTest {
+
+  private static final String URL = "jdbc:h2:mem:autoconfig;DB_CLOSE_DELAY=-1";
+
+  @TempDir Path tempDir;
+
+  private ApplicationContextRunner runner;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Files.writeString(tempDir.resolve("username"), "sa");
+    Files.writeString(tempDir.resolve("password"), "");
+    runner =
+        new ApplicationContextRunner()
+            .withConfiguration(
+                AutoConfigurations.of(
+                    RotatingSecretsAutoConfiguration.class,
+                    HikariDataSourceConfig.class,
+                    UcpDataSourceConfig.class,
+                    DataSourceAutoConfiguration.class))
+            .withPropertyValues("k8s.secrets.path=" + tempDir);
+  }
+
+  @Test
+  void hikariOnly_createsHikariPoolAndBootBacksOff() {
+    runner
+        .withPropertyValues(hikariProperties())
+        .run(
+            context -> {
+              assertNull(context.getStartupFailure());
+              assertEquals(1, context.getBeansOfType(DataSource.class).size());
+              assertInstanceOf(HikariDataSource.class, context.getBean(DataSource.class));
+              assertTrue(context.getBeansOfType(PoolDataSource.class).isEmpty());
+              assertTrue(context.containsBean("credentialsProvider"));
+              assertNotNull(context.getBean(CredentialsRegistry.class));
+              try (Connection conn = context.getBean(DataSource.class).getConnection()) {
+                assertFalse(conn.isClosed());
+              }
+            });
+  }
+
+  @Test
+  void ucpOnly_createsUcpPoolLazily() {
+    runner
+        .withPropertyValues(ucpProperties())
+        .run(
+            context -> {
+              assertNull(context.getStartupFailure());
+              assertTrue(context.getBeansOfType(HikariDataSource.class).isEmpty());
+              PoolDataSource pool = context.getBean(PoolDataSource.class);
+              assertSame(pool, context.getBean(DataSource.class));
+              // No connections exist until the first borrow
+              assertNull(pool.getStatistics());
+              try (Connection conn = pool.getConnection()) {
+                assertFalse(conn.isClosed());
+              }
+              assertNotNull(pool.getStatistics());
+            });
+  }
+
+  @Test
+  void hikariCanBeDisabled() {
+    runner
+        .withPropertyValues(hikariProperties())
+        .withPropertyValues(ucpProperties())
+        .withPropertyValues("k8s.secrets.hikari.enabled=false")
+        .run(
+            context -> {
+              assertNull(context.getStartupFailure());
+              assertTrue(context.getBeansOfType(HikariDataSource.class).isEmpty());
+              assertFalse(context.containsBean("hikariUpdater"));
+              assertEquals(1, context.getBeansOfType(PoolDataSource.class).size());
+            });
+  }
+
+  @Test
+  void noPoolConfigured_keepsRotationInfrastructureOnly() {
+    runner.run(
+        context -> {
+          assertNull(context.getStartupFailure());
+          assertFalse(context.containsBean("hikariUpdater"));
+          assertFalse(context.containsBean("ucpUpdater"));
+          assertTrue(context.getBeansOfType(PoolDataSource.class).isEmpty());
+          assertNotNull(context.getBean(SecretsWatcher.class));
+          assertNotNull(context.getBean(CredentialsProviderService.class));
+        });
+  }
+
+  @Test
+  void withoutSecretsPath_registryOnlyApplicationStartsWithoutDefaultProvider() {
+    new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(RotatingSecretsAutoConfiguration.class))
+        .run(
+            context -> {
+              assertNull(context.getStartupFailure());
+              assertFalse(context.containsBean("credentialsProvider"));
+              assertNotNull(context.getBean(CredentialsRegistry.class));
+            });
+  }
+
+  private static String[] hikariProperties() {
+    return new String[] {
+      "spring.datasource.url=" + URL,
+      "spring.datasource.driver-class-name=org.h2.Driver",
+      "spring.datasource.username=sa",
+      "spring.datasource.password=",
+      "spring.datasource.hikari.minimum-idle=1"
+    };
+  }
+
+  private static String[] ucpProperties() {
+    return new String[] {
+      "spring.datasource.ucp.url=" + URL,
+      "spring.datasource.ucp.connection-factory-class-name=org.h2.jdbcx.JdbcDataSource",
+      "spring.datasource.ucp.user=sa",
+      "spring.datasource.ucp.password=",
+      "spring.datasource.ucp.pool-name=AutoConfigUcp-" + System.nanoTime()
+    };
+  }
+}
@@ -0,0 +1,86 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.hikari.HikariDataSourceConfig;
+import com.maybeitssquid.rotatingsecrets.ucp.RotatingConnectionFactory;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpDataSourceConfig;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpRotationStrategy;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aot.generate.ClassNameGenerator;
+import org.springframework.aot.generate.DefaultGenerationContext;
+import org.springframework.aot.generate.InMemoryGeneratedFiles;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.aot.ApplicationContextAotGenerator;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.javapoet.ClassName;
+
+class RotatingSecretsRuntimeHintsTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  void registerHints_coversReflectiveUcpFactoryAndEnums() throws Exception {
+    RuntimeHints hints = new RuntimeHints();
+
+    new RotatingSecretsRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+    Method setter = RotatingConnectionFactory.class.getMethod("setDelegateClassName", String.class);
+    assertTrue(RuntimeHintsPredicates.reflection().onMethodInvocation(setter).test(hints));
+    assertTrue(
+        RuntimeHintsPredicates.reflection()
+            .onConstructorInvocation(RotatingConnectionFactory.class.getConstructor())
+            .test(hints));
+    assertTrue(RuntimeHintsPredicates.reflection().onType(UcpRotationStrategy.class).test(hints));
+    assertTrue(
+        RuntimeHintsPredicates.resource().forBundle("oracle.ucp.util.UCPMessages").test(hints));
+  }
+
+  @Test
+  void aheadOfTimeProcessing_registersHintsFromAutoConfiguration() throws IOException {
+    Files.writeString(tempDir.resolve("username"), "sa");
+    Files.writeString(tempDir.resolve("password"), "");
+    AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+    context
+        .getEnvironment()
+        .getPropertySources()
+        .addFirst(
+            new MapPropertySource(
+                "test",
+                Map.of(
+                    "k8s.secrets.path", tempDir.toString(),
+                    "spring.datasource.url", "jdbc:h2:mem:aot",
+                    "spring.datasource.username", "sa",
+                    "spring.datasource.password", "")));
+    context.register(AotApplication.class);
+    DefaultGenerationContext generationContext =
+        new DefaultGenerationContext(
+            new ClassNameGenerator(ClassName.get(getClass().getPackageName(), "AotApplication")),
+            new InMemoryGeneratedFiles());
+
+    // Processing only refreshes bean definitions; no service is started and no file is read
+    new ApplicationContextAotGenerator().processAheadOfTime(context, generationContext);
+
+    RuntimeHints hints = generationContext.getRuntimeHints();
+    assertTrue(
+        RuntimeHintsPredicates.reflection().onType(RotatingConnectionFactory.class).test(hints));
+    assertTrue(
+        RuntimeHintsPredicates.resource().forBundle("oracle.ucp.util.UCPMessages").test(hints));
+  }
+
+  @ImportAutoConfiguration({
+    RotatingSecretsAutoConfiguration.class,
+    HikariDataSourceConfig.class,
+    UcpDataSourceConfig.class
+  })
+  static class AotApplication {}
+}
@@ -0,0 +1,86 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RotationJitterTest {
+
+  private static final long WINDOW_MS = 60_000;
+
+  @Test
+  void offsetsOfSimulatedReplicasAreSpreadEvenlyAcrossWindow() {
+    int instances = 2000;
+    int buckets = 10;
+    int[] counts = new int[buckets];
+    Random random = new Random(42);
+    for (int i = 0; i < instances; i++) {
+      long offset = RotationJitter.of(podName(random), WINDOW_MS).offsetMs();
+      assertTrue(offset >= 0 && offset < WINDOW_MS, "Offset outside window: " + offset);
+      counts[(int) (offset * buckets / WINDOW_MS)]++;
+    }
+
+    int expected = instances / buckets;
+    for (int i = 0; i < buckets; i++) {
+      assertTrue(
+          Math.abs(counts[i] - expected) < expected * 0.25,
+          "Bucket " + i + " holds " + counts[i] + " of " + instances + " instances");
+    }
+  }
+
+  @Test
+  void offsetIsStableForSameSeed() {
+    RotationJitter first = RotationJitter.of("orders-api-7d9f8b6c4-x2m9q", WINDOW_MS);
+    RotationJitter second = RotationJitter.of("orders-api-7d9f8b6c4-x2m9q", WINDOW_MS);
+    RotationJitter other = RotationJitter.of("orders-api-7d9f8b6c4-x2m9r", WINDOW_MS);
+
+    assertEquals(first.offsetMs(), second.offsetMs());
+    assertNotEquals(first.offsetMs(), other.offsetMs());
+  }
+
+  @Test
+  void applyAt_isCappedByDeadline() {
+    RotationJitter jitter = RotationJitter.of(seedWithOffsetAbove(10_000), WINDOW_MS);
+
+    assertEquals(1000 + jitter.offsetMs(), jitter.applyAt(1000, Long.MAX_VALUE));
+    assertEquals(5000, jitter.applyAt(1000, 5000));
+    assertEquals(1000, jitter.applyAt(1000, 500));
+  }
+
+  @Test
+  void zeroWindowDisablesJitter() {
+    RotationJitter jitter = RotationJitter.of("pod", 0);
+
+    assertFalse(jitter.isEnabled());
+    assertEquals(1000, jitter.applyAt(1000, Long.MAX_VALUE));
+  }
+
+  @Test
+  void emptySeedFallsBackToHostName() {
+    RotationJitter jitter = RotationJitter.of("", WINDOW_MS);
+
+    assertEquals(
+        RotationJitter.of(RotationJitter.defaultSeed(), WINDOW_MS).offsetMs(), jitter.offsetMs());
+  }
+
+  /** Finds a seed whose offset in the test window lies above the given value. */
+  static String seedWithOffsetAbove(long minOffsetMs) {
+    for (int i = 0; ; i++) {
+      String seed = "pod-" + i;
+      if (RotationJitter.of(seed, WINDOW_MS).offsetMs() > minOffsetMs) {
+        return seed;
+      }
+    }
+  }
+
+  /** Generates a name shaped like a Deployment's pod names, which differ only in their suffix. */
+  private static String podName(Random random) {
+    String alphabet = "bcdfghjklmnpqrstvwxz2456789";
+    StringBuilder name = new StringBuilder("orders-api-7d9f8b6c4-");
+    for (int i = 0; i < 5; i++) {
+      name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return name.toString();
+  }
+}
@@ -0,0 +1,77 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SecretFileReaderTest {
+
+  @TempDir Path tempDir;
+
+  private final SecretFileReader reader = new SecretFileReader();
+
+  @Test
+  void read_trimsLikeStringTrim() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("password"), "  p\u00e4ss w0rd \n");
+
+    assertEquals("p\u00e4ss w0rd", reader.read(file).toString());
+  }
+
+  @Test
+  void read_growsForLargeFilesAndReusesBuffers() throws IOException {
+    String large = "x".repeat(10_000);
+    Path big = Files.writeString(tempDir.resolve("big"), large);
+    Path small = Files.writeString(tempDir.resolve("small"), "tiny");
+
+    assertEquals(large, reader.read(big).toString());
+    assertEquals("tiny", reader.read(small).toString());
+    assertEquals(4, reader.size());
+  }
+
+  @Test
+  void read_handlesEmptyFile() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("empty"), "");
+
+    assertEquals("", reader.read(file).toString());
+  }
+
+  @Test
+  void digest_coversRawBytes() throws Exception {
+    Path file = Files.writeString(tempDir.resolve("password"), " secret\n");
+    reader.read(file);
+
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    reader.digest(md);
+
+    assertArrayEquals(
+        MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)), md.digest());
+  }
+
+  @Test
+  void load_digestsRawBytesBeforeDecoding() throws Exception {
+    Path file = Files.writeString(tempDir.resolve("password"), " p\u00e4ss\n");
+    reader.load(file);
+
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    reader.digest(md);
+
+    assertArrayEquals(
+        MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)), md.digest());
+    assertEquals("p\u00e4ss", reader.contents().toString());
+  }
+
+  @Test
+  void wipe_clearsPreviousContents() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("password"), "secret");
+    CharSequence view = reader.read(file);
+
+    reader.wipe();
+
+    assertFalse(view.toString().contains("secret"));
+  }
+}
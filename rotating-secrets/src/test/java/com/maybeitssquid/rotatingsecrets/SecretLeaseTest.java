@@ -0,0 +1,62 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SecretLeaseTest {
+
+  private static final Instant WRITTEN = Instant.parse("2025-01-31T11:00:00Z");
+  private static final Instant EXPIRY = Instant.parse("2025-01-31T12:00:00Z");
+
+  @TempDir Path tempDir;
+
+  @Test
+  void parseExpiry_acceptsIsoTimestamp() {
+    assertEquals(EXPIRY, SecretLease.parseExpiry(" 2025-01-31T12:00:00Z\n", WRITTEN));
+    assertEquals(EXPIRY, SecretLease.parseExpiry("2025-01-31T13:00:00+01:00", WRITTEN));
+  }
+
+  @Test
+  void parseExpiry_acceptsEpochSeconds() {
+    assertEquals(EXPIRY, SecretLease.parseExpiry(Long.toString(EXPIRY.getEpochSecond()), WRITTEN));
+  }
+
+  @Test
+  void parseExpiry_acceptsJsonSidecar() {
+    assertEquals(
+        EXPIRY,
+        SecretLease.parseExpiry(
+            "{\"lease_id\": \"database/creds/app/abc\", \"expires_at\": \"2025-01-31T12:00:00Z\"}",
+            WRITTEN));
+    assertEquals(
+        EXPIRY,
+        SecretLease.parseExpiry(
+            "{\"lease_expiry\": " + EXPIRY.getEpochSecond() + ", \"renewable\": true}", WRITTEN));
+    assertEquals(EXPIRY, SecretLease.parseExpiry("{\"lease_duration\": 3600}", WRITTEN));
+  }
+
+  @Test
+  void parseExpiry_rejectsUnrecognisedContent() {
+    assertThrows(IllegalArgumentException.class, () -> SecretLease.parseExpiry("soon", WRITTEN));
+    assertThrows(
+        IllegalArgumentException.class, () -> SecretLease.parseExpiry("{\"ok\": 1}", WRITTEN));
+  }
+
+  @Test
+  void read_measuresDurationFromModificationTime() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("lease.json"), "{\"ttl\": 3600}");
+    Files.setLastModifiedTime(file, FileTime.from(WRITTEN));
+
+    SecretLease lease = SecretLease.read(file, 4);
+
+    assertEquals(4, lease.generation());
+    assertEquals(EXPIRY, lease.expiresAt());
+  }
+}
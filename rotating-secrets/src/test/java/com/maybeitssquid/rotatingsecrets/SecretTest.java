@@ -0,0 +1,57 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class SecretTest {
+
+  @Test
+  void contentEquals_comparesInPlace() {
+    Secret secret = Secret.copyOf("s3cret");
+
+    assertTrue(secret.contentEquals("s3cret"));
+    assertTrue(secret.contentEquals(CharBuffer.wrap("xs3cretx").subSequence(1, 7)));
+    assertFalse(secret.contentEquals("s3creT"));
+    assertFalse(secret.contentEquals("s3cre"));
+    assertEquals(6, secret.length());
+  }
+
+  @Test
+  void copyOf_doesNotAliasSource() {
+    char[] source = "s3cret".toCharArray();
+    Secret secret = Secret.copyOf(CharBuffer.wrap(source));
+
+    Arrays.fill(source, '\0');
+
+    assertTrue(secret.contentEquals("s3cret"));
+  }
+
+  @Test
+  void asString_returnsOneSharedInstance() {
+    Secret secret = Secret.copyOf("s3cret");
+
+    assertEquals("s3cret", secret.asString());
+    assertSame(secret.asString(), secret.asString());
+  }
+
+  @Test
+  void destroy_wipesAndRejectsAccess() {
+    Secret secret = Secret.copyOf("s3cret");
+
+    secret.destroy();
+    secret.destroy();
+
+    assertTrue(secret.isDestroyed());
+    assertThrows(IllegalStateException.class, secret::asString);
+    assertThrows(IllegalStateException.class, () -> secret.contentEquals("s3cret"));
+    assertEquals("Secret[destroyed]", secret.toString());
+  }
+
+  @Test
+  void toString_neverRevealsSecret() {
+    assertFalse(Secret.copyOf("s3cret").toString().contains("s3cret"));
+  }
+}
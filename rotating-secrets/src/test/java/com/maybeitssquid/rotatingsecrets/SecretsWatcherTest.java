@@ -0,0 +1,434 @@
+package com.maybeitssquid.rotatingsecrets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SecretsWatcherTest {
+
+  @TempDir Path tempDir;
+
+  private SecretsWatcher watcher;
+
+  @BeforeEach
+  void setUp() {
+    watcher = new SecretsWatcher();
+  }
+
+  @AfterEach
+  void tearDown() {
+    watcher.close();
+  }
+
+  @Test
+  void register_manyDirectoriesShareOneWatchThread() throws Exception {
+    int before = countWatchThreads();
+    List<CountingListener> listeners = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      Path dir = Files.createDirectory(tempDir.resolve("tenant" + i));
+      CountingListener listener = new CountingListener(600_000);
+      watcher.register(dir, 600_000, 0, listener);
+      listeners.add(listener);
+    }
+
+    assertEquals(50, watcher.getRegistrationCount());
+    assertEquals(50, watcher.getWatchedDirectoryCount());
+    assertEquals(before + 1, countWatchThreads());
+
+    Files.writeString(tempDir.resolve("tenant7").resolve("username"), "changed");
+
+    assertTrue(listeners.get(7).awaitCheck(5, TimeUnit.SECONDS));
+    assertEquals(0, listeners.get(8).checks.get());
+  }
+
+  @Test
+  void register_sourcesInSameDirectoryShareOneWatch() throws Exception {
+    CountingListener first = new CountingListener(600_000);
+    CountingListener second = new CountingListener(600_000);
+    watcher.register(tempDir, 600_000, 0, first);
+    watcher.register(tempDir, 600_000, 0, second);
+
+    assertEquals(1, watcher.getWatchedDirectoryCount());
+
+    Files.writeString(tempDir.resolve("password"), "changed");
+
+    assertTrue(first.awaitCheck(5, TimeUnit.SECONDS));
+    assertTrue(second.awaitCheck(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void fallbackChecksFollowEachRegistrationsOwnInterval() throws Exception {
+    CountingListener fast = new CountingListener(50);
+    CountingListener slow = new CountingListener(600_000);
+    // A slow registration first: the new, earlier deadline must wake the blocked thread.
+    watcher.register(Files.createDirectory(tempDir.resolve("slow")), 600_000, 0, slow);
+    watcher.register(Files.createDirectory(tempDir.resolve("fast")), 50, 0, fast);
+
+    Thread.sleep(500);
+
+    assertTrue(fast.checks.get() >= 3, "fast registration checked " + fast.checks.get());
+    assertEquals(0, slow.checks.get());
+  }
+
+  @Test
+  void quietPeriodCoalescesEventBurst() throws Exception {
+    CountingListener listener = new CountingListener(600_000);
+    watcher.register(tempDir, 600_000, 300, listener);
+
+    for (int i = 0; i < 5; i++) {
+      Files.writeString(tempDir.resolve("username"), "value" + i);
+      Thread.sleep(20);
+    }
+
+    assertTrue(listener.awaitCheck(5, TimeUnit.SECONDS));
+    Thread.sleep(500);
+    assertEquals(1, listener.checks.get());
+  }
+
+  @Test
+  void closedRegistrationReceivesNoFurtherChecks() throws Exception {
+    CountingListener listener = new CountingListener(600_000);
+    SecretsWatcher.Registration registration = watcher.register(tempDir, 600_000, 0, listener);
+
+    registration.close();
+    Files.writeString(tempDir.resolve("username"), "changed");
+    Thread.sleep(300);
+
+    assertEquals(0, listener.checks.get());
+    assertEquals(0, watcher.getRegistrationCount());
+    assertEquals(0, watcher.getWatchedDirectoryCount());
+  }
+
+  @Test
+  void register_failsAfterClose() {
+    watcher.close();
+
+    assertThrows(
+        IllegalStateException.class,
+        () -> watcher.register(tempDir, 1000, 0, new CountingListener(1000)));
+  }
+
+  @Test
+  void requestCheck_isIgnoredAfterStopAndClose() throws Exception {
+    CountingListener stopped = new CountingListener(600_000);
+    SecretsWatcher.Registration beforeStop = watcher.register(tempDir, 600_000, 0, stopped);
+    watcher.stop();
+
+    assertDoesNotThrow(beforeStop::requestCheck);
+
+    Path other = Files.createDirectory(tempDir.resolve("other"));
+    CountingListener closed = new CountingListener(600_000);
+    SecretsWatcher.Registration beforeClose = watcher.register(other, 600_000, 0, closed);
+    // The registration dropped by stop() stays inert while a new loop runs
+    beforeStop.requestCheck();
+    watcher.close();
+
+    assertDoesNotThrow(beforeClose::requestCheck);
+    assertDoesNotThrow(beforeStop::requestCheck);
+    assertEquals(0, stopped.checks.get());
+    assertEquals(0, closed.checks.get());
+  }
+
+  @Test
+  void stop_closesWatchUntilNextRegistration() throws Exception {
+    CountingListener before = new CountingListener(600_000);
+    watcher.register(tempDir, 600_000, 0, before);
+    int threads = countWatchThreads();
+
+    watcher.stop();
+
+    assertFalse(watcher.isRunning());
+    assertEquals(0, watcher.getRegistrationCount());
+    assertEquals(threads - 1, countWatchThreads());
+
+    CountingListener after = new CountingListener(600_000);
+    watcher.register(tempDir, 600_000, 0, after);
+    Files.writeString(tempDir.resolve("password"), "changed");
+
+    assertTrue(watcher.isRunning());
+    assertTrue(after.awaitCheck(5, TimeUnit.SECONDS));
+    assertEquals(0, before.checks.get());
+    assertEquals(threads, countWatchThreads());
+  }
+
+  @Test
+  void sharedWatcherDrivesManyCredentialServices() throws Exception {
+    List<CredentialsProviderService> services = new ArrayList<>();
+    List<AtomicInteger> updates = new ArrayList<>();
+    try {
+      for (int i = 0; i < 5; i++) {
+        Path dir = Files.createDirectory(tempDir.resolve("ds" + i));
+        Files.writeString(dir.resolve("username"), "user" + i);
+        Files.writeString(dir.resolve("password"), "pass" + i);
+        CredentialsProviderService service =
+            new CredentialsProviderService(dir.toString(), 600_000);
+        AtomicInteger count = new AtomicInteger();
+        service.setHikariUpdatable((username, credential) -> count.incrementAndGet());
+        service.setSecretsWatcher(watcher);
+        service.start();
+        services.add(service);
+        updates.add(count);
+      }
+
+      // Publish atomically so the service never observes a truncated, half-written file.
+      Path staged = Files.writeString(tempDir.resolve("ds3").resolve(".password.tmp"), "rotated");
+      Files.move(
+          staged, tempDir.resolve("ds3").resolve("password"), StandardCopyOption.ATOMIC_MOVE);
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (updates.get(3).get() < 2 && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+      }
+      assertEquals(2, updates.get(3).get());
+      assertEquals(1, updates.get(2).get());
+      assertEquals(5, watcher.getRegistrationCount());
+    } finally {
+      services.forEach(CredentialsProviderService::stop);
+    }
+    assertEquals(0, watcher.getRegistrationCount());
+  }
+
+  @Test
+  void executor_runsLoopOnInjectedExecutorAndReleasesItOnClose() throws Exception {
+    ExecutorService executor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "app-scheduler"));
+    try {
+      AtomicReference<String> checkThread = new AtomicReference<>();
+      CountDownLatch checked = new CountDownLatch(1);
+      watcher.setExecutor(executor);
+      watcher.register(
+          tempDir,
+          10,
+          0,
+          new CountingListener(600_000) {
+            @Override
+            public long check() {
+              checkThread.set(Thread.currentThread().getName());
+              checked.countDown();
+              return super.check();
+            }
+          });
+
+      assertTrue(checked.await(5, TimeUnit.SECONDS));
+      assertEquals("app-scheduler", checkThread.get());
+
+      watcher.close();
+
+      // The loop has returned, so the single executor thread is free for other work again.
+      Future<?> next = executor.submit(() -> {});
+      next.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void virtualThreads_runLoopOnVirtualThreadWhenSupported() throws Exception {
+    Assumptions.assumeTrue(VirtualThreads.isSupported(), "Virtual threads need JDK 21+");
+    AtomicReference<Thread> checkThread = new AtomicReference<>();
+    CountDownLatch checked = new CountDownLatch(1);
+    watcher.setVirtualThreads(true);
+    watcher.register(
+        tempDir,
+        10,
+        0,
+        new CountingListener(600_000) {
+          @Override
+          public long check() {
+            checkThread.set(Thread.currentThread());
+            checked.countDown();
+            return super.check();
+          }
+        });
+
+    assertTrue(checked.await(5, TimeUnit.SECONDS));
+    assertEquals("credentials-watch", checkThread.get().getName());
+    assertTrue(checkThread.get().isDaemon());
+    assertTrue(checkThread.get().toString().startsWith("VirtualThread"));
+  }
+
+  @Test
+  void virtualThreads_fallBackToPlatformThreadWhenUnsupported() throws Exception {
+    Assumptions.assumeFalse(VirtualThreads.isSupported(), "Only meaningful before JDK 21");
+    CountingListener listener = new CountingListener(600_000);
+    watcher.setVirtualThreads(true);
+    watcher.register(tempDir, 10, 0, listener);
+
+    assertTrue(listener.awaitCheck(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void stop_loopStillInCheckLeavesRemainingChecksToItsSuccessor() throws Exception {
+    CountDownLatch inCheck = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    watcher.setShutdownTimeoutMs(100);
+    watcher.register(
+        tempDir,
+        10,
+        0,
+        new CountingListener(600_000) {
+          @Override
+          public long check() {
+            inCheck.countDown();
+            // Outlasts the shutdown timeout and the interrupt that follows it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (release.getCount() > 0 && System.nanoTime() < deadline) {
+              sleep(10);
+            }
+            return super.check();
+          }
+        });
+    CountingListener dropped = new CountingListener(600_000);
+    watcher.register(tempDir, 10, 0, dropped);
+    assertTrue(inCheck.await(5, TimeUnit.SECONDS));
+
+    watcher.stop();
+    CountingListener after = new CountingListener(600_000);
+    watcher.register(tempDir, 10, 0, after);
+    assertTrue(after.awaitCheck(5, TimeUnit.SECONDS));
+    release.countDown();
+    sleep(300);
+
+    assertEquals(0, dropped.checks.get(), "The stopped loop kept running dropped registrations");
+    assertEquals(1, after.checks.get());
+  }
+
+  @Test
+  void close_waitsForInFlightCheck() throws Exception {
+    CountDownLatch inCheck = new CountDownLatch(1);
+    AtomicBoolean finished = new AtomicBoolean();
+    watcher.register(
+        tempDir,
+        10,
+        0,
+        new CountingListener(600_000) {
+          @Override
+          public long check() {
+            inCheck.countDown();
+            sleep(300);
+            finished.set(true);
+            return super.check();
+          }
+        });
+    assertTrue(inCheck.await(5, TimeUnit.SECONDS));
+
+    watcher.close();
+
+    assertTrue(finished.get(), "close() returned before the in-flight check completed");
+  }
+
+  @Test
+  void registrationClose_waitsForInFlightCheck() throws Exception {
+    CountDownLatch inCheck = new CountDownLatch(1);
+    AtomicBoolean finished = new AtomicBoolean();
+    SecretsWatcher.Registration registration =
+        watcher.register(
+            tempDir,
+            10,
+            0,
+            new CountingListener(600_000) {
+              @Override
+              public long check() {
+                inCheck.countDown();
+                sleep(300);
+                finished.set(true);
+                return super.check();
+              }
+            });
+    assertTrue(inCheck.await(5, TimeUnit.SECONDS));
+
+    registration.close();
+
+    assertTrue(finished.get(), "close() returned before the in-flight check completed");
+  }
+
+  @Test
+  void close_isBoundedByShutdownTimeout() throws Exception {
+    CountDownLatch inCheck = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    watcher.setShutdownTimeoutMs(100);
+    watcher.register(
+        tempDir,
+        10,
+        0,
+        new CountingListener(600_000) {
+          @Override
+          public long check() {
+            inCheck.countDown();
+            try {
+              release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return super.check();
+          }
+        });
+    assertTrue(inCheck.await(5, TimeUnit.SECONDS));
+
+    long start = System.nanoTime();
+    watcher.close();
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    release.countDown();
+
+    assertTrue(elapsedMs < 5000, "close() took " + elapsedMs + " ms");
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static int countWatchThreads() {
+    return (int)
+        Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.isAlive() && "credentials-watch".equals(t.getName()))
+            .count();
+  }
+
+  private static class CountingListener implements SecretsWatcher.Listener {
+    private final long intervalMs;
+    private final AtomicInteger checks = new AtomicInteger();
+    private final CountDownLatch checked = new CountDownLatch(1);
+
+    private CountingListener(long intervalMs) {
+      this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public boolean isRelevant(List<WatchEvent<?>> events) {
+      return true;
+    }
+
+    @Override
+    public long check() {
+      checks.incrementAndGet();
+      checked.countDown();
+      return intervalMs;
+    }
+
+    boolean awaitCheck(long timeout, TimeUnit unit) throws InterruptedException {
+      return checked.await(timeout, unit);
+    }
+  }
+}
@@ -3,11 +3,23 @@ package com.maybeitssquid.rotatingsecrets.hikari;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.EvictionMode;
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
 import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.HikariPoolMXBean;
 import com.zaxxer.hikari.util.Credentials;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class HikariCredentialsUpdaterTest {
 
@@ -35,6 +47,65 @@ class HikariCredentialsUpdaterTest {
     assertEquals("newPass", creds.getPassword());
   }
 
+  @Test
+  void setCredential_tracksSnapshotGeneration() {
+    assertEquals(0, updater.getGeneration());
+
+    updater.setCredential(new CredentialSnapshot<>("snapUser", "snapPass", 7, Instant.now()));
+    assertEquals(7, updater.getGeneration());
+    assertEquals("snapUser", updater.getCredentials().getUsername());
+    assertEquals("snapPass", updater.getCredentials().getPassword());
+
+    updater.setCredential("newUser", "newPass");
+    assertEquals(8, updater.getGeneration());
+  }
+
+  @Test
+  void getCredentials_returnsSameInstanceUntilRotation() {
+    Credentials first = updater.getCredentials();
+    assertSame(first, updater.getCredentials());
+
+    updater.setCredential("newUser", "newPass");
+    assertNotSame(first, updater.getCredentials());
+  }
+
+  @Test
+  void retireGeneration_leavesSoftEvictedPoolAlone() {
+    HikariDataSource mockDataSource = mock(HikariDataSource.class);
+    HikariPoolMXBean mockPoolMXBean = mock(HikariPoolMXBean.class);
+    when(mockDataSource.getHikariPoolMXBean()).thenReturn(mockPoolMXBean);
+    updater.setDataSource(mockDataSource);
+    updater.setCredential(new CredentialSnapshot<>("user", "pass", 3, Instant.now()));
+    clearInvocations(mockPoolMXBean);
+
+    updater.retireGeneration(2);
+
+    verifyNoInteractions(mockPoolMXBean);
+  }
+
+  @Test
+  void retireGeneration_completesRollingEvictionOnceSuperseded() {
+    HikariDataSource mockDataSource = mock(HikariDataSource.class);
+    HikariPoolMXBean mockPoolMXBean = mock(HikariPoolMXBean.class);
+    when(mockDataSource.getHikariPoolMXBean()).thenReturn(mockPoolMXBean);
+    // No idle connections: the waves cannot make progress before the lease expires
+    when(mockPoolMXBean.getTotalConnections()).thenReturn(4);
+    when(mockPoolMXBean.getIdleConnections()).thenReturn(0);
+    EvictionPolicy policy = new EvictionPolicy();
+    policy.setMode(EvictionMode.ROLLING);
+    updater.setEvictionPolicy(policy);
+    updater.setDataSource(mockDataSource);
+    updater.setCredential(new CredentialSnapshot<>("user", "pass", 3, Instant.now()));
+
+    updater.retireGeneration(3);
+    assertTrue(updater.getRollingEvictor().isRunning());
+    verify(mockPoolMXBean, never()).softEvictConnections();
+
+    updater.retireGeneration(2);
+    assertFalse(updater.getRollingEvictor().isRunning());
+    verify(mockPoolMXBean).softEvictConnections();
+  }
+
   @Test
   void setCredential_softEvictsConnections() {
     HikariDataSource mockDataSource = mock(HikariDataSource.class);
@@ -47,6 +118,45 @@ class HikariCredentialsUpdaterTest {
     verify(mockPoolMXBean).softEvictConnections();
   }
 
+  @Test
+  void setCredential_recordsConnectionsEvicted() {
+    HikariDataSource mockDataSource = mock(HikariDataSource.class);
+    HikariPoolMXBean mockPoolMXBean = mock(HikariPoolMXBean.class);
+    when(mockDataSource.getHikariPoolMXBean()).thenReturn(mockPoolMXBean);
+    when(mockDataSource.getPoolName()).thenReturn("primary");
+    when(mockPoolMXBean.getTotalConnections()).thenReturn(4);
+    RotationMetrics metrics = mock(RotationMetrics.class);
+    updater.setDataSource(mockDataSource);
+    updater.setRotationMetrics(metrics);
+
+    updater.setCredential("newUser", "newPass");
+
+    verify(metrics).connectionsEvicted("primary", 4);
+  }
+
+  @Test
+  void setCredential_recordsPoolEvictionEvent(@TempDir Path tempDir) throws IOException {
+    HikariDataSource mockDataSource = mock(HikariDataSource.class);
+    when(mockDataSource.getHikariPoolMXBean()).thenReturn(mock(HikariPoolMXBean.class));
+    when(mockDataSource.getPoolName()).thenReturn("primary");
+    updater.setDataSource(mockDataSource);
+    Path dump = tempDir.resolve("eviction.jfr");
+
+    try (Recording recording = new Recording()) {
+      recording.enable("com.maybeitssquid.rotatingsecrets.PoolEviction");
+      recording.start();
+      updater.setCredential(new CredentialSnapshot<>("user", "pass", 4, Instant.now()));
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    assertEquals(1, events.size());
+    assertEquals("primary", events.get(0).getString("pool"));
+    assertEquals(4, events.get(0).getLong("generation"));
+    assertEquals("SOFT_EVICT", events.get(0).getString("action"));
+  }
+
   @Test
   void setCredential_handlesNullDataSource() {
     // Should not throw when dataSource is null
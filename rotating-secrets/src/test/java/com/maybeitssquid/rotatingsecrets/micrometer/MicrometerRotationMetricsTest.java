@@ -0,0 +1,115 @@
+package com.maybeitssquid.rotatingsecrets.micrometer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.CredentialsProviderService;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics.CheckOutcome;
+import com.maybeitssquid.rotatingsecrets.RotationMetrics.Trigger;
+import com.maybeitssquid.rotatingsecrets.RotationResult;
+import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MicrometerRotationMetricsTest {
+
+  private static final String SOURCE = "/var/run/secrets/database";
+
+  private SimpleMeterRegistry registry;
+  private MicrometerRotationMetrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    registry = new SimpleMeterRegistry();
+    metrics = new MicrometerRotationMetrics(registry);
+  }
+
+  @Test
+  void checked_countsByTriggerAndOutcome() {
+    metrics.checked(SOURCE, Trigger.EVENT, CheckOutcome.APPLIED);
+    metrics.checked(SOURCE, Trigger.POLL, CheckOutcome.UNCHANGED);
+    metrics.checked(SOURCE, Trigger.POLL, CheckOutcome.UNCHANGED);
+
+    assertEquals(
+        1,
+        registry
+            .get("rotating.secrets.checks")
+            .tags("source", SOURCE, "trigger", "event", "outcome", "applied")
+            .counter()
+            .count());
+    assertEquals(
+        2,
+        registry
+            .get("rotating.secrets.checks")
+            .tags("source", SOURCE, "trigger", "poll", "outcome", "unchanged")
+            .counter()
+            .count());
+  }
+
+  @Test
+  void timers_recordReadsPropagationAndUpdaters() {
+    metrics.secretsRead(SOURCE, Duration.ofMillis(2));
+    metrics.propagated(SOURCE, Duration.ofSeconds(3));
+    UpdatableCredential<String> updatable = mock(UpdatableCredential.class);
+    when(updatable.getName()).thenReturn("primary");
+    metrics.credentialApplied(
+        SOURCE,
+        new RotationResult.Outcome(
+            updatable, RotationResult.Status.FAILED, Duration.ofMillis(40), null));
+
+    assertEquals(
+        2,
+        registry
+            .get("rotating.secrets.read")
+            .tag("source", SOURCE)
+            .timer()
+            .totalTime(TimeUnit.MILLISECONDS));
+    assertEquals(
+        3,
+        registry
+            .get("rotating.secrets.propagation")
+            .tag("source", SOURCE)
+            .timer()
+            .totalTime(TimeUnit.SECONDS));
+    assertEquals(
+        1,
+        registry
+            .get("rotating.secrets.updater")
+            .tags("source", SOURCE, "updater", "primary", "status", "failed")
+            .timer()
+            .count());
+  }
+
+  @Test
+  void connectionsEvicted_recordsPerPool() {
+    metrics.connectionsEvicted("primary", 10);
+    metrics.connectionsEvicted("primary", 6);
+
+    DistributionSummary summary =
+        registry.get("rotating.secrets.connections.evicted").tag("pool", "primary").summary();
+    assertEquals(2, summary.count());
+    assertEquals(16, summary.totalAmount());
+  }
+
+  @Test
+  void bind_observesGenerationAndAge() {
+    CredentialsProviderService service = mock(CredentialsProviderService.class);
+    when(service.getSecretsDirectory()).thenReturn(Path.of(SOURCE));
+    metrics.bind(service);
+
+    assertTrue(Double.isNaN(registry.get("rotating.secrets.generation").gauge().value()));
+
+    when(service.getCurrentSnapshot())
+        .thenReturn(new CredentialSnapshot<>("user", "pass", 5, Instant.now().minusSeconds(60)));
+    assertEquals(
+        5, registry.get("rotating.secrets.generation").tag("source", SOURCE).gauge().value());
+    assertTrue(registry.get("rotating.secrets.age").timeGauge().value(TimeUnit.SECONDS) >= 60);
+  }
+}
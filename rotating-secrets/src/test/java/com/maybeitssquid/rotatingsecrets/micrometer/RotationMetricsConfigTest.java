@@ -0,0 +1,57 @@
+package com.maybeitssquid.rotatingsecrets.micrometer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.RotationMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.FilteredClassLoader;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class RotationMetricsConfigTest {
+
+  private final ApplicationContextRunner runner =
+      new ApplicationContextRunner()
+          .withConfiguration(AutoConfigurations.of(RotationMetricsConfig.class));
+
+  @Test
+  void meterRegistry_enablesMicrometerMetrics() {
+    runner
+        .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+        .run(
+            context ->
+                assertInstanceOf(
+                    MicrometerRotationMetrics.class, context.getBean(RotationMetrics.class)));
+  }
+
+  @Test
+  void noMeterRegistry_recordsNothing() {
+    runner.run(context -> assertSame(RotationMetrics.NONE, context.getBean(RotationMetrics.class)));
+  }
+
+  @Test
+  void disabledProperty_backsOff() {
+    runner
+        .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+        .withPropertyValues("k8s.secrets.metrics.enabled=false")
+        .run(context -> assertTrue(context.getBeansOfType(RotationMetrics.class).isEmpty()));
+  }
+
+  @Test
+  void micrometerMissing_backsOff() {
+    runner
+        .withClassLoader(new FilteredClassLoader(MeterRegistry.class))
+        .run(context -> assertTrue(context.getBeansOfType(RotationMetrics.class).isEmpty()));
+  }
+
+  @Test
+  void applicationMetrics_takePrecedence() {
+    RotationMetrics custom = new RotationMetrics() {};
+    runner
+        .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+        .withBean(RotationMetrics.class, () -> custom)
+        .run(context -> assertSame(custom, context.getBean(RotationMetrics.class)));
+  }
+}
@@ -0,0 +1,143 @@
+package com.maybeitssquid.rotatingsecrets.registry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.maybeitssquid.rotatingsecrets.CredentialsProviderService;
+import com.maybeitssquid.rotatingsecrets.SecretsWatcher;
+import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+class CredentialsRegistryTest {
+
+  @TempDir Path tempDir;
+
+  private SecretsWatcher watcher;
+  private CredentialsRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    watcher = new SecretsWatcher();
+    registry = new CredentialsRegistry();
+    registry.setSecretsWatcher(watcher);
+  }
+
+  @AfterEach
+  void tearDown() {
+    registry.close();
+    watcher.close();
+  }
+
+  @Test
+  void register_givesEachSourceItsOwnSecrets() throws IOException {
+    UpdatableCredential<String> orders = mock(UpdatableCredential.class);
+    UpdatableCredential<String> billing = mock(UpdatableCredential.class);
+
+    registry.register("orders", secrets("orders", "orders_app", "orders-pw"), orders);
+    registry.register("billing", secrets("billing", "billing_app", "billing-pw"), billing);
+
+    verify(orders).setCredential("orders_app", "orders-pw");
+    verify(billing).setCredential("billing_app", "billing-pw");
+    assertEquals(Set.of("orders", "billing"), registry.getNames());
+  }
+
+  @Test
+  void register_sharesOneWatcherAcrossSources() throws IOException {
+    for (int i = 0; i < 30; i++) {
+      registry.register("ds" + i, secrets("ds" + i, "user" + i, "pw" + i));
+    }
+
+    assertEquals(30, watcher.getRegistrationCount());
+    assertEquals(30, watcher.getWatchedDirectoryCount());
+  }
+
+  @Test
+  void register_rejectsDuplicateName() throws IOException {
+    Path path = secrets("orders", "orders_app", "orders-pw");
+    registry.register("orders", path);
+
+    assertThrows(IllegalStateException.class, () -> registry.register("orders", path));
+    assertEquals(1, watcher.getRegistrationCount());
+  }
+
+  @Test
+  void register_picksUpRotationsThroughSharedWatcher() throws Exception {
+    Path path = secrets("orders", "orders_app", "orders-pw");
+    UpdatableCredential<String> orders = mock(UpdatableCredential.class);
+    registry.register("orders", path, orders);
+
+    Files.writeString(path.resolve("username"), "orders_app2");
+    Files.writeString(path.resolve("password"), "orders-pw2");
+
+    verify(orders, timeout(10000)).setCredential("orders_app2", "orders-pw2");
+  }
+
+  @Test
+  void unregister_stopsServiceAndClosesAttachedResources() throws Exception {
+    CredentialsProviderService service =
+        registry.register("orders", secrets("orders", "orders_app", "orders-pw"));
+    DataSource dataSource = mock(DataSource.class);
+    AutoCloseable pool = mock(AutoCloseable.class);
+    registry.attach("orders", dataSource, pool);
+    assertSame(service, registry.getService("orders"));
+    assertSame(dataSource, registry.getDataSource("orders"));
+
+    assertTrue(registry.unregister("orders"));
+
+    verify(pool).close();
+    assertEquals(0, watcher.getRegistrationCount());
+    assertNull(registry.getService("orders"));
+    assertNull(registry.getDataSource("orders"));
+    assertFalse(registry.unregister("orders"));
+  }
+
+  @Test
+  void register_appliesSharedSecretsSettingsToCreatedServices() throws IOException {
+    Path path = secrets("orders", "orders_app", "orders-pw");
+    Files.writeString(path.resolve("orders_lease"), "1893456000");
+    registry.setEnvironment(
+        new MockEnvironment().withProperty("k8s.secrets.leaseFile", "orders_lease"));
+
+    CredentialsProviderService service = registry.register("orders", path);
+
+    assertEquals(Instant.ofEpochSecond(1893456000), service.getLeaseExpiry());
+  }
+
+  @Test
+  void attach_rejectsUnknownSource() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> registry.attach("missing", mock(DataSource.class), null));
+  }
+
+  @Test
+  void register_createsOwnWatcherWhenNoneShared() throws IOException {
+    CredentialsRegistry standalone = new CredentialsRegistry();
+    try {
+      UpdatableCredential<String> orders = mock(UpdatableCredential.class);
+      standalone.register("orders", secrets("orders", "orders_app", "orders-pw"), orders);
+
+      verify(orders).setCredential("orders_app", "orders-pw");
+    } finally {
+      standalone.close();
+    }
+    assertTrue(standalone.getNames().isEmpty());
+  }
+
+  private Path secrets(String name, String username, String password) throws IOException {
+    Path dir = Files.createDirectories(tempDir.resolve(name));
+    Files.writeString(dir.resolve("username"), username);
+    Files.writeString(dir.resolve("password"), password);
+    return dir;
+  }
+}
@@ -0,0 +1,234 @@
+package com.maybeitssquid.rotatingsecrets.registry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.maybeitssquid.rotatingsecrets.CredentialsProviderService;
+import com.maybeitssquid.rotatingsecrets.SecretsWatcher;
+import com.maybeitssquid.rotatingsecrets.UpdatableCredential;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Definition;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Pool;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpCredentialsUpdater;
+import com.maybeitssquid.rotatingsecrets.ucp.UcpRotationStrategy;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DataSourceRegistrarTest {
+
+  private static final String URL = "jdbc:h2:mem:registrar;DB_CLOSE_DELAY=-1";
+
+  @TempDir Path tempDir;
+
+  private SecretsWatcher watcher;
+  private CredentialsRegistry registry;
+  private RotatingDataSourceProperties properties;
+  private StaticListableBeanFactory beanFactory;
+  private DataSourceRegistrar registrar;
+
+  @BeforeAll
+  static void createUsers() throws SQLException {
+    try (Connection conn = java.sql.DriverManager.getConnection(URL, "sa", "");
+        Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE USER IF NOT EXISTS ORDERS_APP PASSWORD 'orders-pw' ADMIN");
+      stmt.execute("CREATE USER IF NOT EXISTS BILLING_APP PASSWORD 'billing-pw' ADMIN");
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    watcher = new SecretsWatcher();
+    registry = new CredentialsRegistry();
+    registry.setSecretsWatcher(watcher);
+    properties = new RotatingDataSourceProperties();
+    beanFactory = new StaticListableBeanFactory();
+    registrar = new DataSourceRegistrar(registry, properties, beanFactory);
+  }
+
+  @AfterEach
+  void tearDown() {
+    registry.close();
+    watcher.close();
+  }
+
+  @Test
+  void afterSingletonsInstantiated_createsPoolPerDataSource() throws Exception {
+    properties.getDatasources().put("orders", definition("orders", "orders_app", "orders-pw"));
+    Definition billing = definition("billing", "billing_app", "billing-pw");
+    billing.setPool(Pool.UCP);
+    billing.setDriverClassName("org.h2.jdbcx.JdbcDataSource");
+    properties.getDatasources().put("billing", billing);
+
+    registrar.afterSingletonsInstantiated();
+
+    assertInstanceOf(HikariDataSource.class, registry.getDataSource("orders"));
+    assertEquals("ORDERS_APP", currentUser(registry.getDataSource("orders")));
+    assertEquals("BILLING_APP", currentUser(registry.getDataSource("billing")));
+    assertEquals(2, watcher.getRegistrationCount());
+  }
+
+  @Test
+  void bind_appliesEachUcpDefinitionsRotationStrategy() throws Exception {
+    registrar.setRotationStrategy(UcpRotationStrategy.PURGE);
+    Definition orders = definition("orders", "orders_app", "orders-pw");
+    orders.setPool(Pool.UCP);
+    orders.setDriverClassName("org.h2.jdbcx.JdbcDataSource");
+    orders.setRotationStrategy(UcpRotationStrategy.RECYCLE);
+    Definition billing = definition("billing", "billing_app", "billing-pw");
+    billing.setPool(Pool.UCP);
+    billing.setDriverClassName("org.h2.jdbcx.JdbcDataSource");
+
+    registrar.bind("orders", orders);
+    registrar.bind("billing", billing);
+
+    assertEquals(UcpRotationStrategy.RECYCLE, ucpUpdater("orders").getRotationStrategy());
+    assertEquals(UcpRotationStrategy.PURGE, ucpUpdater("billing").getRotationStrategy());
+  }
+
+  @Test
+  void bind_bindsExistingUpdaterBeanByName() throws Exception {
+    UpdatableCredential<String> legacy = mock(UpdatableCredential.class);
+    beanFactory.addBean("legacy", legacy);
+
+    DataSource created = registrar.bind("legacy", definition("legacy", "orders_app", "orders-pw"));
+
+    assertNull(created);
+    verify(legacy).setCredential("orders_app", "orders-pw");
+    assertNotNull(registry.getService("legacy"));
+  }
+
+  @Test
+  void bind_bindsUpdaterBeansListedByDefinition() throws Exception {
+    UpdatableCredential<String> primary = mock(UpdatableCredential.class);
+    UpdatableCredential<String> replica = mock(UpdatableCredential.class);
+    beanFactory.addBean("ordersPrimary", primary);
+    beanFactory.addBean("ordersReplica", replica);
+    Definition definition = definition("orders", "orders_app", "orders-pw");
+    definition.setUpdaters(List.of("ordersPrimary", "ordersReplica"));
+
+    DataSource created = registrar.bind("orders", definition);
+
+    assertNull(created);
+    verify(primary).setCredential("orders_app", "orders-pw");
+    verify(replica).setCredential("orders_app", "orders-pw");
+  }
+
+  @Test
+  void bind_rejectsListedBeanThatIsNotAnUpdater() throws Exception {
+    beanFactory.addBean("ordersPrimary", "not an updater");
+    Definition definition = definition("orders", "orders_app", "orders-pw");
+    definition.setUpdaters(List.of("ordersPrimary"));
+
+    assertThrows(IllegalArgumentException.class, () -> registrar.bind("orders", definition));
+    assertTrue(registry.getNames().isEmpty());
+  }
+
+  @Test
+  void afterSingletonsInstantiated_rejectsUnboundUpdaterBean() throws Exception {
+    beanFactory.addBean("orders", mock(UpdatableCredential.class));
+    beanFactory.addBean("stray", mock(UpdatableCredential.class));
+    properties.getDatasources().put("orders", definition("orders", "orders_app", "orders-pw"));
+
+    IllegalStateException failure =
+        assertThrows(IllegalStateException.class, registrar::afterSingletonsInstantiated);
+
+    assertTrue(failure.getMessage().contains("[stray]"), failure.getMessage());
+  }
+
+  @Test
+  void afterSingletonsInstantiated_acceptsUpdaterBeanHeldByProviderServiceBean() throws Exception {
+    UpdatableCredential<String> hikariUpdater = mock(UpdatableCredential.class);
+    CredentialsProviderService credentialsProvider =
+        new CredentialsProviderService(tempDir.toString(), 30000);
+    credentialsProvider.addUpdatable(hikariUpdater);
+    beanFactory.addBean("hikariUpdater", hikariUpdater);
+    beanFactory.addBean("credentialsProvider", credentialsProvider);
+
+    assertDoesNotThrow(registrar::afterSingletonsInstantiated);
+  }
+
+  @Test
+  void bind_addsAndRemovesDataSourceAtRuntime() throws Exception {
+    HikariDataSource orders =
+        (HikariDataSource)
+            registrar.bind("orders", definition("orders", "orders_app", "orders-pw"));
+    assertEquals("ORDERS_APP", currentUser(orders));
+
+    assertTrue(registry.unregister("orders"));
+
+    assertTrue(orders.isClosed());
+    assertEquals(0, watcher.getRegistrationCount());
+  }
+
+  @Test
+  void bind_validatesCredentialsAgainstDataSourceUrl() throws Exception {
+    Definition definition = definition("orders", "ORDERS_APP", "not-the-password");
+    definition.setValidate(true);
+
+    IllegalStateException failure =
+        assertThrows(IllegalStateException.class, () -> registrar.bind("orders", definition));
+
+    assertTrue(failure.getMessage().startsWith("No credentials could be read"));
+    assertTrue(registry.getNames().isEmpty());
+  }
+
+  @Test
+  void bind_rejectsDefinitionWithoutSecretsPath() {
+    Definition definition = new Definition();
+    definition.setUrl(URL);
+
+    assertThrows(IllegalArgumentException.class, () -> registrar.bind("orders", definition));
+  }
+
+  @Test
+  void bind_unregistersWhenNoCredentialsCanBeRead() {
+    Definition definition = new Definition();
+    definition.setSecretsPath(tempDir.toString());
+    definition.setUrl(URL);
+
+    assertThrows(IllegalStateException.class, () -> registrar.bind("orders", definition));
+    assertTrue(registry.getNames().isEmpty());
+  }
+
+  private Definition definition(String name, String username, String password) throws IOException {
+    Path dir = Files.createDirectories(tempDir.resolve(name));
+    Files.writeString(dir.resolve("username"), username);
+    Files.writeString(dir.resolve("password"), password);
+    Definition definition = new Definition();
+    definition.setSecretsPath(dir.toString());
+    definition.setUrl(URL);
+    definition.setDriverClassName("org.h2.Driver");
+    definition.setMinimumIdle(1);
+    definition.setMaximumPoolSize(2);
+    return definition;
+  }
+
+  private UcpCredentialsUpdater ucpUpdater(String name) {
+    List<?> updatables =
+        (List<?>) ReflectionTestUtils.getField(registry.getService(name), "updatables");
+    return (UcpCredentialsUpdater) updatables.get(0);
+  }
+
+  private static String currentUser(DataSource dataSource) throws SQLException {
+    try (Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT CURRENT_USER()")) {
+      assertTrue(rs.next());
+      return rs.getString(1);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void index_isMonotonicAndBucketsContainTheirValues() {
+    int previous = -1;
+    for (long value = 0; value < 1_000_000; value += value < 1000 ? 1 : 997) {
+      int index = LatencyHistogram.index(value);
+      assertTrue(index >= previous, "index went backwards at " + value);
+      assertTrue(LatencyHistogram.upperBound(index) >= value);
+      assertTrue(LatencyHistogram.upperBound(index) <= value + value / 32 + 1);
+      previous = index;
+    }
+    assertEquals(
+        Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.index(Long.MAX_VALUE)));
+  }
+
+  @Test
+  void percentile_reportsBucketUpperBound() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertEquals(1000, histogram.count());
+    assertWithinBucket(500_000, histogram.percentile(0.50));
+    assertWithinBucket(990_000, histogram.percentile(0.99));
+    assertWithinBucket(999_000, histogram.percentile(0.999));
+    assertWithinBucket(1_000_000, histogram.percentile(1.0));
+  }
+
+  @Test
+  void percentile_ofEmptyHistogramIsZero() {
+    assertEquals(Duration.ZERO, new LatencyHistogram().percentile(0.99));
+  }
+
+  private static void assertWithinBucket(long expectedNanos, Duration actual) {
+    assertTrue(
+        actual.toNanos() >= expectedNanos && actual.toNanos() <= expectedNanos * 33 / 32,
+        () -> actual.toNanos() + " not within a bucket above " + expectedNanos);
+  }
+}
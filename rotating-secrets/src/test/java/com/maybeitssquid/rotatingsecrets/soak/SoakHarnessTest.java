@@ -0,0 +1,85 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Pool;
+import com.maybeitssquid.rotatingsecrets.soak.RotatingH2Database.Credentials;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class SoakHarnessTest {
+
+  @Test
+  void database_rejectsCredentialsItDidNotIssueOrHasRevoked() throws Exception {
+    try (RotatingH2Database database = RotatingH2Database.create(Duration.ofMillis(100))) {
+      assertLoginRejected(database.getUrl(), "sa", "");
+      Credentials first = database.rotateUser();
+      DriverManager.getConnection(database.getUrl(), first.username(), first.password()).close();
+
+      Credentials second = database.rotatePassword();
+      assertEquals(first.username(), second.username());
+      assertLoginRejected(database.getUrl(), first.username(), first.password());
+
+      Credentials third = database.rotateUser();
+      DriverManager.getConnection(database.getUrl(), second.username(), second.password()).close();
+      Thread.sleep(500);
+      assertLoginRejected(database.getUrl(), second.username(), second.password());
+      DriverManager.getConnection(database.getUrl(), third.username(), third.password()).close();
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(Pool.class)
+  @EnabledOnOs(OS.LINUX)
+  void run_rotatesUnderLoadWithoutFailedBorrows(Pool pool) throws Exception {
+    SoakHarness harness = new SoakHarness();
+    harness.getDefinition().setPool(pool);
+    harness.getDefinition().setMaximumPoolSize(4);
+    harness.setConcurrency(16);
+    harness.setDuration(Duration.ofSeconds(3));
+    harness.setRotationInterval(Duration.ofMillis(600));
+    harness.setRevokeDelay(Duration.ofMillis(1500));
+
+    SoakReport report = harness.run();
+
+    assertTrue(report.rotations() >= 3, report::toString);
+    assertTrue(report.rotationsApplied() >= report.rotations() - 1, report::toString);
+    assertTrue(report.borrows() > 0, report::toString);
+    assertTrue(report.p50().compareTo(report.p999()) <= 0, report::toString);
+    assertEquals(0, report.failedBorrows(), report::toString);
+  }
+
+  @Test
+  @EnabledOnOs(OS.LINUX)
+  void run_countsFailuresAgainstTheRotationThatCausedThem() throws Exception {
+    SoakHarness harness = new SoakHarness();
+    harness.getDefinition().setMaximumPoolSize(2);
+    harness.setConcurrency(4);
+    harness.setDuration(Duration.ofSeconds(2));
+    harness.setRotationInterval(Duration.ofMillis(500));
+    // Revoking at once breaks the pooled sessions while the service waits out its quiet period
+    harness.setRevokeDelay(Duration.ZERO);
+    harness.setQuietPeriodMs(100);
+
+    SoakReport report = harness.run();
+
+    assertTrue(report.failedBorrows() > 0, report::toString);
+    assertEquals(0, report.failedBorrowsPerRotation().get(0), report::toString);
+    assertEquals(
+        report.failedBorrows(),
+        report.failedBorrowsPerRotation().stream().mapToLong(Long::longValue).sum());
+  }
+
+  private static void assertLoginRejected(String url, String username, String password) {
+    SQLException e =
+        assertThrows(
+            SQLException.class, () -> DriverManager.getConnection(url, username, password));
+    assertEquals("28000", e.getSQLState());
+  }
+}
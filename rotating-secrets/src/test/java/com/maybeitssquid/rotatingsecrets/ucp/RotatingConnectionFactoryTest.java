@@ -0,0 +1,204 @@
+package com.maybeitssquid.rotatingsecrets.ucp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import oracle.ucp.admin.UniversalConnectionPoolManagerImpl;
+import oracle.ucp.jdbc.PoolDataSource;
+import oracle.ucp.jdbc.PoolDataSourceFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RotatingConnectionFactoryTest {
+
+  private static final String URL = "jdbc:h2:mem:rotatingfactory;DB_CLOSE_DELAY=-1";
+
+  private String key;
+  private RotatingConnectionFactory factory;
+  private RotatingConnectionFactory.Published published;
+
+  @BeforeAll
+  static void createUsers() throws SQLException {
+    try (Connection conn = java.sql.DriverManager.getConnection(URL, "sa", "");
+        Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE USER IF NOT EXISTS ROTATED PASSWORD 'rotated-pw' ADMIN");
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    key = "factory-test-" + System.nanoTime();
+    factory = new RotatingConnectionFactory();
+    factory.setURL(URL);
+    factory.setUser("sa");
+    factory.setPassword("");
+    factory.setCredentialsKey(key);
+    factory.setDelegateClassName("org.h2.jdbcx.JdbcDataSource");
+    published = RotatingConnectionFactory.register(key);
+  }
+
+  @Test
+  void getConnection_usesPoolCredentialsUntilSnapshotIsPublished() throws SQLException {
+    assertEquals("SA", currentUser(factory.getConnection("sa", "")));
+
+    published.publish(new CredentialSnapshot<>("rotated", "rotated-pw", 1, Instant.now()));
+
+    assertEquals("ROTATED", currentUser(factory.getConnection("sa", "")));
+  }
+
+  @Test
+  void getConnection_acceptsDriverClassAsDelegate() throws SQLException {
+    factory.setDelegateClassName("org.h2.Driver");
+    published.publish(new CredentialSnapshot<>("rotated", "rotated-pw", 1, Instant.now()));
+
+    assertEquals("ROTATED", currentUser(factory.getConnection("sa", "")));
+  }
+
+  @Test
+  void getConnection_neverPairsUsernameWithAnotherGenerationsPassword() throws Exception {
+    CredentialSnapshot<String> admin = new CredentialSnapshot<>("sa", "", 1, Instant.now());
+    CredentialSnapshot<String> rotated =
+        new CredentialSnapshot<>("rotated", "rotated-pw", 2, Instant.now());
+    published.publish(admin);
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicInteger opened = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> workers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      workers.add(
+          executor.submit(
+              () -> {
+                while (running.get()) {
+                  factory.getConnection("sa", "").close();
+                  opened.incrementAndGet();
+                }
+                return null;
+              }));
+    }
+
+    for (int i = 0; i < 500; i++) {
+      published.publish(i % 2 == 0 ? rotated : admin);
+    }
+    Thread.sleep(200);
+    running.set(false);
+    for (Future<?> worker : workers) {
+      worker.get(5, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    assertTrue(opened.get() > 0);
+  }
+
+  @Test
+  void getConnection_retriesOnceWhenListenerPublishesNewerCredentials() throws SQLException {
+    published.publish(new CredentialSnapshot<>("sa", "stale", 1, Instant.now()));
+    AtomicInteger reports = new AtomicInteger();
+    published.setListener(
+        (generation, failure, timeoutMs) -> {
+          reports.incrementAndGet();
+          published.publish(new CredentialSnapshot<>("sa", "", generation + 1, Instant.now()));
+          return true;
+        });
+
+    assertEquals("SA", currentUser(factory.getConnection("sa", "")));
+    assertEquals(1, reports.get());
+  }
+
+  @Test
+  void getConnection_rethrowsWhenNoNewerCredentialsExist() {
+    published.publish(new CredentialSnapshot<>("sa", "stale", 1, Instant.now()));
+    published.setListener((generation, failure, timeoutMs) -> false);
+
+    SQLException thrown = assertThrows(SQLException.class, () -> factory.getConnection("sa", ""));
+    assertEquals("28000", thrown.getSQLState());
+  }
+
+  @Test
+  void installedOnUcpPool_rotatesUsernameAndPasswordTogether() throws Exception {
+    PoolDataSource pool = PoolDataSourceFactory.getPoolDataSource();
+    pool.setConnectionPoolName("FactoryPool-" + System.nanoTime());
+    pool.setConnectionFactoryClassName("org.h2.jdbcx.JdbcDataSource");
+    pool.setURL(URL);
+    pool.setUser("sa");
+    pool.setPassword("");
+    pool.setInitialPoolSize(2);
+    pool.setMinPoolSize(2);
+    UcpCredentialsUpdater updater = new UcpCredentialsUpdater(pool);
+    updater.installConnectionFactory();
+    try {
+      assertEquals("SA", currentUser(pool.getConnection()));
+
+      updater.setCredential("rotated", "rotated-pw");
+
+      assertEquals("ROTATED", currentUser(pool.getConnection()));
+      assertEquals("sa", pool.getUser());
+      assertEquals(1, updater.getGeneration());
+    } finally {
+      UniversalConnectionPoolManagerImpl.getUniversalConnectionPoolManager()
+          .destroyConnectionPool(pool.getConnectionPoolName());
+    }
+  }
+
+  @Test
+  void sameNamedPools_doNotShareCredentials() throws Exception {
+    String name = "SharedName-" + System.nanoTime();
+    PoolDataSource firstPool = PoolDataSourceFactory.getPoolDataSource();
+    firstPool.setConnectionPoolName(name);
+    firstPool.setConnectionFactoryClassName("org.h2.jdbcx.JdbcDataSource");
+    PoolDataSource secondPool = PoolDataSourceFactory.getPoolDataSource();
+    secondPool.setConnectionPoolName(name);
+    secondPool.setConnectionFactoryClassName("org.h2.jdbcx.JdbcDataSource");
+    UcpCredentialsUpdater first = new UcpCredentialsUpdater(firstPool);
+    UcpCredentialsUpdater second = new UcpCredentialsUpdater(secondPool);
+    first.installConnectionFactory();
+    second.installConnectionFactory();
+    try {
+      first.setCredential("rotated", "rotated-pw");
+      second.setCredential("sa", "");
+
+      assertEquals("ROTATED", currentUser(factoryFor(firstPool).getConnection("sa", "")));
+      assertEquals("SA", currentUser(factoryFor(secondPool).getConnection("sa", "")));
+
+      second.releaseConnectionFactory();
+
+      assertEquals("ROTATED", currentUser(factoryFor(firstPool).getConnection("sa", "")));
+    } finally {
+      first.releaseConnectionFactory();
+      second.releaseConnectionFactory();
+    }
+  }
+
+  /** Creates the factory UCP would create for a pool, configured with the pool's properties. */
+  private static RotatingConnectionFactory factoryFor(PoolDataSource pool) {
+    RotatingConnectionFactory poolFactory = new RotatingConnectionFactory();
+    poolFactory.setURL(URL);
+    poolFactory.setUser("sa");
+    poolFactory.setPassword("");
+    poolFactory.setCredentialsKey(pool.getConnectionFactoryProperty("credentialsKey"));
+    poolFactory.setDelegateClassName(pool.getConnectionFactoryProperty("delegateClassName"));
+    return poolFactory;
+  }
+
+  private static String currentUser(Connection connection) throws SQLException {
+    try (connection;
+        Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT CURRENT_USER()")) {
+      assertTrue(rs.next());
+      return rs.getString(1);
+    }
+  }
+}
@@ -4,8 +4,11 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import com.maybeitssquid.rotatingsecrets.CredentialRotationException;
+import com.maybeitssquid.rotatingsecrets.EvictionMode;
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
 import java.sql.SQLException;
 import oracle.ucp.UniversalConnectionPoolException;
+import oracle.ucp.jdbc.JDBCConnectionPoolStatistics;
 import oracle.ucp.jdbc.PoolDataSource;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,6 +22,8 @@ class UcpCredentialsUpdaterTest {
   void setUp() {
     poolDataSource = mock(PoolDataSource.class);
     when(poolDataSource.getConnectionPoolName()).thenReturn("TestPool-" + System.nanoTime());
+    // Statistics are only available once UCP has created the pool
+    when(poolDataSource.getStatistics()).thenReturn(mock(JDBCConnectionPoolStatistics.class));
     updater = new UcpCredentialsUpdater(poolDataSource);
   }
 
@@ -75,4 +80,76 @@ class UcpCredentialsUpdaterTest {
     assertInstanceOf(UniversalConnectionPoolException.class, thrown.getCause());
     assertTrue(thrown.getMessage().contains("refresh"));
   }
+
+  @Test
+  void setCredential_onlyPublishesBeforePoolIsCreated() throws Exception {
+    when(poolDataSource.getStatistics()).thenReturn(null);
+
+    updater.setCredential("user", "pass");
+    updater.retireGeneration(1);
+
+    verify(poolDataSource).setUser("user");
+    verify(poolDataSource).setPassword("pass");
+    assertEquals(1, updater.getGeneration());
+  }
+
+  @Test
+  void retireGeneration_refreshesRecycledPoolOnceSuperseded() throws Exception {
+    updater.setRotationStrategy(UcpRotationStrategy.RECYCLE);
+    publishBeforePoolIsCreated();
+
+    updater.retireGeneration(1);
+    // The mocked pool is never registered with the UCP manager, so the refresh attempt fails.
+    CredentialRotationException thrown =
+        assertThrows(CredentialRotationException.class, () -> updater.retireGeneration(0));
+
+    assertInstanceOf(UniversalConnectionPoolException.class, thrown.getCause());
+  }
+
+  @Test
+  void retireGeneration_leavesRefreshedAndPurgedPoolsAlone() throws Exception {
+    publishBeforePoolIsCreated();
+
+    updater.setRotationStrategy(UcpRotationStrategy.REFRESH);
+    updater.retireGeneration(0);
+    updater.setRotationStrategy(UcpRotationStrategy.PURGE);
+    updater.retireGeneration(0);
+
+    assertEquals(1, updater.getGeneration());
+  }
+
+  /** Applies generation 1 while UCP has not created the pool, then lets the pool start. */
+  private void publishBeforePoolIsCreated() {
+    when(poolDataSource.getStatistics()).thenReturn(null);
+    updater.setCredential("user", "pass");
+    when(poolDataSource.getStatistics()).thenReturn(mock(JDBCConnectionPoolStatistics.class));
+  }
+
+  @Test
+  void setCredential_wrapsRecycleAndPurgeFailures() {
+    updater.setRotationStrategy(UcpRotationStrategy.RECYCLE);
+    CredentialRotationException recycle =
+        assertThrows(
+            CredentialRotationException.class, () -> updater.setCredential("user", "pass"));
+    updater.setRotationStrategy(UcpRotationStrategy.PURGE);
+    CredentialRotationException purge =
+        assertThrows(
+            CredentialRotationException.class, () -> updater.setCredential("user", "pass"));
+
+    assertTrue(recycle.getMessage().contains("recycle"));
+    assertTrue(purge.getMessage().contains("purge"));
+  }
+
+  @Test
+  void getRotationStrategy_followsEvictionPolicyUnlessSelected() {
+    assertEquals(UcpRotationStrategy.REFRESH, updater.getRotationStrategy());
+
+    EvictionPolicy policy = new EvictionPolicy();
+    policy.setMode(EvictionMode.ROLLING);
+    updater.setEvictionPolicy(policy);
+    assertEquals(UcpRotationStrategy.ROLLING, updater.getRotationStrategy());
+
+    updater.setRotationStrategy(UcpRotationStrategy.RECYCLE);
+    assertEquals(UcpRotationStrategy.RECYCLE, updater.getRotationStrategy());
+  }
 }
@@ -3,6 +3,7 @@ package com.maybeitssquid.rotatingsecrets.ucp;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.sql.SQLException;
+import java.util.UUID;
 import oracle.ucp.jdbc.PoolDataSource;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -54,4 +55,29 @@ class UcpDataSourceConfigTest {
     assertNotNull(updater);
     assertSame(pds, ReflectionTestUtils.getField(updater, "poolDataSource"));
   }
+
+  @Test
+  void ucpCredentialsUpdater_installsRotatingConnectionFactory() throws SQLException {
+    PoolDataSource pds = config.poolDataSource();
+
+    config.ucpCredentialsUpdater(pds);
+
+    assertEquals(RotatingConnectionFactory.class.getName(), pds.getConnectionFactoryClassName());
+    assertEquals(
+        "oracle.jdbc.pool.OracleDataSource", pds.getConnectionFactoryProperty("delegateClassName"));
+    // Keyed by a token of its own rather than the pool name, which other contexts may reuse
+    String key = pds.getConnectionFactoryProperty("credentialsKey");
+    assertNotEquals("TestUcpPool", key);
+    assertDoesNotThrow(() -> UUID.fromString(key));
+  }
+
+  @Test
+  void ucpCredentialsUpdater_keepsFactoryWhenAtomicCredentialsDisabled() throws SQLException {
+    ReflectionTestUtils.setField(config, "atomicCredentials", false);
+    PoolDataSource pds = config.poolDataSource();
+
+    config.ucpCredentialsUpdater(pds);
+
+    assertEquals("oracle.jdbc.pool.OracleDataSource", pds.getConnectionFactoryClassName());
+  }
 }
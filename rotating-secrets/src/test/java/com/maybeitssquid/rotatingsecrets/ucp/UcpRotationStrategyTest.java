@@ -0,0 +1,144 @@
+package com.maybeitssquid.rotatingsecrets.ucp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import oracle.ucp.admin.UniversalConnectionPoolManagerImpl;
+import oracle.ucp.jdbc.PoolDataSource;
+import oracle.ucp.jdbc.PoolDataSourceFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Runs each rotation strategy against a real UCP pool backed by an in-memory H2 database. */
+class UcpRotationStrategyTest {
+
+  private PoolDataSource pool;
+  private UcpCredentialsUpdater updater;
+
+  @BeforeEach
+  void setUp() throws SQLException {
+    pool = PoolDataSourceFactory.getPoolDataSource();
+    pool.setConnectionPoolName("StrategyTest-" + System.nanoTime());
+    pool.setConnectionFactoryClassName("org.h2.jdbcx.JdbcDataSource");
+    pool.setURL("jdbc:h2:mem:ucpstrategy;DB_CLOSE_DELAY=-1");
+    pool.setUser("sa");
+    pool.setPassword("");
+    pool.setInitialPoolSize(3);
+    pool.setMinPoolSize(3);
+    pool.setMaxPoolSize(6);
+    updater = new UcpCredentialsUpdater(pool);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    UniversalConnectionPoolManagerImpl.getUniversalConnectionPoolManager()
+        .destroyConnectionPool(pool.getConnectionPoolName());
+  }
+
+  @Test
+  void refresh_keepsBorrowedConnectionUntilReturned() throws Exception {
+    updater.setRotationStrategy(UcpRotationStrategy.REFRESH);
+    try (Connection borrowed = pool.getConnection()) {
+      updater.setCredential("sa", "");
+
+      assertQueryWorks(borrowed);
+      assertQueryWorks(pool);
+    }
+  }
+
+  @Test
+  void recycle_leavesValidConnectionsInService() throws Exception {
+    updater.setRotationStrategy(UcpRotationStrategy.RECYCLE);
+    try (Connection borrowed = pool.getConnection()) {
+      int available = pool.getAvailableConnectionsCount();
+
+      updater.setCredential("sa", "");
+
+      assertQueryWorks(borrowed);
+      assertEquals(available, pool.getAvailableConnectionsCount());
+      assertQueryWorks(pool);
+    }
+  }
+
+  @Test
+  void purge_closesBorrowedConnections() throws Exception {
+    updater.setRotationStrategy(UcpRotationStrategy.PURGE);
+    Connection borrowed = pool.getConnection();
+
+    updater.setCredential("sa", "");
+
+    assertThrows(SQLException.class, () -> assertQueryWorks(borrowed));
+    assertQueryWorks(pool);
+  }
+
+  @Test
+  void rolling_retiresConnectionsInWaves() throws Exception {
+    EvictionPolicy policy = new EvictionPolicy();
+    policy.setWaveSize(1);
+    policy.setIntervalMs(20);
+    updater.setEvictionPolicy(policy);
+    updater.setRotationStrategy(UcpRotationStrategy.ROLLING);
+    pool.getConnection().close();
+
+    updater.setCredential("sa", "");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (updater.getRollingEvictor().isRunning() && System.nanoTime() < deadline) {
+      assertQueryWorks(pool);
+      Thread.sleep(5);
+    }
+
+    assertFalse(updater.getRollingEvictor().isRunning(), "Rolling eviction did not finish");
+    assertEquals(3, updater.getRollingEvictor().getLastEvicted());
+  }
+
+  @Test
+  void rolling_withConnectionFactoryRetiresEverySupersededConnection() throws Exception {
+    EvictionPolicy policy = new EvictionPolicy();
+    policy.setWaveSize(1);
+    policy.setIntervalMs(20);
+    // UCP hands out the replacements first; any floor would keep the last superseded one in reach
+    // of the timeout only
+    policy.setFloor(0);
+    updater.setEvictionPolicy(policy);
+    updater.setRotationStrategy(UcpRotationStrategy.ROLLING);
+    updater.installConnectionFactory();
+    try {
+      pool.getConnection().close();
+
+      updater.setCredential("sa", "");
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (updater.getRollingEvictor().isRunning() && System.nanoTime() < deadline) {
+        assertQueryWorks(pool);
+        Thread.sleep(5);
+      }
+
+      assertFalse(updater.getRollingEvictor().isRunning(), "Rolling eviction did not finish");
+      assertEquals(
+          0,
+          RotatingConnectionFactory.register(pool.getConnectionFactoryProperty("credentialsKey"))
+              .connections()
+              .countOlderThan(updater.getGeneration()));
+    } finally {
+      updater.releaseConnectionFactory();
+    }
+  }
+
+  private static void assertQueryWorks(PoolDataSource pool) throws SQLException {
+    try (Connection connection = pool.getConnection()) {
+      assertQueryWorks(connection);
+    }
+  }
+
+  private static void assertQueryWorks(Connection connection) throws SQLException {
+    try (Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT 1")) {
+      assertTrue(rs.next());
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import com.maybeitssquid.rotatingsecrets.soak.RotatingH2Database.Credentials;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Temporary secrets directory updated the way the kubelet updates a mounted secret.
+ *
+ * <p>Each {@link #publish(Credentials)} writes both files into a fresh {@code ..<version>}
+ * directory and renames a new {@code ..data} link over the old one, so a reader never sees the
+ * username of one version with the password of another. The top-level {@code username} and {@code
+ * password} names are links through {@code ..data}.
+ */
+public final class KubeletSecretsDirectory implements AutoCloseable {
+
+  private static final String DATA_LINK = "..data";
+
+  private final Path directory;
+  private Path version;
+  private int versions;
+
+  private KubeletSecretsDirectory(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Creates an empty secrets directory in the default temporary-file directory.
+   *
+   * @return the secrets directory
+   * @throws IOException if the directory cannot be created
+   */
+  public static KubeletSecretsDirectory create() throws IOException {
+    return new KubeletSecretsDirectory(Files.createTempDirectory("soak-secrets"));
+  }
+
+  /**
+   * Returns the directory to point the credentials service at.
+   *
+   * @return the secrets directory
+   */
+  public Path getPath() {
+    return directory;
+  }
+
+  /**
+   * Atomically replaces the published username and password.
+   *
+   * @param credentials the credentials to publish
+   * @throws IOException if the files or links cannot be written
+   */
+  public synchronized void publish(Credentials credentials) throws IOException {
+    Path previous = version;
+    version = Files.createDirectory(directory.resolve(".." + ++versions));
+    write(version.resolve("username"), credentials.username());
+    write(version.resolve("password"), credentials.password());
+
+    Path tmpLink =
+        Files.createSymbolicLink(directory.resolve(DATA_LINK + "_tmp"), version.getFileName());
+    Files.move(
+        tmpLink,
+        directory.resolve(DATA_LINK),
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    for (String name : List.of("username", "password")) {
+      Path link = directory.resolve(name);
+      if (!Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+        Files.createSymbolicLink(link, Path.of(DATA_LINK, name));
+      }
+    }
+    if (previous != null) {
+      delete(previous);
+    }
+  }
+
+  /** Deletes the directory and everything in it. */
+  @Override
+  public void close() throws IOException {
+    delete(directory);
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.writeString(file, content);
+    PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+    if (view != null) {
+      view.setPermissions(PosixFilePermissions.fromString("rw-------"));
+    }
+  }
+
+  private static void delete(Path path) throws IOException {
+    try (Stream<Path> paths = Files.walk(path)) {
+      for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(p);
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram that many threads record into at once.
+ *
+ * <p>Values below 64 ns are counted exactly. Larger values fall into one of 32 buckets per power of
+ * two, so a reported percentile is at most about 3% above the true value.
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+
+  /**
+   * Records one latency.
+   *
+   * @param nanos the latency in nanoseconds; negative values count as zero
+   */
+  void record(long nanos) {
+    counts.incrementAndGet(index(Math.max(0, nanos)));
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   *
+   * @return the count
+   */
+  long count() {
+    long total = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Returns the latency at or below which the given fraction of recordings fall.
+   *
+   * @param quantile the fraction, between 0 and 1
+   * @return the upper bound of the bucket holding that quantile, or zero if nothing was recorded
+   */
+  Duration percentile(double quantile) {
+    long total = count();
+    if (total == 0) {
+      return Duration.ZERO;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Duration.ofNanos(upperBound(i));
+      }
+    }
+    return Duration.ofNanos(upperBound(counts.length() - 1));
+  }
+
+  /** Maps a value to its bucket: exact below {@code 2 * SUB_BUCKETS}, log-linear above. */
+  static int index(long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /** Returns the largest value that maps to the given bucket. */
+  static long upperBound(int index) {
+    if (index < 2 * SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long top = index - (long) shift * SUB_BUCKETS;
+    // Wraps to Long.MAX_VALUE for the last bucket
+    return ((top + 1) << shift) - 1;
+  }
+}
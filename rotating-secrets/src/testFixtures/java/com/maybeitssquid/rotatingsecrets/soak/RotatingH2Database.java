@@ -0,0 +1,168 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory H2 database that only accepts the credentials it has issued, standing in for a database
+ * whose users are managed by a secrets engine.
+ *
+ * <p>Every login must present a user and password issued by this database and not revoked since:
+ *
+ * <ul>
+ *   <li>{@link #rotateUser()} creates a new user with a random password, as a dynamic secrets
+ *       engine does, and drops the previous user once the revoke delay has passed. Dropping a user
+ *       also breaks its open sessions, so connections a pool has not replaced by then fail.
+ *   <li>{@link #rotatePassword()} changes the current user's password, as a static role does. New
+ *       logins with the old password fail at once; open sessions keep working.
+ * </ul>
+ *
+ * <p>The database lives as long as its administrative connection, which {@link #close()} closes.
+ *
+ * <h2>Thread Safety</h2>
+ *
+ * <p>This class is thread-safe.
+ */
+public final class RotatingH2Database implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(RotatingH2Database.class);
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  /**
+   * A user and password issued by the database.
+   *
+   * @param username the user name
+   * @param password the password
+   */
+  public record Credentials(String username, String password) {}
+
+  private final String url;
+  private final Connection admin;
+  private final Duration revokeDelay;
+  private final ScheduledExecutorService revoker;
+
+  private int users;
+  private Credentials current;
+
+  private RotatingH2Database(String url, Connection admin, Duration revokeDelay) {
+    this.url = url;
+    this.admin = admin;
+    this.revokeDelay = revokeDelay;
+    this.revoker =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              Thread thread = new Thread(task, "h2-revoker");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Creates a database with no application users yet.
+   *
+   * @param revokeDelay how long a replaced user may still log in before it is dropped
+   * @return the database
+   * @throws SQLException if the database cannot be created
+   */
+  public static RotatingH2Database create(Duration revokeDelay) throws SQLException {
+    String url = "jdbc:h2:mem:soak-" + DATABASES.incrementAndGet();
+    // The first user becomes the administrator; its random password keeps pools from borrowing it
+    Connection admin = DriverManager.getConnection(url, "SA", newPassword());
+    return new RotatingH2Database(url, admin, revokeDelay);
+  }
+
+  /**
+   * Returns the JDBC URL application users log in with.
+   *
+   * @return the URL
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * Returns the most recently issued credentials.
+   *
+   * @return the current credentials, or {@code null} before the first rotation
+   */
+  public synchronized Credentials getCurrent() {
+    return current;
+  }
+
+  /**
+   * Issues a new user and schedules the previous one to be dropped after the revoke delay.
+   *
+   * @return the new credentials
+   * @throws SQLException if the user cannot be created
+   */
+  public synchronized Credentials rotateUser() throws SQLException {
+    Credentials previous = current;
+    Credentials next = new Credentials("SOAK_" + ++users, newPassword());
+    execute("CREATE USER " + next.username() + " PASSWORD '" + next.password() + "'");
+    current = next;
+    if (previous != null) {
+      revoker.schedule(
+          () -> revoke(previous.username()), revokeDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    return next;
+  }
+
+  /**
+   * Changes the current user's password.
+   *
+   * @return the current user with the new password
+   * @throws SQLException if the password cannot be changed
+   * @throws IllegalStateException if no user has been issued yet
+   */
+  public synchronized Credentials rotatePassword() throws SQLException {
+    if (current == null) {
+      throw new IllegalStateException("No user has been issued yet");
+    }
+    Credentials next = new Credentials(current.username(), newPassword());
+    execute("ALTER USER " + next.username() + " SET PASSWORD '" + next.password() + "'");
+    current = next;
+    return next;
+  }
+
+  /** Stops pending revocations and drops the database. */
+  @Override
+  public void close() throws SQLException {
+    revoker.shutdownNow();
+    admin.close();
+  }
+
+  private void revoke(String username) {
+    try {
+      execute("DROP USER IF EXISTS " + username);
+      log.debug("Revoked {}", username);
+    } catch (SQLException e) {
+      log.warn("Could not revoke {}", username, e);
+    }
+  }
+
+  private synchronized void execute(String sql) throws SQLException {
+    try (Statement stmt = admin.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  private static String newPassword() {
+    byte[] bytes = new byte[16];
+    RANDOM.nextBytes(bytes);
+    return HexFormat.of().formatHex(bytes);
+  }
+}
@@ -0,0 +1,386 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import com.maybeitssquid.rotatingsecrets.CredentialSnapshot;
+import com.maybeitssquid.rotatingsecrets.EvictionPolicy;
+import com.maybeitssquid.rotatingsecrets.registry.CredentialsRegistry;
+import com.maybeitssquid.rotatingsecrets.registry.DataSourceRegistrar;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Definition;
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Pool;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+/**
+ * Soak test that rotates credentials against a database that enforces them while clients keep
+ * borrowing connections, and reports what the clients saw.
+ *
+ * <p>A run creates a {@link RotatingH2Database}, publishes its first user to a {@link
+ * KubeletSecretsDirectory}, and binds a pool to that directory through a {@link
+ * DataSourceRegistrar}, exactly as the {@code rotating-secrets.datasources.*} properties would.
+ * Clients then borrow a connection, run the work on it and return it, in a loop, while a rotator
+ * issues new credentials at a fixed interval and publishes them. The {@link SoakReport} holds the
+ * throughput, the acquisition latency percentiles and the failed borrows per rotation.
+ *
+ * <p>To check a pool configuration in CI, set the same pool settings and eviction policy the
+ * application uses:
+ *
+ * <pre>{@code
+ * SoakHarness harness = new SoakHarness();
+ * harness.getDefinition().setPool(Pool.UCP);
+ * harness.getDefinition().setMaximumPoolSize(20);
+ * harness.setConcurrency(200);
+ * harness.setDuration(Duration.ofMinutes(5));
+ * SoakReport report = harness.run();
+ * assertEquals(0, report.failedBorrows(), report::toString);
+ * }</pre>
+ *
+ * <h2>Clients</h2>
+ *
+ * <p>Each client is a virtual thread when the runtime supports them (Java 21 and later), so a run
+ * can simulate thousands of concurrent callers contending for a small pool. On older runtimes each
+ * client is a platform thread.
+ *
+ * <h2>Rotation Modes</h2>
+ *
+ * <ul>
+ *   <li>{@link RotationMode#USER} issues a new user on each rotation and drops the previous one
+ *       after the revoke delay, as a dynamic secrets engine does. A pool that has not replaced the
+ *       old user's connections by then loses them.
+ *   <li>{@link RotationMode#PASSWORD} changes the password of a single user, as a static role does.
+ *       New logins with the old password fail as soon as the rotation is issued.
+ * </ul>
+ *
+ * <p>The database is changed before the new credentials are published, as a secrets engine does, so
+ * failures that follow a rotation are counted against it.
+ */
+public class SoakHarness {
+
+  private static final Logger log = LoggerFactory.getLogger(SoakHarness.class);
+
+  private static final String NAME = "soak";
+
+  /** How the database's credentials change on each rotation. */
+  public enum RotationMode {
+    /** Issue a new user and drop the previous one after the revoke delay. */
+    USER,
+
+    /** Change the password of the existing user. */
+    PASSWORD
+  }
+
+  /**
+   * Work a client does with each borrowed connection.
+   *
+   * @see SoakHarness#setWork(Work)
+   */
+  @FunctionalInterface
+  public interface Work {
+    /**
+     * Uses a borrowed connection; the harness closes it afterwards.
+     *
+     * @param connection the borrowed connection
+     * @throws SQLException counted as a failed borrow
+     */
+    void run(Connection connection) throws SQLException;
+  }
+
+  private final Definition definition = new Definition();
+  private EvictionPolicy evictionPolicy;
+  private RotationMode rotationMode = RotationMode.USER;
+  private int concurrency = 64;
+  private Duration duration = Duration.ofSeconds(60);
+  private Duration rotationInterval = Duration.ofSeconds(5);
+  private Duration revokeDelay = Duration.ofSeconds(10);
+  private long refreshIntervalMs = 30000;
+  private long quietPeriodMs = 0;
+  private Work work = SoakHarness::selectOne;
+
+  /** Creates a harness with a HikariCP pool of default size and a one-minute run. */
+  public SoakHarness() {
+    // Configured through the setters
+  }
+
+  /**
+   * Returns the pool settings, to be modified before {@link #run()}.
+   *
+   * <p>The harness sets the URL and secrets path itself. If no driver class name is set, H2's
+   * driver is used for HikariCP and its {@code JdbcDataSource} for UCP.
+   *
+   * @return the mutable pool definition
+   */
+  public Definition getDefinition() {
+    return definition;
+  }
+
+  /**
+   * Sets the eviction policy the pool applies on rotation.
+   *
+   * @param evictionPolicy the eviction policy, or {@code null} for the default
+   */
+  public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+    this.evictionPolicy = evictionPolicy;
+  }
+
+  /**
+   * Sets how the database's credentials change on each rotation.
+   *
+   * @param rotationMode the rotation mode (default: {@link RotationMode#USER})
+   */
+  public void setRotationMode(RotationMode rotationMode) {
+    this.rotationMode = rotationMode;
+  }
+
+  /**
+   * Sets the number of concurrent clients.
+   *
+   * @param concurrency the number of clients (default: 64)
+   */
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Sets how long the clients run.
+   *
+   * @param duration the run duration (default: 60 s)
+   */
+  public void setDuration(Duration duration) {
+    this.duration = duration;
+  }
+
+  /**
+   * Sets the time between rotations.
+   *
+   * @param rotationInterval the rotation interval (default: 5 s)
+   */
+  public void setRotationInterval(Duration rotationInterval) {
+    this.rotationInterval = rotationInterval;
+  }
+
+  /**
+   * Sets how long a replaced user may still log in, in {@link RotationMode#USER} mode.
+   *
+   * @param revokeDelay the revoke delay (default: 10 s)
+   */
+  public void setRevokeDelay(Duration revokeDelay) {
+    this.revokeDelay = revokeDelay;
+  }
+
+  /**
+   * Sets the credentials service's fallback poll timeout.
+   *
+   * @param refreshIntervalMs fallback poll timeout in milliseconds (default: 30000)
+   */
+  public void setRefreshIntervalMs(long refreshIntervalMs) {
+    this.refreshIntervalMs = refreshIntervalMs;
+  }
+
+  /**
+   * Sets the credentials service's quiet period after a watch event.
+   *
+   * @param quietPeriodMs milliseconds without further directory events to wait before reading
+   *     (default: 0)
+   */
+  public void setQuietPeriodMs(long quietPeriodMs) {
+    this.quietPeriodMs = quietPeriodMs;
+  }
+
+  /**
+   * Sets the work each client does with a borrowed connection.
+   *
+   * @param work the work (default: {@code SELECT 1})
+   */
+  public void setWork(Work work) {
+    this.work = work;
+  }
+
+  /**
+   * Runs the soak test.
+   *
+   * @return the report
+   * @throws IOException if the secrets cannot be published or watched
+   * @throws SQLException if the database or pool cannot be set up
+   * @throws InterruptedException if interrupted while waiting for the clients
+   */
+  public SoakReport run() throws IOException, SQLException, InterruptedException {
+    try (RotatingH2Database database = RotatingH2Database.create(revokeDelay);
+        KubeletSecretsDirectory secrets = KubeletSecretsDirectory.create()) {
+      secrets.publish(database.rotateUser());
+      CredentialsRegistry registry = new CredentialsRegistry();
+      registry.setRefreshIntervalMs(refreshIntervalMs);
+      registry.setQuietPeriodMs(quietPeriodMs);
+      try {
+        DataSourceRegistrar registrar =
+            new DataSourceRegistrar(
+                registry, new RotatingDataSourceProperties(), new StaticListableBeanFactory());
+        registrar.setEvictionPolicy(evictionPolicy);
+        DataSource dataSource = registrar.bind(NAME, target(database, secrets));
+        return soak(dataSource, database, secrets, registry);
+      } finally {
+        registry.close();
+      }
+    }
+  }
+
+  private Definition target(RotatingH2Database database, KubeletSecretsDirectory secrets) {
+    Definition target = new Definition();
+    target.setPool(definition.getPool());
+    target.setMaximumPoolSize(definition.getMaximumPoolSize());
+    target.setMinimumIdle(definition.getMinimumIdle());
+    target.setUrl(database.getUrl());
+    target.setSecretsPath(secrets.getPath().toString());
+    if (definition.getDriverClassName() != null) {
+      target.setDriverClassName(definition.getDriverClassName());
+    } else {
+      target.setDriverClassName(
+          definition.getPool() == Pool.UCP ? "org.h2.jdbcx.JdbcDataSource" : "org.h2.Driver");
+    }
+    return target;
+  }
+
+  private SoakReport soak(
+      DataSource dataSource,
+      RotatingH2Database database,
+      KubeletSecretsDirectory secrets,
+      CredentialsRegistry registry)
+      throws InterruptedException {
+    List<AtomicLong> failures = new CopyOnWriteArrayList<>(List.of(new AtomicLong()));
+    LatencyHistogram latencies = new LatencyHistogram();
+    LongAdder borrows = new LongAdder();
+
+    ScheduledExecutorService rotator =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              Thread thread = new Thread(task, "soak-rotator");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long intervalMs = rotationInterval.toMillis();
+    rotator.scheduleAtFixedRate(
+        () -> {
+          // Open the rotation's bucket first so failures it causes are counted against it
+          failures.add(new AtomicLong());
+          rotate(database, secrets);
+        },
+        intervalMs,
+        intervalMs,
+        TimeUnit.MILLISECONDS);
+
+    long start = System.nanoTime();
+    long deadline = start + duration.toNanos();
+    ExecutorService clients = newClientExecutor(concurrency);
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        clients.execute(
+            () -> {
+              while (System.nanoTime() - deadline < 0) {
+                borrow(dataSource, latencies, borrows, failures);
+              }
+            });
+      }
+    } finally {
+      clients.shutdown();
+      try {
+        if (!clients.awaitTermination(duration.toMillis() + 60000, TimeUnit.MILLISECONDS)) {
+          log.warn("Soak clients did not finish within a minute of the deadline");
+        }
+      } finally {
+        clients.shutdownNow();
+        rotator.shutdownNow();
+        rotator.awaitTermination(10, TimeUnit.SECONDS);
+      }
+    }
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    List<Long> perRotation = new ArrayList<>();
+    long failed = 0;
+    for (AtomicLong count : failures) {
+      perRotation.add(count.get());
+      failed += count.get();
+    }
+    CredentialSnapshot<String> snapshot = registry.getService(NAME).getCurrentSnapshot();
+    SoakReport report =
+        new SoakReport(
+            definition.getPool(),
+            elapsed,
+            borrows.sum(),
+            failed,
+            perRotation,
+            snapshot.generation() - 1,
+            latencies.percentile(0.50),
+            latencies.percentile(0.99),
+            latencies.percentile(0.999));
+    log.info("{}", report);
+    return report;
+  }
+
+  private void rotate(RotatingH2Database database, KubeletSecretsDirectory secrets) {
+    try {
+      secrets.publish(
+          rotationMode == RotationMode.USER ? database.rotateUser() : database.rotatePassword());
+    } catch (IOException | SQLException | RuntimeException e) {
+      log.warn("Soak rotation failed", e);
+    }
+  }
+
+  private void borrow(
+      DataSource dataSource,
+      LatencyHistogram latencies,
+      LongAdder borrows,
+      List<AtomicLong> failures) {
+    long started = System.nanoTime();
+    try (Connection connection = dataSource.getConnection()) {
+      latencies.record(System.nanoTime() - started);
+      work.run(connection);
+      borrows.increment();
+    } catch (SQLException | RuntimeException e) {
+      failures.get(failures.size() - 1).incrementAndGet();
+      log.debug("Borrow failed", e);
+    }
+  }
+
+  private static void selectOne(Connection connection) throws SQLException {
+    try (Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT 1")) {
+      rs.next();
+    }
+  }
+
+  /**
+   * Returns an executor running each client on its own virtual thread where the runtime has them,
+   * looked up reflectively since the library targets Java 17.
+   */
+  private static ExecutorService newClientExecutor(int concurrency) {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger clients = new AtomicInteger();
+      return Executors.newFixedThreadPool(
+          concurrency,
+          task -> {
+            Thread thread = new Thread(task, "soak-client-" + clients.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.maybeitssquid.rotatingsecrets.soak;
+
+import com.maybeitssquid.rotatingsecrets.registry.RotatingDataSourceProperties.Pool;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a {@link SoakHarness} run.
+ *
+ * @param pool the pool implementation under load
+ * @param duration how long the load ran
+ * @param borrows connections borrowed and used without error
+ * @param failedBorrows borrows that failed, either on {@code getConnection} or while using the
+ *     connection
+ * @param failedBorrowsPerRotation failed borrows counted from each rotation until the next; element
+ *     0 counts the failures before the first rotation
+ * @param rotationsApplied rotations the credentials service had picked up by the end of the run
+ * @param p50 median connection acquisition latency
+ * @param p99 99th percentile connection acquisition latency
+ * @param p999 99.9th percentile connection acquisition latency
+ */
+public record SoakReport(
+    Pool pool,
+    Duration duration,
+    long borrows,
+    long failedBorrows,
+    List<Long> failedBorrowsPerRotation,
+    long rotationsApplied,
+    Duration p50,
+    Duration p99,
+    Duration p999) {
+
+  /**
+   * Creates a report.
+   *
+   * @throws IllegalArgumentException if {@code failedBorrowsPerRotation} is empty
+   */
+  public SoakReport {
+    if (failedBorrowsPerRotation.isEmpty()) {
+      throw new IllegalArgumentException("failedBorrowsPerRotation needs the initial element");
+    }
+    failedBorrowsPerRotation = List.copyOf(failedBorrowsPerRotation);
+  }
+
+  /**
+   * Returns the number of rotations performed during the run.
+   *
+   * @return the rotation count
+   */
+  public int rotations() {
+    return failedBorrowsPerRotation.size() - 1;
+  }
+
+  /**
+   * Returns the successful borrows per second.
+   *
+   * @return the throughput
+   */
+  public double throughputPerSecond() {
+    return duration.isZero() ? 0 : borrows * 1e9 / duration.toNanos();
+  }
+
+  /**
+   * Returns the most failed borrows attributed to any single rotation.
+   *
+   * @return the maximum over every rotation, excluding failures before the first
+   */
+  public long maxFailedBorrowsPerRotation() {
+    return failedBorrowsPerRotation.stream().skip(1).mapToLong(Long::longValue).max().orElse(0);
+  }
+
+  /**
+   * Formats the report as a short summary for build logs.
+   *
+   * @return the summary
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        "%s soak over %ds: %.0f borrows/s, acquisition p50=%.1fus p99=%.1fus p999=%.1fus,"
+            + " %d failed of %d borrows, %d rotations (%d applied),"
+            + " failed borrows per rotation %s",
+        pool,
+        duration.toSeconds(),
+        throughputPerSecond(),
+        p50.toNanos() / 1e3,
+        p99.toNanos() / 1e3,
+        p999.toNanos() / 1e3,
+        failedBorrows,
+        borrows + failedBorrows,
+        rotations(),
+        rotationsApplied,
+        failedBorrowsPerRotation);
+  }
+}